@@ -13,8 +13,14 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.*;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Callable;
 
@@ -51,15 +57,11 @@ public class Db implements Cloneable, AutoCloseable {
     public void close() {
         synchronized (connectionString) {
             if (connection != null) {
-                for (PreparedStatement s : cachedStatements.values()) {
-                    try {
-                        s.close();
-                    } catch (SQLException e) {
-                        // connection is closed, we ignore it
-//                        log.d("failure closing statemment: " + e);
-                    }
+                synchronized (connection) {
+                    for (CachedStatement s : cachedStatements.values())
+                        s.evict();
+                    cachedStatements.clear();
                 }
-                cachedStatements.clear();
                 try {
                     connection.close();
                 } catch (SQLException e) {
@@ -75,6 +77,22 @@ public class Db implements Cloneable, AutoCloseable {
         return connection == null;
     }
 
+    /**
+     * Check the connection is still alive, see {@link Connection#isValid(int)}.
+     *
+     * @param timeoutSeconds is time to wait for the database to answer
+     *
+     * @return true if the connection is usable
+     */
+    public boolean isValid(int timeoutSeconds) {
+        Connection c = connection;
+        try {
+            return c != null && c.isValid(timeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
     @Override
     protected void finalize() throws Throwable {
         close();
@@ -273,21 +291,94 @@ public class Db implements Cloneable, AutoCloseable {
         createDB(migrationsResource);
     }
 
-    private HashMap<String, PreparedStatement> cachedStatements = new HashMap<>();
+    /**
+     * Default max number of cached prepared statements per connection.
+     */
+    static public final int DEFAULT_STATEMENTS_CACHE_SIZE = 64;
+
+    private int statementsCacheSize = DEFAULT_STATEMENTS_CACHE_SIZE;
+
+    // access ordered, so the first entry is the least recently used one. Guarded by the connection.
+    private final LinkedHashMap<String, CachedStatement> cachedStatements =
+            new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                    if (size() <= statementsCacheSize)
+                        return false;
+                    eldest.getValue().evict();
+                    return true;
+                }
+            };
 
-    public PreparedStatement statement(String sqlText, Object... args) throws SQLException {
-//        log.d("statement: |" + sqlText + "|  " + Arrays.toString(args));
-//        System.out.println("statement: |" + sqlText + "|  " + Arrays.toString(args));
-//        PreparedStatement statement = cachedStatements.get(sqlText);
-        PreparedStatement statement = null;
-//        if (statement == null) {
+    private long statementsCacheHits = 0;
+    private long statementsCacheMisses = 0;
+
+    /**
+     * Set max number of prepared statements cached for this connection, {@link #DEFAULT_STATEMENTS_CACHE_SIZE} by
+     * default. Zero disables caching.
+     *
+     * @param size is max number of cached statements
+     */
+    public void setStatementsCacheSize(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("cache size can't be negative");
         synchronized (connection) {
-            statement = connection.prepareStatement(sqlText);
+            statementsCacheSize = size;
+            Iterator<CachedStatement> it = cachedStatements.values().iterator();
+            while (cachedStatements.size() > size && it.hasNext()) {
+                it.next().evict();
+                it.remove();
+            }
         }
-//            cachedStatements.put(sqlText, statement);
-//        } else {
-//            statement.clearParameters();
-//        }
+    }
+
+    /**
+     * @return number of statements got from the cache
+     */
+    public long getStatementsCacheHits() {
+        return statementsCacheHits;
+    }
+
+    /**
+     * @return number of statements that were prepared
+     */
+    public long getStatementsCacheMisses() {
+        return statementsCacheMisses;
+    }
+
+    /**
+     * Get prepared statement for the sqlText with parameters set to args. Statements are cached per connection: when
+     * the caller closes returned statement, it is not really closed but is returned to the cache for reuse. Statement
+     * that is not closed yet, e.g. because its {@link ResultSet} is still read, is never given to another caller, a
+     * new one is prepared instead.
+     *
+     * @param sqlText sql text string with '?' for parameters
+     * @param args    query parameters
+     *
+     * @return prepared statement, should be closed by the caller
+     *
+     * @throws SQLException
+     */
+    public PreparedStatement statement(String sqlText, Object... args) throws SQLException {
+//        log.d("statement: |" + sqlText + "|  " + Arrays.toString(args));
+        return setArgs(cachedStatement(sqlText, sqlText, false), args);
+    }
+
+    /**
+     * Same as {@link #statement(String, Object...)} but statement could return generated keys.
+     *
+     * @param sqlText sql text string with '?' for parameters
+     * @param args    query parameters
+     *
+     * @return prepared statement, should be closed by the caller
+     *
+     * @throws SQLException
+     */
+    public PreparedStatement statementReturningKeys(String sqlText, Object... args) throws SQLException {
+        return setArgs(cachedStatement("keys:" + sqlText, sqlText, true), args);
+    }
+
+    private PreparedStatement setArgs(PreparedStatement statement, Object... args) throws SQLException {
         int index = 1;
         for (Object arg : args) {
             statement.setObject(index, arg);
@@ -296,31 +387,189 @@ public class Db implements Cloneable, AutoCloseable {
         return statement;
     }
 
-    public PreparedStatement statementReturningKeys(String sqlText, Object... args) throws SQLException {
-        PreparedStatement statement = null;
+    private PreparedStatement prepare(String sqlText, boolean returningKeys) throws SQLException {
+        return returningKeys ?
+                connection.prepareStatement(sqlText, Statement.RETURN_GENERATED_KEYS) :
+                connection.prepareStatement(sqlText);
+    }
+
+    private PreparedStatement cachedStatement(String key, String sqlText, boolean returningKeys) throws SQLException {
         synchronized (connection) {
-            statement = connection.prepareStatement(sqlText, Statement.RETURN_GENERATED_KEYS);
+            if (statementsCacheSize == 0) {
+                statementsCacheMisses++;
+                return prepare(sqlText, returningKeys);
+            }
+            CachedStatement cached = cachedStatements.get(key);
+            if (cached != null && cached.statement.isClosed()) {
+                cachedStatements.remove(key);
+                cached = null;
+            }
+            if (cached == null) {
+                statementsCacheMisses++;
+                cached = new CachedStatement(prepare(sqlText, returningKeys));
+                cachedStatements.put(key, cached);
+                return cached.acquire();
+            }
+            if (cached.isInUse) {
+                // the same statement is used by the caller up the stack, so it gets its own one
+                statementsCacheMisses++;
+                return prepare(sqlText, returningKeys);
+            }
+            statementsCacheHits++;
+            cached.statement.clearParameters();
+            return cached.acquire();
         }
-        int index = 1;
-        for (Object arg : args) {
-            statement.setObject(index, arg);
-            index++;
+    }
+
+    /**
+     * Cached prepared statement. Callers get it wrapped with a proxy, closing the proxy makes the statement available
+     * for the next caller. Evicted statement is closed as soon as it is not used.
+     */
+    private class CachedStatement {
+        private final PreparedStatement statement;
+        // connection field is cleared on close, while statement could be released later
+        private final Connection owner = connection;
+        private boolean isInUse = false;
+        private boolean isEvicted = false;
+
+        private CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        private PreparedStatement acquire() {
+            isInUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class[]{PreparedStatement.class}, new Lease(this));
+        }
+
+        private void release() {
+            synchronized (owner) {
+                isInUse = false;
+                if (isEvicted)
+                    closeQuietly();
+            }
+        }
+
+        private void evict() {
+            isEvicted = true;
+            if (!isInUse)
+                closeQuietly();
+        }
+
+        private void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // connection is closed, we ignore it
+            }
+        }
+    }
+
+    /**
+     * Handle of the {@link CachedStatement} given to one caller. Closing it, or closing its result set if {@link
+     * Statement#closeOnCompletion()} was called, releases the statement.
+     */
+    private static class Lease implements InvocationHandler {
+        private final CachedStatement cached;
+        private boolean isClosed = false;
+        private boolean closeOnCompletion = false;
+
+        private Lease(CachedStatement cached) {
+            this.cached = cached;
+        }
+
+        private synchronized void close() {
+            if (!isClosed) {
+                isClosed = true;
+                cached.release();
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return isClosed || cached.statement.isClosed();
+                case "closeOnCompletion":
+                    closeOnCompletion = true;
+                    return null;
+                case "isCloseOnCompletion":
+                    return closeOnCompletion;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "cached " + cached.statement;
+            }
+            if (isClosed)
+                throw new SQLException("statement is closed");
+            Object result;
+            try {
+                result = method.invoke(cached.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (closeOnCompletion && result instanceof ResultSet)
+                return ClosingResultSet.wrap((ResultSet) result, this::close);
+            return result;
+        }
+    }
+
+    /**
+     * Result set that runs an action after it is closed.
+     */
+    private static class ClosingResultSet implements InvocationHandler {
+        private final ResultSet resultSet;
+        private final Runnable onClose;
+
+        private ClosingResultSet(ResultSet resultSet, Runnable onClose) {
+            this.resultSet = resultSet;
+            this.onClose = onClose;
+        }
+
+        static ResultSet wrap(ResultSet resultSet, Runnable onClose) {
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class[]{ResultSet.class}, new ClosingResultSet(resultSet, onClose));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+            }
+            try {
+                return method.invoke(resultSet, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (method.getName().equals("close"))
+                    onClose.run();
+            }
         }
-        return statement;
     }
 
     public ResultSet queryRow(String sqlText, Object... args) throws SQLException {
         PreparedStatement s = statement(sqlText, args);
         s.closeOnCompletion();
-        ResultSet rs = s.executeQuery();
+        try {
+            ResultSet rs = s.executeQuery();
 //        if(!isInTransaction) connection.commit();
-        if (rs.next()) {
-            return rs;
-        } else {
-            if (sqlite)
-                s.close();
-            return null;
+            if (rs.next())
+                return rs;
+            rs.close();
+        } catch (SQLException e) {
+            s.close();
+            throw e;
         }
+        s.close();
+        return null;
     }
 
     /**
@@ -1,28 +1,94 @@
 package com.icodici.db;
 
+import net.sergeych.tools.Binder;
+
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Iterator;
 import java.util.Properties;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+/**
+ * Pool of {@link PooledDb} connections.
+ * <p>
+ * Connection is bound to the thread only while it is borrowed: repeated {@link #db()} calls in the same thread return
+ * the same instance, and it goes back to the pool when all of them are closed. Up to maximumConnections are opened,
+ * when all of them are busy, {@link #db()} waits for one up to the acquire timeout and then fails. Idle connections
+ * are validated on borrow if they were not used for a while, and these idle longer than the idle timeout are closed,
+ * while at least minIdle connections are kept open.
+ * <p>
+ * Active and idle counts, timeouts and wait time histogram are reported by {@link #getStats()}.
+ */
 public class DbPool implements AutoCloseable {
 
+    /**
+     * Default time to wait for a free connection.
+     */
+    static public final Duration DEFAULT_ACQUIRE_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * Default time an idle connection is kept open above minIdle.
+     */
+    static public final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5);
+
+    /**
+     * Connections that were idle less than this are not validated on borrow.
+     */
+    static private final long VALIDATION_INTERVAL_MILLIS = 1000;
+    static private final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    /**
+     * Upper bounds of the wait time histogram buckets, in milliseconds. Last bucket is for longer waits.
+     */
+    static private final long[] WAIT_BUCKETS_MILLIS = {1, 10, 100, 1000, 10000};
+
+    static private final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r);
+        thread.setName("db-pool-evictor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final String connectionString;
     private final Properties properties;
     private final int maximumConnections;
-    private volatile int total = 0;
+
+    private volatile Duration acquireTimeout = DEFAULT_ACQUIRE_TIMEOUT;
+    private volatile Duration idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private volatile int minIdle = 0;
+    private volatile boolean isClosed = false;
+
+    // permits to have a connection borrowed, so it is never more than maximumConnections of them
+    private final Semaphore permits;
+    // most recently returned connections first, so rarely used ones become idle long enough to be evicted
+    private final LinkedBlockingDeque<PooledDb> pool = new LinkedBlockingDeque<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+    private final AtomicLongArray waitHistogram = new AtomicLongArray(WAIT_BUCKETS_MILLIS.length + 1);
+
+    private final ScheduledFuture<?> evictionTask;
 
     /**
-     * This the per-thread cache of the DB connection.
-     * TODO: should the connection be blindly taken from this cache?
-     * Or only if it is not used already in some other transaction?
+     * Connection borrowed by the current thread, if any.
      */
     private ThreadLocal<PooledDb> threadDb = new ThreadLocal<>();
 
     @Override
     public void close() throws Exception {
+        isClosed = true;
+        evictionTask.cancel(false);
         threadDb.set(null);
-        while( !pool.isEmpty())
-            pool.take().destroy();
+        PooledDb db;
+        while ((db = pool.poll()) != null)
+            destroy(db);
     }
 
     public interface DbConsumer<R> {
@@ -37,47 +103,207 @@ public class DbPool implements AutoCloseable {
         this.connectionString = connectionString;
         this.properties = properties;
         this.maximumConnections = maxConnections;
+        permits = new Semaphore(maxConnections, true);
+        evictionTask = evictor.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.SECONDS);
     }
 
-    private LinkedBlockingQueue<PooledDb> pool = new LinkedBlockingQueue<>();
+    /**
+     * Set time {@link #db()} waits for a free connection before it fails, {@link #DEFAULT_ACQUIRE_TIMEOUT} by default.
+     *
+     * @param acquireTimeout is time to wait
+     */
+    public void setAcquireTimeout(Duration acquireTimeout) {
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    /**
+     * Set time an idle connection is kept open if there are more than minIdle of them, {@link #DEFAULT_IDLE_TIMEOUT}
+     * by default.
+     *
+     * @param idleTimeout is time to keep idle connection
+     */
+    public void setIdleTimeout(Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Set number of idle connections kept open to serve bursts without connecting, 0 by default. Pool opens missing
+     * ones in background.
+     *
+     * @param minIdle is number of connections
+     */
+    public void setMinIdle(int minIdle) {
+        this.minIdle = Math.min(minIdle, maximumConnections);
+    }
 
+    /**
+     * Get connection for the calling thread. Repeated calls in the same thread return the same instance until it is
+     * closed as many times as it was got.
+     *
+     * @return connection, should be closed to return it to the pool
+     *
+     * @throws SQLException if pool is closed, no connection is available for the acquire timeout or can't be opened
+     */
     public PooledDb db() throws SQLException {
-        try {
-            PooledDb db = threadDb.get();
-            // One thread - one connection, e.g. transactions work with the same db and
-            // all other calls in the same thread use same pooled instance
-            if( db != null ) {
-                // TODO: uncomment the next assert line to spot every transaction-inside-transaction.
-                // This will definitely break some unit tests until the code is change to never cause
-                // transaction-inside-transaction DB access!
-                // assert !db.isInTransaction;
-                return db;
-            }
+        PooledDb db = threadDb.get();
+        // One thread - one connection, e.g. transactions work with the same db and
+        // all other calls in the same thread use same pooled instance
+        if (db != null) {
+            db.holds++;
+            return db;
+        }
+        if (isClosed)
+            throw new SQLException("pool is closed");
 
-            PooledDb pdb = total >= maximumConnections ? pool.take() : pool.poll();
-            if( pdb != null ) {
-//                System.out.println("take left " + pool.size() + " total " + total + " cached " + cached);
-            } else {
-                pdb = new PooledDb(this, connectionString, properties);
-                total++;
-//                System.out.println("new  left " + pool.size() + " total " + total + " cached " + cached);
+        long started = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLException("no free connection for " + acquireTimeout.toMillis() + "ms, " +
+                        active.get() + " are active");
             }
-            threadDb.set(pdb);
-            return pdb;
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new SQLException("Pooled operation interrupted");
+        }
+        recordWait(System.nanoTime() - started);
+
+        try {
+            db = borrowIdle();
+            if (db == null)
+                db = open();
         } catch (Exception e) {
-            throw new SQLException("Pooled operation interrupted: " + e.getMessage());
+            permits.release();
+            throw e instanceof SQLException ? (SQLException) e :
+                    new SQLException("Pooled operation interrupted: " + e.getMessage(), e);
+        }
+        db.holds = 1;
+        active.incrementAndGet();
+        threadDb.set(db);
+        return db;
+    }
+
+    private PooledDb borrowIdle() {
+        PooledDb db;
+        while ((db = pool.pollFirst()) != null) {
+            if (System.currentTimeMillis() - db.returnedAt < VALIDATION_INTERVAL_MILLIS ||
+                    db.isValid(VALIDATION_TIMEOUT_SECONDS))
+                return db;
+            invalid.incrementAndGet();
+            destroy(db);
         }
+        return null;
+    }
+
+    private PooledDb open() throws SQLException {
+        PooledDb db = new PooledDb(this, connectionString, properties);
+        total.incrementAndGet();
+        created.incrementAndGet();
+        return db;
+    }
+
+    private void destroy(PooledDb db) {
+        total.decrementAndGet();
+        db.destroy();
     }
 
     void returnToPool(PooledDb db) {
-        if(db.equals(threadDb.get())) {
-            threadDb.set(null);
-            pool.add(db);
+        if (db != threadDb.get())
+            return;
+        if (--db.holds > 0)
+            return;
+        threadDb.set(null);
+        active.decrementAndGet();
+        if (isClosed || db.isClosed()) {
+            destroy(db);
+        } else {
+            db.returnedAt = System.currentTimeMillis();
+            pool.offerFirst(db);
         }
+        permits.release();
+    }
+
+    private void recordWait(long nanos) {
+        long millis = nanos / 1_000_000;
+        int bucket = 0;
+        while (bucket < WAIT_BUCKETS_MILLIS.length && millis >= WAIT_BUCKETS_MILLIS[bucket])
+            bucket++;
+        waitHistogram.incrementAndGet(bucket);
     }
 
+    /**
+     * Close connections idle longer than idle timeout while there are more than minIdle of them, then open missing
+     * idle connections up to minIdle. Called periodically by the evictor thread, calls are serialized so concurrent
+     * ones do not evict or open more than needed.
+     */
+    synchronized void evictIdle() {
+        if (isClosed)
+            return;
+        long deadline = System.currentTimeMillis() - idleTimeout.toMillis();
+        // the oldest idle connections are at the end
+        Iterator<PooledDb> it = pool.descendingIterator();
+        while (it.hasNext() && pool.size() > minIdle) {
+            PooledDb db = it.next();
+            if (db.returnedAt < deadline && pool.removeLastOccurrence(db)) {
+                evicted.incrementAndGet();
+                destroy(db);
+            }
+        }
+        try {
+            while (!isClosed && pool.size() < minIdle && total.get() < maximumConnections) {
+                PooledDb db = open();
+                db.returnedAt = System.currentTimeMillis();
+                pool.offerLast(db);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return number of connections borrowed now
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * @return number of open connections waiting in the pool
+     */
+    public int getIdleCount() {
+        return pool.size();
+    }
+
+    /**
+     * @return number of times {@link #db()} failed to get a connection in time
+     */
+    public long getTimeoutsCount() {
+        return timeouts.get();
+    }
+
+    /**
+     * @return {@link Binder} with active, idle and total connections counts, number of connections created, evicted
+     * and found invalid, number of timeouts, and histogram of times {@link #db()} waited for a free connection, as
+     * counts by upper bound in milliseconds
+     */
+    public Binder getStats() {
+        Binder waits = new Binder();
+        for (int i = 0; i < WAIT_BUCKETS_MILLIS.length; i++)
+            waits.put("<" + WAIT_BUCKETS_MILLIS[i] + "ms", waitHistogram.get(i));
+        waits.put(">=" + WAIT_BUCKETS_MILLIS[WAIT_BUCKETS_MILLIS.length - 1] + "ms",
+                waitHistogram.get(WAIT_BUCKETS_MILLIS.length));
+        return Binder.of(
+                "active", active.get(),
+                "idle", pool.size(),
+                "total", total.get(),
+                "max", maximumConnections,
+                "created", created.get(),
+                "evicted", evicted.get(),
+                "invalid", invalid.get(),
+                "timeouts", timeouts.get(),
+                "waits", waits
+        );
+    }
 
     public <T> T execute(DbConsumer<T> consumer) throws Exception {
         try (PooledDb pdb = db()) { return consumer.accept(pdb); }
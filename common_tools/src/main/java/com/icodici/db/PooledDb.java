@@ -7,6 +7,10 @@ import java.util.concurrent.Callable;
 public class PooledDb extends Db implements AutoCloseable {
     private final DbPool dbPool;
     volatile boolean isInTransaction = false;
+    // number of not closed DbPool.db() calls that got this instance, used only by the owning thread
+    int holds = 0;
+    // when it was returned to the pool last time
+    volatile long returnedAt = 0;
 
     private static final boolean assertionsEnabled;
     static {
@@ -44,6 +48,7 @@ public class PooledDb extends Db implements AutoCloseable {
     @Override
     public void close() {
         // important! do NOT call super.close() - we do not close pooled connections!
+        // it is returned to the pool when all holders close it
         dbPool.returnToPool(this);
 //            System.out.println("back "+this+" pool " + DbPool.this + " left " + pool.maximumConnections);
     }
@@ -11,6 +11,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
@@ -22,7 +24,7 @@ import java.util.function.Consumer;
  */
 public class AsyncEvent<T> {
     private T result;
-    private boolean fired = false;
+    private volatile boolean fired = false;
     private Object mutex = new Object();
     private List<Consumer<T>> consumers = new ArrayList<>();
 
@@ -103,7 +105,8 @@ public class AsyncEvent<T> {
     /**
      * Wait until the event is fired as much as specified number of milliseconds. If it is already fired, returns
      * immediately the result passed to the {@link #fire(Object)} call. Throws {@link TimeoutException} if the event is
-     * not fired in time.
+     * not fired in time. Called in a {@link ForkJoinPool} worker thread, waits as a managed blocker, so the pool can
+     * start a spare thread meanwhile.
      *
      * @param milliseconds maximum number of milliseconds to wait for the event to be fired. 0 value waits forever.
      *
@@ -113,6 +116,27 @@ public class AsyncEvent<T> {
      * @throws TimeoutException     if the event was not fired during the specified time
      */
     public T await(long milliseconds) throws TimeoutException, InterruptedException {
+        if (!fired && Thread.currentThread() instanceof ForkJoinWorkerThread) {
+            // let the pool run other tasks in a spare thread while this one waits
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    synchronized (mutex) {
+                        if (!fired)
+                            mutex.wait(milliseconds);
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return fired;
+                }
+            });
+            if (!fired)
+                throw new TimeoutException();
+            return result;
+        }
         synchronized (mutex) {
             if (!fired) {
                 mutex.wait(milliseconds);
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.db;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class DbPoolTest {
+
+    private static final String CONNECTION_STRING = "jdbc:sqlite:";
+
+    @Test
+    public void sameConnectionUntilAllClosed() throws Exception {
+        try (DbPool pool = new DbPool(CONNECTION_STRING, new Properties(), 4)) {
+            PooledDb outer = pool.db();
+            try (PooledDb inner = pool.db()) {
+                assertSame(outer, inner);
+            }
+            // still held by the outer call
+            assertEquals(1, pool.getActiveCount());
+            assertEquals(0, pool.getIdleCount());
+            outer.close();
+            assertEquals(0, pool.getActiveCount());
+            assertEquals(1, pool.getIdleCount());
+
+            // idle connection is reused
+            try (PooledDb db = pool.db()) {
+                assertSame(outer, db);
+            }
+            assertEquals(1, pool.getStats().getIntOrThrow("created"));
+        }
+    }
+
+    @Test
+    public void acquireTimeout() throws Exception {
+        try (DbPool pool = new DbPool(CONNECTION_STRING, new Properties(), 1)) {
+            pool.setAcquireTimeout(Duration.ofMillis(50));
+            CountDownLatch borrowed = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(1);
+            Thread holder = new Thread(() -> {
+                try (PooledDb db = pool.db()) {
+                    borrowed.countDown();
+                    done.await();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            holder.start();
+            borrowed.await();
+            try {
+                pool.db();
+                fail("should time out");
+            } catch (SQLException e) {
+                // expected
+            }
+            assertEquals(1, pool.getTimeoutsCount());
+            done.countDown();
+            holder.join();
+            // connection is free again
+            try (PooledDb db = pool.db()) {
+                assertFalse(db.isClosed());
+            }
+        }
+    }
+
+    @Test
+    public void evictIdle() throws Exception {
+        try (DbPool pool = new DbPool(CONNECTION_STRING, new Properties(), 4)) {
+            CountDownLatch borrowed = new CountDownLatch(3);
+            CountDownLatch done = new CountDownLatch(1);
+            Thread[] threads = new Thread[3];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(() -> {
+                    try (PooledDb db = pool.db()) {
+                        borrowed.countDown();
+                        done.await();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                });
+                threads[i].start();
+            }
+            borrowed.await();
+            assertEquals(3, pool.getActiveCount());
+            done.countDown();
+            for (Thread t : threads)
+                t.join();
+            assertEquals(3, pool.getIdleCount());
+
+            // background evictor may run too, but its result is the same
+            pool.setMinIdle(1);
+            pool.setIdleTimeout(Duration.ZERO);
+            Thread.sleep(2);
+            pool.evictIdle();
+            assertEquals(1, pool.getIdleCount());
+            assertEquals(2, pool.getStats().getIntOrThrow("evicted"));
+
+            pool.setMinIdle(2);
+            pool.evictIdle();
+            assertEquals(2, pool.getIdleCount());
+        }
+    }
+}
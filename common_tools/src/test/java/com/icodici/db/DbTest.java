@@ -10,8 +10,10 @@ package com.icodici.db;
 import org.junit.Test;
 import org.sqlite.SQLiteConfig;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNull;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import static org.junit.Assert.*;
 
 public class DbTest {
 
@@ -49,4 +51,53 @@ public class DbTest {
         assertEquals("fubar", t.getStringParam("test2", "nope"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void cachedStatements() throws Exception {
+        Db t = new Db("jdbc:sqlite:", null, "/com/icodici/db/migrate_");
+        t.setIntParam("a", 1);
+        t.setIntParam("b", 2);
+        assertEquals(2, (int) t.getIntParam("b"));
+        long misses = t.getStatementsCacheMisses();
+        long hits = t.getStatementsCacheHits();
+        for (int i = 0; i < 10; i++)
+            assertEquals(1, (int) t.getIntParam("a"));
+        assertEquals(misses, t.getStatementsCacheMisses());
+        assertEquals(hits + 10, t.getStatementsCacheHits());
+
+        // statement with live result set is not reused
+        try (ResultSet rs = t.queryRow("SELECT ivalue FROM vars WHERE name=?", "a")) {
+            assertEquals(2, (int) t.getIntParam("b"));
+            assertEquals(1, rs.getInt(1));
+        }
+        assertEquals(misses + 1, t.getStatementsCacheMisses());
+
+        // closed statement is reused with cleared parameters
+        PreparedStatement s1 = t.statement("SELECT count(*) FROM vars WHERE name=?", "a");
+        s1.close();
+        assertTrue(s1.isClosed());
+        PreparedStatement s2 = t.statement("SELECT count(*) FROM vars WHERE name=?", "b");
+        try (ResultSet rs = s2.executeQuery()) {
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+        }
+        s2.close();
+        assertEquals(misses + 2, t.getStatementsCacheMisses());
+        t.close();
+    }
+
+    @Test
+    public void statementsCacheIsBounded() throws Exception {
+        Db t = new Db("jdbc:sqlite:", null, "/com/icodici/db/migrate_");
+        t.setStatementsCacheSize(2);
+        for (int i = 0; i < 5; i++)
+            assertEquals(i, (int) t.queryOne("SELECT " + i));
+        long misses = t.getStatementsCacheMisses();
+        // the last two are cached, the first one was evicted
+        assertEquals(4, (int) t.queryOne("SELECT 4"));
+        assertEquals(3, (int) t.queryOne("SELECT 3"));
+        assertEquals(misses, t.getStatementsCacheMisses());
+        assertEquals(0, (int) t.queryOne("SELECT 0"));
+        assertEquals(misses + 1, t.getStatementsCacheMisses());
+        t.close();
+    }
+}
@@ -13,8 +13,17 @@ import org.spongycastle.crypto.CipherParameters;
 import org.spongycastle.crypto.engines.AESFastEngine;
 import org.spongycastle.crypto.params.KeyParameter;
 
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+
 /**
  * AES256 block cipher implementation.
+ * <p>
+ * Bulk {@link #transformBlocks(byte[], int, int, byte[], int)} uses JCE AES, which the JVM runs with AES-NI where
+ * the CPU has it, with a separate JCE cipher per thread, so it needs no locking. If JCE can't provide AES256, it falls
+ * back to the built-in engine.
  */
 public class AES256 implements BlockCipher {
 
@@ -23,6 +32,10 @@ public class AES256 implements BlockCipher {
     @Nullable
     private byte[] key;
 
+    private Direction direction;
+    // null value means JCE can't do AES256 here
+    private ThreadLocal<Cipher> jceCipher;
+
     /**
      * Constructor.
      */
@@ -56,9 +69,22 @@ public class AES256 implements BlockCipher {
     @Override
     public void initialize(Direction direction, SymmetricKey key) {
         this.key = key.getKey();
+        this.direction = direction;
         if (initialized()) {
             CipherParameters params = new KeyParameter(this.key);
             aesEngine.init(direction == Direction.ENCRYPT, params);
+            jceCipher = ThreadLocal.withInitial(this::createJceCipher);
+        }
+    }
+
+    private Cipher createJceCipher() {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/ECB/NoPadding");
+            cipher.init(direction == Direction.ENCRYPT ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE,
+                    new SecretKeySpec(key, "AES"));
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            return null;
         }
     }
 
@@ -86,4 +112,24 @@ public class AES256 implements BlockCipher {
             return buf;
         }
     }
+
+    @Override
+    public void transformBlocks(byte[] in, int inOffset, int count, byte[] out, int outOffset)
+            throws EncryptionError {
+        if (!initialized())
+            throw new EncryptionError("Not initialized with proper key");
+        Cipher cipher = jceCipher.get();
+        if (cipher != null) {
+            try {
+                cipher.update(in, inOffset, count * getBlockSize(), out, outOffset);
+            } catch (ShortBufferException e) {
+                throw new EncryptionError("output is too short for " + count + " blocks", e);
+            }
+            return;
+        }
+        synchronized (this) {
+            for (int i = 0; i < count; i++)
+                aesEngine.processBlock(in, inOffset + i * getBlockSize(), out, outOffset + i * getBlockSize());
+        }
+    }
 }
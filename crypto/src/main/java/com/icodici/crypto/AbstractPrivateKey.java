@@ -118,11 +118,7 @@ public abstract class AbstractPrivateKey extends AbstractAsymmetricKey implement
      * @return digital signature
      */
     public byte[] sign(byte[] data, HashType hashType) {
-        try {
-            return sign(new ByteArrayInputStream((data)), hashType);
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to sign", e);
-        }
+        return sign(data, hashType, null);
     }
 
     /**
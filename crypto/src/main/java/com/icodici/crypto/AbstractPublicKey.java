@@ -12,6 +12,7 @@ import net.sergeych.tools.Hashable;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Generic public key interface.
@@ -124,11 +125,34 @@ public abstract class AbstractPublicKey extends AbstractAsymmetricKey implements
      * @return true if the signature is correct.
      */
     public boolean checkSignature(byte[] input, byte[] signature, HashType hashType) {
-        try {
-            return checkSignature(new ByteArrayInputStream(input), signature, hashType, MAX_SALT_LENGTH);
-        } catch (IOException e) {
-            return false;
-        }
+        return checkSignature(input, signature, hashType, MAX_SALT_LENGTH);
+    }
+
+    /**
+     * Check the signature of remaining bytes of the buffer, advancing its position to the limit.
+     *
+     * @param input     to check the signature against.
+     * @param signature signature to check
+     * @param hashType  type of the hash function used to create the signature
+     * @return true if the signature is correct.
+     */
+    public boolean checkSignature(ByteBuffer input, byte[] signature, HashType hashType) {
+        return checkSignature(input, signature, hashType, MAX_SALT_LENGTH);
+    }
+
+    /**
+     * Check the signature of remaining bytes of the buffer, advancing its position to the limit. Implementations
+     * should override it to hash the buffer without copying.
+     *
+     * @param input     to check the signature against.
+     * @param signature signature to check
+     * @param hashType  type of the hash function used to create the signature
+     * @return true if the signature is correct.
+     */
+    public boolean checkSignature(ByteBuffer input, byte[] signature, HashType hashType, int saltLength) {
+        byte[] data = new byte[input.remaining()];
+        input.get(data);
+        return checkSignature(data, signature, hashType, saltLength);
     }
 
     /**
@@ -47,4 +47,31 @@ public interface BlockCipher {
      *         if key or block has wrong size
      */
     byte[] transformBlock(byte[] block) throws EncryptionError;
+
+    /**
+     * Encrypt/decrypt consecutive blocks at once. This implementation transforms them one by one with {@link
+     * #transformBlock(byte[])} holding the lock on the cipher, implementations should override it to process blocks
+     * in bulk and without locking where possible.
+     *
+     * @param in        source blocks
+     * @param inOffset  of the first source block
+     * @param count     number of blocks
+     * @param out       to put transformed blocks to, could be the same as source
+     * @param outOffset of the first transformed block
+     *
+     * @throws EncryptionError if the cipher is not initialized
+     */
+    default void transformBlocks(byte[] in, int inOffset, int count, byte[] out, int outOffset)
+            throws EncryptionError {
+        int size = getBlockSize();
+        byte[] block = new byte[size];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(in, inOffset + i * size, block, 0, size);
+            byte[] result;
+            synchronized (this) {
+                result = transformBlock(block);
+            }
+            System.arraycopy(result, 0, out, outOffset + i * size, size);
+        }
+    }
 }
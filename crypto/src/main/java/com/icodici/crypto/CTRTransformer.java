@@ -7,23 +7,35 @@
 
 package com.icodici.crypto;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 
 /**
  * Basic counter mode (CTR) transformer to use in cryptostreams or separately.
+ * <p>
+ * Keystream is generated with {@link BlockCipher#transformBlocks(byte[], int, int, byte[], int)} by up to {@link
+ * #MAX_BLOCKS} blocks at once into preallocated buffers, so bulk {@link #transform(byte[], int, int, byte[], int)}
+ * allocates nothing per call.
  *
  * Created by sergeych on 14.12.16.
  */
 class CTRTransformer {
+    /**
+     * Max number of keystream blocks generated at once.
+     */
+    static public final int MAX_BLOCKS = 64;
+
     static private final SecureRandom rng;
     private final BlockCipher cipher;
     private final byte[] nonce;
     private int counter;
-    private int index = 0;
     private final int blockSize;
-    private byte[] source;
-    private final byte[] counterBytes;
+    private final byte[] counterBlocks;
+    private final byte[] keystream;
+    private int index = 0;
+    private int available = 0;
 
     static public byte[] randomBytes(int length) {
         byte[] bytes = new byte[length];
@@ -68,42 +80,94 @@ class CTRTransformer {
         nonce = iv == null ? randomBytes(blockSize) : iv;
 
         counter = 0;
-        source = new byte[blockSize];
-        counterBytes = new byte[4];
-
-        prepareBlock();
+        counterBlocks = new byte[blockSize * MAX_BLOCKS];
+        keystream = new byte[blockSize * MAX_BLOCKS];
     }
 
-    private void prepareBlock() throws EncryptionError {
-        System.arraycopy(nonce, 0, source, 0, blockSize);
-        counterBytes[0] = (byte) (counter >> 24);
-        counterBytes[1] = (byte) (counter >> 16);
-        counterBytes[2] = (byte) (counter >> 8);
-        counterBytes[3] = (byte) counter;
-        applyXor(source, blockSize - 4, counterBytes);
-        synchronized (cipher) {
-            source = cipher.transformBlock(source);
+    private void generate(int blocks) throws EncryptionError {
+        for (int offset = 0; offset < blocks * blockSize; offset += blockSize) {
+            System.arraycopy(nonce, 0, counterBlocks, offset, blockSize);
+            int end = offset + blockSize;
+            counterBlocks[end - 4] ^= (byte) (counter >> 24);
+            counterBlocks[end - 3] ^= (byte) (counter >> 16);
+            counterBlocks[end - 2] ^= (byte) (counter >> 8);
+            counterBlocks[end - 1] ^= (byte) counter;
+            counter++;
         }
-        counter++;
+        cipher.transformBlocks(counterBlocks, 0, blocks, keystream, 0);
         index = 0;
+        available = blocks * blockSize;
+    }
+
+    // blocks to generate for the given number of bytes
+    private int blocksFor(int length) {
+        return Math.min(MAX_BLOCKS, (length + blockSize - 1) / blockSize);
     }
 
     private byte nextByte() throws EncryptionError {
-        if (index >= blockSize)
-            prepareBlock();
-        return source[index++];
+        if (index >= available)
+            generate(1);
+        return keystream[index++];
     }
 
+    /**
+     * Transform data block, continuing the keystream of previous transformations.
+     *
+     * @param in        source data
+     * @param offset    of the source data
+     * @param length    of the source data
+     * @param out       to put transformed data to, could be the same as source to transform it in place
+     * @param outOffset to put transformed data at
+     *
+     * @throws EncryptionError
+     */
+    public void transform(byte[] in, int offset, int length, byte[] out, int outOffset) throws EncryptionError {
+        if (offset < 0 || length < 0 || outOffset < 0 || offset + length > in.length || outOffset + length > out.length)
+            throw new IndexOutOfBoundsException();
+        while (length > 0) {
+            if (index >= available)
+                generate(blocksFor(length));
+            int n = Math.min(length, available - index);
+            for (int i = 0; i < n; i++)
+                out[outOffset + i] = (byte) (in[offset + i] ^ keystream[index + i]);
+            index += n;
+            offset += n;
+            outOffset += n;
+            length -= n;
+        }
+    }
 
-//    /**
-//     * Transforms in place data block
-//     * @param source
-//     * @throws EncryptionError
-//     */
-//    public void transform(byte[] source, int offset, int length) throws EncryptionError {
-//        for (int i = 0; i < source.length; i++)
-//            source[i] ^= nextByte();
-//    }
+    /**
+     * Transform remaining bytes of the source buffer, continuing the keystream of previous transformations. Buffers
+     * positions are advanced as with {@link ByteBuffer#put(ByteBuffer)}.
+     *
+     * @param in  source data
+     * @param out to put transformed data to, could be the same as source to transform it in place
+     *
+     * @throws EncryptionError
+     * @throws BufferOverflowException if there is not enough space in the output buffer
+     */
+    public void transform(ByteBuffer in, ByteBuffer out) throws EncryptionError {
+        int length = in.remaining();
+        if (in == out)
+            in = in.duplicate();
+        if (out.remaining() < length)
+            throw new BufferOverflowException();
+        if (in.hasArray() && out.hasArray()) {
+            transform(in.array(), in.arrayOffset() + in.position(), length,
+                    out.array(), out.arrayOffset() + out.position());
+            in.position(in.position() + length);
+            out.position(out.position() + length);
+            return;
+        }
+        while (in.hasRemaining()) {
+            if (index >= available)
+                generate(blocksFor(in.remaining()));
+            int n = Math.min(in.remaining(), available - index);
+            for (int i = 0; i < n; i++)
+                out.put((byte) (in.get() ^ keystream[index++]));
+        }
+    }
 
     /**
      * Transform next byte
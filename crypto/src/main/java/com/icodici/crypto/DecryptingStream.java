@@ -47,6 +47,18 @@ public class DecryptingStream extends InputStream {
         }
     }
 
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        try {
+            int n = inputStream.read(b, off, len);
+            if (n > 0)
+                transformer.transform(b, off, n, b, off);
+            return n;
+        } catch (EncryptionError encryptionError) {
+            throw new IOException("decryption failed", encryptionError);
+        }
+    }
+
     static public byte[] decrypt(Class<? extends BlockCipher> cipherClass, byte[] key, byte[]
             encryptedData) throws EncryptionError {
         ByteArrayInputStream bis = new ByteArrayInputStream(encryptedData);
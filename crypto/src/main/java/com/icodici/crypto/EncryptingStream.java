@@ -20,6 +20,9 @@ import java.io.OutputStream;
 public class EncryptingStream extends OutputStream {
     private final CTRTransformer transformer;
     private final OutputStream outputStream;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    static final int BUFFER_SIZE = 4096;
 
     public EncryptingStream(Class<? extends BlockCipher> cipherClass, byte[] key, OutputStream
             outputStream) throws EncryptionError, IOException {
@@ -42,6 +45,23 @@ public class EncryptingStream extends OutputStream {
         }
     }
 
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        try {
+            while (len > 0) {
+                int n = Math.min(len, buffer.length);
+                transformer.transform(b, off, n, buffer, 0);
+                outputStream.write(buffer, 0, n);
+                off += n;
+                len -= n;
+            }
+        } catch (EncryptionError encryptionError) {
+            throw new RuntimeException("can't encrypt data", encryptionError);
+        }
+    }
+
     static byte[] encrypt(Class<? extends BlockCipher> cipherClass, byte[] key, byte[] source)
             throws EncryptionError {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -102,6 +102,11 @@ public class PrivateKey extends AbstractKey {
         return privateKey.sign(input, hashType);
     }
 
+    @Override
+    public byte[] sign(byte[] input, HashType hashType) throws EncryptionError {
+        return privateKey.sign(input, hashType);
+    }
+
     @Override
     public KeyInfo info() {
         if (keyInfo == null) {
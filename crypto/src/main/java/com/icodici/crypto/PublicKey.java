@@ -22,6 +22,7 @@ import net.sergeych.utils.Ut;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -118,6 +119,24 @@ public class PublicKey extends AbstractKey {
         return publicKey.checkSignature(source, signature, hashType);
     }
 
+    @Override
+    public boolean verify(byte[] input, byte[] signature, HashType hashType) {
+        return publicKey.checkSignature(input, signature, hashType);
+    }
+
+    /**
+     * Check the signature of remaining bytes of the buffer, advancing its position to the limit.
+     *
+     * @param input     to check the signature against
+     * @param signature to check
+     * @param hashType  used to create the signature
+     *
+     * @return true if the signature is correct
+     */
+    public boolean verify(ByteBuffer input, byte[] signature, HashType hashType) {
+        return publicKey.checkSignature(input, signature, hashType);
+    }
+
     /**
      * Keys equality check. Only public keys are equal to each other. Right now private keys can't be equal to the
      * public even if the latter is its part.
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.crypto;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Verifies many RSA signatures at once, spreading them over the threads of a {@link ForkJoinPool}.
+ * <p>
+ * Add (key, data, signature, hash type) entries with {@link #add(PublicKey, byte[], byte[], HashType)}, then call
+ * {@link #verify()} to get results in the order of adding. Entries are grouped by equal keys before being split
+ * between threads, and all entries of a group are checked with the first added instance of the key, as keys are
+ * usually unpacked anew for every signature. So each thread mostly checks signatures of the same key and reuses its
+ * per-thread verifier contexts, that are kept by the key material, instead of switching between keys. Broken
+ * signatures and exceptions thrown while checking them make only their entries fail.
+ * <p>
+ * The verifier is not thread safe, it is expected to be filled and verified by one thread.
+ */
+public class SignatureBatchVerifier {
+
+    /**
+     * Entries are not split further when there are no more of them, as one check costs much more than a task.
+     */
+    static private final int MIN_TASK_SIZE = 4;
+
+    private static class Entry {
+        private PublicKey key;
+        private final byte[] data;
+        private final byte[] signature;
+        private final HashType hashType;
+
+        private Entry(PublicKey key, byte[] data, byte[] signature, HashType hashType) {
+            this.key = key;
+            this.data = data;
+            this.signature = signature;
+            this.hashType = hashType;
+        }
+
+        private boolean verify() {
+            try {
+                return key.verify(data, signature, hashType);
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Create verifier that uses {@link ForkJoinPool#commonPool()}.
+     */
+    public SignatureBatchVerifier() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create verifier.
+     *
+     * @param pool to verify signatures in, null to verify them in the calling thread
+     */
+    public SignatureBatchVerifier(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Add signature to verify.
+     *
+     * @param key       to verify with
+     * @param data      is signed data
+     * @param signature to verify
+     * @param hashType  the data was signed with
+     *
+     * @return index of the entry in the results of {@link #verify()}
+     */
+    public int add(PublicKey key, byte[] data, byte[] signature, HashType hashType) {
+        entries.add(new Entry(key, data, signature, hashType));
+        return entries.size() - 1;
+    }
+
+    /**
+     * @return number of added entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Verify all added signatures, waiting for them to be checked.
+     *
+     * @return true for each valid signature and false for each invalid one, in the order of adding
+     */
+    public boolean[] verify() {
+        boolean[] results = new boolean[entries.size()];
+        int[] order = groupByKey();
+        if (pool == null || entries.size() <= MIN_TASK_SIZE) {
+            for (int i : order)
+                results[i] = entries.get(i).verify();
+        } else
+            pool.invoke(new VerifyAction(order, 0, order.length, results));
+        return results;
+    }
+
+    /**
+     * Make entries of equal keys use the same key instance.
+     *
+     * @return indexes of entries, with ones of the same key placed together
+     */
+    private int[] groupByKey() {
+        Map<PublicKey, List<Integer>> byKey = new LinkedHashMap<>();
+        Map<PublicKey, PublicKey> canonicalKeys = new HashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            Entry e = entries.get(i);
+            e.key = canonicalKeys.computeIfAbsent(e.key, k -> k);
+            byKey.computeIfAbsent(e.key, k -> new ArrayList<>()).add(i);
+        }
+        int[] order = new int[entries.size()];
+        int n = 0;
+        for (List<Integer> indexes : byKey.values()) {
+            for (int i : indexes)
+                order[n++] = i;
+        }
+        return order;
+    }
+
+    private class VerifyAction extends RecursiveAction {
+        private final int[] order;
+        private final int from;
+        private final int to;
+        private final boolean[] results;
+
+        private VerifyAction(int[] order, int from, int to, boolean[] results) {
+            this.order = order;
+            this.from = from;
+            this.to = to;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_TASK_SIZE) {
+                for (int n = from; n < to; n++)
+                    results[order[n]] = entries.get(order[n]).verify();
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new VerifyAction(order, from, middle, results),
+                        new VerifyAction(order, middle, to, results));
+            }
+        }
+    }
+}
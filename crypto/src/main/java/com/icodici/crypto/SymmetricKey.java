@@ -8,7 +8,6 @@
 package com.icodici.crypto;
 
 import com.icodici.crypto.digest.HMAC;
-import net.sergeych.tools.ByteRingBuffer;
 import net.sergeych.tools.Do;
 import net.sergeych.tools.Hashable;
 
@@ -57,8 +56,12 @@ public class SymmetricKey extends AbstractKey implements Serializable, Hashable
     public class EtaDecryptingStream extends InputStream {
         private final InputStream inputStream;
         private final CTRTransformer transformer;
-        private final ByteRingBuffer ring;
         private final HMAC hmac;
+        // last bytes read, which could be the HMAC record, and a spare buffer to swap with
+        private byte[] tail;
+        private byte[] spare;
+        private int tailLength = 0;
+        private final byte[] single = new byte[1];
         private boolean readingFinished = false;
 
         EtaDecryptingStream(InputStream inputStream) throws IOException, EncryptionError {
@@ -69,10 +72,15 @@ public class SymmetricKey extends AbstractKey implements Serializable, Hashable
 
             hmac = new HMAC(key);
 
-            // We should have always block bytes in the buffer to finish:
-            ring = new ByteRingBuffer(hmac.getLength() + 8);
-            for (int i = 0; i < hmac.getLength(); i++)
-                ring.put(inputStream.read());
+            // We should have always HMAC bytes in the buffer to finish:
+            tail = new byte[hmac.getLength()];
+            spare = new byte[hmac.getLength()];
+            while (tailLength < tail.length) {
+                int n = inputStream.read(tail, tailLength, tail.length - tailLength);
+                if (n < 0)
+                    break;
+                tailLength += n;
+            }
         }
 
         @Override
@@ -85,56 +93,46 @@ public class SymmetricKey extends AbstractKey implements Serializable, Hashable
                 return 0;
             }
             // here we protect with double end read: we wan't do this, because we call end() when read last byte
-            if(!readingFinished) {
-//                int c = read();
-//                if (c == -1) {
-//                    return -1;
-//                }
-//                b[off] = (byte) c;
-
-                int c;
-                int i = 0;
-                // and here we need to throw custom exceptions
-//            try {
-                for (; i < len; i++) {
-                    c = read();
-                    if (c == -1) {
-                        break;
-                    }
-                    b[off + i] = (byte) c;
-                }
-//            } catch (IOException ee) {
-//            }
-                return i;
-            }
-            // and here we return -1 code as expected by callers if read has ends
-            return -1;
-        }
-
-        @Override
-        public int read() throws IOException {
-            int nextByte = inputStream.read();
-            if (nextByte < 0) {
+            if (readingFinished)
+                return -1;
+            int n = tailLength < tail.length ? -1 : inputStream.read(b, off, len);
+            if (n < 0) {
                 readingFinished = true;
                 end();
                 return -1;
+            }
+            // data are the tail and the bytes read but the last tail length of them, that become the new tail
+            if (n >= tail.length) {
+                System.arraycopy(b, off + n - tail.length, spare, 0, tail.length);
+                System.arraycopy(b, off, b, off + tail.length, n - tail.length);
+                System.arraycopy(tail, 0, b, off, tail.length);
+                byte[] t = tail;
+                tail = spare;
+                spare = t;
             } else {
-                ring.put(nextByte);
-                try {
-                    int encrypted = ring.get();
-                    hmac.update(encrypted);
-                    return transformer.transformByte(encrypted);
-                } catch (EncryptionError encryptionError) {
-                    throw new IOException("failed to decrypt", encryptionError);
-                }
+                System.arraycopy(tail, 0, spare, 0, n);
+                System.arraycopy(tail, n, tail, 0, tail.length - n);
+                System.arraycopy(b, off, tail, tail.length - n, n);
+                System.arraycopy(spare, 0, b, off, n);
             }
+            try {
+                hmac.update(b, off, n);
+                transformer.transform(b, off, n, b, off);
+            } catch (EncryptionError encryptionError) {
+                throw new IOException("failed to decrypt", encryptionError);
+            }
+            return n;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
         }
 
         private void end() throws IOException {
-            byte[] readHmac = ring.readAll();
-            if (readHmac.length != hmac.getLength())
-                throw new IOException("stream corrupted: bad hmac record size:" + readHmac.length);
-            if (!Arrays.equals(readHmac, hmac.digest())) {
+            if (tailLength != hmac.getLength())
+                throw new IOException("stream corrupted: bad hmac record size:" + tailLength);
+            if (!Arrays.equals(tail, hmac.digest())) {
                 throw new AuthenticationFailed("HMAC authentication failed, data corrupted");
             }
         }
@@ -151,6 +149,7 @@ public class SymmetricKey extends AbstractKey implements Serializable, Hashable
         private boolean done = false;
         private OutputStream outputStream;
         private CTRTransformer transformer;
+        private final byte[] buffer = new byte[EncryptingStream.BUFFER_SIZE];
 
         EtaEncryptingStream(OutputStream outputStream) throws IOException, EncryptionError {
             this(outputStream, true);
@@ -207,6 +206,29 @@ public class SymmetricKey extends AbstractKey implements Serializable, Hashable
                 throw new IOException("failed to encrypt", encryptionError);
             }
         }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (done)
+                throw new EOFException("can't write past the end()");
+            if (off < 0 || len < 0 || len > b.length - off)
+                throw new IndexOutOfBoundsException();
+            try {
+                while (len > 0) {
+                    int n = Math.min(len, buffer.length);
+                    if (transformer == null)
+                        System.arraycopy(b, off, buffer, 0, n);
+                    else
+                        transformer.transform(b, off, n, buffer, 0);
+                    hmac.update(buffer, 0, n);
+                    outputStream.write(buffer, 0, n);
+                    off += n;
+                    len -= n;
+                }
+            } catch (EncryptionError encryptionError) {
+                throw new IOException("failed to encrypt", encryptionError);
+            }
+        }
     }
 
     private byte[] key;
@@ -338,15 +360,15 @@ public class SymmetricKey extends AbstractKey implements Serializable, Hashable
      * @throws EncryptionError
      */
     public byte[] etaEncrypt(byte[] data) throws EncryptionError {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        try {
-            final EtaEncryptingStream s = etaEncryptStream(bos);
-            s.write(data);
-            s.end();
-            return bos.toByteArray();
-        } catch (IOException e) {
-            throw new RuntimeException("unexpected IOError", e);
-        }
+        CTRTransformer transformer = new CTRTransformer(getCipher(), null);
+        HMAC hmac = new HMAC(key);
+        byte[] iv = transformer.getIV();
+        byte[] result = new byte[iv.length + data.length + hmac.getLength()];
+        System.arraycopy(iv, 0, result, 0, iv.length);
+        transformer.transform(data, 0, data.length, result, iv.length);
+        hmac.update(result, iv.length, data.length);
+        System.arraycopy(hmac.digest(), 0, result, iv.length + data.length, hmac.getLength());
+        return result;
     }
 
     /**
@@ -385,13 +407,18 @@ public class SymmetricKey extends AbstractKey implements Serializable, Hashable
      *         if the authentication record does not match the data.
      */
     public byte[] etaDecrypt(byte[] data) throws EncryptionError, AuthenticationFailed {
-        try {
-            return Do.read(etaDecryptStream(new ByteArrayInputStream(data)));
-        } catch (AuthenticationFailed e) {
-            throw e;
-        } catch (IOException e) {
-            throw new RuntimeException("unexpected IOError", e);
-        }
+        int ivLength = getCipher().getBlockSize();
+        HMAC hmac = new HMAC(key);
+        int length = data.length - ivLength - hmac.getLength();
+        if (length < 0)
+            throw new AuthenticationFailed("data corrupted: too short for HMAC record");
+        hmac.update(data, ivLength, length);
+        if (!Arrays.equals(Arrays.copyOfRange(data, ivLength + length, data.length), hmac.digest()))
+            throw new AuthenticationFailed("HMAC authentication failed, data corrupted");
+        CTRTransformer transformer = new CTRTransformer(getCipher(), Arrays.copyOfRange(data, 0, ivLength));
+        byte[] result = new byte[length];
+        transformer.transform(data, ivLength, length, result, 0);
+        return result;
     }
 
     public static byte[] xor(byte[] src, int value) {
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.crypto.digest;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calculates several digests of the same data in one pass.
+ * <p>
+ * Data are fed to all the digests slice by slice, so each slice is read from memory once and is still in the CPU cache
+ * when the next digest gets it, instead of running over the whole data once per digest. Large updates, of at least
+ * {@link #PARALLEL_THRESHOLD} bytes, are processed by each digest in its own task of the {@link
+ * ForkJoinPool#commonPool()} if it has more than one thread, so the time is that of the slowest digest.
+ * <p>
+ * Digests are taken with {@link #digest(int)} or {@link #digests()} and, as with {@link Digest}, no updates are
+ * allowed after it.
+ */
+public class MultiDigest {
+
+    /**
+     * Size of the slice fed to each digest in turn, small enough to stay in L1/L2 cache.
+     */
+    static private final int SLICE_SIZE = 16 * 1024;
+
+    /**
+     * Updates of this size and more are processed by the digests in parallel.
+     */
+    static public final int PARALLEL_THRESHOLD = 1024 * 1024;
+
+    private final Digest[] digests;
+
+    /**
+     * Create multi-digest of the given fresh digests.
+     *
+     * @param digests to calculate
+     */
+    public MultiDigest(Digest... digests) {
+        this.digests = digests;
+    }
+
+    /**
+     * Feed data to all the digests.
+     *
+     * @param data   source message
+     * @param offset index to start processing from
+     * @param length number of bytes to process
+     *
+     * @return self
+     */
+    public MultiDigest update(byte[] data, int offset, int length) {
+        if (length >= PARALLEL_THRESHOLD && digests.length > 1 && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            RecursiveAction[] tasks = new RecursiveAction[digests.length];
+            for (int i = 0; i < digests.length; i++) {
+                Digest d = digests[i];
+                tasks[i] = new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        d.update(data, offset, length);
+                    }
+                };
+            }
+            if (ForkJoinTask.inForkJoinPool())
+                ForkJoinTask.invokeAll(tasks);
+            else
+                ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        invokeAll(tasks);
+                    }
+                });
+            return this;
+        }
+        int end = offset + length;
+        for (int from = offset; from < end; from += SLICE_SIZE) {
+            int n = Math.min(SLICE_SIZE, end - from);
+            for (Digest d : digests)
+                d.update(data, from, n);
+        }
+        return this;
+    }
+
+    /**
+     * Feed data to all the digests.
+     *
+     * @param data source message
+     *
+     * @return self
+     */
+    public MultiDigest update(byte[] data) {
+        return update(data, 0, data.length);
+    }
+
+    /**
+     * @param index of the digest as passed to the constructor
+     *
+     * @return digest of all processed data
+     */
+    public byte[] digest(int index) {
+        return digests[index].digest();
+    }
+
+    /**
+     * @return digests of all processed data, in the order passed to the constructor
+     */
+    public byte[][] digests() {
+        byte[][] result = new byte[digests.length][];
+        for (int i = 0; i < digests.length; i++)
+            result[i] = digests[i].digest();
+        return result;
+    }
+}
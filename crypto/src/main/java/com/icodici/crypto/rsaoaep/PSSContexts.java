@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.crypto.rsaoaep;
+
+import com.icodici.crypto.HashType;
+import org.spongycastle.crypto.CipherParameters;
+import org.spongycastle.crypto.params.RSAKeyParameters;
+import org.spongycastle.crypto.signers.PSSSigner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * RSA-PSS signers or verifiers of a key, initialized once per thread, key and hash type and then reused.
+ * <p>
+ * Creating a {@link PSSSigner} costs new digests, made by reflection, and a new RSA engine, which for the native one
+ * means converting the key to GMP numbers again. A context keeps all of this, so a signature costs only hashing and
+ * the RSA operation itself. Contexts are found by the key material rather than by the key instance, as keys are
+ * usually unpacked anew for every signature to check, and are confined to their thread, so they need no locking.
+ * Each thread keeps contexts of up to {@link #MAX_KEYS_PER_THREAD} most recently used keys.
+ */
+class PSSContexts {
+
+    static private final int BUFFER_SIZE = 8192;
+
+    static final int MAX_KEYS_PER_THREAD = 64;
+
+    static private final Map<HashType, Integer> digestSizes = new EnumMap<>(HashType.class);
+
+    static {
+        for (HashType type : HashType.values())
+            digestSizes.put(type, type.makeDigest().getDigestSize());
+    }
+
+    static private final ThreadLocal<Map<PSSContexts, Map<HashType, Context>>> contexts =
+            ThreadLocal.withInitial(() -> new LinkedHashMap<PSSContexts, Map<HashType, Context>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<PSSContexts, Map<HashType, Context>> eldest) {
+                    return size() > MAX_KEYS_PER_THREAD;
+                }
+            });
+
+    /**
+     * @return size of the digest of given type, without creating the digest
+     */
+    static int getDigestSize(HashType hashType) {
+        return digestSizes.get(hashType);
+    }
+
+    /**
+     * Signer or verifier with the buffer to read streams.
+     */
+    static class Context {
+        private final PSSSigner signer;
+        private final int saltLength;
+        // only streams and direct buffers need it
+        private byte[] buffer;
+
+        private Context(PSSSigner signer, int saltLength) {
+            this.signer = signer;
+            this.saltLength = saltLength;
+        }
+
+        PSSSigner getSigner() {
+            return signer;
+        }
+
+        private byte[] getBuffer() {
+            if (buffer == null)
+                buffer = new byte[BUFFER_SIZE];
+            return buffer;
+        }
+
+        /**
+         * Hash data available from the stream, reading it while {@link InputStream#available()} is positive.
+         */
+        void update(InputStream input) throws IOException {
+            byte[] buffer = getBuffer();
+            int available;
+            while ((available = input.available()) > 0) {
+                int n = input.read(buffer, 0, Math.min(available, buffer.length));
+                if (n <= 0)
+                    break;
+                signer.update(buffer, 0, n);
+            }
+        }
+
+        /**
+         * Hash remaining bytes of the buffer, advancing its position.
+         */
+        void update(ByteBuffer input) {
+            if (input.hasArray()) {
+                signer.update(input.array(), input.arrayOffset() + input.position(), input.remaining());
+                input.position(input.limit());
+                return;
+            }
+            byte[] buffer = getBuffer();
+            while (input.hasRemaining()) {
+                int n = Math.min(input.remaining(), buffer.length);
+                input.get(buffer, 0, n);
+                signer.update(buffer, 0, n);
+            }
+        }
+    }
+
+    private final boolean forSigning;
+    private final CipherParameters keyParameters;
+    private final BigInteger modulus;
+    private final BigInteger exponent;
+    private final HashType mgf1HashType;
+    private final int hashCode;
+
+    /**
+     * @param forSigning    true to sign with private key parameters, false to verify with public ones
+     * @param keyParameters to initialize signers with
+     * @param key           is the key of keyParameters, its modulus and exponent identify the contexts
+     * @param mgf1HashType  of the key
+     */
+    PSSContexts(boolean forSigning, CipherParameters keyParameters, RSAKeyParameters key, HashType mgf1HashType) {
+        this.forSigning = forSigning;
+        this.keyParameters = keyParameters;
+        this.modulus = key.getModulus();
+        this.exponent = key.getExponent();
+        this.mgf1HashType = mgf1HashType;
+        hashCode = Objects.hash(forSigning, modulus, exponent, mgf1HashType);
+    }
+
+    /**
+     * Get the context of current thread, reset to start a new signature.
+     *
+     * @param hashType   to hash data with
+     * @param saltLength of the signature
+     *
+     * @return context
+     */
+    Context get(HashType hashType, int saltLength) {
+        Map<HashType, Context> map = contexts.get().computeIfAbsent(this, k -> new EnumMap<>(HashType.class));
+        Context context = map.get(hashType);
+        if (context == null || context.saltLength != saltLength) {
+            PSSSigner signer = new PSSSigner(RSAEngineFactory.make(), hashType.makeDigest(),
+                    mgf1HashType.makeDigest(), saltLength);
+            signer.init(forSigning, keyParameters);
+            context = new Context(signer, saltLength);
+            map.put(hashType, context);
+        } else
+            // previous use could have failed in the middle
+            context.signer.reset();
+        return context;
+    }
+
+    /**
+     * @return number of keys with contexts in the current thread
+     */
+    static int getKeysCount() {
+        return contexts.get().size();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof PSSContexts))
+            return false;
+        PSSContexts other = (PSSContexts) obj;
+        return forSigning == other.forSigning && mgf1HashType == other.mgf1HashType &&
+                modulus.equals(other.modulus) && exponent.equals(other.exponent);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
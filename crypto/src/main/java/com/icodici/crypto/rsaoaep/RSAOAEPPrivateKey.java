@@ -64,6 +64,7 @@ public class RSAOAEPPrivateKey extends AbstractPrivateKey {
         final @NonNull HashType mgf1HashType;
         final @NonNull
         SecureRandom rng;
+        final @NonNull PSSContexts signers;
 
         State(AsymmetricBlockCipher decryptor,
               RSAPrivateCrtKeyParameters keyParameters, RSAOAEPPublicKey publicKey,
@@ -74,6 +75,7 @@ public class RSAOAEPPrivateKey extends AbstractPrivateKey {
             this.oaepHashType = oaepHashType;
             this.mgf1HashType = mgf1HashType;
             this.rng = rng;
+            signers = new PSSContexts(true, new ParametersWithRandom(keyParameters, rng), keyParameters, mgf1HashType);
         }
     }
 
@@ -255,47 +257,64 @@ public class RSAOAEPPrivateKey extends AbstractPrivateKey {
 
         if (state == null) {
             throw new IllegalStateException();
+        } else if (salt == null) {
+            // Use maximum possible salt, with the signer of this thread
+            final PSSContexts.Context context = getSigner(hashType);
+            context.update(input);
+            return generateSignature(context.getSigner());
         } else {
-            final Digest primaryDigest = hashType.makeDigest();
-
-            final PSSSigner signer;
-            if (salt == null) {
-                // Use maximum possible salt
-                signer = new PSSSigner(
-                        RSAEngineFactory.make(),
-                        primaryDigest, state.mgf1HashType.makeDigest(),
-                        getMaxSaltLength(getBitStrength(), primaryDigest.getDigestSize()));
-            } else {
-                // Use some specific salt
-                signer = new PSSSigner(
-                        RSAEngineFactory.make(),
-                        primaryDigest, state.mgf1HashType.makeDigest(),
-                        salt);
-            }
-
+            // Use some specific salt
+            final PSSSigner signer = new PSSSigner(
+                    RSAEngineFactory.make(),
+                    hashType.makeDigest(), state.mgf1HashType.makeDigest(),
+                    salt);
             signer.init(true, new ParametersWithRandom(state.keyParameters, state.rng));
 
-            boolean done = false;
-            while (!done) {
-                int availableBytes = input.available();
-                if (availableBytes <= 0) {
-                    done = true;
-                } else {
-                    byte[] buffer = new byte[availableBytes];
-                    int howManyBytesRead = input.read(buffer);
-                    if (howManyBytesRead <= 0) {
-                        done = true;
-                    } else {
-                        signer.update(buffer, 0, howManyBytesRead);
-                    }
+            final byte[] buffer = new byte[8192];
+            int availableBytes;
+            while ((availableBytes = input.available()) > 0) {
+                int howManyBytesRead = input.read(buffer, 0, Math.min(availableBytes, buffer.length));
+                if (howManyBytesRead <= 0) {
+                    break;
                 }
+                signer.update(buffer, 0, howManyBytesRead);
             }
+            return generateSignature(signer);
+        }
+    }
 
-            try {
-                return signer.generateSignature();
-            } catch (CryptoException e) {
-                throw new IOException(String.format("Cannot sign data: %s", e.toString()));
-            }
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Without the salt, hashes the array directly, without wrapping it to a stream.
+     */
+    @Override
+    public byte[] sign(byte[] data, HashType hashType, @Nullable byte[] salt) {
+        if (state == null || salt != null) {
+            return super.sign(data, hashType, salt);
+        }
+        final PSSSigner signer = getSigner(hashType).getSigner();
+        signer.update(data, 0, data.length);
+        try {
+            return generateSignature(signer);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to sign", e);
+        }
+    }
+
+    /**
+     * Get the signer of the current thread, with maximum possible salt, ready to sign new data.
+     */
+    private PSSContexts.Context getSigner(HashType hashType) {
+        return state.signers.get(hashType,
+                getMaxSaltLength(getBitStrength(), PSSContexts.getDigestSize(hashType)));
+    }
+
+    private static byte[] generateSignature(PSSSigner signer) throws IOException {
+        try {
+            return signer.generateSignature();
+        } catch (CryptoException e) {
+            throw new IOException(String.format("Cannot sign data: %s", e.toString()));
         }
     }
 
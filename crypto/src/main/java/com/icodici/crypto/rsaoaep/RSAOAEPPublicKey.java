@@ -15,7 +15,6 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import org.spongycastle.crypto.AsymmetricBlockCipher;
 import org.spongycastle.crypto.Digest;
 import org.spongycastle.crypto.InvalidCipherTextException;
-import org.spongycastle.crypto.Signer;
 import org.spongycastle.crypto.digests.SHA1Digest;
 import org.spongycastle.crypto.encodings.OAEPEncoding;
 import org.spongycastle.crypto.params.ParametersWithRandom;
@@ -25,6 +24,7 @@ import org.spongycastle.util.BigIntegers;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.SecureRandom;
 import java.util.Collections;
 import java.util.HashMap;
@@ -58,6 +58,7 @@ public class RSAOAEPPublicKey extends AbstractPublicKey {
         final @NonNull HashType oaepHashType;
         final @NonNull HashType mgf1HashType;
         final @NonNull SecureRandom rng;
+        final @NonNull PSSContexts verifiers;
 
         State(AsymmetricBlockCipher encryptor, RSAKeyParameters keyParameters,
               HashType oaepHashType, HashType mgf1HashType, SecureRandom rng) {
@@ -66,6 +67,8 @@ public class RSAOAEPPublicKey extends AbstractPublicKey {
             this.oaepHashType = oaepHashType;
             this.mgf1HashType = mgf1HashType;
             this.rng = rng;
+            verifiers = new PSSContexts(false, new ParametersWithRandom(keyParameters, rng), keyParameters,
+                    mgf1HashType);
         }
     }
 
@@ -181,42 +184,49 @@ public class RSAOAEPPublicKey extends AbstractPublicKey {
     public boolean checkSignature(InputStream input, byte[] signature, HashType hashType, int saltLength) throws
             IllegalStateException, IOException {
 
-        if (state == null) {
-            throw new IllegalStateException();
-        } else {
-            final Digest primaryDigest = hashType.makeDigest();
+        final PSSContexts.Context context = getVerifier(hashType, saltLength);
+        context.update(input);
+        return context.getSigner().verifySignature(signature);
+    }
 
-            if (saltLength == MAX_SALT_LENGTH) {
-                saltLength = getMaxSaltLength(getBitStrength(), primaryDigest.getDigestSize());
-            }
-            if (saltLength < 0) {
-                throw new RuntimeException(String.format("Incorrect salt length %s", saltLength));
-            }
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Hashes the array directly, without wrapping it to a stream.
+     */
+    @Override
+    public boolean checkSignature(byte[] input, byte[] signature, HashType hashType, int saltLength) throws
+            IllegalStateException {
+        final PSSSigner verifier = getVerifier(hashType, saltLength).getSigner();
+        verifier.update(input, 0, input.length);
+        return verifier.verifySignature(signature);
+    }
 
-            final Signer signatureChecker = new PSSSigner(
-                    RSAEngineFactory.make(),
-                    primaryDigest, state.mgf1HashType.makeDigest(),
-                    saltLength);
-            signatureChecker.init(false, new ParametersWithRandom(state.keyParameters, state.rng));
-
-            boolean done = false;
-            while (!done) {
-                int availableBytes = input.available();
-                if (availableBytes <= 0) {
-                    done = true;
-                } else {
-                    byte[] buffer = new byte[availableBytes];
-                    int howManyBytesRead = input.read(buffer);
-                    if (howManyBytesRead <= 0) {
-                        done = true;
-                    } else {
-                        signatureChecker.update(buffer, 0, howManyBytesRead);
-                    }
-                }
-            }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean checkSignature(ByteBuffer input, byte[] signature, HashType hashType, int saltLength) throws
+            IllegalStateException {
+        final PSSContexts.Context context = getVerifier(hashType, saltLength);
+        context.update(input);
+        return context.getSigner().verifySignature(signature);
+    }
 
-            return signatureChecker.verifySignature(signature);
+    /**
+     * Get the verifier of the current thread, ready to check a new signature.
+     */
+    private PSSContexts.Context getVerifier(HashType hashType, int saltLength) throws IllegalStateException {
+        if (state == null) {
+            throw new IllegalStateException();
+        }
+        if (saltLength == MAX_SALT_LENGTH) {
+            saltLength = getMaxSaltLength(getBitStrength(), PSSContexts.getDigestSize(hashType));
+        }
+        if (saltLength < 0) {
+            throw new RuntimeException(String.format("Incorrect salt length %s", saltLength));
         }
+        return state.verifiers.get(hashType, saltLength);
     }
 
     /**
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.crypto;
+
+import net.sergeych.tools.Do;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.spongycastle.crypto.engines.AESFastEngine;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class CTRTransformerTest {
+
+    private final Random random = new Random(1);
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static AES256 cipher(byte[] key) {
+        AES256 cipher = new AES256();
+        cipher.initialize(BlockCipher.Direction.ENCRYPT, new SymmetricKey(key));
+        return cipher;
+    }
+
+    @Test
+    public void keystreamIsCompatible() throws Exception {
+        byte[] key = randomBytes(random, 32);
+        byte[] iv = randomBytes(random, 16);
+        byte[] data = randomBytes(random, 16 * 100 + 7);
+
+        // nonce with big endian counter xored into its last 4 bytes, encrypted block by block
+        AESFastEngine engine = new AESFastEngine();
+        engine.init(true, new KeyParameter(key));
+        byte[] expected = new byte[data.length];
+        byte[] block = new byte[16];
+        byte[] keystream = new byte[16];
+        for (int offset = 0, counter = 0; offset < data.length; offset += 16, counter++) {
+            System.arraycopy(iv, 0, block, 0, 16);
+            block[12] ^= (byte) (counter >> 24);
+            block[13] ^= (byte) (counter >> 16);
+            block[14] ^= (byte) (counter >> 8);
+            block[15] ^= (byte) counter;
+            engine.processBlock(block, 0, keystream, 0);
+            for (int i = 0; i < 16 && offset + i < data.length; i++)
+                expected[offset + i] = (byte) (data[offset + i] ^ keystream[i]);
+        }
+
+        byte[] result = new byte[data.length];
+        new CTRTransformer(cipher(key), iv).transform(data, 0, data.length, result, 0);
+        assertArrayEquals(expected, result);
+
+        CTRTransformer t = new CTRTransformer(cipher(key), iv);
+        for (int i = 0; i < data.length; i++)
+            result[i] = (byte) t.transformByte(data[i]);
+        assertArrayEquals(expected, result);
+    }
+
+    @Test
+    public void bulkAndBytesCouldBeMixed() throws Exception {
+        AES256 cipher = cipher(randomBytes(random, 32));
+        byte[] iv = randomBytes(random, 16);
+        byte[] data = randomBytes(random, 100000);
+        byte[] expected = new byte[data.length];
+        new CTRTransformer(cipher, iv).transform(data, 0, data.length, expected, 0);
+
+        CTRTransformer t = new CTRTransformer(cipher, iv);
+        byte[] result = data.clone();
+        int offset = 0;
+        while (offset < data.length) {
+            int length = Math.min(data.length - offset, random.nextInt(3000));
+            if (length % 5 == 0 && length > 0) {
+                result[offset] = (byte) t.transformByte(result[offset]);
+                length = 1;
+            } else
+                t.transform(result, offset, length, result, offset);
+            offset += length;
+        }
+        assertArrayEquals(expected, result);
+    }
+
+    @Test
+    public void byteBuffers() throws Exception {
+        AES256 cipher = cipher(randomBytes(random, 32));
+        byte[] iv = randomBytes(random, 16);
+        byte[] data = randomBytes(random, 5000);
+        byte[] expected = new byte[data.length];
+        new CTRTransformer(cipher, iv).transform(data, 0, data.length, expected, 0);
+
+        ByteBuffer in = ByteBuffer.allocateDirect(data.length);
+        in.put(data).flip();
+        ByteBuffer out = ByteBuffer.allocateDirect(data.length);
+        CTRTransformer t = new CTRTransformer(cipher, iv);
+        in.limit(1000);
+        t.transform(in, out);
+        in.limit(data.length);
+        t.transform(in, out);
+        byte[] result = new byte[data.length];
+        out.flip();
+        out.get(result);
+        assertArrayEquals(expected, result);
+
+        ByteBuffer inPlace = ByteBuffer.wrap(data.clone());
+        new CTRTransformer(cipher, iv).transform(inPlace, inPlace);
+        assertArrayEquals(expected, inPlace.array());
+    }
+
+    @Test
+    public void streams() throws Exception {
+        SymmetricKey key = new SymmetricKey();
+        for (int size : new int[]{0, 1, 31, 32, 33, 1000, 100000}) {
+            byte[] data = randomBytes(random, size);
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            OutputStream eta = key.etaEncryptStream(bos);
+            for (int offset = 0; offset < size; ) {
+                int length = Math.min(size - offset, random.nextInt(100));
+                eta.write(data, offset, length);
+                offset += length;
+            }
+            eta.close();
+            byte[] encrypted = bos.toByteArray();
+            assertArrayEquals(data, key.etaDecrypt(encrypted));
+            assertArrayEquals(data, Do.read(key.etaDecryptStream(new ByteArrayInputStream(encrypted))));
+
+            InputStream in = key.etaDecryptStream(new ByteArrayInputStream(key.etaEncrypt(data)));
+            ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+            int c;
+            while ((c = in.read()) >= 0)
+                decrypted.write(c);
+            assertArrayEquals(data, decrypted.toByteArray());
+
+            assertArrayEquals(data, key.decrypt(key.encrypt(data)));
+        }
+    }
+
+    @Ignore("benchmark")
+    @Test
+    public void throughputBenchmark() throws Exception {
+        AES256 cipher = cipher(randomBytes(random, 32));
+        SymmetricKey key = new SymmetricKey();
+        byte[] data = randomBytes(random, 1 << 20);
+        byte[] out = new byte[data.length];
+        for (int round = 0; round < 5; round++) {
+            long t = System.nanoTime();
+            CTRTransformer bytes = new CTRTransformer(cipher, null);
+            for (int i = 0; i < data.length; i++)
+                out[i] = (byte) bytes.transformByte(data[i]);
+            long bytesNanos = System.nanoTime() - t;
+
+            t = System.nanoTime();
+            new CTRTransformer(cipher, null).transform(data, 0, data.length, out, 0);
+            long bulkNanos = System.nanoTime() - t;
+
+            // UDP sized blocks
+            t = System.nanoTime();
+            for (int offset = 0; offset < data.length; offset += 1024)
+                key.etaDecrypt(key.etaEncrypt(java.util.Arrays.copyOfRange(data, offset, offset + 1024)));
+            long etaNanos = System.nanoTime() - t;
+
+            System.out.println("MB/s: bytes " + (1000 * data.length / bytesNanos) +
+                    ", bulk " + (1000 * data.length / bulkNanos) +
+                    ", eta 1K round trip " + (1000 * data.length / etaNanos));
+        }
+    }
+}
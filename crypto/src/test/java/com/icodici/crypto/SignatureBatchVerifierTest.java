@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.crypto;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SignatureBatchVerifierTest {
+
+    private final Random random = new Random(1);
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void verifiesEachEntry() throws Exception {
+        List<PrivateKey> keys = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            keys.add(TestKeys.privateKey(i));
+        PublicKey otherKey = TestKeys.privateKey(3).getPublicKey();
+        HashType[] hashTypes = {HashType.SHA512, HashType.SHA3_384, HashType.SHA256};
+
+        for (ForkJoinPool pool : new ForkJoinPool[]{null, new ForkJoinPool(3)}) {
+            SignatureBatchVerifier verifier = new SignatureBatchVerifier(pool);
+            List<Boolean> expected = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                PrivateKey key = keys.get(i % keys.size());
+                HashType hashType = hashTypes[i % hashTypes.length];
+                byte[] data = randomBytes(random, 10 + random.nextInt(1000));
+                byte[] signature = key.sign(data, hashType);
+                switch (i % 5) {
+                    case 0:
+                        // tampered data
+                        data[0] ^= 1;
+                        assertEquals(i, verifier.add(key.getPublicKey(), data, signature, hashType));
+                        expected.add(false);
+                        break;
+                    case 1:
+                        assertEquals(i, verifier.add(otherKey, data, signature, hashType));
+                        expected.add(false);
+                        break;
+                    case 2:
+                        // not even a signature
+                        assertEquals(i, verifier.add(key.getPublicKey(), data, new byte[]{1, 2, 3}, hashType));
+                        expected.add(false);
+                        break;
+                    default:
+                        assertEquals(i, verifier.add(key.getPublicKey(), data, signature, hashType));
+                        expected.add(true);
+                }
+            }
+            assertEquals(expected.size(), verifier.size());
+            boolean[] results = verifier.verify();
+            assertEquals(expected.size(), results.length);
+            for (int i = 0; i < results.length; i++)
+                assertEquals("entry " + i, expected.get(i), results[i]);
+            if (pool != null)
+                pool.shutdown();
+        }
+        assertEquals(0, new SignatureBatchVerifier().verify().length);
+    }
+
+    @Test
+    public void equalKeysAreVerifiedWithOneInstance() throws Exception {
+        PrivateKey key = TestKeys.privateKey(0);
+        byte[] packed = key.getPublicKey().pack();
+        Set<PublicKey> used = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        SignatureBatchVerifier verifier = new SignatureBatchVerifier(new ForkJoinPool(2));
+        for (int i = 0; i < 20; i++) {
+            byte[] data = randomBytes(random, 100);
+            // unpacked anew for each signature, as keys of contract seals are
+            verifier.add(new PublicKey(packed) {
+                @Override
+                public boolean verify(byte[] input, byte[] signature, HashType hashType) {
+                    used.add(this);
+                    return super.verify(input, signature, hashType);
+                }
+            }, data, key.sign(data, HashType.SHA512), HashType.SHA512);
+        }
+        for (boolean valid : verifier.verify())
+            assertTrue(valid);
+        assertEquals(1, used.size());
+    }
+
+    @Ignore("benchmark")
+    @Test
+    public void scalingBenchmark() throws Exception {
+        for (int bits : new int[]{2048, 4096}) {
+            List<PrivateKey> keys = new ArrayList<>();
+            List<byte[]> packedKeys = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                keys.add(new PrivateKey(bits));
+                packedKeys.add(keys.get(i).getPublicKey().pack());
+            }
+            List<byte[]> data = new ArrayList<>();
+            List<byte[]> signatures = new ArrayList<>();
+            int count = 400;
+            for (int i = 0; i < count; i++) {
+                data.add(randomBytes(random, 1000));
+                signatures.add(keys.get(i % keys.size()).sign(data.get(i), HashType.SHA512));
+            }
+            for (int threads : new int[]{0, 1, 2, 4, 8}) {
+                ForkJoinPool pool = threads > 0 ? new ForkJoinPool(threads) : null;
+                for (int round = 0; round < 3; round++) {
+                    SignatureBatchVerifier verifier = new SignatureBatchVerifier(pool);
+                    // keys are unpacked for every signature, as ExtendedSignature.extractPublicKey does for seals
+                    for (int i = 0; i < count; i++)
+                        verifier.add(new PublicKey(packedKeys.get(i % keys.size())), data.get(i), signatures.get(i),
+                                HashType.SHA512);
+                    long t = System.nanoTime();
+                    verifier.verify();
+                    long nanos = System.nanoTime() - t;
+                    if (round == 2)
+                        System.out.println("key " + bits + ", threads " + threads + ": " +
+                                (count * 1_000_000_000L / nanos) + " signatures/s");
+                }
+                if (pool != null)
+                    pool.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.crypto.digest;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class MultiDigestTest {
+
+    private final Random random = new Random(1);
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void sameAsSeparateDigests() throws Exception {
+        for (int size : new int[]{0, 1, 1000, 16 * 1024 + 1, 100000, MultiDigest.PARALLEL_THRESHOLD + 7}) {
+            byte[] data = randomBytes(random, size);
+            byte[][] expected = {
+                    new Sha512().digest(data),
+                    new Sha3_384().digest(data),
+                    new Gost3411_2012_256().digest(data)
+            };
+
+            MultiDigest md = new MultiDigest(new Sha512(), new Sha3_384(), new Gost3411_2012_256());
+            assertArrayEquals(expected, md.update(data).digests());
+            assertArrayEquals(expected[1], md.digest(1));
+
+            // fed in random pieces
+            md = new MultiDigest(new Sha512(), new Sha3_384(), new Gost3411_2012_256());
+            for (int offset = 0; offset < size; ) {
+                int length = Math.min(size - offset, random.nextInt(50000));
+                md.update(data, offset, length);
+                offset += length;
+            }
+            assertArrayEquals(expected, md.digests());
+        }
+    }
+
+    @Ignore("benchmark")
+    @Test
+    public void onePassBenchmark() throws Exception {
+        for (int size : new int[]{1024, 64 * 1024, 4 * 1024 * 1024}) {
+            byte[] data = randomBytes(random, size);
+            int repetitions = Math.max(10, 64 * 1024 * 1024 / size);
+            for (int round = 0; round < 3; round++) {
+                long t = System.nanoTime();
+                for (int i = 0; i < repetitions; i++) {
+                    new Sha512_256().digest(data);
+                    new Sha3_256().digest(data);
+                    new Gost3411_2012_256().digest(data);
+                    new Sha512().digest(data);
+                    new Sha3_384().digest(data);
+                }
+                long separateNanos = System.nanoTime() - t;
+
+                t = System.nanoTime();
+                for (int i = 0; i < repetitions; i++)
+                    new MultiDigest(new Sha512_256(), new Sha3_256(), new Gost3411_2012_256(), new Sha512(),
+                            new Sha3_384()).update(data).digests();
+                long multiNanos = System.nanoTime() - t;
+
+                if (round == 2)
+                    System.out.println("size " + size + ": separate " + (separateNanos / repetitions / 1000) +
+                            "us, one pass " + (multiNanos / repetitions / 1000) + "us");
+            }
+        }
+    }
+}
@@ -1,11 +1,12 @@
 package com.icodici.crypto.rsaoaep;
 
-import com.icodici.crypto.EncryptionError;
 import com.icodici.crypto.HashType;
 import net.sergeych.tools.Hashable;
 import org.spongycastle.util.BigIntegers;
 import org.spongycastle.util.encoders.Hex;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.security.SecureRandom;
@@ -36,12 +37,12 @@ public class RSABenchmark {
     private final RSAOAEPPrivateKey randomPrivateKey;
     private final RSAOAEPPublicKey randomPublicKey;
 
-    private RSABenchmark() {
-        System.out.printf("Initializing RSA... ");
+    private RSABenchmark(int bitStrength) {
+        System.out.printf("Initializing RSA %s... ", bitStrength);
         randomPrivateKey = new RSAOAEPPrivateKey();
 
         (randomPrivateKey).generate(
-                4096,
+                bitStrength,
                 BigIntegers.asUnsignedByteArray(BigInteger.valueOf(65537)),
                 1,
                 HashType.SHA512,
@@ -52,7 +53,7 @@ public class RSABenchmark {
         System.out.printf(" done!\n");
     }
 
-    void run() throws EncryptionError {
+    void run() throws IOException {
         final SecureRandom rng = new SecureRandom();
         final byte[] message = new byte[randomPrivateKey.getMaxBlockSize()];
 
@@ -60,6 +61,8 @@ public class RSABenchmark {
         long totalSpentInDecryption = 0l;
         long totalSpentInSigning = 0l;
         long totalSpentInCheckingSignature = 0l;
+        long totalSpentInCheckingSignatureStream = 0l;
+        long totalSpentInCheckingSignatureUnpacked = 0l;
 
         for (int i = 0; i < warmupRepetition + repetitions; i++) {
             boolean warmingUp = (i < warmupRepetition);
@@ -74,6 +77,9 @@ public class RSABenchmark {
                 // Create random message
                 rng.nextBytes(message);
             }
+            // Key unpacked anew for every check, as when checking signatures of contracts; non-measured
+            final RSAOAEPPublicKey unpackedPublicKey = new RSAOAEPPublicKey();
+            unpackedPublicKey.updateFromHash(randomPublicKey.toHash());
             // Iteration; measured
             {
                 final long startTime = System.nanoTime();
@@ -85,8 +91,14 @@ public class RSABenchmark {
                 final long afterSigningTime = System.nanoTime();
                 final boolean signatureValid = randomPublicKey.checkSignature(message, signed, HashType.SHA512);
                 final long afterCheckSignatureTime = System.nanoTime();
-
-                if (!Arrays.equals(decrypted, message) || !signatureValid) {
+                final boolean streamSignatureValid = randomPublicKey.checkSignature(
+                        new ByteArrayInputStream(message), signed, HashType.SHA512);
+                final long afterCheckSignatureStreamTime = System.nanoTime();
+                final boolean unpackedSignatureValid = unpackedPublicKey.checkSignature(message, signed, HashType.SHA512);
+                final long afterCheckSignatureUnpackedTime = System.nanoTime();
+
+                if (!Arrays.equals(decrypted, message) || !signatureValid || !streamSignatureValid ||
+                        !unpackedSignatureValid) {
                     throw new AssertionError(String.format("Cryptography problem for message %1s, private key %2s, public key %3s",
                             Hex.toHexString(message),
                             hashableToString(randomPrivateKey),
@@ -99,6 +111,8 @@ public class RSABenchmark {
                     totalSpentInDecryption += (afterDecryptionTime - afterEncryptionTime);
                     totalSpentInSigning += (afterSigningTime - afterDecryptionTime);
                     totalSpentInCheckingSignature += (afterCheckSignatureTime - afterSigningTime);
+                    totalSpentInCheckingSignatureStream += (afterCheckSignatureStreamTime - afterCheckSignatureTime);
+                    totalSpentInCheckingSignatureUnpacked += (afterCheckSignatureUnpackedTime - afterCheckSignatureStreamTime);
                 }
             }
         }
@@ -109,13 +123,17 @@ public class RSABenchmark {
                         "          Encryption: %s ms\n" +
                         "          Decryption: %s ms\n" +
                         "             Signing: %s ms\n" +
-                        "  Checking signature: %s ms\n",
+                        "  Checking signature: %s ms\n" +
+                        "    ... from stream: %s ms\n" +
+                        "... by unpacked key: %s ms\n",
                 repetitions,
                 // Per-operation time = (totalSpentInOperation / repetitions) / 1000000
                 new BigDecimal(totalSpentInEncryption).divide(new BigDecimal(repetitions)).divide(new BigDecimal(1000000)),
                 new BigDecimal(totalSpentInDecryption).divide(new BigDecimal(repetitions)).divide(new BigDecimal(1000000)),
                 new BigDecimal(totalSpentInSigning).divide(new BigDecimal(repetitions)).divide(new BigDecimal(1000000)),
-                new BigDecimal(totalSpentInCheckingSignature).divide(new BigDecimal(repetitions)).divide(new BigDecimal(1000000))
+                new BigDecimal(totalSpentInCheckingSignature).divide(new BigDecimal(repetitions)).divide(new BigDecimal(1000000)),
+                new BigDecimal(totalSpentInCheckingSignatureStream).divide(new BigDecimal(repetitions)).divide(new BigDecimal(1000000)),
+                new BigDecimal(totalSpentInCheckingSignatureUnpacked).divide(new BigDecimal(repetitions)).divide(new BigDecimal(1000000))
         );
     }
 
@@ -131,9 +149,10 @@ public class RSABenchmark {
 
     public static void main(String[] args) {
         try {
-            new RSABenchmark().run();
-        } catch (EncryptionError encryptionError) {
-            encryptionError.printStackTrace();
+            new RSABenchmark(2048).run();
+            new RSABenchmark(4096).run();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 }
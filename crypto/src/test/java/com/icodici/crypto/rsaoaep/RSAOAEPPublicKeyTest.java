@@ -19,11 +19,18 @@ import org.spongycastle.crypto.params.RSAKeyParameters;
 import org.spongycastle.util.BigIntegers;
 import org.spongycastle.util.encoders.Hex;
 
+import java.io.ByteArrayInputStream;
 import java.lang.reflect.Field;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 
@@ -130,6 +137,75 @@ public class RSAOAEPPublicKeyTest {
         assertTrue(publicKey.checkSignature(message, privateKey.sign(message, HashType.SHA1), HashType.SHA1));
     }
 
+    /**
+     * Test {@link RSAOAEPPublicKey#checkSignature} entry points reusing verifiers of the thread, also after failures
+     * and from many threads.
+     */
+    @Test
+    public void checkSignatureReusesVerifiers() throws Exception {
+        RSAOAEPPrivateKey privateKey = new RSAOAEPPrivateKey();
+        privateKey.generate(2048, BigIntegers.asUnsignedByteArray(BigInteger.valueOf(65537)), 1,
+                HashType.SHA1, HashType.SHA256);
+        RSAOAEPPublicKey publicKey = (RSAOAEPPublicKey) privateKey.getPublicKey();
+
+        byte[] message = new byte[10000];
+        new SecureRandom().nextBytes(message);
+        byte[] sign512 = privateKey.sign(message, HashType.SHA512);
+        byte[] sign3 = privateKey.sign(new ByteArrayInputStream(message), HashType.SHA3_384);
+        byte[] other = message.clone();
+        other[0] ^= 1;
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(publicKey.checkSignature(message, sign512, HashType.SHA512));
+            assertFalse(publicKey.checkSignature(other, sign512, HashType.SHA512));
+            assertFalse(publicKey.checkSignature(message, sign3, HashType.SHA512));
+            assertTrue(publicKey.checkSignature(new ByteArrayInputStream(message), sign3, HashType.SHA3_384));
+            assertTrue(publicKey.checkSignature(ByteBuffer.wrap(message), sign512, HashType.SHA512));
+            ByteBuffer direct = ByteBuffer.allocateDirect(message.length);
+            direct.put(message).flip();
+            assertTrue(publicKey.checkSignature(direct, sign3, HashType.SHA3_384));
+            assertFalse(direct.hasRemaining());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            boolean valid = i % 3 != 0;
+            results.add(executor.submit(() ->
+                    publicKey.checkSignature(valid ? message : other, sign512, HashType.SHA512) == valid &&
+                            publicKey.checkSignature(message, privateKey.sign(message, HashType.SHA3_384),
+                                    HashType.SHA3_384)));
+        }
+        for (Future<Boolean> r : results)
+            assertTrue(r.get());
+        executor.shutdown();
+
+        // keys are usually unpacked anew for every check, they use contexts of the same key material
+        int keysCount = PSSContexts.getKeysCount();
+        for (int i = 0; i < 3; i++) {
+            RSAOAEPPublicKey unpacked = new RSAOAEPPublicKey();
+            unpacked.updateFromHash(publicKey.toHash());
+            assertTrue(unpacked.checkSignature(message, sign512, HashType.SHA512));
+            assertFalse(unpacked.checkSignature(other, sign512, HashType.SHA512));
+            assertSame(publicKey.state.verifiers.get(HashType.SHA512, 32),
+                    unpacked.state.verifiers.get(HashType.SHA512, 32));
+        }
+        assertEquals(keysCount, PSSContexts.getKeysCount());
+    }
+
+    /**
+     * Test contexts of only a limited number of keys are kept per thread.
+     */
+    @Test
+    public void verifierContextsAreBounded() throws Exception {
+        for (int i = 0; i < PSSContexts.MAX_KEYS_PER_THREAD * 2; i++) {
+            RSAKeyParameters key = new RSAKeyParameters(false,
+                    randomPublicKey1.getModulus(), randomPublicKey1.getExponent().add(BigInteger.valueOf(2 * i)));
+            new PSSContexts(false, key, key, HashType.SHA1).get(HashType.SHA256, 32);
+        }
+        assertEquals(PSSContexts.MAX_KEYS_PER_THREAD, PSSContexts.getKeysCount());
+    }
+
     /**
      * Test {@link RSAOAEPPublicKey#toHash}.
      */
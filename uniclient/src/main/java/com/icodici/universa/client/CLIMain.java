@@ -80,6 +80,11 @@ public class CLIMain {
 
     public static final String AMOUNT_FIELD_NAME = "amount";
 
+    static {
+        // wallets and checks load many contracts, their seal signatures are verified in batches on all cores
+        Contract.setSignatureVerificationThreads(Runtime.getRuntime().availableProcessors());
+    }
+
     static public void main(String[] args) throws IOException {
         // when we run untit tests, it is important:
 //        args = new String[]{"-c", "/Users/sergeych/dev/new_universa/uniclient-testcreate/simple_root_contract.yml"};
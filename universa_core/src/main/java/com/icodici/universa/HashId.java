@@ -211,12 +211,12 @@ public class HashId implements Comparable<HashId> {
         private Sha512_256 sha2Digest = new Sha512_256();
         private Sha3_256 sha3Digest = new Sha3_256();
         private Gost3411_2012_256 gostDigest = new Gost3411_2012_256();
+        // all three are calculated in one pass over the data
+        private MultiDigest multiDigest = new MultiDigest(sha2Digest, sha3Digest, gostDigest);
 
         @Override
         protected void _update(byte[] data, int offset, int size) {
-            sha2Digest.update(data, offset, size);
-            sha3Digest.update(data, offset, size);
-            gostDigest.update(data, offset, size);
+            multiDigest.update(data, offset, size);
         }
 
         @Override
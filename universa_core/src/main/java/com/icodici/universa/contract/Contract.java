@@ -36,6 +36,7 @@ import java.time.ZonedDateTime;
 import java.time.chrono.ChronoZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -93,6 +94,40 @@ public class Contract implements Approvable, BiSerializable, Cloneable {
 
     private static int testQuantaLimit = -1;
 
+    /**
+     * Bounded pool that checks seal signatures while unpacking, null means to check them serially in the calling thread.
+     */
+    private static ForkJoinPool signatureVerificationPool = null;
+
+    /**
+     * Seal signatures not yet verified and applied to {@link #sealedByKeys}.
+     */
+    private List<PendingSignature> pendingSignatures = null;
+
+    /**
+     * Set the number of threads used to verify seal signatures when contracts are unpacked from the sealed binaries.
+     * With 0 (the default) signatures are verified one by one in the calling thread. Otherwise all signatures of the
+     * contract are verified together in the bounded pool with {@link ExtendedSignature#verifyAll}, and if the contract
+     * is unpacked with the {@link TransactionPack}, the signatures of all its referenced items, subItems and the root
+     * contract are checked in one batch when the pack is done. In both modes the quanta are spent exactly the same way.
+     *
+     * @param threads is number of verification threads, 0 to verify serially
+     */
+    public static synchronized void setSignatureVerificationThreads(int threads) {
+        if (signatureVerificationPool != null) {
+            signatureVerificationPool.shutdown();
+            signatureVerificationPool = null;
+        }
+        if (threads > 0) {
+            signatureVerificationPool = new ForkJoinPool(threads, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("signature-verifier");
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        }
+    }
+
     /**
      * Extract contract from v2 or v3 sealed form, getting revokein and new items from the transaction pack supplied. If
      * the transaction pack fails to resove a link, no error will be reported - not sure it's a good idea. If need, the
@@ -231,22 +266,7 @@ public class Contract implements Approvable, BiSerializable, Cloneable {
             });
         });
 
-        for (Object signature : (List) data.getOrThrow("signatures")) {
-            byte[] s = ((Bytes) signature).toArray();
-            PublicKey key = ExtendedSignature.extractPublicKey(s);
-            if (key == null) {
-                Bytes keyId = ExtendedSignature.extractKeyId(s);
-                key = keys.get(keyId);
-            }
-            if (key != null) {
-                verifySignatureQuantized(key);
-                ExtendedSignature es = ExtendedSignature.verify(key, s, contractBytes);
-                if (es != null) {
-                    sealedByKeys.put(key, es);
-                } else
-                    addError(Errors.BAD_SIGNATURE, "keytag:" + key.info().getBase64Tag(), "the signature is broken");
-            }
-        }
+        verifySealSignatures((List) data.getOrThrow("signatures"), keys, contractBytes, pack);
     }
 
     public Contract(byte[] data) throws IOException {
@@ -364,22 +384,7 @@ public class Contract implements Approvable, BiSerializable, Cloneable {
             });
         });
 
-        for (Object signature : (List) data.getOrThrow("signatures")) {
-            byte[] s = ((Bytes) signature).toArray();
-            PublicKey key = ExtendedSignature.extractPublicKey(s);
-            if (key == null) {
-                Bytes keyId = ExtendedSignature.extractKeyId(s);
-                key = keys.get(keyId);
-            }
-            if (key != null) {
-                verifySignatureQuantized(key);
-                ExtendedSignature es = ExtendedSignature.verify(key, s, contractBytes);
-                if (es != null) {
-                    sealedByKeys.put(key, es);
-                } else
-                    addError(Errors.BAD_SIGNATURE, "keytag:" + key.info().getBase64Tag(), "the signature is broken");
-            }
-        }
+        verifySealSignatures((List) data.getOrThrow("signatures"), keys, contractBytes, pack);
     }
 
 
@@ -2148,6 +2153,91 @@ public class Contract implements Approvable, BiSerializable, Cloneable {
         return transactional;
     }
 
+    /**
+     * Check seal signatures with keys they are referring to. Each signature is quantized right here, but checks itself
+     * are postponed. Then, if the pack is collecting signatures of its contracts, they will be checked by it together
+     * with signatures of other contracts, otherwise right here.
+     *
+     * @param signatures    is list of binary extended signatures
+     * @param keys          is keys that could be found by signature key id
+     * @param contractBytes is signed data
+     * @param pack          is {@link TransactionPack} the contract is being unpacked with
+     *
+     * @throws Quantiser.QuantiserException if processing cost limit is got
+     */
+    private void verifySealSignatures(List signatures, Map<Bytes, PublicKey> keys, byte[] contractBytes,
+                                      TransactionPack pack) throws Quantiser.QuantiserException {
+        for (Object signature : signatures) {
+            byte[] s = ((Bytes) signature).toArray();
+            PublicKey key = ExtendedSignature.extractPublicKey(s);
+            if (key == null) {
+                Bytes keyId = ExtendedSignature.extractKeyId(s);
+                key = keys.get(keyId);
+            }
+            if (key != null) {
+                verifySignatureQuantized(key);
+                if (pendingSignatures == null)
+                    pendingSignatures = new ArrayList<>();
+                pendingSignatures.add(new PendingSignature(key, s, contractBytes));
+            }
+        }
+        if (pendingSignatures != null && (pack == null || !pack.deferSignatureVerification(this)))
+            completeSignatureVerification(Collections.singletonList(this));
+    }
+
+    /**
+     * Verify pending seal signatures of all the contracts in one batch, in the {@link #signatureVerificationPool} if
+     * it is set, and apply them to {@link #sealedByKeys} of each contract in the order of seal. Contracts without
+     * pending signatures are skipped.
+     *
+     * @param contracts to verify signatures of
+     */
+    static void completeSignatureVerification(List<Contract> contracts) {
+        List<PublicKey> keys = new ArrayList<>();
+        List<byte[]> signatures = new ArrayList<>();
+        List<byte[]> data = new ArrayList<>();
+        for (Contract c : contracts) {
+            if (c.pendingSignatures != null) {
+                for (PendingSignature ps : c.pendingSignatures) {
+                    keys.add(ps.key);
+                    signatures.add(ps.signature);
+                    data.add(ps.data);
+                }
+            }
+        }
+        if (keys.isEmpty())
+            return;
+        Iterator<ExtendedSignature> results =
+                ExtendedSignature.verifyAll(keys, signatures, data, signatureVerificationPool).iterator();
+        for (Contract c : contracts) {
+            if (c.pendingSignatures == null)
+                continue;
+            for (PendingSignature ps : c.pendingSignatures) {
+                ExtendedSignature es = results.next();
+                if (es != null) {
+                    c.sealedByKeys.put(ps.key, es);
+                } else
+                    c.addError(Errors.BAD_SIGNATURE, "keytag:" + ps.key.info().getBase64Tag(), "the signature is broken");
+            }
+            c.pendingSignatures = null;
+        }
+    }
+
+    /**
+     * Seal signature to be verified with the key.
+     */
+    private static class PendingSignature {
+        private final PublicKey key;
+        private final byte[] signature;
+        private final byte[] data;
+
+        private PendingSignature(PublicKey key, byte[] signature, byte[] data) {
+            this.key = key;
+            this.signature = signature;
+            this.data = data;
+        }
+    }
+
     // processes that should be quantized
 
     /**
@@ -8,6 +8,7 @@
 package com.icodici.universa.contract;
 
 import com.icodici.crypto.*;
+import com.icodici.crypto.digest.MultiDigest;
 import com.icodici.crypto.digest.Sha3_384;
 import com.icodici.crypto.digest.Sha512;
 import net.sergeych.boss.Boss;
@@ -15,6 +16,11 @@ import net.sergeych.tools.Binder;
 import net.sergeych.utils.Bytes;
 
 import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The extended signature signs the resource with sha512, timestamp and 32-byte key id, see {@link #keyId}. The signed
@@ -148,6 +154,18 @@ public class ExtendedSignature {
     }
 
 
+    /**
+     * Process-wide cache of verified signatures.
+     */
+    static private final SignatureCache cache = new SignatureCache(SignatureCache.DEFAULT_MAX_SIZE);
+
+    /**
+     * @return process-wide cache of signatures successfully verified with {@link #verify(PublicKey, byte[], byte[])}
+     */
+    public static SignatureCache getCache() {
+        return cache;
+    }
+
     private byte[] signature;
     public byte[] getSignature() {
         return signature;
@@ -164,50 +182,147 @@ public class ExtendedSignature {
      * @return null if the signature is invalud, {@link ExtendedSignature} instance on success.
      */
     public static ExtendedSignature verify(PublicKey key, byte[] signature, byte[] data) {
+        byte[] dataHash = new Sha512().digest(data);
+        Bytes cacheKey = SignatureCache.key(key, signature, dataHash);
+        ExtendedSignature es = cache.get(cacheKey);
+        if (es == null) {
+            es = verify(key, signature, data, dataHash);
+            if (es != null)
+                cache.put(cacheKey, es);
+        }
+        return es;
+    }
+
+    /**
+     * Verify many extended signatures at once. Signatures found in the {@link #getCache()} are not checked again, RSA
+     * checks of all others are done together with the {@link SignatureBatchVerifier}.
+     *
+     * @param keys       to verify signatures with
+     * @param signatures are binary extended signatures
+     * @param data       is signed data
+     * @param pool       to verify signatures in, null to verify them in the calling thread
+     *
+     * @return {@link ExtendedSignature} instance for each valid signature and null for each invalid one, in the order
+     * of arguments
+     */
+    public static List<ExtendedSignature> verifyAll(List<PublicKey> keys, List<byte[]> signatures, List<byte[]> data,
+                                                    ForkJoinPool pool) {
+        int size = keys.size();
+        if (signatures.size() != size || data.size() != size)
+            throw new IllegalArgumentException("keys, signatures and data should be of the same size");
+        ExtendedSignature[] results = new ExtendedSignature[size];
+        PendingCheck[] checks = new PendingCheck[size];
+        SignatureBatchVerifier verifier = new SignatureBatchVerifier(pool);
+        // all signatures of a contract sign the same data, so it is hashed once, with both digests in one pass
+        Map<byte[], byte[][]> dataHashes = new IdentityHashMap<>();
+        for (int i = 0; i < size; i++) {
+            byte[][] hashes = dataHashes.computeIfAbsent(data.get(i),
+                    d -> new MultiDigest(new Sha512(), new Sha3_384()).update(d).digests());
+            PendingCheck pc = new PendingCheck(keys.get(i), signatures.get(i), data.get(i), hashes[0], hashes[1]);
+            results[i] = cache.get(pc.cacheKey);
+            if (results[i] != null)
+                continue;
+            Binder src = Boss.unpack(pc.signature);
+            pc.exts = src.getBinaryOrThrow("exts");
+            pc.signEntry = verifier.add(pc.key, pc.exts, src.getBinaryOrThrow("sign"), HashType.SHA512);
+            byte[] sign2bin = src.getBinary("sign2");
+            if (sign2bin != null)
+                pc.sign2Entry = verifier.add(pc.key, pc.exts, sign2bin, HashType.SHA3_384);
+            checks[i] = pc;
+        }
+        boolean[] valid = verifier.verify();
+        for (int i = 0; i < size; i++) {
+            PendingCheck pc = checks[i];
+            if (pc != null && valid[pc.signEntry] && (pc.sign2Entry < 0 || valid[pc.sign2Entry])) {
+                results[i] = decode(pc.exts, pc.signature, pc.data, pc.dataSha512, pc.dataSha3_384);
+                if (results[i] != null)
+                    cache.put(pc.cacheKey, results[i]);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Signature of {@link #verifyAll(List, List, List, ForkJoinPool)} with its RSA checks added to the batch.
+     */
+    private static class PendingCheck {
+        private final PublicKey key;
+        private final byte[] signature;
+        private final byte[] data;
+        private final byte[] dataSha512;
+        private final byte[] dataSha3_384;
+        private final Bytes cacheKey;
+        private byte[] exts;
+        private int signEntry;
+        private int sign2Entry = -1;
+
+        private PendingCheck(PublicKey key, byte[] signature, byte[] data, byte[] dataSha512, byte[] dataSha3_384) {
+            this.key = key;
+            this.signature = signature;
+            this.data = data;
+            this.dataSha512 = dataSha512;
+            this.dataSha3_384 = dataSha3_384;
+            cacheKey = SignatureCache.key(key, signature, dataSha512);
+        }
+    }
+
+    private static ExtendedSignature verify(PublicKey key, byte[] signature, byte[] data, byte[] dataSha512) {
+        Binder src = Boss.unpack(signature);
+        byte[] exts = src.getBinaryOrThrow("exts");
+        boolean isSignValid = key.verify(exts, src.getBinaryOrThrow("sign"), HashType.SHA512);
+        boolean isSign2Valid = true;
+        byte[] sign2bin = null;
         try {
-            Binder src = Boss.unpack(signature);
-            ExtendedSignature es = new ExtendedSignature();
+            sign2bin = src.getBinaryOrThrow("sign2");
+        } catch (IllegalArgumentException e) {
+            sign2bin = null;
+        }
+        if (sign2bin != null)
+            isSign2Valid = key.verify(exts, sign2bin, HashType.SHA3_384);
+        if (isSignValid && isSign2Valid)
+            return decode(exts, signature, data, dataSha512, null);
+        return null;
+    }
 
-            byte[] exts = src.getBinaryOrThrow("exts");
-            boolean isSignValid = key.verify(exts, src.getBinaryOrThrow("sign"), HashType.SHA512);
-            boolean isSign2Valid = true;
-            byte[] sign2bin = null;
+    /**
+     * Decode signed extensions and check the hashes of data, once RSA signatures of the extensions are known to be
+     * valid.
+     *
+     * @param dataSha3_384 is SHA3-384 of data if it is already calculated, null to calculate it if needed
+     *
+     * @return {@link ExtendedSignature} instance or null if the hashes does not match
+     */
+    private static ExtendedSignature decode(byte[] exts, byte[] signature, byte[] data, byte[] dataSha512,
+                                            byte[] dataSha3_384) {
+        try {
+            ExtendedSignature es = new ExtendedSignature();
+            Binder b = Boss.unpack(exts);
+            es.keyId = b.getBytesOrThrow("key");
+            es.createdAt = b.getZonedDateTimeOrThrow("created_at");
+            es.signature = signature;
+            es.publicKey = null;
             try {
-                sign2bin = src.getBinaryOrThrow("sign2");
+                byte[] publicKeyBytes = b.getBinaryOrThrow("pub_key");
+                es.publicKey = new PublicKey(publicKeyBytes);
             } catch (IllegalArgumentException e) {
-                sign2bin = null;
-            }
-            if (sign2bin != null)
-                isSign2Valid = key.verify(exts, sign2bin, HashType.SHA3_384);
-            if (isSignValid && isSign2Valid) {
-                Binder b = Boss.unpack(exts);
-                es.keyId = b.getBytesOrThrow("key");
-                es.createdAt = b.getZonedDateTimeOrThrow("created_at");
-                es.signature = signature;
                 es.publicKey = null;
-                try {
-                    byte[] publicKeyBytes = b.getBinaryOrThrow("pub_key");
-                    es.publicKey = new PublicKey(publicKeyBytes);
-                } catch (IllegalArgumentException e) {
-                    es.publicKey = null;
-                }
-                Bytes hash = b.getBytesOrThrow("sha512");
-                Bytes dataHash = new Bytes(new Sha512().digest(data));
-                boolean isHashValid = hash.equals(dataHash);
-                Bytes hash2 = null;
-                boolean isHash2Valid = true;
-                try {
-                    hash2 = b.getBytesOrThrow("sha3_384");
-                } catch (IllegalArgumentException e) {
-                    hash2 = null;
-                }
-                if (hash2 != null) {
-                    Bytes dataHash2 = new Bytes(new Sha3_384().digest(data));
-                    isHash2Valid = hash2.equals(dataHash2);
-                }
-                if (isHashValid && isHash2Valid)
-                    return es;
             }
+            Bytes hash = b.getBytesOrThrow("sha512");
+            Bytes dataHash = new Bytes(dataSha512);
+            boolean isHashValid = hash.equals(dataHash);
+            Bytes hash2 = null;
+            boolean isHash2Valid = true;
+            try {
+                hash2 = b.getBytesOrThrow("sha3_384");
+            } catch (IllegalArgumentException e) {
+                hash2 = null;
+            }
+            if (hash2 != null) {
+                Bytes dataHash2 = new Bytes(dataSha3_384 != null ? dataSha3_384 : new Sha3_384().digest(data));
+                isHash2Valid = hash2.equals(dataHash2);
+            }
+            if (isHashValid && isHash2Valid)
+                return es;
         } catch (EncryptionError encryptionError) {
             encryptionError.printStackTrace();
         }
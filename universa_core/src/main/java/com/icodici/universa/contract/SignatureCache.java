@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.contract;
+
+import com.icodici.crypto.PublicKey;
+import com.icodici.crypto.digest.Sha512;
+import net.sergeych.tools.Binder;
+import net.sergeych.utils.Bytes;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of successfully verified extended signatures, so the same sealed binary coming again, like with a
+ * later transaction pack or from another node, costs a lookup instead of RSA checks.
+ * <p>
+ * Only valid signatures are cached. The cache key is a hash of the key fingerprint, the whole signature and the hash
+ * of signed data, so a cached result is never returned for other data, another key or a modified signature. The least
+ * recently used entries are evicted above max size.
+ */
+public class SignatureCache {
+
+    static public final int DEFAULT_MAX_SIZE = 10000;
+
+    private volatile int maxSize;
+
+    // access ordered, so the first entry is the least recently used one. Guarded by itself.
+    private final LinkedHashMap<Bytes, ExtendedSignature> entries =
+            new LinkedHashMap<Bytes, ExtendedSignature>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Bytes, ExtendedSignature> eldest) {
+                    return size() > maxSize;
+                }
+            };
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Create cache.
+     *
+     * @param maxSize is max number of cached signatures, 0 disables caching
+     */
+    public SignatureCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Calculate the cache key.
+     *
+     * @param key       signature is verified with
+     * @param signature is binary extended signature
+     * @param dataHash  is SHA-512 of signed data
+     *
+     * @return cache key
+     */
+    static Bytes key(PublicKey key, byte[] signature, byte[] dataHash) {
+        Sha512 d = new Sha512();
+        d.update(key.fingerprint());
+        d.update(signature);
+        d.update(dataHash);
+        return new Bytes(d.digest());
+    }
+
+    /**
+     * @param key from {@link #key(PublicKey, byte[], byte[])}
+     *
+     * @return verified signature or null if it is not cached
+     */
+    ExtendedSignature get(Bytes key) {
+        if (maxSize <= 0)
+            return null;
+        ExtendedSignature es;
+        synchronized (entries) {
+            es = entries.get(key);
+        }
+        (es != null ? hits : misses).increment();
+        return es;
+    }
+
+    /**
+     * Cache successfully verified signature.
+     *
+     * @param key from {@link #key(PublicKey, byte[], byte[])}
+     * @param es  is verified signature
+     */
+    void put(Bytes key, ExtendedSignature es) {
+        if (maxSize <= 0)
+            return;
+        synchronized (entries) {
+            entries.put(key, es);
+        }
+    }
+
+    /**
+     * Change max size, evicting the least recently used entries if needed.
+     *
+     * @param maxSize is max number of cached signatures, 0 disables caching
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        synchronized (entries) {
+            while (entries.size() > maxSize)
+                entries.remove(entries.keySet().iterator().next());
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Remove all cached signatures.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return {@link Binder} with number of cached signatures, max size, hits, misses and hit rate in percents
+     */
+    public Binder getStats() {
+        long h = hits.sum();
+        long m = misses.sum();
+        return Binder.of(
+                "size", size(),
+                "maxSize", maxSize,
+                "hits", h,
+                "misses", m,
+                "hitRate", h + m > 0 ? h * 100 / (h + m) : 0
+        );
+    }
+}
@@ -70,6 +70,12 @@ public class TransactionPack implements BiSerializable {
     private Set<PublicKey> keysForPack = new HashSet<>();
     private Contract contract;
 
+    /**
+     * Contracts unpacked with this pack that have seal signatures still being verified. Is not null only while the pack
+     * is unpacking, see {@link Contract#setSignatureVerificationThreads(int)}.
+     */
+    private List<Contract> contractsToVerify = null;
+
     /**
      * Create a transaction pack and add a contract to it. See {@link TransactionPack#TransactionPack()} and {@link
      * #setContract(Contract)} for more information.
@@ -206,146 +212,184 @@ public class TransactionPack implements BiSerializable {
         subItems.put(subItem.getId(), subItem);
     }
 
+    /**
+     * Called by the contract being unpacked with this pack to postpone joining of its seal signatures checks until all
+     * contracts of the pack are unpacked.
+     *
+     * @param contract is {@link Contract} with pending signatures checks
+     *
+     * @return true if the pack will complete the checks, false if the contract should complete them itself
+     */
+    boolean deferSignatureVerification(Contract contract) {
+        if (contractsToVerify == null)
+            return false;
+        contractsToVerify.add(contract);
+        return true;
+    }
+
+    /**
+     * Join all collected seal signatures checks and stop collecting.
+     */
+    private void completeSignatureVerification() {
+        List<Contract> contracts = contractsToVerify;
+        contractsToVerify = null;
+        if (contracts != null)
+            Contract.completeSignatureVerification(contracts);
+    }
+
     @Override
     public void deserialize(Binder data, BiDeserializer deserializer) throws IOException {
 
         synchronized (this) {
-            // It is local quantiser that should throw exception
-            // if limit is got while deserializing TransactionPack.
-            Quantiser quantiser = new Quantiser();
-            quantiser.reset(Contract.getTestQuantaLimit());
-
-            // first of all extract public keys given with this transaction pack
-            List<Object> keysList = deserializer.deserializeCollection(data.getList("keys", new ArrayList<>()));
-
-            keysForPack = new HashSet<>();
-            if(keysList != null) {
-                for (Object x : keysList) {
-                    if (x instanceof Bytes)
-                        x = ((Bytes) x).toArray();
-                    if (x instanceof byte[]) {
-                        keysForPack.add(new PublicKey((byte[]) x));
-                    } else {
-                        throw new IllegalArgumentException("unsupported key object: " + x.getClass().getName());
-                    }
-                }
+            // signatures of all contracts in the pack are checked together, see completeSignatureVerification below
+            contractsToVerify = new ArrayList<>();
+            try {
+                deserializeContracts(data, deserializer);
+                completeSignatureVerification();
+            } finally {
+                // do not keep deferring checks if unpacking failed
+                contractsToVerify = null;
             }
+        }
+    }
 
-            // then extracn given referenced items
-            List<Bytes> foreignReferenceBytesList = deserializer.deserializeCollection(
-                    data.getList("referencedItems", new ArrayList<>())
-            );
-            if(foreignReferenceBytesList != null) {
-                for (Bytes b : foreignReferenceBytesList) {
-                    Contract frc = new Contract(b.toArray(), this);
-                    quantiser.addWorkCostFrom(frc.getQuantiser());
-                    referencedItems.put(frc.getId(), frc);
+    // unpack keys and contracts of the pack, seal signatures checks are collected to contractsToVerify meanwhile
+    private void deserializeContracts(Binder data, BiDeserializer deserializer) throws IOException {
+        // It is local quantiser that should throw exception
+        // if limit is got while deserializing TransactionPack.
+        Quantiser quantiser = new Quantiser();
+        quantiser.reset(Contract.getTestQuantaLimit());
+
+        // first of all extract public keys given with this transaction pack
+        List<Object> keysList = deserializer.deserializeCollection(data.getList("keys", new ArrayList<>()));
+
+        keysForPack = new HashSet<>();
+        if(keysList != null) {
+            for (Object x : keysList) {
+                if (x instanceof Bytes)
+                    x = ((Bytes) x).toArray();
+                if (x instanceof byte[]) {
+                    keysForPack.add(new PublicKey((byte[]) x));
+                } else {
+                    throw new IllegalArgumentException("unsupported key object: " + x.getClass().getName());
                 }
             }
+        }
 
+        // then extracn given referenced items
+        List<Bytes> foreignReferenceBytesList = deserializer.deserializeCollection(
+                data.getList("referencedItems", new ArrayList<>())
+        );
+        if(foreignReferenceBytesList != null) {
+            for (Bytes b : foreignReferenceBytesList) {
+                Contract frc = new Contract(b.toArray(), this);
+                quantiser.addWorkCostFrom(frc.getQuantiser());
+                referencedItems.put(frc.getId(), frc);
+            }
+        }
 
-            // then extract subItems
-            List<Bytes> subItemsBytesList = deserializer.deserializeCollection(
-                    data.getListOrThrow("subItems")
-            );
 
-            HashMap<ContractDependencies, Bytes> allContractsTrees = new HashMap<>();
-            List<HashId> allContractsHids = new ArrayList<>();
-            HashMap<ContractDependencies, Bytes> sortedSubItemsBytesList = new HashMap<>();
+        // then extract subItems
+        List<Bytes> subItemsBytesList = deserializer.deserializeCollection(
+                data.getListOrThrow("subItems")
+        );
 
-            if (subItemsBytesList != null) {
-                // First of all extract contracts dependencies from subItems
-                for (Bytes b : subItemsBytesList) {
-                    ContractDependencies ct = new ContractDependencies(b.toArray());
-                    allContractsTrees.put(ct, b);
-                    allContractsHids.add(ct.id);
-                }
+        HashMap<ContractDependencies, Bytes> allContractsTrees = new HashMap<>();
+        List<HashId> allContractsHids = new ArrayList<>();
+        HashMap<ContractDependencies, Bytes> sortedSubItemsBytesList = new HashMap<>();
 
-                // then recursively from ends of dependencies tree to top go throw it level by level
-                // and add items to subItems on the each level of tree's hierarchy
-                do {
-                    // first add contract from ends of trees, means without own subitems
-                    sortedSubItemsBytesList = new HashMap<>();
-                    List<ContractDependencies> removingContractDependencies = new ArrayList<>();
-                    for (ContractDependencies ct : allContractsTrees.keySet()) {
-                        if (ct.dependencies.size() == 0) {
-                            sortedSubItemsBytesList.put(ct, allContractsTrees.get(ct));
-                            removingContractDependencies.add(ct);
-                        }
-                    }
+        if (subItemsBytesList != null) {
+            // First of all extract contracts dependencies from subItems
+            for (Bytes b : subItemsBytesList) {
+                ContractDependencies ct = new ContractDependencies(b.toArray());
+                allContractsTrees.put(ct, b);
+                allContractsHids.add(ct.id);
+            }
 
-                    // remove found items from tree's list
-                    for (ContractDependencies ct : removingContractDependencies) {
-                        allContractsTrees.remove(ct);
+            // then recursively from ends of dependencies tree to top go throw it level by level
+            // and add items to subItems on the each level of tree's hierarchy
+            do {
+                // first add contract from ends of trees, means without own subitems
+                sortedSubItemsBytesList = new HashMap<>();
+                List<ContractDependencies> removingContractDependencies = new ArrayList<>();
+                for (ContractDependencies ct : allContractsTrees.keySet()) {
+                    if (ct.dependencies.size() == 0) {
+                        sortedSubItemsBytesList.put(ct, allContractsTrees.get(ct));
+                        removingContractDependencies.add(ct);
                     }
+                }
 
-                    // then add contract with already exist subitems in the subItems or will never find in the tree
-                    removingContractDependencies = new ArrayList<>();
-                    for (ContractDependencies ct : allContractsTrees.keySet()) {
-                        boolean allDependenciesSafe = true;
-                        for (HashId hid : ct.dependencies) {
-                            if (!subItems.containsKey(hid) && allContractsHids.contains(hid)) {
-                                allDependenciesSafe = false;
-                            }
-                        }
-                        if (allDependenciesSafe) {
-                            sortedSubItemsBytesList.put(ct, allContractsTrees.get(ct));
-                            removingContractDependencies.add(ct);
-                        }
-                    }
+                // remove found items from tree's list
+                for (ContractDependencies ct : removingContractDependencies) {
+                    allContractsTrees.remove(ct);
+                }
 
-                    // remove found items from tree's list
-                    for (ContractDependencies ct : removingContractDependencies) {
-                        allContractsTrees.remove(ct);
+                // then add contract with already exist subitems in the subItems or will never find in the tree
+                removingContractDependencies = new ArrayList<>();
+                for (ContractDependencies ct : allContractsTrees.keySet()) {
+                    boolean allDependenciesSafe = true;
+                    for (HashId hid : ct.dependencies) {
+                        if (!subItems.containsKey(hid) && allContractsHids.contains(hid)) {
+                            allDependenciesSafe = false;
+                        }
                     }
-
-                    // add found binaries on the hierarchy level to subItems
-                    for (ContractDependencies ct : sortedSubItemsBytesList.keySet()) {
-                        Bytes b = sortedSubItemsBytesList.get(ct);
-                        createNeededContractAndAddToSubItems(ct, b, quantiser);
+                    if (allDependenciesSafe) {
+                        sortedSubItemsBytesList.put(ct, allContractsTrees.get(ct));
+                        removingContractDependencies.add(ct);
                     }
+                }
 
-                    // then repeat until we can find hierarchy
-                } while (sortedSubItemsBytesList.size() != 0);
+                // remove found items from tree's list
+                for (ContractDependencies ct : removingContractDependencies) {
+                    allContractsTrees.remove(ct);
+                }
 
-                // finally add not found binaries on the hierarchy levels to subItems
-                for (ContractDependencies ct : allContractsTrees.keySet()) {
-                    Bytes b = allContractsTrees.get(ct);
+                // add found binaries on the hierarchy level to subItems
+                for (ContractDependencies ct : sortedSubItemsBytesList.keySet()) {
+                    Bytes b = sortedSubItemsBytesList.get(ct);
                     createNeededContractAndAddToSubItems(ct, b, quantiser);
                 }
+
+                // then repeat until we can find hierarchy
+            } while (sortedSubItemsBytesList.size() != 0);
+
+            // finally add not found binaries on the hierarchy levels to subItems
+            for (ContractDependencies ct : allContractsTrees.keySet()) {
+                Bytes b = allContractsTrees.get(ct);
+                createNeededContractAndAddToSubItems(ct, b, quantiser);
             }
+        }
 
-            byte[] bb = data.getBinaryOrThrow("contract");
+        byte[] bb = data.getBinaryOrThrow("contract");
 
-            // contract can be extended, so check it
-            String extendedType = data.getString("extended_type", null);
-            SmartContract.SmartContractType scType = null;
-            if(extendedType != null) {
-                try {
-                    scType = SmartContract.SmartContractType.valueOf(extendedType);
-                } catch (IllegalArgumentException e) {
-                }
+        // contract can be extended, so check it
+        String extendedType = data.getString("extended_type", null);
+        SmartContract.SmartContractType scType = null;
+        if(extendedType != null) {
+            try {
+                scType = SmartContract.SmartContractType.valueOf(extendedType);
+            } catch (IllegalArgumentException e) {
             }
-            // and if extended type of contract is allowed - create extended contrac, otherwise create simple contract
-            if(scType != null) {
-                switch(scType) {
-                    case DEFAULT_SMART_CONTRACT:
-                        contract = new SmartContract(bb, this);
-                        break;
-
-                    case N_SMART_CONTRACT:
-                        contract = new NSmartContract(bb, this);
-                        break;
-
-                    case SLOT1:
-                        contract = new SlotContract(bb, this);
-                        break;
-                }
-            } else {
-                contract = new Contract(bb, this);
+        }
+        // and if extended type of contract is allowed - create extended contrac, otherwise create simple contract
+        if(scType != null) {
+            switch(scType) {
+                case DEFAULT_SMART_CONTRACT:
+                    contract = new SmartContract(bb, this);
+                    break;
+
+                case N_SMART_CONTRACT:
+                    contract = new NSmartContract(bb, this);
+                    break;
+
+                case SLOT1:
+                    contract = new SlotContract(bb, this);
+                    break;
             }
-            quantiser.addWorkCostFrom(contract.getQuantiser());
+        } else {
+            contract = new Contract(bb, this);
         }
+        quantiser.addWorkCostFrom(contract.getQuantiser());
     }
 
     /**
@@ -450,7 +494,13 @@ public class TransactionPack implements BiSerializable {
         TransactionPack tp = new TransactionPack();
         tp.reconstructed = true;
         tp.packedBinary = packOrContractBytes;
-        tp.contract = new Contract(packOrContractBytes, tp);
+        tp.contractsToVerify = new ArrayList<>();
+        try {
+            tp.contract = new Contract(packOrContractBytes, tp);
+            tp.completeSignatureVerification();
+        } finally {
+            tp.contractsToVerify = null;
+        }
         return tp;
     }
 
@@ -12,11 +12,16 @@ import com.icodici.db.Db;
 import com.icodici.universa.Approvable;
 import com.icodici.universa.HashId;
 import com.icodici.universa.contract.services.ContractStorageSubscription;
+import com.icodici.universa.node2.Metrics;
 import com.icodici.universa.node2.NetConfig;
 import com.icodici.universa.node2.NodeInfo;
+import net.sergeych.tools.Binder;
 
 import java.time.Instant;
 import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -39,6 +44,22 @@ public interface Ledger {
      */
     StateRecord getRecord(HashId id);
 
+    /**
+     * Get records by their ids at once, implementations should use a single query for records that are not cached.
+     *
+     * @param ids to retrieve
+     * @return found records by their ids, ids that are not found are missing
+     */
+    default Map<HashId, StateRecord> getRecords(Collection<HashId> ids) {
+        Map<HashId, StateRecord> result = new HashMap<>();
+        for (HashId id : ids) {
+            StateRecord r = getRecord(id);
+            if (r != null)
+                result.put(id, r);
+        }
+        return result;
+    }
+
     /**
      * Create a record in {@link ItemState#LOCKED_FOR_CREATION} state locked by creatorRecordId. Does not check
      * anything, the business logic of it is in the {@link StateRecord}. Still, if a database logic prevents creation of
@@ -120,6 +141,20 @@ public interface Ledger {
      */
     void save(StateRecord stateRecord);
 
+    /**
+     * Save all records atomically: either all of them are saved, or none. Default implementation saves them one by one
+     * in a {@link #transaction(Callable)}.
+     *
+     * @param records are {@link StateRecord}s to save
+     */
+    default void saveAll(Collection<StateRecord> records) {
+        transaction(() -> {
+            for (StateRecord r : records)
+                save(r);
+            return null;
+        });
+    }
+
     /**
      * Refresh record.
      *
@@ -134,6 +169,32 @@ public interface Ledger {
         return -1;
     }
 
+    /**
+     * Get statistics of the {@link StateRecord} cache, if the ledger has one.
+     *
+     * @return {@link Binder} with cache counters, empty if there is no cache
+     */
+    default Binder getRecordsCacheStats() {
+        return new Binder();
+    }
+
+    /**
+     * Get statistics of the database connections pool, if the ledger has one.
+     *
+     * @return {@link Binder} with pool counters, empty if there is no pool
+     */
+    default Binder getDbPoolStats() {
+        return new Binder();
+    }
+
+    /**
+     * Report latencies of ledger operations to the metrics, if the ledger measures them.
+     *
+     * @param metrics is registry to report to
+     */
+    default void setMetrics(Metrics metrics) {
+    }
+
 //    /**
 //     * Return all records with given {@link ItemState}.
 //     *
@@ -155,6 +216,21 @@ public interface Ledger {
 
     boolean isTestnet(HashId itemId);
 
+    /**
+     * Check many items at once, like {@link #isTestnet(HashId)}.
+     *
+     * @param ids to check
+     * @return ids of test items among given ones
+     */
+    default Set<HashId> getTestnetIds(Collection<HashId> ids) {
+        Set<HashId> result = new HashSet<>();
+        for (HashId id : ids) {
+            if (isTestnet(id))
+                result.add(id);
+        }
+        return result;
+    }
+
     public static class Rollback extends Db.RollbackException {
     }
 
@@ -16,10 +16,11 @@ import com.icodici.universa.HashId;
 import com.icodici.universa.contract.Contract;
 import com.icodici.universa.contract.services.ContractStorageSubscription;
 import com.icodici.universa.contract.services.SlotContractStorageSubscription;
+import com.icodici.universa.node2.Metrics;
 import com.icodici.universa.node2.NetConfig;
 import com.icodici.universa.node2.NodeInfo;
+import net.sergeych.tools.Binder;
 
-import java.lang.ref.WeakReference;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -27,7 +28,7 @@ import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.concurrent.Callable;
+import java.util.concurrent.*;
 
 /**
  * The basic SQL-based ledger.
@@ -40,13 +41,30 @@ public class PostgresLedger implements Ledger {
 
     private final static int MAX_CONNECTIONS = 64;
 
+    /**
+     * Default max number of {@link StateRecord} instances kept in memory.
+     */
+    public final static int DEFAULT_RECORDS_CACHE_SIZE = 100_000;
+
+    /**
+     * Max number of records written by one group commit.
+     */
+    private final static int MAX_GROUP_COMMIT_SIZE = 256;
+
     private final DbPool dbPool;
 
     private boolean sqlite = false;
 
-    private Map<HashId, WeakReference<StateRecord>> cachedRecords = new WeakHashMap<>();
-    private Map<Long, WeakReference<StateRecord>> cachedRecordsById = new WeakHashMap<>();
-    private boolean useCache = true;
+    private final StateRecordCache cachedRecords = new StateRecordCache(DEFAULT_RECORDS_CACHE_SIZE);
+    private volatile boolean useCache = true;
+
+    // connection of the transaction the current thread runs in, if any
+    private final ThreadLocal<PooledDb> transactionDb = new ThreadLocal<>();
+    private GroupCommitter groupCommitter = null;
+
+    private volatile Metrics.Histogram getRecordTime = new Metrics().histogram("ledger_get_record_us");
+    private volatile Metrics.Histogram getRecordsTime = new Metrics().histogram("ledger_get_records_us");
+    private volatile Metrics.Histogram saveTime = new Metrics().histogram("ledger_save_us");
 
     public PostgresLedger(String connectionString, Properties properties) throws SQLException {
         dbPool = new DbPool(connectionString, properties, MAX_CONNECTIONS);
@@ -85,6 +103,7 @@ public class PostgresLedger implements Ledger {
 
     @Override
     public StateRecord getRecord(HashId itemId) {
+        long startedAt = System.nanoTime();
         StateRecord sr = protect(() -> {
             StateRecord cached = getFromCache(itemId);
             if (cached != null)
@@ -101,6 +120,7 @@ public class PostgresLedger implements Ledger {
             }
             return null;
         });
+        getRecordTime.recordTime(startedAt);
         if (sr != null && sr.isExpired()) {
             sr.destroy();
             return null;
@@ -108,49 +128,107 @@ public class PostgresLedger implements Ledger {
         return sr;
     }
 
-    private StateRecord getFromCache(HashId itemId) {
-        if (useCache) {
-            synchronized (cachedRecords) {
-                WeakReference<StateRecord> ref = cachedRecords.get(itemId);
-                if (ref == null)
-                    return null;
-                StateRecord r = ref.get();
-                if (r == null) {
-                    cachedRecords.remove(itemId);
-                    return null;
+    @Override
+    public Map<HashId, StateRecord> getRecords(Collection<HashId> ids) {
+        long startedAt = System.nanoTime();
+        Map<HashId, StateRecord> result = new HashMap<>();
+        List<HashId> missing = new ArrayList<>();
+        for (HashId id : ids) {
+            StateRecord cached = getFromCache(id);
+            if (cached != null)
+                result.put(id, cached);
+            else
+                missing.add(id);
+        }
+        if (!missing.isEmpty()) {
+            protect(() -> {
+                try (PooledDb db = dbPool.db()) {
+                    try (PreparedStatement statement = db.statement("SELECT * FROM ledger WHERE hash = ANY(?::bytea[])")) {
+                        statement.setArray(1, digestsArray(statement, missing));
+                        try (ResultSet rs = statement.executeQuery()) {
+                            while (rs.next()) {
+                                StateRecord record = new StateRecord(this, rs);
+                                putToCache(record);
+                                result.put(record.getId(), record);
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    throw e;
                 }
-                return r;
-            }
-        } else
-            return null;
+                return null;
+            });
+        }
+        getRecordsTime.recordTime(startedAt);
+        result.values().removeIf(r -> {
+            if (!r.isExpired())
+                return false;
+            r.destroy();
+            return true;
+        });
+        return result;
+    }
+
+    // hashes as an array parameter for "= ANY(?::bytea[])", the driver can't make bytea arrays so they go as hex text
+    private static java.sql.Array digestsArray(PreparedStatement statement, Collection<HashId> ids) throws SQLException {
+        String[] hexes = new String[ids.size()];
+        int i = 0;
+        for (HashId id : ids) {
+            byte[] digest = id.getDigest();
+            StringBuilder sb = new StringBuilder(2 + digest.length * 2).append("\\x");
+            for (byte b : digest)
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            hexes[i++] = sb.toString();
+        }
+        return statement.getConnection().createArrayOf("text", hexes);
+    }
+
+    @Override
+    public void setMetrics(Metrics metrics) {
+        getRecordTime = metrics.histogram("ledger_get_record_us");
+        getRecordsTime = metrics.histogram("ledger_get_records_us");
+        saveTime = metrics.histogram("ledger_save_us");
+    }
+
+    private StateRecord getFromCache(HashId itemId) {
+        return useCache ? cachedRecords.get(itemId) : null;
     }
 
     private StateRecord getFromCacheById(long recordId) {
-        if (useCache) {
-            synchronized (cachedRecordsById) {
-                WeakReference<StateRecord> ref = cachedRecordsById.get(recordId);
-                if (ref == null)
-                    return null;
-                StateRecord r = ref.get();
-                if (r == null) {
-                    cachedRecordsById.remove(recordId);
-                    return null;
-                }
-                return r;
-            }
-        } else
-            return null;
+        return useCache ? cachedRecords.getById(recordId) : null;
     }
 
     private void putToCache(StateRecord r) {
-        if (useCache) {
-            synchronized (cachedRecords) {
-                cachedRecords.put(r.getId(), new WeakReference<StateRecord>(r));
-            }
-            synchronized (cachedRecordsById) {
-                cachedRecordsById.put(r.getRecordId(), new WeakReference<StateRecord>(r));
-            }
-        }
+        if (useCache)
+            cachedRecords.put(r);
+    }
+
+    /**
+     * Set max number of {@link StateRecord} instances kept in memory, {@link #DEFAULT_RECORDS_CACHE_SIZE} by default.
+     * Records used elsewhere are shared regardless of this limit.
+     *
+     * @param size is max number of cached records
+     */
+    public void setRecordsCacheSize(int size) {
+        cachedRecords.setMaxEntries(size);
+    }
+
+    @Override
+    public Binder getRecordsCacheStats() {
+        return cachedRecords.getStats();
+    }
+
+    /**
+     * @return pool of connections to the ledger database, could be used to tune it
+     */
+    public DbPool getDbPool() {
+        return dbPool;
+    }
+
+    @Override
+    public Binder getDbPoolStats() {
+        return dbPool.getStats();
     }
 
 
@@ -295,6 +373,7 @@ public class PostgresLedger implements Ledger {
 
     @Override
     public void close() {
+        setGroupCommit(false);
         try {
             dbPool.close();
         } catch (Exception e) {
@@ -355,11 +434,15 @@ public class PostgresLedger implements Ledger {
         return protect(() -> {
             // as Rollback exception is instanceof Db.Rollback, it will work as supposed by default:
             // rethrow unchecked exceotions and return null on rollback.
-            try (Db db = dbPool.db()) {
+            PooledDb outer = transactionDb.get();
+            try (PooledDb db = dbPool.db()) {
+                transactionDb.set(db);
                 return db.transaction(() -> callable.call());
             } catch (Exception e) {
                 e.printStackTrace();
                 throw e;
+            } finally {
+                transactionDb.set(outer);
             }
         });
     }
@@ -387,12 +470,7 @@ public class PostgresLedger implements Ledger {
                 d.update("DELETE FROM ledger WHERE id = ?", recordId);
                 return null;
             });
-            synchronized (cachedRecords) {
-                cachedRecords.remove(record.getId());
-            }
-            synchronized (cachedRecordsById) {
-                cachedRecordsById.remove(record.getRecordId());
-            }
+            cachedRecords.remove(record);
             return null;
         });
     }
@@ -430,47 +508,60 @@ public class PostgresLedger implements Ledger {
     }
 
 
+    @Override
+    public Set<HashId> getTestnetIds(Collection<HashId> ids) {
+        Set<HashId> result = new HashSet<>();
+        if (ids.isEmpty())
+            return result;
+        return protect(() -> {
+            try (PooledDb db = dbPool.db()) {
+                try (PreparedStatement statement = db.statement("select hash from ledger_testrecords where hash = ANY(?::bytea[])")) {
+                    statement.setArray(1, digestsArray(statement, ids));
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next())
+                            result.add(HashId.withDigest(rs.getBytes(1)));
+                    }
+                }
+            }
+            return result;
+        });
+    }
+
+    private static final String UPDATE_RECORD_SQL = "update ledger set state=?, expires_at=?, locked_by_id=? where id=?";
+
     @Override
     public void save(StateRecord stateRecord) {
+        long startedAt = System.nanoTime();
+        attach(stateRecord);
+        GroupCommitter committer = groupCommitter;
+        // writes of a transaction should not leave it
+        if (committer != null && transactionDb.get() == null)
+            committer.save(stateRecord);
+        else
+            saveNow(stateRecord);
+        saveTime.recordTime(startedAt);
+    }
+
+    private void attach(StateRecord stateRecord) {
         if (stateRecord.getLedger() == null) {
             stateRecord.setLedger(this);
         } else if (stateRecord.getLedger() != this)
             throw new IllegalStateException("can't save with a different ledger (make a copy!)");
+    }
 
-        // TODO: probably, it should take a PooledDb as an argument and reuse it
-        try (PooledDb db = dbPool.db()) {
-            if (stateRecord.getRecordId() == 0) {
-                try (
-                        PreparedStatement statement =
-                                db.statementReturningKeys(
-                                        "insert into ledger(hash,state,created_at, expires_at, locked_by_id) values(?,?,?,?,?);"
-                                )
-                ) {
-                    statement.setBytes(1, stateRecord.getId().getDigest());
-                    statement.setInt(2, stateRecord.getState().ordinal());
-                    statement.setLong(3, StateRecord.unixTime(stateRecord.getCreatedAt()));
-                    statement.setLong(4, StateRecord.unixTime(stateRecord.getExpiresAt()));
-                    statement.setLong(5, stateRecord.getLockedByRecordId());
-                    db.updateWithStatement(statement);
-                    try (ResultSet keys = statement.getGeneratedKeys()) {
-                        if (!keys.next())
-                            throw new RuntimeException("generated keys are not supported");
-                        long id = keys.getLong(1);
-                        stateRecord.setRecordId(id);
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    throw e;
-                }
-                putToCache(stateRecord);
+    private void saveNow(StateRecord stateRecord) {
+        try {
+            // inside a transaction we should write with its connection and should not return it to the pool
+            PooledDb outer = transactionDb.get();
+            if (outer != null) {
+                writeRecord(outer, stateRecord);
             } else {
-                db.update("update ledger set state=?, expires_at=?, locked_by_id=? where id=?",
-                        stateRecord.getState().ordinal(),
-                        StateRecord.unixTime(stateRecord.getExpiresAt()),
-                        stateRecord.getLockedByRecordId(),
-                        stateRecord.getRecordId()
-                );
+                try (PooledDb db = dbPool.db()) {
+                    writeRecord(db, stateRecord);
+                }
             }
+            // saved instance is the actual one now, other cached copy would be stale
+            putToCache(stateRecord);
         } catch (SQLException se) {
             se.printStackTrace();
             throw new Failure("StateRecord save failed:" + se);
@@ -479,6 +570,223 @@ public class PostgresLedger implements Ledger {
         }
     }
 
+    private void writeRecord(PooledDb db, StateRecord stateRecord) throws SQLException {
+        if (stateRecord.getRecordId() == 0) {
+            insertRecord(db, stateRecord);
+        } else {
+            db.update(UPDATE_RECORD_SQL,
+                    stateRecord.getState().ordinal(),
+                    StateRecord.unixTime(stateRecord.getExpiresAt()),
+                    stateRecord.getLockedByRecordId(),
+                    stateRecord.getRecordId()
+            );
+        }
+    }
+
+    private void insertRecord(PooledDb db, StateRecord stateRecord) throws SQLException {
+        try (
+                PreparedStatement statement =
+                        db.statementReturningKeys(
+                                "insert into ledger(hash,state,created_at, expires_at, locked_by_id) values(?,?,?,?,?);"
+                        )
+        ) {
+            statement.setBytes(1, stateRecord.getId().getDigest());
+            statement.setInt(2, stateRecord.getState().ordinal());
+            statement.setLong(3, StateRecord.unixTime(stateRecord.getCreatedAt()));
+            statement.setLong(4, StateRecord.unixTime(stateRecord.getExpiresAt()));
+            statement.setLong(5, stateRecord.getLockedByRecordId());
+            db.updateWithStatement(statement);
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                if (!keys.next())
+                    throw new RuntimeException("generated keys are not supported");
+                long id = keys.getLong(1);
+                stateRecord.setRecordId(id);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw e;
+        }
+    }
+
+    /**
+     * Save all records in one transaction. New records are inserted one by one to get their ids, existing ones are
+     * updated with one batched statement. If called inside {@link #transaction(Callable)}, records are written as the
+     * part of it.
+     *
+     * @param records are {@link StateRecord}s to save
+     */
+    @Override
+    public void saveAll(Collection<StateRecord> records) {
+        if (records.isEmpty())
+            return;
+        for (StateRecord r : records)
+            attach(r);
+
+        List<StateRecord> inserted = new ArrayList<>();
+        try {
+            PooledDb outer = transactionDb.get();
+            if (outer != null) {
+                writeRecords(outer, records, inserted);
+            } else {
+                try (PooledDb db = dbPool.db()) {
+                    db.transaction(() -> {
+                        writeRecords(db, records, inserted);
+                        return null;
+                    });
+                }
+            }
+        } catch (Exception e) {
+            // inserts are rolled back, so are the ids we got
+            for (StateRecord r : inserted)
+                r.setRecordId(0);
+            e.printStackTrace();
+            throw new Failure("StateRecords save failed: " + e);
+        }
+        for (StateRecord r : records)
+            putToCache(r);
+    }
+
+    private void writeRecords(PooledDb db, Collection<StateRecord> records, List<StateRecord> inserted) throws SQLException {
+        List<StateRecord> updated = new ArrayList<>();
+        for (StateRecord r : records) {
+            if (r.getRecordId() == 0) {
+                insertRecord(db, r);
+                inserted.add(r);
+            } else {
+                updated.add(r);
+            }
+        }
+        if (updated.isEmpty())
+            return;
+        try (PreparedStatement statement = db.statement(UPDATE_RECORD_SQL)) {
+            for (StateRecord r : updated) {
+                statement.setInt(1, r.getState().ordinal());
+                statement.setLong(2, StateRecord.unixTime(r.getExpiresAt()));
+                statement.setLong(3, r.getLockedByRecordId());
+                statement.setLong(4, r.getRecordId());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Enable or disable group commit. When enabled, {@link #save(StateRecord)} calls made outside of {@link
+     * #transaction(Callable)} are passed to the committer thread, which writes all records that are waiting at the
+     * moment with {@link #saveAll(Collection)}, so concurrent saves share one transaction and one fsync. The calls
+     * still return only after their records are committed. Disabled by default.
+     *
+     * @param enable is true to enable group commit
+     */
+    public synchronized void setGroupCommit(boolean enable) {
+        if (enable && groupCommitter == null) {
+            groupCommitter = new GroupCommitter();
+        } else if (!enable && groupCommitter != null) {
+            GroupCommitter committer = groupCommitter;
+            groupCommitter = null;
+            committer.shutdown();
+        }
+    }
+
+    public boolean isGroupCommit() {
+        return groupCommitter != null;
+    }
+
+    /**
+     * Merges concurrent {@link #save(StateRecord)} calls into {@link #saveAll(Collection)} ones.
+     */
+    private class GroupCommitter implements Runnable {
+
+        private final LinkedBlockingQueue<PendingSave> queue = new LinkedBlockingQueue<>();
+        private final Thread thread;
+        private volatile boolean isRunning = true;
+
+        private GroupCommitter() {
+            thread = new Thread(this);
+            thread.setName("ledger-group-commit");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void save(StateRecord record) {
+            PendingSave pending = new PendingSave(record);
+            queue.add(pending);
+            // committer could stop before it takes our record
+            if (!isRunning && queue.remove(pending)) {
+                saveNow(record);
+                return;
+            }
+            try {
+                pending.done.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Failure)
+                    throw (Failure) e.getCause();
+                throw new Failure("StateRecord save failed: " + e.getCause(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new Failure("StateRecord save interrupted");
+            }
+        }
+
+        private void shutdown() {
+            isRunning = false;
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            List<PendingSave> batch = new ArrayList<>();
+            while (isRunning || !queue.isEmpty()) {
+                try {
+                    PendingSave first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null)
+                        continue;
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_GROUP_COMMIT_SIZE - 1);
+                    commit(batch);
+                } catch (InterruptedException e) {
+                    break;
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        private void commit(List<PendingSave> batch) {
+            List<StateRecord> records = new ArrayList<>(batch.size());
+            for (PendingSave pending : batch)
+                records.add(pending.record);
+            try {
+                saveAll(records);
+                for (PendingSave pending : batch)
+                    pending.done.complete(null);
+            } catch (Exception e) {
+                // one bad record should not fail others, so we save them separately to find out
+                for (PendingSave pending : batch) {
+                    try {
+                        saveNow(pending.record);
+                        pending.done.complete(null);
+                    } catch (Exception se) {
+                        pending.done.completeExceptionally(se);
+                    }
+                }
+            }
+        }
+    }
+
+    private static class PendingSave {
+        private final StateRecord record;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private PendingSave(StateRecord record) {
+            this.record = record;
+        }
+    }
+
 
     @Override
     public void reload(StateRecord stateRecord) throws StateRecord.NotFoundException {
@@ -489,9 +797,12 @@ public class PostgresLedger implements Ledger {
                             stateRecord.getId().getDigest()
                     );
             ) {
-                if (rs == null)
+                if (rs == null) {
+                    cachedRecords.remove(stateRecord);
                     throw new StateRecord.NotFoundException("record not found");
+                }
                 stateRecord.initFrom(rs);
+                putToCache(stateRecord);
             } catch (Exception e) {
                 e.printStackTrace();
                 throw e;
@@ -513,7 +824,6 @@ public class PostgresLedger implements Ledger {
         } else {
             this.useCache = false;
             cachedRecords.clear();
-            cachedRecordsById.clear();
         }
     }
 
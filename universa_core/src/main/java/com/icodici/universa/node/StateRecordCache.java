@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node;
+
+import com.icodici.universa.HashId;
+import net.sergeych.tools.Binder;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent cache of {@link StateRecord} instances indexed both by {@link HashId} and by record id.
+ * <p>
+ * Up to maxEntries recently used records are kept resident, that is strongly referenced, so hot records survive
+ * garbage collections. Resident records are evicted in approximate LRU order (second chance clock): a record that was
+ * got since the last pass is moved to the tail instead of being evicted. Evicted records stay indexed while something
+ * else references them, so all users of a record still share the same instance, and are dropped from the indexes
+ * once collected.
+ * <p>
+ * All operations are lock free. Hits, misses, evictions, collected records and races between concurrent puts of the
+ * same record are counted and reported by {@link #getStats()}.
+ */
+public class StateRecordCache {
+
+    private final ConcurrentHashMap<HashId, Entry> byHash = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Entry> byId = new ConcurrentHashMap<>();
+
+    private final ConcurrentLinkedQueue<Entry> clock = new ConcurrentLinkedQueue<>();
+    // length of the clock, including entries unlinked or released since they were queued
+    private final AtomicInteger clockLength = new AtomicInteger();
+    private final AtomicBoolean purging = new AtomicBoolean(false);
+    private final AtomicInteger residentCount = new AtomicInteger();
+    private volatile int maxEntries;
+
+    private final ReferenceQueue<StateRecord> collectedQueue = new ReferenceQueue<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong collected = new AtomicLong();
+    private final AtomicLong races = new AtomicLong();
+
+    /**
+     * Create cache.
+     *
+     * @param maxEntries is max number of resident records
+     */
+    public StateRecordCache(int maxEntries) {
+        setMaxEntries(maxEntries);
+    }
+
+    /**
+     * Change max number of resident records. Extra records are evicted on the next put.
+     *
+     * @param maxEntries is max number of resident records
+     */
+    public void setMaxEntries(int maxEntries) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries should be positive");
+        this.maxEntries = maxEntries;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Get cached record by its item id.
+     *
+     * @param itemId is {@link HashId} of the item
+     *
+     * @return record or null
+     */
+    public StateRecord get(HashId itemId) {
+        return hit(byHash.get(itemId));
+    }
+
+    /**
+     * Get cached record by its record id.
+     *
+     * @param recordId is record id in the ledger
+     *
+     * @return record or null
+     */
+    public StateRecord getById(long recordId) {
+        return hit(byId.get(recordId));
+    }
+
+    /**
+     * Put the record replacing any other record with the same item id. Should be called each time the record is read
+     * from or written to the ledger, so cached instance is never older than ledger's row.
+     *
+     * @param record to put
+     */
+    public void put(StateRecord record) {
+        HashId itemId = record.getId();
+        if (itemId == null)
+            return;
+        expungeCollected();
+
+        Entry current = byHash.get(itemId);
+        if (current != null && current.get() == record && current.recordId == record.getRecordId()) {
+            makeResident(current, record);
+            return;
+        }
+
+        Entry entry = new Entry(record, collectedQueue);
+        Entry old = byHash.put(itemId, entry);
+        if (old != null)
+            unlink(old);
+        if (entry.recordId != 0) {
+            byId.put(entry.recordId, entry);
+            // other thread could replace the entry meanwhile, then it is its record that should be indexed
+            if (byHash.get(itemId) != entry) {
+                byId.remove(entry.recordId, entry);
+                races.incrementAndGet();
+                return;
+            }
+        }
+        makeResident(entry, record);
+    }
+
+    /**
+     * Remove record with the same item id and record id, if any.
+     *
+     * @param record to remove
+     */
+    public void remove(StateRecord record) {
+        if (record.getId() != null) {
+            Entry entry = byHash.remove(record.getId());
+            if (entry != null)
+                unlink(entry);
+        }
+        if (record.getRecordId() != 0) {
+            Entry entry = byId.remove(record.getRecordId());
+            if (entry != null)
+                unlink(entry);
+        }
+    }
+
+    public void clear() {
+        byHash.clear();
+        byId.clear();
+        Entry entry;
+        while ((entry = pollClock()) != null)
+            release(entry);
+    }
+
+    /**
+     * @return number of resident records
+     */
+    public int size() {
+        return residentCount.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getRaces() {
+        return races.get();
+    }
+
+    /**
+     * @return {@link Binder} with size, indexed records count, clock length, hits, misses, evictions, collected records
+     * and races
+     */
+    public Binder getStats() {
+        return Binder.of(
+                "size", residentCount.get(),
+                "maxSize", maxEntries,
+                "indexed", byHash.size(),
+                "clock", clockLength.get(),
+                "hits", hits.get(),
+                "misses", misses.get(),
+                "evictions", evictions.get(),
+                "collected", collected.get(),
+                "races", races.get()
+        );
+    }
+
+    private StateRecord hit(Entry entry) {
+        StateRecord record = entry != null ? entry.get() : null;
+        if (record == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        entry.accessed = true;
+        makeResident(entry, record);
+        return record;
+    }
+
+    private void makeResident(Entry entry, StateRecord record) {
+        if (entry.resident.compareAndSet(false, true)) {
+            entry.strong = record;
+            addToClock(entry);
+            if (residentCount.incrementAndGet() > maxEntries)
+                evict();
+            else if (clockLength.get() > 2 * maxEntries)
+                purgeClock();
+        }
+    }
+
+    private void evict() {
+        // each entry gets at most one second chance per call, so the loop is bounded
+        int budget = 2 * (residentCount.get() + 1);
+        while (residentCount.get() > maxEntries && budget-- > 0) {
+            Entry entry = pollClock();
+            if (entry == null)
+                break;
+            if (!entry.resident.get())
+                continue;
+            if (entry.accessed) {
+                entry.accessed = false;
+                addToClock(entry);
+                continue;
+            }
+            if (release(entry))
+                evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drop entries that are not resident anymore from the clock. Unlinked entries are not searched in the queue when
+     * they are removed, so below max size, when nothing is evicted, they are dropped here once there are as many of
+     * them as the resident ones. Resident entries keep their order.
+     */
+    private void purgeClock() {
+        if (!purging.compareAndSet(false, true))
+            return;
+        try {
+            // an entry unlinked and then made resident again by a concurrent get could be queued twice
+            Set<Entry> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int n = clockLength.get(); n > 0; n--) {
+                Entry entry = pollClock();
+                if (entry == null)
+                    break;
+                if (entry.resident.get() && kept.add(entry))
+                    addToClock(entry);
+            }
+        } finally {
+            purging.set(false);
+        }
+    }
+
+    private void addToClock(Entry entry) {
+        clock.add(entry);
+        clockLength.incrementAndGet();
+    }
+
+    private Entry pollClock() {
+        Entry entry = clock.poll();
+        if (entry != null)
+            clockLength.decrementAndGet();
+        return entry;
+    }
+
+    private boolean release(Entry entry) {
+        if (entry.resident.compareAndSet(true, false)) {
+            entry.strong = null;
+            residentCount.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private void unlink(Entry entry) {
+        byHash.remove(entry.itemId, entry);
+        if (entry.recordId != 0)
+            byId.remove(entry.recordId, entry);
+        release(entry);
+    }
+
+    private void expungeCollected() {
+        Reference<? extends StateRecord> ref;
+        while ((ref = collectedQueue.poll()) != null) {
+            Entry entry = (Entry) ref;
+            byHash.remove(entry.itemId, entry);
+            if (entry.recordId != 0)
+                byId.remove(entry.recordId, entry);
+            collected.incrementAndGet();
+        }
+    }
+
+    private static final class Entry extends WeakReference<StateRecord> {
+        private final HashId itemId;
+        private final long recordId;
+        private final AtomicBoolean resident = new AtomicBoolean(false);
+        private volatile StateRecord strong;
+        private volatile boolean accessed;
+
+        private Entry(StateRecord record, ReferenceQueue<StateRecord> queue) {
+            super(record, queue);
+            itemId = record.getId();
+            recordId = record.getRecordId();
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2;
+
+import net.sergeych.tools.Binder;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits number of client registrations processed by the node at once.
+ * <p>
+ * Each registration takes a {@link Ticket} with {@link #admit(Priority)} and releases it when processed. While the
+ * limit is reached, new registrations wait in a queue ordered by {@link Priority} for up to maxWait, and are rejected
+ * with {@link OverloadedException} if they can't be admitted in time or the queue is full. A full queue drops its
+ * lowest priority waiter in favor of a higher priority one.
+ * <p>
+ * The limit adapts to the measured processing time, like the gradient limit of TCP Vegas: while the recent time is
+ * close to the base one, measured without load, the limit grows by about its square root per registration, and when
+ * the node gets notably slower the limit shrinks in proportion, down to {@link #MIN_LIMIT}.
+ */
+public class AdmissionController {
+
+    /**
+     * Registrations of higher priority go first, in the order of declaration.
+     */
+    public enum Priority {
+        PAID,
+        FREE
+    }
+
+    static public final int MIN_LIMIT = 8;
+
+    static private final Duration MIN_RETRY_AFTER = Duration.ofSeconds(1);
+    // weights of the new sample in the recent average and in the base one, which follows faster times quickly and
+    // slower ones very slowly, so that sustained overload doesn't become the new base
+    static private final double SHORT_WEIGHT = 0.1;
+    static private final double BASE_WEIGHT_UP = 0.001;
+    static private final double BASE_WEIGHT_DOWN = 0.1;
+    static private final double SMOOTHING = 0.2;
+    // recent time could be that much longer than the base one without reducing the limit, to ignore the noise
+    static private final double TOLERANCE = 1.5;
+
+    private final int maxLimit;
+    private final int maxQueue;
+    private final Duration maxWait;
+
+    private double limit;
+    private int inFlight = 0;
+    private double shortLatency = 0;
+    private double baseLatency = 0;
+    private final ArrayDeque<Waiter>[] queues;
+    private int queued = 0;
+
+    private long admitted = 0;
+    private long rejected = 0;
+
+    /**
+     * Thrown if registration can't be admitted because the node is overloaded.
+     */
+    static public class OverloadedException extends Exception {
+        private final Duration retryAfter;
+
+        public OverloadedException(Duration retryAfter) {
+            super("node is overloaded, please retry after " + retryAfter.toMillis() + "ms");
+            this.retryAfter = retryAfter;
+        }
+
+        /**
+         * @return time after which the client could try again
+         */
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+    }
+
+    /**
+     * Permission to process a registration, should be released once it is processed.
+     */
+    public class Ticket {
+        private final long admittedAt = System.nanoTime();
+        private final AtomicBoolean isReleased = new AtomicBoolean(false);
+
+        private Ticket() {
+        }
+
+        /**
+         * Release the ticket, counting time since its admission. Releasing it again does nothing.
+         */
+        public void release() {
+            if (isReleased.compareAndSet(false, true))
+                AdmissionController.this.release(System.nanoTime() - admittedAt);
+        }
+    }
+
+    private class Waiter {
+        private Ticket ticket;
+        private boolean isDropped = false;
+    }
+
+    /**
+     * Create controller.
+     *
+     * @param maxLimit is max number of registrations processed at once, also max number of waiting ones
+     * @param maxWait  is max time a registration waits for admission
+     */
+    @SuppressWarnings("unchecked")
+    public AdmissionController(int maxLimit, Duration maxWait) {
+        if (maxLimit < MIN_LIMIT)
+            throw new IllegalArgumentException("maxLimit should be at least " + MIN_LIMIT);
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxLimit;
+        this.maxWait = maxWait;
+        limit = Math.max(MIN_LIMIT, maxLimit / 10);
+        queues = new ArrayDeque[Priority.values().length];
+        for (int i = 0; i < queues.length; i++)
+            queues[i] = new ArrayDeque<>();
+    }
+
+    /**
+     * Admit the registration, waiting for a free slot up to max wait time.
+     *
+     * @param priority of the registration
+     *
+     * @return ticket to release when the registration is processed
+     *
+     * @throws OverloadedException  if the registration is rejected
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Ticket admit(Priority priority) throws OverloadedException, InterruptedException {
+        return admit(priority, maxWait);
+    }
+
+    /**
+     * Admit the registration if there is a free slot, without waiting.
+     *
+     * @param priority of the registration
+     *
+     * @return ticket to release when the registration is processed
+     *
+     * @throws OverloadedException if the registration is rejected
+     */
+    public Ticket tryAdmit(Priority priority) throws OverloadedException {
+        try {
+            return admit(priority, Duration.ZERO);
+        } catch (InterruptedException e) {
+            // does not wait
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private synchronized Ticket admit(Priority priority, Duration wait) throws OverloadedException, InterruptedException {
+        if (inFlight < limit && !hasWaitersUpTo(priority.ordinal())) {
+            inFlight++;
+            admitted++;
+            return new Ticket();
+        }
+        if (wait.isZero() || !makeRoomFor(priority.ordinal()))
+            throw reject();
+
+        Waiter waiter = new Waiter();
+        queues[priority.ordinal()].addLast(waiter);
+        queued++;
+        long deadline = System.nanoTime() + wait.toNanos();
+        try {
+            while (waiter.ticket == null && !waiter.isDropped) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0)
+                    break;
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+        } catch (InterruptedException e) {
+            if (waiter.ticket != null)
+                waiter.ticket.release();
+            throw e;
+        } finally {
+            if (waiter.ticket == null && !waiter.isDropped && queues[priority.ordinal()].remove(waiter))
+                queued--;
+        }
+        if (waiter.ticket == null)
+            throw reject();
+        return waiter.ticket;
+    }
+
+    private boolean hasWaitersUpTo(int priority) {
+        for (int i = 0; i <= priority; i++) {
+            if (!queues[i].isEmpty())
+                return true;
+        }
+        return false;
+    }
+
+    // drop the newest waiter of the lowest priority, if it is lower than the given one
+    private boolean makeRoomFor(int priority) {
+        if (queued < maxQueue)
+            return true;
+        for (int i = queues.length - 1; i > priority; i--) {
+            Waiter w = queues[i].pollLast();
+            if (w != null) {
+                queued--;
+                w.isDropped = true;
+                notifyAll();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private OverloadedException reject() {
+        rejected++;
+        long millis = Math.max(MIN_RETRY_AFTER.toMillis(), (long) (shortLatency / 1e6));
+        return new OverloadedException(Duration.ofMillis(millis));
+    }
+
+    private synchronized void release(long latencyNanos) {
+        updateLimit(latencyNanos);
+        inFlight--;
+        boolean granted = false;
+        for (ArrayDeque<Waiter> queue : queues) {
+            while (inFlight < limit && !queue.isEmpty()) {
+                Waiter w = queue.pollFirst();
+                queued--;
+                inFlight++;
+                admitted++;
+                w.ticket = new Ticket();
+                granted = true;
+            }
+        }
+        if (granted)
+            notifyAll();
+    }
+
+    private void updateLimit(long latency) {
+        if (shortLatency == 0) {
+            shortLatency = latency;
+            baseLatency = latency;
+            return;
+        }
+        shortLatency += (latency - shortLatency) * SHORT_WEIGHT;
+        baseLatency += (shortLatency - baseLatency) * (shortLatency < baseLatency ? BASE_WEIGHT_DOWN : BASE_WEIGHT_UP);
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * baseLatency / shortLatency));
+        double newLimit = limit * gradient;
+        // grow only if the node keeps up and the limit is used, otherwise latency tells nothing about it
+        if (gradient >= 1.0 && inFlight + queued >= limit / 2)
+            newLimit += Math.sqrt(limit);
+        limit = Math.max(MIN_LIMIT, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+
+    /**
+     * @return current limit of registrations processed at once
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return number of registrations being processed
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return {@link Binder} with current limit, registrations in flight and waiting, numbers of admitted and rejected
+     * registrations, recent and base processing time in milliseconds
+     */
+    public synchronized Binder getStats() {
+        return Binder.of(
+                "limit", (int) limit,
+                "maxLimit", maxLimit,
+                "inFlight", inFlight,
+                "queued", queued,
+                "admitted", admitted,
+                "rejected", rejected,
+                "latency", (long) (shortLatency / 1e6),
+                "baseLatency", (long) (baseLatency / 1e6)
+        );
+    }
+}
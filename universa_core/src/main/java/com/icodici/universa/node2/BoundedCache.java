@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2;
+
+import net.sergeych.tools.Binder;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+/**
+ * Cache with hard limits on the number of entries and on their approximate size in bytes, and with expiration of
+ * entries after maxAge since they were put.
+ * <p>
+ * Eviction uses segmented LRU: new entries get to the probation segment, entries that are got again are promoted to
+ * the protected one, which takes up to 80% of the capacity. Victims are taken from the probation segment first, so a
+ * burst of items seen only once can not wash out frequently used ones. Expired entries are removed by the shared
+ * cleaner thread and are never returned by {@link #get(Object)}.
+ * <p>
+ * Hits, misses, evictions and expirations are counted and reported by {@link #getStats()}.
+ *
+ * @param <K> is type of keys
+ * @param <V> is type of values
+ */
+public class BoundedCache<K, V> {
+
+    /**
+     * Share of the capacity reserved for the protected segment.
+     */
+    static private final double PROTECTED_SHARE = 0.8;
+
+    /**
+     * Max time between expired entries cleanups.
+     */
+    static private final Duration MAX_CLEANUP_INTERVAL = Duration.ofSeconds(5);
+
+    static private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r);
+        thread.setName("cache-cleaner");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final Duration maxAge;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final ToIntFunction<V> weigher;
+
+    // both maps are kept in LRU order, first entry is the least recently used one
+    private final LinkedHashMap<K, Entry<V>> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<K, Entry<V>> protectedSegment = new LinkedHashMap<>();
+    private long bytes = 0;
+    private long protectedBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    private final ScheduledFuture<?> cleanupTask;
+
+    /**
+     * Create cache and schedule its cleanup.
+     *
+     * @param maxAge is time an entry lives after it is put
+     * @param maxEntries is max number of entries
+     * @param maxBytes is max sum of sizes of entries, as estimated by the weigher
+     * @param weigher estimates value size in bytes
+     */
+    public BoundedCache(Duration maxAge, int maxEntries, long maxBytes, ToIntFunction<V> weigher) {
+        if (maxEntries < 1 || maxBytes < 1)
+            throw new IllegalArgumentException("cache limits should be positive");
+        this.maxAge = maxAge;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+
+        long period = Math.max(1, Math.min(maxAge.toMillis(), MAX_CLEANUP_INTERVAL.toMillis()));
+        cleanupTask = cleaner.scheduleWithFixedDelay(this::cleanUp, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get not expired value and count hit or miss. Got entry is promoted to the protected segment.
+     *
+     * @param key is key to look for
+     *
+     * @return value or null
+     */
+    public synchronized @Nullable V get(K key) {
+        Entry<V> entry = protectedSegment.get(key);
+        boolean isProtected = entry != null;
+        if (!isProtected)
+            entry = probation.get(key);
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.isExpired(Instant.now())) {
+            removeEntry(key);
+            expirations.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (isProtected) {
+            protectedSegment.remove(key);
+            protectedSegment.put(key, entry);
+        } else {
+            probation.remove(key);
+            protectedSegment.put(key, entry);
+            protectedBytes += entry.size;
+            demoteProtected();
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Get not expired value without counting it and without changing entry's position.
+     *
+     * @param key is key to look for
+     *
+     * @return value or null
+     */
+    public synchronized @Nullable V peek(K key) {
+        Entry<V> entry = protectedSegment.get(key);
+        if (entry == null)
+            entry = probation.get(key);
+        return entry != null && !entry.isExpired(Instant.now()) ? entry.value : null;
+    }
+
+    /**
+     * Put the value, replacing current one if any. Least valuable entries are evicted if the cache exceeds its
+     * limits.
+     *
+     * @param key is key for the value
+     * @param value is value to put
+     */
+    public synchronized void put(K key, V value) {
+        removeEntry(key);
+        Entry<V> entry = new Entry<>(value, Math.max(0, weigher.applyAsInt(value)), Instant.now().plus(maxAge));
+        probation.put(key, entry);
+        bytes += entry.size;
+        evict();
+    }
+
+    public synchronized void remove(K key) {
+        removeEntry(key);
+    }
+
+    /**
+     * Remove expired entries. Called by the cleaner thread periodically.
+     */
+    public synchronized void cleanUp() {
+        // we should avoid creating an object for each check:
+        Instant now = Instant.now();
+        expirations.addAndGet(removeExpired(protectedSegment, now, true) + removeExpired(probation, now, false));
+    }
+
+    /**
+     * Stop cleaning the cache up.
+     */
+    public void shutdown() {
+        cleanupTask.cancel(false);
+    }
+
+    public synchronized int size() {
+        return probation.size() + protectedSegment.size();
+    }
+
+    /**
+     * @return approximate size of all entries in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return copy of keys of all entries
+     */
+    public synchronized Set<K> keys() {
+        Set<K> keys = new HashSet<>(protectedSegment.keySet());
+        keys.addAll(probation.keySet());
+        return keys;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    /**
+     * @return {@link Binder} with size, bytes, hits, misses, evictions and expirations of the cache
+     */
+    public Binder getStats() {
+        int size;
+        long currentBytes;
+        synchronized (this) {
+            size = size();
+            currentBytes = bytes;
+        }
+        return Binder.of(
+                "size", size,
+                "bytes", currentBytes,
+                "hits", hits.get(),
+                "misses", misses.get(),
+                "evictions", evictions.get(),
+                "expirations", expirations.get()
+        );
+    }
+
+    private void removeEntry(K key) {
+        Entry<V> entry = protectedSegment.remove(key);
+        if (entry != null) {
+            protectedBytes -= entry.size;
+        } else {
+            entry = probation.remove(key);
+        }
+        if (entry != null)
+            bytes -= entry.size;
+    }
+
+    private int removeExpired(LinkedHashMap<K, Entry<V>> segment, Instant now, boolean isProtected) {
+        int removed = 0;
+        Iterator<Entry<V>> it = segment.values().iterator();
+        while (it.hasNext()) {
+            Entry<V> entry = it.next();
+            if (entry.isExpired(now)) {
+                it.remove();
+                bytes -= entry.size;
+                if (isProtected)
+                    protectedBytes -= entry.size;
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Move least recently used protected entries to probation while protected segment is over its share.
+     */
+    private void demoteProtected() {
+        while (protectedSegment.size() > 1 &&
+                (protectedSegment.size() > maxEntries * PROTECTED_SHARE || protectedBytes > maxBytes * PROTECTED_SHARE)) {
+            Map.Entry<K, Entry<V>> eldest = protectedSegment.entrySet().iterator().next();
+            protectedSegment.remove(eldest.getKey());
+            protectedBytes -= eldest.getValue().size;
+            probation.put(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void evict() {
+        while (size() > maxEntries || bytes > maxBytes) {
+            LinkedHashMap<K, Entry<V>> segment = probation.isEmpty() ? protectedSegment : probation;
+            if (segment.isEmpty())
+                break;
+            Map.Entry<K, Entry<V>> eldest = segment.entrySet().iterator().next();
+            removeEntry(eldest.getKey());
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final int size;
+        private final Instant expiresAt;
+
+        private Entry(V value, int size, Instant expiresAt) {
+            this.value = value;
+            this.size = size;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(Instant now) {
+            return expiresAt.isBefore(now);
+        }
+    }
+}
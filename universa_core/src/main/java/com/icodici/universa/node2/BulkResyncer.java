@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2;
+
+import com.icodici.universa.HashId;
+import com.icodici.universa.node.ItemState;
+import com.icodici.universa.node2.network.Network;
+import net.sergeych.tools.Binder;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resyncs many items at once, like ones the node missed while it was cut off the network.
+ * <p>
+ * Items are not resynced by their own processors: votes of all of them are kept in one table and one timer asks
+ * every node for states of items it hasn't answered yet, with requests packed by {@link ResyncBatcher}. Answers come
+ * to {@link #onAnswer(NodeInfo, Map)}. An item is resolved when enough nodes agree on its state, as for resync of a
+ * single item, or given up after {@link Config#getMaxResyncTime()}, so resync of any number of items ends in bounded
+ * time.
+ * <p>
+ * Resolved states are not saved here, the caller commits them, see {@link Node#resync(Collection)}.
+ */
+public class BulkResyncer {
+
+    /**
+     * Resync result of an item.
+     */
+    static public class Outcome {
+        private final ItemState state;
+        private final Set<NodeInfo> nodes;
+
+        private Outcome(ItemState state, Set<NodeInfo> nodes) {
+            this.state = state;
+            this.nodes = nodes;
+        }
+
+        /**
+         * @return state agreed by the network, {@link ItemState#UNDEFINED} if the network doesn't know the item or
+         * there is no agreement in time
+         */
+        public ItemState getState() {
+            return state;
+        }
+
+        /**
+         * @return nodes that voted for the state, empty for {@link ItemState#UNDEFINED}
+         */
+        public Set<NodeInfo> getNodes() {
+            return nodes;
+        }
+    }
+
+    static private final Outcome UNRESOLVED = new Outcome(ItemState.UNDEFINED, Collections.emptySet());
+
+    // states that could be agreed on, in order of precedence
+    static private final ItemState[] CONSENSUS_STATES = {ItemState.REVOKED, ItemState.DECLINED, ItemState.APPROVED};
+
+    private class Entry {
+        private final HashId id;
+        private final ItemState myState;
+        private final long startedAt = System.nanoTime();
+        private final Map<NodeInfo, ItemState> votes = new HashMap<>();
+        private final List<Call> calls = new ArrayList<>(1);
+
+        private Entry(HashId id, ItemState myState) {
+            this.id = id;
+            this.myState = myState;
+            votes.put(myInfo, myState);
+        }
+    }
+
+    private static class Call {
+        private final Map<HashId, Outcome> outcomes = new HashMap<>();
+        private int left;
+        private final CompletableFuture<Map<HashId, Outcome>> future = new CompletableFuture<>();
+    }
+
+    private final Network network;
+    private final NodeInfo myInfo;
+    private final Config config;
+    private final ScheduledExecutorService executor;
+    private final ResyncBatcher batcher;
+
+    // guarded by itself
+    private final Map<HashId, Entry> entries = new HashMap<>();
+    private ScheduledFuture<?> ticker = null;
+
+    private final AtomicLong resolved = new AtomicLong();
+    private final AtomicLong unresolved = new AtomicLong();
+
+    /**
+     * Create resyncer.
+     *
+     * @param network  to know the nodes
+     * @param myInfo   is own node
+     * @param config   with consensus, resync period and max resync time
+     * @param executor to run the timer
+     * @param batcher  to send requests
+     */
+    public BulkResyncer(Network network, NodeInfo myInfo, Config config, ScheduledExecutorService executor,
+                        ResyncBatcher batcher) {
+        this.network = network;
+        this.myInfo = myInfo;
+        this.config = config;
+        this.executor = executor;
+        this.batcher = batcher;
+    }
+
+    /**
+     * Resync the items.
+     *
+     * @param myStates are own states of the items, only those with consensus found are counted as own votes, others
+     *                 as {@link ItemState#UNDEFINED}
+     *
+     * @return future outcomes by item ids, completed when all the items are resolved or given up
+     */
+    public CompletableFuture<Map<HashId, Outcome>> resync(Map<HashId, ItemState> myStates) {
+        Call call = new Call();
+        List<Runnable> completions = new ArrayList<>();
+        synchronized (entries) {
+            call.left = myStates.size();
+            myStates.forEach((id, state) -> {
+                Entry e = entries.computeIfAbsent(id, k -> new Entry(k, state.isConsensusFound() ? state : ItemState.UNDEFINED));
+                e.calls.add(call);
+                evaluate(e, completions);
+            });
+            if (call.left > 0 && ticker == null) {
+                long period = config.getResyncTime().get(0);
+                ticker = executor.scheduleWithFixedDelay(this::tick, 0, period, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (myStates.isEmpty())
+            call.future.complete(call.outcomes);
+        completions.forEach(Runnable::run);
+        return call.future;
+    }
+
+    /**
+     * Count states answered by the node, ignoring items that are not being resynced.
+     *
+     * @param from   is answering node
+     * @param states by item ids
+     */
+    public void onAnswer(NodeInfo from, Map<HashId, ItemState> states) {
+        List<Runnable> completions = new ArrayList<>();
+        synchronized (entries) {
+            if (entries.isEmpty())
+                return;
+            states.forEach((id, state) -> {
+                Entry e = entries.get(id);
+                if (e != null) {
+                    e.votes.put(from, state.isConsensusFound() ? state : ItemState.UNDEFINED);
+                    evaluate(e, completions);
+                }
+            });
+        }
+        completions.forEach(Runnable::run);
+    }
+
+    private void tick() {
+        Map<NodeInfo, List<Entry>> toAsk = new HashMap<>();
+        List<Runnable> completions = new ArrayList<>();
+        synchronized (entries) {
+            long expiredAt = System.nanoTime() - config.getMaxResyncTime().toNanos();
+            for (Entry e : new ArrayList<>(entries.values())) {
+                if (e.startedAt - expiredAt < 0) {
+                    finish(e, UNRESOLVED, completions);
+                    continue;
+                }
+                for (NodeInfo node : network.allNodes()) {
+                    if (!e.votes.containsKey(node))
+                        toAsk.computeIfAbsent(node, k -> new ArrayList<>()).add(e);
+                }
+            }
+            if (entries.isEmpty() && ticker != null) {
+                ticker.cancel(false);
+                ticker = null;
+            }
+        }
+        completions.forEach(Runnable::run);
+        toAsk.forEach((node, list) -> list.forEach(e -> batcher.add(node, e.id, e.myState)));
+        batcher.flush();
+    }
+
+    // should be called under the lock, adds completions of the finished calls
+    private void evaluate(Entry e, List<Runnable> completions) {
+        Map<ItemState, Set<NodeInfo>> byState = new HashMap<>();
+        e.votes.forEach((node, state) -> byState.computeIfAbsent(state, k -> new HashSet<>()).add(node));
+        for (ItemState state : CONSENSUS_STATES) {
+            Set<NodeInfo> nodes = byState.get(state);
+            if (nodes != null && nodes.size() >= config.getPositiveConsensus()) {
+                finish(e, new Outcome(state, nodes), completions);
+                return;
+            }
+        }
+        Set<NodeInfo> undefined = byState.get(ItemState.UNDEFINED);
+        if (undefined != null && undefined.size() >= config.getResyncBreakConsensus())
+            finish(e, UNRESOLVED, completions);
+    }
+
+    private void finish(Entry e, Outcome outcome, List<Runnable> completions) {
+        entries.remove(e.id);
+        (outcome.getState().isConsensusFound() ? resolved : unresolved).incrementAndGet();
+        for (Call call : e.calls) {
+            call.outcomes.put(e.id, outcome);
+            if (--call.left == 0)
+                completions.add(() -> call.future.complete(call.outcomes));
+        }
+    }
+
+    /**
+     * @return {@link Binder} with numbers of items being resynced, resolved and given up
+     */
+    public Binder getStats() {
+        int pending;
+        synchronized (entries) {
+            pending = entries.size();
+        }
+        return Binder.of(
+                "pending", pending,
+                "resolved", resolved.get(),
+                "unresolved", unresolved.get()
+        );
+    }
+}
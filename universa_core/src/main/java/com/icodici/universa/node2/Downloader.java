@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2;
+
+import com.icodici.universa.HashId;
+import net.sergeych.tools.Binder;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Downloads items or parcels from other nodes without holding the callers' threads.
+ * <p>
+ * Each id is downloaded once however many callers want it: concurrent {@link #download(HashId, Supplier,
+ * BooleanSupplier)} calls for the same id share the same download, and the first downloaded copy completes all their
+ * futures. The download asks one source at a time, and if it does not answer within the hedge delay, asks another one
+ * too, up to maxSources at once. Sources that failed are not asked again until all known sources have been tried,
+ * then the next round starts after the retry delay. Hedges and retries are scheduled, so the executor threads are
+ * busy only while fetching.
+ * <p>
+ * Download stops when it succeeds, when no caller can continue or all of them cancelled their futures, when there
+ * are no sources or when max attempts are made, completing remaining futures with null in the latter cases.
+ *
+ * @param <T> is type of downloaded objects
+ */
+public class Downloader<T> {
+
+    /**
+     * Blocking download of the object from the source.
+     *
+     * @param <T> is type of downloaded objects
+     */
+    public interface Fetcher<T> {
+        /**
+         * @param id     of the object to download
+         * @param source is node to download from
+         *
+         * @return downloaded object or null if source can't provide it
+         *
+         * @throws Exception if download failed, same as null
+         */
+        T fetch(HashId id, NodeInfo source) throws Exception;
+    }
+
+    private final Fetcher<T> fetcher;
+    private final ScheduledExecutorService executor;
+    private final Duration retryDelay;
+    private final int maxAttempts;
+    private volatile Duration hedgeDelay;
+    private volatile int maxSources;
+
+    private final ConcurrentHashMap<HashId, Download> downloads = new ConcurrentHashMap<>();
+
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong downloaded = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+
+    /**
+     * Create downloader.
+     *
+     * @param fetcher     downloads an object from a single source
+     * @param executor    runs fetches and schedules hedges and retries
+     * @param hedgeDelay  is time to wait for a source before asking the next one too
+     * @param maxSources  is max number of sources asked at once
+     * @param retryDelay  is pause after all known sources have failed
+     * @param maxAttempts is max number of fetches per download, 0 for no limit
+     */
+    public Downloader(Fetcher<T> fetcher, ScheduledExecutorService executor, Duration hedgeDelay, int maxSources,
+                      Duration retryDelay, int maxAttempts) {
+        this.fetcher = fetcher;
+        this.executor = executor;
+        this.retryDelay = retryDelay;
+        this.maxAttempts = maxAttempts;
+        setHedging(hedgeDelay, maxSources);
+    }
+
+    public void setHedging(Duration hedgeDelay, int maxSources) {
+        if (maxSources < 1)
+            throw new IllegalArgumentException("maxSources should be positive");
+        this.hedgeDelay = hedgeDelay;
+        this.maxSources = maxSources;
+    }
+
+    /**
+     * Download the object or join its download that is already in progress. The returned future is completed with
+     * the downloaded object, or with null if download is stopped without result. Cancel the future to stop waiting.
+     * <p>
+     * The future could be completed in a fetching thread, so its dependent actions that take time or locks should be
+     * run asynchronously.
+     *
+     * @param id          of the object to download
+     * @param sources     provides current sources of the object, the set can grow while downloading
+     * @param canContinue tells if the caller still needs the object
+     *
+     * @return future of the downloaded object
+     */
+    public CompletableFuture<T> download(HashId id, Supplier<Collection<NodeInfo>> sources,
+                                         BooleanSupplier canContinue) {
+        Waiter waiter = new Waiter(sources, canContinue);
+        while (true) {
+            Download download = downloads.get(id);
+            if (download == null) {
+                download = new Download(id);
+                Download existing = downloads.putIfAbsent(id, download);
+                if (existing == null)
+                    started.incrementAndGet();
+                else
+                    download = existing;
+            } else
+                joined.incrementAndGet();
+            if (download.attach(waiter))
+                return waiter.future;
+            // it has just finished, start the new one
+            downloads.remove(id, download);
+        }
+    }
+
+    /**
+     * @return number of downloads in progress
+     */
+    public int size() {
+        return downloads.size();
+    }
+
+    /**
+     * @return {@link Binder} with number of downloads in progress, started, joined by other callers, completed and
+     * abandoned downloads, and number of fetches, hedged and failed fetches
+     */
+    public Binder getStats() {
+        return Binder.of(
+                "active", downloads.size(),
+                "started", started.get(),
+                "joined", joined.get(),
+                "downloaded", downloaded.get(),
+                "abandoned", abandoned.get(),
+                "fetches", fetches.get(),
+                "hedges", hedges.get(),
+                "failures", failures.get()
+        );
+    }
+
+    private class Waiter {
+        private final Supplier<Collection<NodeInfo>> sources;
+        private final BooleanSupplier canContinue;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Waiter(Supplier<Collection<NodeInfo>> sources, BooleanSupplier canContinue) {
+            this.sources = sources;
+            this.canContinue = canContinue;
+        }
+    }
+
+    /**
+     * Download of one id. Its state is guarded by its own monitor, which is never held while calling fetcher or
+     * completing futures.
+     */
+    private class Download {
+        private final HashId id;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final List<Waiter> waiters = new ArrayList<>();
+        // sources asked in the current round
+        private final Set<NodeInfo> asked = new HashSet<>();
+        private final Map<NodeInfo, Future<?>> inFlight = new HashMap<>();
+        private ScheduledFuture<?> timer;
+        private int attempts = 0;
+        private volatile boolean isFinished = false;
+        private T value;
+
+        private Download(HashId id) {
+            this.id = id;
+        }
+
+        private boolean attach(Waiter waiter) {
+            synchronized (this) {
+                if (isFinished)
+                    return false;
+                waiters.add(waiter);
+                result.thenAccept(waiter.future::complete);
+                waiter.future.whenComplete((v, e) -> {
+                    if (waiter.future.isCancelled())
+                        detach(waiter);
+                });
+                // new caller could bring new sources
+                pump();
+            }
+            completeIfFinished();
+            return true;
+        }
+
+        private void detach(Waiter waiter) {
+            synchronized (this) {
+                if (waiters.remove(waiter))
+                    pump();
+            }
+            completeIfFinished();
+        }
+
+        private void onTimer() {
+            synchronized (this) {
+                timer = null;
+                pump();
+            }
+            completeIfFinished();
+        }
+
+        private void fetch(NodeInfo source) {
+            T fetched = null;
+            try {
+                fetched = fetcher.fetch(id, source);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                // same as not found at the source
+            }
+            synchronized (this) {
+                inFlight.remove(source);
+                if (!isFinished) {
+                    if (fetched != null) {
+                        downloaded.incrementAndGet();
+                        finish(fetched);
+                    } else {
+                        failures.incrementAndGet();
+                        pump();
+                    }
+                }
+            }
+            completeIfFinished();
+        }
+
+        /**
+         * Start the next fetch if it is allowed, or schedule it, or finish the download. Should be called holding the
+         * monitor.
+         */
+        private void pump() {
+            if (isFinished)
+                return;
+            if (!canContinue()) {
+                abandoned.incrementAndGet();
+                finish(null);
+                return;
+            }
+            if (inFlight.size() >= maxSources)
+                return;
+            if (maxAttempts > 0 && attempts >= maxAttempts) {
+                if (inFlight.isEmpty()) {
+                    abandoned.incrementAndGet();
+                    finish(null);
+                }
+                return;
+            }
+            NodeInfo source = nextSource();
+            if (source == null) {
+                if (inFlight.isEmpty()) {
+                    if (asked.isEmpty()) {
+                        // nobody has it
+                        abandoned.incrementAndGet();
+                        finish(null);
+                    } else {
+                        asked.clear();
+                        schedule(retryDelay);
+                    }
+                }
+                return;
+            }
+            if (!inFlight.isEmpty())
+                hedges.incrementAndGet();
+            attempts++;
+            asked.add(source);
+            fetches.incrementAndGet();
+            inFlight.put(source, executor.submit(() -> fetch(source)));
+            if (inFlight.size() < maxSources)
+                schedule(hedgeDelay);
+        }
+
+        private boolean canContinue() {
+            for (Waiter w : waiters) {
+                if (!w.future.isDone() && w.canContinue.getAsBoolean())
+                    return true;
+            }
+            return false;
+        }
+
+        private NodeInfo nextSource() {
+            List<NodeInfo> candidates = new ArrayList<>();
+            for (Waiter w : waiters) {
+                for (NodeInfo source : w.sources.get()) {
+                    if (!asked.contains(source) && !candidates.contains(source))
+                        candidates.add(source);
+                }
+            }
+            if (candidates.isEmpty())
+                return null;
+            return candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+        }
+
+        private void schedule(Duration delay) {
+            if (timer != null)
+                timer.cancel(false);
+            timer = executor.schedule(this::onTimer, delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        private void finish(T value) {
+            this.value = value;
+            isFinished = true;
+            downloads.remove(id, this);
+            if (timer != null)
+                timer.cancel(false);
+            for (Future<?> f : inFlight.values())
+                f.cancel(true);
+            inFlight.clear();
+        }
+
+        private void completeIfFinished() {
+            if (isFinished)
+                result.complete(value);
+        }
+    }
+}
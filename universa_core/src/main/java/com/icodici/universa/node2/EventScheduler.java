@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2;
+
+import com.icodici.universa.node2.network.TimerWheel;
+import net.sergeych.tools.Binder;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link ScheduledExecutorService} for many short-lived item and parcel processors, an alternative to a big {@link
+ * ScheduledThreadPoolExecutor}.
+ * <p>
+ * Delayed and periodic tasks wait in a hashed {@link TimerWheel} driven by a single timer thread, so thousands of
+ * pending pulses cost O(1) each to schedule and cancel and don't occupy the pool's delay queue. Due tasks run in a
+ * work-stealing {@link ForkJoinPool} sized to the number of cores by default. Tasks that block in {@link
+ * net.sergeych.tools.AsyncEvent#await()} let the pool start a spare thread meanwhile, so waiting for other processors
+ * can't starve it.
+ * <p>
+ * Timing precision is one tick. After {@link #shutdown()} pending delayed tasks are dropped.
+ */
+public class EventScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+    static public final Duration DEFAULT_TICK = Duration.ofMillis(10);
+
+    /**
+     * With the default tick delays up to ~10s are served in one round of the wheel.
+     */
+    static private final int WHEEL_SLOTS = 1024;
+
+    private final ForkJoinPool workers;
+    private final TimerWheel<Task<?>> wheel;
+    private final Thread timer;
+    private volatile boolean isShutdown = false;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong scheduled = new AtomicLong();
+    private final AtomicLong lateTicks = new AtomicLong();
+
+    /**
+     * Create scheduler with the {@link #DEFAULT_TICK}.
+     *
+     * @param name        is prefix of the threads names
+     * @param parallelism is number of worker threads, 0 to use one per core
+     */
+    public EventScheduler(String name, int parallelism) {
+        this(name, parallelism, DEFAULT_TICK);
+    }
+
+    /**
+     * Create scheduler.
+     *
+     * @param name        is prefix of the threads names
+     * @param parallelism is number of worker threads, 0 to use one per core
+     * @param tick        is timer precision
+     */
+    public EventScheduler(String name, int parallelism, Duration tick) {
+        workers = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+                pool -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName(name + "-worker-" + thread.getPoolIndex());
+                    return thread;
+                },
+                null, true);
+        wheel = new TimerWheel<>(tick, WHEEL_SLOTS);
+        timer = new Thread(this::runTimer);
+        timer.setName(name + "-timer");
+        timer.setDaemon(true);
+        timer.start();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (isShutdown)
+            throw new RejectedExecutionException("scheduler is shut down");
+        workers.execute(command);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return enqueue(new Task<Void>(command, null, triggerTime(delay, unit), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return enqueue(new Task<>(callable, triggerTime(delay, unit)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0)
+            throw new IllegalArgumentException("period should be positive");
+        return enqueue(new Task<Void>(command, null, triggerTime(initialDelay, unit), unit.toNanos(period)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0)
+            throw new IllegalArgumentException("delay should be positive");
+        return enqueue(new Task<Void>(command, null, triggerTime(initialDelay, unit), -unit.toNanos(delay)));
+    }
+
+    @Override
+    public void shutdown() {
+        isShutdown = true;
+        LockSupport.unpark(timer);
+        workers.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        workers.shutdownNow();
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return isShutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return workers.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return workers.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * @return number of delayed tasks waiting in the timer wheel
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * @return {@link Binder} with workers parallelism, threads count (including spare ones started for blocked
+     * tasks), active threads, queued tasks and steals count, number of delayed tasks scheduled and pending, and number
+     * of ticks the timer thread was late for
+     */
+    public Binder getStats() {
+        return Binder.of(
+                "parallelism", workers.getParallelism(),
+                "threads", workers.getPoolSize(),
+                "active", workers.getActiveThreadCount(),
+                "queued", workers.getQueuedSubmissionCount() + workers.getQueuedTaskCount(),
+                "steals", workers.getStealCount(),
+                "scheduled", scheduled.get(),
+                "pending", pending.get(),
+                "lateTicks", lateTicks.get()
+        );
+    }
+
+    private static long triggerTime(long delay, TimeUnit unit) {
+        return System.nanoTime() + unit.toNanos(Math.max(delay, 0));
+    }
+
+    private <V> Task<V> enqueue(Task<V> task) {
+        if (isShutdown) {
+            task.cancel(false);
+            throw new RejectedExecutionException("scheduler is shut down");
+        }
+        scheduled.incrementAndGet();
+        long delay = task.time - System.nanoTime();
+        if (delay <= 0) {
+            workers.execute(task);
+        } else {
+            pending.incrementAndGet();
+            wheel.schedule(task, Duration.ofNanos(delay));
+        }
+        return task;
+    }
+
+    private void runTimer() {
+        long tickNanos = wheel.getTick().toNanos();
+        long next = System.nanoTime() + tickNanos;
+        while (!isShutdown) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            // if we are late, the next ticks are processed without waiting to catch up
+            if (-wait > tickNanos)
+                lateTicks.incrementAndGet();
+            next += tickNanos;
+            for (Task<?> task : wheel.advance()) {
+                pending.decrementAndGet();
+                if (task.isCancelled())
+                    continue;
+                long remaining = task.time - System.nanoTime();
+                if (remaining > 0) {
+                    // the wheel counts whole ticks from the current one, so it could be up to a tick early
+                    pending.incrementAndGet();
+                    wheel.schedule(task, Duration.ofNanos(remaining));
+                    continue;
+                }
+                try {
+                    workers.execute(task);
+                } catch (RejectedExecutionException e) {
+                    task.cancel(false);
+                }
+            }
+        }
+    }
+
+    private class Task<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+        private volatile long time;
+        // positive for fixed rate, negative for fixed delay, zero for one shot tasks
+        private final long period;
+
+        private Task(Callable<V> callable, long time) {
+            super(callable);
+            this.time = time;
+            this.period = 0;
+        }
+
+        private Task(Runnable runnable, V result, long time, long period) {
+            super(runnable, result);
+            this.time = time;
+            this.period = period;
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return period != 0;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other == this)
+                return 0;
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public void run() {
+            if (!isPeriodic()) {
+                super.run();
+            } else if (runAndReset()) {
+                time = period > 0 ? time + period : System.nanoTime() - period;
+                try {
+                    enqueue(this);
+                } catch (RejectedExecutionException e) {
+                    // shut down meanwhile
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2;
+
+import com.icodici.universa.HashId;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Table of per-{@link HashId} locks with reference counting. Lock of the id is held while someone executes code in
+ * {@link #synchronize(HashId, Function)} or holds it with {@link #retain(HashId)}. Released lock stays in the table
+ * and is held again by the next caller for the id, so hot ids do not create and drop locks all the time. Idle locks
+ * are removed lazily, once the table grows over {@link #RECLAIM_THRESHOLD} locks. Locks are obtained and released
+ * with atomic operations on a {@link ConcurrentHashMap} and on the lock's holders counter, without any global monitor.
+ * <p>
+ * While the lock is held, all calls for the same id get the same lock object, so it could be kept and used as a
+ * mutex for the id later, as long as it is retained.
+ */
+public class HashIdLock {
+
+    /**
+     * Table size over which idle locks are removed.
+     */
+    static final int RECLAIM_THRESHOLD = 256;
+
+    private final ConcurrentHashMap<HashId, Monitor> monitors = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean reclaiming = new AtomicBoolean();
+
+    // table size the next reclaim starts at, grows if most of the locks are held
+    private volatile int reclaimAt = RECLAIM_THRESHOLD;
+
+    /**
+     * Execute a callable acquiring a unique lock (mutex) for a given {@link HashId}. Locks is released upon callable
+     * return.
+     *
+     * @param id       ot get a lock to
+     * @param callable lamda to execute exclusively for the id
+     * @param <T> is type
+     *
+     * @return whatever the callable returns
+     *
+     * @throws Exception whatever callable throws
+     */
+    public <T> T synchronize(HashId id, Function<Object, T> callable) throws Exception {
+        Monitor lock = acquire(id);
+        try {
+            synchronized (lock) {
+                return (T) callable.apply(lock);
+            }
+        } finally {
+            release(lock);
+        }
+    }
+
+    /**
+     * Execute a callable holding locks of all the given ids at once. Locks are acquired in the order of ids, so
+     * concurrent calls with overlapping sets of ids can not deadlock each other, and are released upon callable
+     * return.
+     *
+     * @param ids      to get locks to, duplicates are locked once
+     * @param callable to execute exclusively for all the ids
+     * @param <T> is type
+     *
+     * @return whatever the callable returns
+     *
+     * @throws Exception whatever callable throws
+     */
+    public <T> T synchronizeAll(Collection<HashId> ids, Callable<T> callable) throws Exception {
+        return synchronizeAll(new TreeSet<>(ids).iterator(), callable);
+    }
+
+    private <T> T synchronizeAll(Iterator<HashId> ids, Callable<T> callable) throws Exception {
+        if (!ids.hasNext())
+            return callable.call();
+        HashId id = ids.next();
+        Monitor lock = acquire(id);
+        try {
+            synchronized (lock) {
+                return synchronizeAll(ids, callable);
+            }
+        } finally {
+            release(lock);
+        }
+    }
+
+    /**
+     * Hold the lock of the id until {@link #release(HashId)} is called, so all calls of {@link #synchronize(HashId,
+     * Function)} get the same lock object meanwhile. Does not lock the id itself.
+     *
+     * @param id to get a lock to
+     *
+     * @return lock object for the id
+     */
+    public Object retain(HashId id) {
+        return acquire(id);
+    }
+
+    /**
+     * Release the lock retained with {@link #retain(HashId)}. Should be called once per retain call.
+     *
+     * @param id to release a lock of
+     */
+    public void release(HashId id) {
+        Monitor lock = monitors.get(id);
+        if (lock != null)
+            release(lock);
+    }
+
+    /**
+     * Number of locks that are either acquired or retained. Idle locks that are not removed yet are not counted.
+     *
+     * @return number of held locks
+     */
+    public int size() {
+        int held = 0;
+        for (Monitor lock : monitors.values()) {
+            if (lock.holders.get() > 0)
+                held++;
+        }
+        return held;
+    }
+
+    /**
+     * @return number of locks in the table, including idle ones
+     */
+    int tableSize() {
+        return monitors.size();
+    }
+
+    private Monitor acquire(HashId id) {
+        while (true) {
+            Monitor lock = monitors.get(id);
+            if (lock == null) {
+                lock = new Monitor();
+                if (monitors.putIfAbsent(id, lock) == null)
+                    return lock;
+            } else if (lock.tryHold()) {
+                return lock;
+            } else {
+                // lock is reclaimed, but is not removed yet
+                monitors.remove(id, lock);
+            }
+        }
+    }
+
+    private void release(Monitor lock) {
+        if (lock.release() == 0 && monitors.size() > reclaimAt)
+            reclaimIdle();
+    }
+
+    private void reclaimIdle() {
+        if (!reclaiming.compareAndSet(false, true))
+            return;
+        try {
+            monitors.forEach((id, lock) -> {
+                if (lock.holders.compareAndSet(0, Monitor.RECLAIMED))
+                    monitors.remove(id, lock);
+            });
+            reclaimAt = Math.max(RECLAIM_THRESHOLD, monitors.size() * 2);
+        } finally {
+            reclaiming.set(false);
+        }
+    }
+
+    private static final class Monitor {
+        // once it is set the lock can not be held again
+        private static final int RECLAIMED = -1;
+
+        // zero means the lock is idle and can be either held again or reclaimed
+        private final AtomicInteger holders = new AtomicInteger(1);
+
+        private boolean tryHold() {
+            int current;
+            do {
+                current = holders.get();
+                if (current == RECLAIMED)
+                    return false;
+            } while (!holders.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        // returns holders left, or -1 if the lock was not held
+        private int release() {
+            int current;
+            do {
+                current = holders.get();
+                if (current <= 0)
+                    return -1;
+            } while (!holders.compareAndSet(current, current - 1));
+            return current - 1;
+        }
+    }
+}
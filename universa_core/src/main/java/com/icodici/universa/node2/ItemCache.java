@@ -9,44 +9,52 @@ package com.icodici.universa.node2;
 
 import com.icodici.universa.Approvable;
 import com.icodici.universa.HashId;
+import com.icodici.universa.contract.Contract;
 import com.icodici.universa.node.ItemResult;
+import net.sergeych.tools.Binder;
 import net.sergeych.utils.Base64;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.time.Duration;
-import java.time.Instant;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Cache of items being processed by the node and their results. Cache is bounded both in number of items and in their
+ * approximate size, that is estimated by the sealed binaries of the contract and its new and revoking items, see
+ * {@link BoundedCache}.
+ */
 public class ItemCache {
 
-    private final Thread cleaner;
-    private final Duration maxAge;
+    /**
+     * Default max number of cached items.
+     */
+    static public final int DEFAULT_MAX_ENTRIES = 100_000;
+
+    /**
+     * Default max size of cached items, in bytes.
+     */
+    static public final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * Size of an item which binary is unknown, in bytes.
+     */
+    static private final int UNKNOWN_ITEM_SIZE = 4096;
+
+    private final BoundedCache<HashId,Record> records;
 
     public ItemCache(Duration maxAge) {
-        this.maxAge = maxAge;
-        cleaner = new Thread( ()-> {
-            try {
-                Thread.sleep(5000);
-                cleanUp();
-            } catch (InterruptedException e) {
-            }
-        });
-        cleaner.setName("item-cache-cleaner");
-        cleaner.setDaemon(true);
-        cleaner.setPriority(Thread.MIN_PRIORITY);
-        cleaner.start();
+        this(maxAge, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    public ItemCache(Duration maxAge, int maxEntries, long maxBytes) {
+        records = new BoundedCache<>(maxAge, maxEntries, maxBytes, r -> estimateSize(r.item));
     }
 
     final void cleanUp() {
-        // we should avoid creating an object for each check:
-        Instant now = Instant.now();
-        records.values().forEach(r->r.checkExpiration(now));
+        records.cleanUp();
     }
 
     public void shutdown() {
-        cleaner.interrupt();
+        records.shutdown();
     }
 
     public @Nullable Approvable get(HashId itemId) {
@@ -65,11 +73,11 @@ public class ItemCache {
 
     public void put(Approvable item, ItemResult result) {
         // this will plainly override current if any
-        Record r = new Record(item, result);
+        records.put(item.getId(), new Record(item, result));
     }
 
     public void update(HashId itemId, ItemResult result) {
-        Record r = records.get(itemId);
+        Record r = records.peek(itemId);
         if( r != null && r.item == null )
             throw new RuntimeException("cache: record with empty item");
 
@@ -78,10 +86,8 @@ public class ItemCache {
         }
     }
 
-    private ConcurrentHashMap<HashId,Record> records = new ConcurrentHashMap();
-
     public void idsCheck(HashId itemId) {
-        for(HashId x: records.keySet()) {
+        for(HashId x: records.keys()) {
             System.out.println(" checking "+itemId+" eq "+x+ ": "+itemId.equals(x) + " / " + x.equals(itemId) );
             System.out.println(" codes: "+itemId.hashCode() + " / "+ x.hashCode());
             System.out.println(" digest check: "+ Base64.encodeString(itemId.getDigest()));
@@ -93,23 +99,37 @@ public class ItemCache {
         return records.size();
     }
 
+    /**
+     * @return {@link Binder} with cache size and hits, misses, evictions and expirations counters
+     */
+    public Binder getStats() {
+        return records.getStats();
+    }
+
+    static int estimateSize(Approvable item) {
+        if( !(item instanceof Contract) )
+            return UNKNOWN_ITEM_SIZE;
+        Contract contract = (Contract) item;
+        int size = sealedSize(contract);
+        for( Approvable a: contract.getNewItems() )
+            size += sealedSize(a);
+        for( Approvable a: contract.getRevokingItems() )
+            size += sealedSize(a);
+        return size;
+    }
+
+    private static int sealedSize(Approvable item) {
+        byte[] binary = item instanceof Contract ? ((Contract) item).getLastSealedBinary() : null;
+        return binary != null ? binary.length : UNKNOWN_ITEM_SIZE;
+    }
+
     private class Record {
-        private Instant expiresAt;
         private Approvable item;
         private ItemResult result;
 
         private Record(Approvable item, ItemResult result) {
-            expiresAt = Instant.now().plus(maxAge);
             this.item = item;
             this.result = result;
-            records.put(item.getId(), this);
-        }
-
-        private void checkExpiration(Instant now) {
-            if( expiresAt.isBefore(now) ) {
-//                System.out.println("cache expired "+item.getId());
-                records.remove(item.getId());
-            }
         }
     }
 }
@@ -9,6 +9,7 @@ package com.icodici.universa.node2;
 
 import com.icodici.crypto.PrivateKey;
 import com.icodici.crypto.PublicKey;
+import com.icodici.db.DbPool;
 import com.icodici.universa.Core;
 import com.icodici.universa.HashId;
 import com.icodici.universa.contract.Contract;
@@ -201,7 +202,8 @@ public class Main {
             config.setResyncBreakConsensus(resyncBreak);
         });
 
-        network = new NetworkV2(netConfig, myInfo, nodeKey);
+        network = new NetworkV2(netConfig, myInfo, nodeKey, config.isNioUDPAdapterEnabled());
+        network.setNotificationsBatching(config.getNotificationsBatchWindow(), config.getNotificationsBatchSize());
         node = new Node(config, myInfo, ledger, network);
         cache = node.getCache();
         parcelCache = node.getParcelCache();
@@ -326,8 +328,27 @@ public class Main {
         );
 
         config.setIsFreeRegistrationsAllowedFromYaml(settings.getBoolean("allow_free_registrations", false));
+        Contract.setSignatureVerificationThreads(settings.getInt("signature_verification_threads", 0));
+        config.setNioUDPAdapterEnabled(settings.getBoolean("nio_udp_adapter", false));
+        config.setDownloadHedgeDelay(Duration.ofMillis(
+                settings.getInt("download_hedge_delay", (int) config.getDownloadHedgeDelay().toMillis())));
+        config.setMaxDownloadSources(settings.getInt("download_sources", config.getMaxDownloadSources()));
+        config.setEventSchedulerEnabled(settings.getBoolean("event_scheduler", false));
+        config.setSchedulerThreads(settings.getInt("scheduler_threads", 0));
+        config.setSanitationParallelism(settings.getInt("sanitation_parallelism", config.getSanitationParallelism()));
+        config.setSanitationRate(settings.getInt("sanitation_rate", 0));
+        config.setResyncBatchSize(settings.getInt("resync_batch_size", config.getResyncBatchSize()));
+        config.setMetricsScrapeEnabled(settings.getBoolean("metrics_scrape", false));
+        config.setAdmissionMaxLimit(settings.getInt("admission_max_limit", config.getAdmissionMaxLimit()));
+        config.setAdmissionMaxWait(Duration.ofMillis(
+                settings.getInt("admission_max_wait", (int) config.getAdmissionMaxWait().toMillis())));
 
         ledger = new PostgresLedger(settings.getStringOrThrow("database"));
+        ledger.setRecordsCacheSize(settings.getInt("ledger_cache_size", PostgresLedger.DEFAULT_RECORDS_CACHE_SIZE));
+        ledger.setGroupCommit(settings.getBoolean("ledger_group_commit", false));
+        ledger.getDbPool().setMinIdle(settings.getInt("db_pool_min_idle", 0));
+        ledger.getDbPool().setAcquireTimeout(Duration.ofMillis(
+                settings.getInt("db_pool_acquire_timeout", (int) DbPool.DEFAULT_ACQUIRE_TIMEOUT.toMillis())));
         log("ledger constructed");
 
         log("key loaded: " + nodeKey.info());
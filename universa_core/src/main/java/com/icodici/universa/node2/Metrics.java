@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2;
+
+import net.sergeych.tools.Binder;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Registry of node metrics: counters, latency histograms and gauges, cheap enough for the hot paths.
+ * <p>
+ * Metrics are created on first use and then updated without locks, so callers on hot paths should keep the returned
+ * {@link Counter} or {@link Histogram} instead of looking it up every time. Metrics with the same name but different
+ * labels, like per node ones, are separate.
+ * <p>
+ * The registry is exported as a {@link Binder} with {@link #getStats()} or as the Prometheus text format with {@link
+ * #toText()}.
+ */
+public class Metrics {
+
+    static public final String PREFIX = "universa_";
+
+    /**
+     * Quantiles exported for histograms.
+     */
+    static private final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Get or create the counter. In the Prometheus export its name gets the "_total" suffix unless it has it already.
+     *
+     * @param name   of the counter
+     * @param labels are label names and values, in pairs
+     *
+     * @return counter
+     */
+    public Counter counter(String name, String... labels) {
+        return counters.computeIfAbsent(key(name, labels), k -> new Counter(name, formatLabels(labels)));
+    }
+
+    /**
+     * Get or create the histogram.
+     *
+     * @param name   of the histogram, ending with its unit, like "_us"
+     * @param labels are label names and values, in pairs
+     *
+     * @return histogram
+     */
+    public Histogram histogram(String name, String... labels) {
+        return histograms.computeIfAbsent(key(name, labels), k -> new Histogram(name, formatLabels(labels)));
+    }
+
+    /**
+     * Register the gauge, which value is got when metrics are exported. Registering gauge with the same name and labels
+     * replaces the previous one.
+     *
+     * @param name   of the gauge
+     * @param value  provides the current value
+     * @param labels are label names and values, in pairs
+     */
+    public void gauge(String name, Supplier<Number> value, String... labels) {
+        gauges.put(key(name, labels), new Gauge(name, formatLabels(labels), value));
+    }
+
+    /**
+     * @return {@link Binder} with "counters", "gauges" and "histograms", each mapping metric name with labels to its
+     * value; histograms are {@link Histogram#getStats()}
+     */
+    public Binder getStats() {
+        Binder c = new Binder();
+        new TreeMap<>(counters).forEach((k, v) -> c.put(k, v.get()));
+        Binder g = new Binder();
+        new TreeMap<>(gauges).forEach((k, v) -> g.put(k, v.get()));
+        Binder h = new Binder();
+        new TreeMap<>(histograms).forEach((k, v) -> h.put(k, v.getStats()));
+        return Binder.of(
+                "counters", c,
+                "gauges", g,
+                "histograms", h
+        );
+    }
+
+    /**
+     * @return all metrics in the Prometheus text exposition format, histograms are exported as summaries
+     */
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        String lastName = null;
+        for (Counter c : sorted(counters.values(), c -> c.name, c -> c.labels)) {
+            // Prometheus convention: counter names end with "_total"
+            String name = c.name.endsWith("_total") ? c.name : c.name + "_total";
+            if (!name.equals(lastName))
+                sb.append("# TYPE ").append(PREFIX).append(name).append(" counter\n");
+            lastName = name;
+            line(sb, name, c.labels, c.get());
+        }
+        for (Gauge g : sorted(gauges.values(), g -> g.name, g -> g.labels)) {
+            if (!g.name.equals(lastName))
+                sb.append("# TYPE ").append(PREFIX).append(g.name).append(" gauge\n");
+            lastName = g.name;
+            line(sb, g.name, g.labels, g.get());
+        }
+        for (Histogram h : sorted(histograms.values(), h -> h.name, h -> h.labels)) {
+            if (!h.name.equals(lastName))
+                sb.append("# TYPE ").append(PREFIX).append(h.name).append(" summary\n");
+            lastName = h.name;
+            long[] snapshot = h.snapshot();
+            for (double q : QUANTILES) {
+                String quantile = "quantile=\"" + q + "\"";
+                line(sb, h.name, h.labels.isEmpty() ? quantile : h.labels + "," + quantile,
+                        h.valueAt(snapshot, q));
+            }
+            line(sb, h.name + "_sum", h.labels, h.sum.sum());
+            line(sb, h.name + "_count", h.labels, h.count.sum());
+        }
+        return sb.toString();
+    }
+
+    // metrics of the same name should go together
+    private static <T> List<T> sorted(Collection<T> metrics, Function<T, String> name, Function<T, String> labels) {
+        List<T> result = new ArrayList<>(metrics);
+        result.sort(Comparator.comparing(name).thenComparing(labels));
+        return result;
+    }
+
+    private static void line(StringBuilder sb, String name, String labels, Number value) {
+        sb.append(PREFIX).append(name);
+        if (!labels.isEmpty())
+            sb.append('{').append(labels).append('}');
+        sb.append(' ').append(value).append('\n');
+    }
+
+    private static String key(String name, String[] labels) {
+        return labels.length == 0 ? name : name + "{" + formatLabels(labels) + "}";
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length % 2 != 0)
+            throw new IllegalArgumentException("labels should be name and value pairs");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(labels[i]).append("=\"").append(labels[i + 1].replace("\"", "\\\"")).append('"');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Monotonic counter.
+     */
+    static public class Counter {
+        private final String name;
+        private final String labels;
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name, String labels) {
+            this.name = name;
+            this.labels = labels;
+        }
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void add(long delta) {
+            value.add(delta);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    static private class Gauge {
+        private final String name;
+        private final String labels;
+        private final Supplier<Number> value;
+
+        private Gauge(String name, String labels, Supplier<Number> value) {
+            this.name = name;
+            this.labels = labels;
+            this.value = value;
+        }
+
+        private Number get() {
+            try {
+                return value.get();
+            } catch (Exception e) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Histogram of non-negative values with log-linear buckets, like HdrHistogram: values below {@link #SUB_BUCKETS} are
+     * counted exactly, bigger ones in buckets not wider than 1/{@link #SUB_BUCKETS} of the value. So quantiles are
+     * within ~6% of the real ones, and recording is a few atomic adds.
+     * <p>
+     * Values are recorded since creation of the histogram.
+     */
+    static public class Histogram {
+
+        static private final int SUB_BUCKET_BITS = 4;
+        static public final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        // values up to 2^42 that is ~50 days in microseconds, bigger ones go to the last bucket
+        static private final int MAX_EXPONENT = 41;
+        static private final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+        private final String name;
+        private final String labels;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private Histogram(String name, String labels) {
+            this.name = name;
+            this.labels = labels;
+        }
+
+        /**
+         * @param value to record, negative ones are recorded as zero
+         */
+        public void record(long value) {
+            if (value < 0)
+                value = 0;
+            buckets.incrementAndGet(bucketOf(value));
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        /**
+         * Record time in microseconds passed since the start.
+         *
+         * @param startNanos is {@link System#nanoTime()} at start
+         */
+        public void recordTime(long startNanos) {
+            record((System.nanoTime() - startNanos) / 1000);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Get approximate quantile of recorded values.
+         *
+         * @param quantile from 0 to 1
+         *
+         * @return value, not less than quantile of recorded ones and not more than the max of them, 0 if none recorded
+         */
+        public long getValueAt(double quantile) {
+            return valueAt(snapshot(), quantile);
+        }
+
+        /**
+         * @return {@link Binder} with count, mean, 50%, 90% and 99% quantiles and max of recorded values
+         */
+        public Binder getStats() {
+            long[] snapshot = snapshot();
+            long n = count.sum();
+            return Binder.of(
+                    "count", n,
+                    "mean", n > 0 ? sum.sum() / n : 0,
+                    "p50", valueAt(snapshot, 0.5),
+                    "p90", valueAt(snapshot, 0.9),
+                    "p99", valueAt(snapshot, 0.99),
+                    "max", max.get()
+            );
+        }
+
+        private long[] snapshot() {
+            long[] result = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++)
+                result[i] = buckets.get(i);
+            return result;
+        }
+
+        private long valueAt(long[] snapshot, double quantile) {
+            long total = 0;
+            for (long c : snapshot)
+                total += c;
+            if (total == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank)
+                    return Math.min(highestValueIn(i), max.get());
+            }
+            return max.get();
+        }
+
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS)
+                return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            if (exponent > MAX_EXPONENT)
+                return BUCKETS - 1;
+            int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        static long highestValueIn(int bucket) {
+            if (bucket < SUB_BUCKETS)
+                return bucket;
+            int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            int sub = bucket % SUB_BUCKETS;
+            int shift = exponent - SUB_BUCKET_BITS;
+            return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+        }
+    }
+}
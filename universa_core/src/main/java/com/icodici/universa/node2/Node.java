@@ -10,7 +10,9 @@ package com.icodici.universa.node2;
 import com.icodici.crypto.PublicKey;
 import com.icodici.universa.*;
 import com.icodici.universa.contract.Contract;
+import com.icodici.universa.contract.ExtendedSignature;
 import com.icodici.universa.contract.Parcel;
+import com.icodici.universa.contract.SignatureCache;
 import com.icodici.universa.contract.SmartContract;
 import com.icodici.universa.contract.permissions.ChangeOwnerPermission;
 import com.icodici.universa.contract.permissions.ModifyDataPermission;
@@ -19,6 +21,7 @@ import com.icodici.universa.contract.roles.ListRole;
 import com.icodici.universa.contract.roles.RoleLink;
 import com.icodici.universa.contract.services.*;
 import com.icodici.universa.node.*;
+import com.icodici.universa.node2.network.ClientHTTPServer;
 import com.icodici.universa.node2.network.DatagramAdapter;
 import com.icodici.universa.node2.network.Network;
 import com.icodici.universa.node2.network.NetworkV2;
@@ -34,11 +37,13 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 
 /**
@@ -48,7 +53,15 @@ import java.util.function.Supplier;
  */
 public class Node {
 
-    private static final int MAX_SANITATING_RECORDS = 64;
+    /**
+     * Resync requests of sanitated items to the same node made within this time are sent in one notification.
+     */
+    private static final Duration RESYNC_BATCH_WINDOW = Duration.ofMillis(50);
+
+    /**
+     * Bulk resynced items are locked and saved to the ledger in chunks of this size.
+     */
+    private static final int RESYNC_COMMIT_CHUNK = 1000;
 
     NodeStats nodeStats = new NodeStats();
 
@@ -61,6 +74,19 @@ public class Node {
 
     private Map<HashId,StateRecord> recordsToSanitate;
 
+    // records to start sanitation of, in order
+    private final ConcurrentLinkedQueue<StateRecord> sanitationQueue = new ConcurrentLinkedQueue<>();
+    // records to sanitate by record id of the record that locks them, they are resolved when it is sanitated
+    private final Map<Long, List<StateRecord>> sanitationLocks = new HashMap<>();
+    private final Set<HashId> sanitatingIds = ConcurrentHashMap.newKeySet();
+    private final Object sanitationMutex = new Object();
+    private boolean isSanitationStarted = false;
+    private boolean isSanitationFinished = false;
+    private int sanitationTotal = 0;
+    private Instant sanitationStartedAt;
+    private double sanitationPermits;
+    private long sanitationPermitsAt;
+
     public Map<HashId, StateRecord> getRecordsToSanitate() {
         return recordsToSanitate;
     }
@@ -77,6 +103,20 @@ public class Node {
     private final Network network;
     private final ItemCache cache;
     private final ParcelCache parcelCache;
+    private final Downloader<Approvable> itemDownloader;
+    private final Downloader<Parcel> parcelDownloader;
+    private final ResyncBatcher resyncBatcher;
+    private final BulkResyncer bulkResyncer;
+
+    // null if admission control is off
+    private final AdmissionController admission;
+
+    private final Metrics metrics = new Metrics();
+    // from creation of the item processor to the consensus found
+    private final Metrics.Histogram itemConsensusTime = metrics.histogram("item_consensus_us");
+    private final Metrics.Histogram itemDownloadTime = metrics.histogram("item_download_us");
+    private final Metrics.Histogram parcelDownloadTime = metrics.histogram("parcel_download_us");
+    private final Metrics.Histogram itemCheckTime = metrics.histogram("item_check_us");
     private final ItemInformer informer = new ItemInformer();
     protected int verboseLevel = DatagramAdapter.VerboseLevel.NOTHING;
     protected String label = null;
@@ -88,28 +128,34 @@ public class Node {
 
     private ConcurrentHashMap<HashId, ItemProcessor> processors = new ConcurrentHashMap();
     private ConcurrentHashMap<HashId, ParcelProcessor> parcelProcessors = new ConcurrentHashMap();
+    // completions of waitItemAsync calls by item, guarded by the map
+    private final ConcurrentHashMap<HashId, List<CompletableFuture<ItemResult>>> itemWaiters = new ConcurrentHashMap<>();
 
-    private ScheduledExecutorService executorService = new ScheduledThreadPoolExecutor(128, new ThreadFactory() {
+    // runs item and parcel processors, see createExecutorService()
+    private final ScheduledExecutorService executorService;
 
-        private final ThreadGroup threadGroup = new ThreadGroup("node-workers");
+    private ScheduledExecutorService lowPrioExecutorService = new ScheduledThreadPoolExecutor(16, new ThreadFactory() {
+
+        private final ThreadGroup threadGroup = new ThreadGroup("low-prio-node-workers");
 
         @Override
         public Thread newThread(Runnable r) {
             Thread thread = new Thread(threadGroup,r);
-            thread.setName("node-"+myInfo.getNumber()+"-worker");
+            thread.setName("low-prio-node-"+myInfo.getNumber()+"-worker");
+            thread.setPriority((Thread.NORM_PRIORITY+Thread.MIN_PRIORITY)/2);
             return thread;
         }
     });
 
-    private ScheduledExecutorService lowPrioExecutorService = new ScheduledThreadPoolExecutor(16, new ThreadFactory() {
+    // threads are busy only while fetching items and parcels from other nodes
+    private ScheduledExecutorService downloadExecutorService = new ScheduledThreadPoolExecutor(16, new ThreadFactory() {
 
-        private final ThreadGroup threadGroup = new ThreadGroup("low-prio-node-workers");
+        private final ThreadGroup threadGroup = new ThreadGroup("node-downloaders");
 
         @Override
         public Thread newThread(Runnable r) {
             Thread thread = new Thread(threadGroup,r);
-            thread.setName("low-prio-node-"+myInfo.getNumber()+"-worker");
-            thread.setPriority((Thread.NORM_PRIORITY+Thread.MIN_PRIORITY)/2);
+            thread.setName("node-"+myInfo.getNumber()+"-downloader");
             return thread;
         }
     });
@@ -120,15 +166,28 @@ public class Node {
         this.myInfo = myInfo;
         this.ledger = ledger;
         this.network = network;
-        cache = new ItemCache(config.getMaxCacheAge());
-        parcelCache = new ParcelCache(config.getMaxCacheAge());
+        executorService = createExecutorService();
+        cache = new ItemCache(config.getMaxCacheAge(), config.getMaxCacheSize(), config.getMaxCacheBytes());
+        parcelCache = new ParcelCache(config.getMaxCacheAge(), config.getMaxCacheSize(), config.getMaxCacheBytes());
+        itemDownloader = new Downloader<>((id, source) -> network.getItem(id, source, config.getMaxGetItemTime()),
+                downloadExecutorService, config.getDownloadHedgeDelay(), config.getMaxDownloadSources(),
+                Duration.ofMillis(100), 0);
+        parcelDownloader = new Downloader<>((id, source) -> network.getParcel(id, source, config.getMaxGetItemTime()),
+                downloadExecutorService, config.getDownloadHedgeDelay(), config.getMaxDownloadSources(),
+                Duration.ofSeconds(1), config.getGetItemRetryCount());
+        resyncBatcher = new ResyncBatcher(network, myInfo, lowPrioExecutorService, RESYNC_BATCH_WINDOW,
+                config.getResyncBatchSize());
+        bulkResyncer = new BulkResyncer(network, myInfo, config, lowPrioExecutorService, resyncBatcher);
+        admission = config.getAdmissionMaxLimit() > 0 ?
+                new AdmissionController(config.getAdmissionMaxLimit(), config.getAdmissionMaxWait()) : null;
+        registerMetrics();
         config.updateConsensusConfig(network.getNodesCount());
 
         label = "Node(" + myInfo.getNumber() + ") ";
 
         network.subscribe(myInfo, notification -> onNotification(notification));
 
-        recordsToSanitate = ledger.findUnfinished();
+        recordsToSanitate = new ConcurrentHashMap<>(ledger.findUnfinished());
 
         System.out.println(label + " " + recordsToSanitate.size());
 
@@ -147,6 +206,66 @@ public class Node {
 
     }
 
+    private ScheduledExecutorService createExecutorService() {
+        if (config.isEventSchedulerEnabled())
+            return new EventScheduler("node-" + myInfo.getNumber(), config.getSchedulerThreads());
+
+        return new ScheduledThreadPoolExecutor(128, new ThreadFactory() {
+
+            private final ThreadGroup threadGroup = new ThreadGroup("node-workers");
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(threadGroup,r);
+                thread.setName("node-"+myInfo.getNumber()+"-worker");
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return {@link Binder} with threads count, active threads and queued tasks of the processors executor
+     */
+    private Binder getExecutorStats() {
+        if (executorService instanceof EventScheduler)
+            return ((EventScheduler) executorService).getStats();
+        ScheduledThreadPoolExecutor pool = (ScheduledThreadPoolExecutor) executorService;
+        return Binder.of(
+                "threads", pool.getPoolSize(),
+                "active", pool.getActiveCount(),
+                "queued", pool.getQueue().size()
+        );
+    }
+
+    private void registerMetrics() {
+        ledger.setMetrics(metrics);
+        network.setMetrics(metrics);
+        metrics.gauge("executor_queue", () -> getExecutorStats().getLongOrThrow("queued"));
+        metrics.gauge("low_prio_executor_queue",
+                () -> ((ScheduledThreadPoolExecutor) lowPrioExecutorService).getQueue().size());
+        metrics.gauge("download_executor_queue",
+                () -> ((ScheduledThreadPoolExecutor) downloadExecutorService).getQueue().size());
+        metrics.gauge("item_processors", () -> processors.size());
+        metrics.gauge("parcel_processors", () -> parcelProcessors.size());
+        metrics.gauge("item_downloads", () -> itemDownloader.size());
+        metrics.gauge("parcel_downloads", () -> parcelDownloader.size());
+        SignatureCache signatureCache = ExtendedSignature.getCache();
+        metrics.gauge("signature_cache_size", signatureCache::size);
+        metrics.gauge("signature_cache_hits", signatureCache::getHits);
+        metrics.gauge("signature_cache_misses", signatureCache::getMisses);
+        if (admission != null) {
+            metrics.gauge("admission_limit", admission::getLimit);
+            metrics.gauge("admission_in_flight", admission::getInFlight);
+        }
+    }
+
+    /**
+     * @return metrics of the node, its ledger and network
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
     private void pulseStartCleanup() {
         lowPrioExecutorService.scheduleAtFixedRate(() -> ledger.cleanup(),1,config.getMaxDiskCacheAge().getSeconds(),TimeUnit.SECONDS);
         lowPrioExecutorService.scheduleAtFixedRate(() -> ledger.removeExpiredStorageSubscriptionsCascade(),config.getExpriedStorageCleanupInterval().getSeconds(),config.getExpriedStorageCleanupInterval().getSeconds(),TimeUnit.SECONDS);
@@ -174,43 +293,73 @@ public class Node {
 
 
     private void pulseStartSanitation() {
-        sanitator = lowPrioExecutorService.scheduleAtFixedRate(() -> startSanitation(),
+        synchronized (sanitationMutex) {
+            sanitationTotal = recordsToSanitate.size();
+            sanitationStartedAt = Instant.now();
+            sanitationPermits = config.getSanitationRate();
+            sanitationPermitsAt = System.nanoTime();
+            synchronized (recordsToSanitate) {
+                for (StateRecord r : recordsToSanitate.values()) {
+                    if (r.getState() != ItemState.LOCKED && r.getState() != ItemState.LOCKED_FOR_CREATION)
+                        sanitationQueue.add(r);
+                    if (r.getLockedByRecordId() != 0)
+                        sanitationLocks.computeIfAbsent(r.getLockedByRecordId(), k -> new ArrayList<>()).add(r);
+                }
+            }
+        }
+        // records are also started as soon as others are done, the pulse resumes rate limited sanitation
+        sanitator = lowPrioExecutorService.scheduleAtFixedRate(() -> {
+                    synchronized (sanitationMutex) {
+                        isSanitationStarted = true;
+                    }
+                    pumpSanitation();
+                },
                 2000,
                 500,
-                TimeUnit.MILLISECONDS//,
-//                                        Node.this.toString() + toString() + " :: pulseStartPolling -> sendStartPollingNotification"
+                TimeUnit.MILLISECONDS
         );
     }
 
-    ArrayList<HashId> sanitatingIds = new ArrayList<>();
-
-    private void startSanitation() {
-        if(recordsToSanitate.isEmpty()) {
-            sanitator.cancel(false);
-            dbSanitationFinished();
-            return;
-        }
-
-        for (int i = 0; i < sanitatingIds.size(); i++) {
-            if (!recordsToSanitate.containsKey(sanitatingIds.get(i))) {
-                sanitatingIds.remove(i);
-                --i;
+    /**
+     * Start sanitation of queued records while there are less than {@link Config#getSanitationParallelism()} of them
+     * in progress and {@link Config#getSanitationRate()} allows.
+     */
+    private void pumpSanitation() {
+        synchronized (sanitationMutex) {
+            if (!isSanitationStarted || isSanitationFinished)
+                return;
+            if (recordsToSanitate.isEmpty()) {
+                isSanitationFinished = true;
+                sanitator.cancel(false);
+                report(getLabel(), () -> concatReportMessage("sanitation finished: ", sanitationTotal,
+                        " records in ", Duration.between(sanitationStartedAt, Instant.now()).getSeconds(), "s"),
+                        DatagramAdapter.VerboseLevel.BASE);
+                dbSanitationFinished();
+                return;
             }
-        }
 
-        if (sanitatingIds.size() < MAX_SANITATING_RECORDS) {
-            synchronized (recordsToSanitate) {
-                for (StateRecord r : recordsToSanitate.values()) {
-                    if (r.getState() != ItemState.LOCKED && r.getState() != ItemState.LOCKED_FOR_CREATION && !sanitatingIds.contains(r.getId())) {
-                        sanitateRecord(r);
-                        sanitatingIds.add(r.getId());
-                        if (sanitatingIds.size() == MAX_SANITATING_RECORDS) {
-                            break;
-                        }
-                    }
+            // resolved by records that locked them
+            sanitatingIds.removeIf(id -> !recordsToSanitate.containsKey(id));
+            List<StateRecord> toSanitate = new ArrayList<>();
+            while (sanitatingIds.size() < config.getSanitationParallelism() && !isShuttingDown) {
+                StateRecord r = sanitationQueue.peek();
+                if (r == null)
+                    break;
+                if (!recordsToSanitate.containsKey(r.getId()) || sanitatingIds.contains(r.getId())) {
+                    // resolved by the record that locked it
+                    sanitationQueue.poll();
+                    continue;
                 }
+                if (!acquireSanitationPermit())
+                    break;
+                sanitationQueue.poll();
+                sanitatingIds.add(r.getId());
+                toSanitate.add(r);
             }
-            if (sanitatingIds.size() == 0 && recordsToSanitate.size() > 0) {
+            if (!toSanitate.isEmpty())
+                sanitateRecords(toSanitate);
+
+            if (sanitatingIds.isEmpty() && sanitationQueue.isEmpty() && !recordsToSanitate.isEmpty()) {
                 //ONLY LOCKED LEFT -> RESYNC THEM
                 synchronized (recordsToSanitate) {
                     for (StateRecord r : recordsToSanitate.values()) {
@@ -226,22 +375,85 @@ public class Node {
                         } catch (Exception e) {
                             e.printStackTrace();
                         }
+                        sanitationQueue.add(r);
                     }
                 }
             }
         }
+    }
 
+    private boolean acquireSanitationPermit() {
+        int rate = config.getSanitationRate();
+        if (rate <= 0)
+            return true;
+        long now = System.nanoTime();
+        // token bucket holding up to one second of permits
+        sanitationPermits = Math.min(rate, sanitationPermits + (now - sanitationPermitsAt) * rate / 1e9);
+        sanitationPermitsAt = now;
+        if (sanitationPermits < 1)
+            return false;
+        sanitationPermits -= 1;
+        return true;
+    }
 
+    /**
+     * Progress of the ledger sanitation, that is resolving of records left unfinished by the previous run of the node.
+     *
+     * @return {@link Binder} with total number of records to sanitate, remaining, queued and in progress ones,
+     * progress (0..1), sanitation rate (records per second), estimated seconds left (-1 if not known yet), and numbers
+     * of resync requests and notifications sent to other nodes
+     */
+    public Binder getSanitationStats() {
+        int total;
+        Instant startedAt;
+        synchronized (sanitationMutex) {
+            total = sanitationTotal;
+            startedAt = sanitationStartedAt;
+        }
+        int remaining = recordsToSanitate.size();
+        int done = Math.max(0, total - remaining);
+        double seconds = startedAt != null ? Duration.between(startedAt, Instant.now()).toMillis() / 1000.0 : 0;
+        double rate = seconds > 0 ? done / seconds : 0;
+        return Binder.of(
+                "total", total,
+                "remaining", remaining,
+                "queued", sanitationQueue.size(),
+                "inProgress", sanitatingIds.size(),
+                "progress", total > 0 ? (double) done / total : 1.0,
+                "rate", rate,
+                "eta", remaining == 0 ? 0 : (rate > 0 ? (long) Math.ceil(remaining / rate) : -1),
+                "resyncRequests", resyncBatcher.getRequestsCount(),
+                "resyncNotifications", resyncBatcher.getNotificationsCount()
+        );
     }
 
-    private void sanitateRecord(StateRecord r) {
-        try {
-            if(isShuttingDown)
-                return;
-            resync(r.getId());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    // records are resynced at once by the bulk resyncer, ones being processed meanwhile are resynced by processors
+    private void sanitateRecords(List<StateRecord> records) {
+        if(isShuttingDown)
+            return;
+        List<HashId> ids = new ArrayList<>(records.size());
+        for (StateRecord r : records)
+            ids.add(r.getId());
+        resync(ids).whenComplete((states, error) -> {
+            if (error != null)
+                error.printStackTrace();
+            for (StateRecord r : records) {
+                ItemState state = states != null ? states.get(r.getId()) : null;
+                try {
+                    if (state == null) {
+                        resync(r.getId());
+                    } else if (state.isConsensusFound()) {
+                        // saved by the resync, locked records are resolved by the state
+                        r.setState(state);
+                        itemSanitationDone(r);
+                    } else {
+                        itemSanitationFailed(r);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        });
     }
 
 //    /**
@@ -284,6 +496,77 @@ public class Node {
 //        return ItemResult.UNDEFINED;
     }
 
+    /**
+     * Register the item requested by a client, like {@link #registerItem(Approvable)}, if the node is not overloaded.
+     * The registration is counted by the admission control until the item is processed.
+     *
+     * @param item     to register/check state
+     * @param priority of the registration
+     * @param wait     if false, the item is rejected at once if it can't be admitted, otherwise it waits for a while
+     *
+     * @return current (or last known) item state
+     *
+     * @throws AdmissionController.OverloadedException if the node is overloaded
+     * @throws InterruptedException                    if interrupted while waiting for admission
+     */
+    public @NonNull ItemResult registerClientItem(Approvable item, AdmissionController.Priority priority, boolean wait)
+            throws AdmissionController.OverloadedException, InterruptedException {
+        if (admission == null)
+            return registerItem(item);
+
+        AdmissionController.Ticket ticket = wait ? admission.admit(priority) : admission.tryAdmit(priority);
+        try {
+            Object x = checkItemInternal(item.getId(), null, item, true, true);
+            if (x instanceof ItemProcessor) {
+                ((ItemProcessor) x).doneEvent.addConsumer(i -> ticket.release());
+                return ((ItemProcessor) x).getResult();
+            }
+            ticket.release();
+            return (ItemResult) x;
+        } catch (RuntimeException e) {
+            ticket.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Register the parcel sent by a client, like {@link #registerParcel(Parcel)}, if the node is not overloaded. Parcels
+     * are admitted with {@link AdmissionController.Priority#PAID} and counted by the admission control until processed.
+     *
+     * @param parcel to register/check state
+     *
+     * @return true if Parcel launch to processing. Otherwise exception will be thrown.
+     *
+     * @throws AdmissionController.OverloadedException if the node is overloaded
+     * @throws InterruptedException                    if interrupted while waiting for admission
+     */
+    public boolean registerClientParcel(Parcel parcel)
+            throws AdmissionController.OverloadedException, InterruptedException {
+        if (admission == null)
+            return registerParcel(parcel);
+
+        AdmissionController.Ticket ticket = admission.admit(AdmissionController.Priority.PAID);
+        try {
+            Object x = checkParcelInternal(parcel.getId(), parcel, true);
+            if (x instanceof ParcelProcessor) {
+                ((ParcelProcessor) x).doneEvent.addConsumer(i -> ticket.release());
+                return true;
+            }
+            ticket.release();
+            return false;
+        } catch (RuntimeException e) {
+            ticket.release();
+            throw new RuntimeException("failed to process parcel", e);
+        }
+    }
+
+    /**
+     * @return {@link Binder} with {@link AdmissionController#getStats()}, empty if admission control is off
+     */
+    public Binder getAdmissionStats() {
+        return admission != null ? admission.getStats() : new Binder();
+    }
+
     /**
      * Asynchronous (non blocking) parcel (contract with payment) register.
      * Use Node.waitParcel for waiting parcel being processed.
@@ -348,6 +631,54 @@ public class Node {
         return ir;
     }
 
+    /**
+     * Check states of many items at once, like {@link #checkItem(HashId)}. Items that are not being processed are
+     * resolved with a single ledger query, so results are a snapshot that could miss processing started meanwhile.
+     *
+     * @param itemIds items to check
+     *
+     * @return last known states, in the order of itemIds
+     */
+    public @NonNull List<ItemResult> checkItems(List<HashId> itemIds) {
+        Map<HashId, ItemResult> results = new HashMap<>();
+        List<HashId> toRead = new ArrayList<>();
+        for (HashId itemId : itemIds) {
+            ItemProcessor ip = processors.get(itemId);
+            if (ip != null)
+                results.put(itemId, ip.getResult());
+            else
+                toRead.add(itemId);
+        }
+
+        Map<HashId, StateRecord> records = ledger.getRecords(toRead);
+        for (HashId itemId : toRead) {
+            StateRecord r = records.get(itemId);
+            ItemResult result = null;
+            // pending records without processor are not known yet, as in checkItemInternal
+            if (r != null && !r.isPending()) {
+                result = cache.getResult(itemId);
+                if (result == null)
+                    result = new ItemResult(r, cache.get(itemId) != null);
+            }
+            results.put(itemId, result != null ? result :
+                    new ItemResult(ItemState.UNDEFINED, false, null, null));
+        }
+
+        Set<HashId> testnetIds = ledger.getTestnetIds(results.keySet());
+        List<ItemResult> list = new ArrayList<>(itemIds.size());
+        for (HashId itemId : itemIds) {
+            ItemResult ir = results.get(itemId);
+            ItemInformer.Record record = informer.takeFor(itemId);
+            if (record != null)
+                ir.errors = record.errorRecords;
+            ir.isTestnet = testnetIds.contains(itemId);
+            list.add(ir);
+        }
+        report(getLabel(), () -> concatReportMessage("checked states of ", itemIds.size(), " items"),
+                DatagramAdapter.VerboseLevel.BASE);
+        return list;
+    }
+
     /**
      * Check the parcel's processing state. If parcel is not under processing (not start or already finished)
      * return ParcelProcessingState.NOT_EXIST
@@ -431,6 +762,181 @@ public class Node {
         return (ItemResult) x;
     }
 
+    /**
+     * Resync many items at once, like after the node was cut off the network. Items share one table of votes and
+     * requests to other nodes are batched, see {@link BulkResyncer}. Items being processed are left to their
+     * processors.
+     *
+     * @param ids items to resync
+     *
+     * @return future states of the items committed to the ledger, {@link ItemState#UNDEFINED} for ones the network
+     * doesn't agree on in max resync time
+     */
+    public CompletableFuture<Map<HashId, ItemState>> resync(Collection<HashId> ids) {
+        List<HashId> toResync = new ArrayList<>();
+        for (HashId id : ids) {
+            if (!processors.containsKey(id))
+                toResync.add(id);
+        }
+        Map<HashId, StateRecord> records = ledger.getRecords(toResync);
+        Map<HashId, ItemState> myStates = new HashMap<>();
+        for (HashId id : toResync) {
+            StateRecord r = records.get(id);
+            myStates.put(id, r != null ? r.getState() : ItemState.UNDEFINED);
+        }
+        report(getLabel(), () -> concatReportMessage("bulk resync of ", myStates.size(), " items"),
+                DatagramAdapter.VerboseLevel.BASE);
+        CompletableFuture<Map<HashId, ItemState>> result = new CompletableFuture<>();
+        bulkResyncer.resync(myStates).thenAccept(outcomes -> lowPrioExecutorService.submit(() -> {
+            try {
+                result.complete(commitResynced(outcomes));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }));
+        return result;
+    }
+
+    // save states agreed by the network, with creation and expiration times averaged over the nodes that agreed
+    private Map<HashId, ItemState> commitResynced(Map<HashId, BulkResyncer.Outcome> outcomes) {
+        Map<NodeInfo, List<HashId>> idsByNode = new HashMap<>();
+        outcomes.forEach((id, outcome) ->
+                outcome.getNodes().forEach(node -> {
+                    if (!node.equals(myInfo))
+                        idsByNode.computeIfAbsent(node, k -> new ArrayList<>()).add(id);
+                }));
+
+        Map<HashId, Average> createdAt = new HashMap<>();
+        Map<HashId, Average> expiresAt = new HashMap<>();
+        idsByNode.forEach((node, nodeIds) -> {
+            for (int from = 0; from < nodeIds.size(); from += ClientHTTPServer.MAX_GET_STATES) {
+                List<HashId> chunk = nodeIds.subList(from, Math.min(nodeIds.size(), from + ClientHTTPServer.MAX_GET_STATES));
+                try {
+                    network.getItemStates(node, chunk).forEach((id, r) -> {
+                        // node could lose or archive the item since it voted
+                        if (r == null || !r.state.isConsensusFound() || r.createdAt == null || r.expiresAt == null)
+                            return;
+                        createdAt.computeIfAbsent(id, k -> new Average()).update(r.createdAt.toEpochSecond());
+                        expiresAt.computeIfAbsent(id, k -> new Average()).update(r.expiresAt.toEpochSecond());
+                    });
+                } catch (IOException e) {
+                    report(getLabel(), () -> concatReportMessage("bulk resync: can't get states from ", node,
+                            ": ", e.getMessage()), DatagramAdapter.VerboseLevel.BASE);
+                }
+            }
+        });
+
+        Map<HashId, ItemState> states = new HashMap<>();
+        List<HashId> toCommit = new ArrayList<>();
+        outcomes.forEach((id, outcome) -> {
+            if (outcome.getState().isConsensusFound() && createdAt.containsKey(id))
+                toCommit.add(id);
+            else
+                states.put(id, ItemState.UNDEFINED);
+        });
+
+        for (int from = 0; from < toCommit.size(); from += RESYNC_COMMIT_CHUNK) {
+            List<HashId> chunk = toCommit.subList(from, Math.min(toCommit.size(), from + RESYNC_COMMIT_CHUNK));
+            try {
+                itemLock.synchronizeAll(chunk, () -> {
+                    List<StateRecord> records = new ArrayList<>(chunk.size());
+                    List<ItemState> oldStates = new ArrayList<>(chunk.size());
+                    List<ZonedDateTime> oldCreatedAt = new ArrayList<>(chunk.size());
+                    List<ZonedDateTime> oldExpiresAt = new ArrayList<>(chunk.size());
+                    for (HashId id : chunk) {
+                        // processor started meanwhile decides itself
+                        if (processors.containsKey(id))
+                            continue;
+                        try {
+                            StateRecord r = ledger.findOrCreate(id);
+                            oldStates.add(r.getState());
+                            oldCreatedAt.add(r.getCreatedAt());
+                            oldExpiresAt.add(r.getExpiresAt());
+                            r.setState(outcomes.get(id).getState())
+                                    .setCreatedAt(ZonedDateTime.ofInstant(
+                                            Instant.ofEpochSecond((long) createdAt.get(id).average()), ZoneId.systemDefault()))
+                                    .setExpiresAt(ZonedDateTime.ofInstant(
+                                            Instant.ofEpochSecond((long) expiresAt.get(id).average()), ZoneId.systemDefault()));
+                            records.add(r);
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+
+                    try {
+                        ledger.saveAll(records);
+                    } catch (Ledger.Failure failure) {
+                        // do not leave unsaved states in the shared records
+                        for (int i = 0; i < records.size(); i++)
+                            records.get(i).setState(oldStates.get(i))
+                                    .setCreatedAt(oldCreatedAt.get(i))
+                                    .setExpiresAt(oldExpiresAt.get(i));
+                        throw failure;
+                    }
+                    synchronized (cache) {
+                        for (StateRecord r : records)
+                            cache.update(r.getId(), new ItemResult(r));
+                    }
+                    for (StateRecord r : records)
+                        states.put(r.getId(), r.getState());
+                    return null;
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            // skipped and failed ones
+            for (HashId id : chunk)
+                states.putIfAbsent(id, ItemState.UNDEFINED);
+        }
+        return states;
+    }
+
+    /**
+     * Get the item result once the item is processed, without blocking the calling or any other thread: the result is
+     * completed by the done event of the item processor. If the item is not being processed yet, the result is
+     * completed by the processor started for it later, if any.
+     *
+     * @param itemId  item to wait for
+     * @param timeout after which the result is completed with the current item state anyway
+     *
+     * @return future item result
+     */
+    public CompletableFuture<ItemResult> waitItemAsync(HashId itemId, Duration timeout) {
+        CompletableFuture<ItemResult> result = new CompletableFuture<>();
+        itemWaiters.compute(itemId, (k, waiters) -> {
+            if (waiters == null)
+                waiters = new ArrayList<>();
+            waiters.add(result);
+            return waiters;
+        });
+
+        Object x = checkItemInternal(itemId);
+        if (x instanceof ItemProcessor)
+            ((ItemProcessor) x).doneEvent.addConsumer(i -> completeItemWaiters(itemId));
+        else if (((ItemResult) x).state != ItemState.UNDEFINED)
+            completeItemWaiters(itemId);
+
+        if (!result.isDone()) {
+            ScheduledFuture<?> timer = executorService.schedule(() -> {
+                itemWaiters.computeIfPresent(itemId, (k, waiters) -> {
+                    waiters.remove(result);
+                    return waiters.isEmpty() ? null : waiters;
+                });
+                result.complete(checkItem(itemId));
+            }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+            result.whenComplete((r, e) -> timer.cancel(false));
+        }
+        return result;
+    }
+
+    private void completeItemWaiters(HashId itemId) {
+        List<CompletableFuture<ItemResult>> waiters = itemWaiters.remove(itemId);
+        if (waiters != null) {
+            ItemResult ir = checkItem(itemId);
+            waiters.forEach(w -> w.complete(ir));
+        }
+    }
+
     /**
      * If the parcel is being processing, block until the parcel been processed (been processed payment and payload contracts).
      *
@@ -490,32 +996,25 @@ public class Node {
 
 
         if (notification.answerIsRequested()) {
-            // iterate on subItems of parent item that need to resync (stored at ItemResyncNotification.getItemsToResync())
+            // iterate on subItems of parent item that need to resync (stored at ItemResyncNotification.getItemsToResync()),
+            // batched requests could carry many of them, so records of not processing ones are read at once
+            List<HashId> toRead = new ArrayList<>();
             for (HashId hid : itemsToResync.keySet()) {
-                Object subitemObject = checkItemInternal(hid);
-                ItemResult subItemResult;
-                ItemState subItemState;
-
-                if (subitemObject instanceof ItemResult) {
-                    // we have solution for resyncing subitem:
-                    subItemResult = (ItemResult) subitemObject;
-                } else if (subitemObject instanceof ItemProcessor) {
+                ItemProcessor ip = processors.get(hid);
+                if (ip != null) {
                     // resyncing subitem is still processing, but may be has solution:
-                    subItemResult = ((ItemProcessor) subitemObject).getResult();
-                } else {
-                    // we has not solution:
-                    subItemResult = null;
-                }
-
-                // we answer only states with consensus, in other cases we answer ItemState.UNDEFINED
-                if (subItemResult != null) {
-                    subItemState = subItemResult.state.isConsensusFound() ? subItemResult.state : ItemState.UNDEFINED;
+                    answersForItems.put(hid, ip.getResult().state);
                 } else {
-                    subItemState = ItemState.UNDEFINED;
+                    toRead.add(hid);
                 }
-
-                answersForItems.put(hid, subItemState);
             }
+            Map<HashId, StateRecord> records = ledger.getRecords(toRead);
+            for (HashId hid : toRead) {
+                StateRecord r = records.get(hid);
+                answersForItems.put(hid, r != null ? r.getState() : ItemState.UNDEFINED);
+            }
+            // we answer only states with consensus, in other cases we answer ItemState.UNDEFINED
+            answersForItems.replaceAll((hid, state) -> state.isConsensusFound() ? state : ItemState.UNDEFINED);
 
             network.deliver(
                     from,
@@ -535,6 +1034,22 @@ public class Node {
                 });
             }
         }
+
+        if (!notification.answerIsRequested())
+            bulkResyncer.onAnswer(from, itemsToResync);
+
+        // batched notification (see ResyncBatcher) carries states of other items resyncing themselves too
+        for (HashId hid : itemsToResync.keySet()) {
+            if (hid.equals(notification.getItemId()))
+                continue;
+            ItemProcessor ip = processors.get(hid);
+            if (ip != null && ip.resyncItselfOnly && ip.processingState.isResyncing()) {
+                ip.lock(() -> {
+                    ip.resyncVote(hid, from, itemsToResync.get(hid));
+                    return null;
+                });
+            }
+        }
     }
 
 
@@ -776,8 +1291,11 @@ public class Node {
                     report(getLabel(), () -> concatReportMessage("checkItemInternal: ", itemId,
                             "nothing found, will create item processor"),
                             DatagramAdapter.VerboseLevel.BASE);
-                    ItemProcessor processor = new ItemProcessor(itemId, parcelId, item, lock, forceChecking);
+                    // processor keeps the lock as its mutex until it is removed
+                    ItemProcessor processor = new ItemProcessor(itemId, parcelId, item, itemLock.retain(itemId), forceChecking);
                     processors.put(itemId, processor);
+                    if (itemWaiters.containsKey(itemId))
+                        processor.doneEvent.addConsumer(i -> completeItemWaiters(itemId));
                     return processor;
                 } else {
                     return ItemResult.UNDEFINED;
@@ -819,7 +1337,8 @@ public class Node {
                             parcelCache.put(parcel);
                         }
                     }
-                    processor = new ParcelProcessor(parcelId, parcel, lock);
+                    // processor keeps the lock as its mutex until it is removed
+                    processor = new ParcelProcessor(parcelId, parcel, parcelLock.retain(parcelId));
                     parcelProcessors.put(parcelId, processor);
 
                     return processor;
@@ -915,6 +1434,7 @@ public class Node {
         System.out.println(toString() + "please wait, executorService is shutting down");
         executorService.shutdown();
         lowPrioExecutorService.shutdown();
+        downloadExecutorService.shutdownNow();
         try {
             executorService.awaitTermination(5, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
@@ -1011,7 +1531,18 @@ public class Node {
                 "lastMonthPaidAmount", nodeStats.lastMonthPaidAmount,
                 "thisMonthPaidAmount", nodeStats.thisMonthPaidAmount,
                 "yesterdayPaidAmount", nodeStats.yesterdayPaidAmount,
-                "todayPaidAmount", nodeStats.todayPaidAmount
+                "todayPaidAmount", nodeStats.todayPaidAmount,
+                "itemCache", cache.getStats(),
+                "parcelCache", parcelCache.getStats(),
+                "ledgerCache", ledger.getRecordsCacheStats(),
+                "dbPool", ledger.getDbPoolStats(),
+                "itemDownloads", itemDownloader.getStats(),
+                "parcelDownloads", parcelDownloader.getStats(),
+                "executor", getExecutorStats(),
+                "admission", getAdmissionStats(),
+                "sanitation", getSanitationStats(),
+                "bulkResync", bulkResyncer.getStats(),
+                "signatureCache", ExtendedSignature.getCache().getStats()
         );
     }
 
@@ -1040,14 +1571,15 @@ public class Node {
         private ItemProcessor payloadProcessor;
         private ItemResult paymentResult = null;
         private ItemResult payloadResult = null;
-        private Set<NodeInfo> sources = new HashSet<>();
+        private final Set<NodeInfo> sources = ConcurrentHashMap.newKeySet();
         private HashMap<NodeInfo, ItemState> paymentDelayedVotes = new HashMap<>();
         private HashMap<NodeInfo, ItemState> payloadDelayedVotes = new HashMap<>();
         private ParcelProcessingState processingState;
 
         private final Object mutex;
+        private final AtomicBoolean isLockRetained = new AtomicBoolean(true);
 
-        private ScheduledFuture<?> downloader;
+        private CompletableFuture<Parcel> downloader;
         private ScheduledFuture<?> processSchedule;
 
         private final AsyncEvent<Void> downloadedEvent = new AsyncEvent<>();
@@ -1069,7 +1601,7 @@ public class Node {
          *
          * @param parcelId is parcel's id to processing
          * @param parcel is {@link Parcel} if exists. Will download if not exists.
-         * @param lock is lock object for parcel.
+         * @param lock is lock object for parcel, retained in the {@link ParcelLock} until the processor is removed.
          */
         public ParcelProcessor(HashId parcelId, Parcel parcel, Object lock) {
             mutex = lock;
@@ -1147,8 +1679,12 @@ public class Node {
                             DatagramAdapter.VerboseLevel.BASE);
                     // if payment is ok, wait payload
                     if (paymentResult.state.isApproved()) {
-                        if(!payment.isLimitedForTestnet())
-                            ledger.savePayment(parcel.getQuantasLimit()/Quantiser.quantaPerU, paymentProcessor != null ? paymentProcessor.record.getCreatedAt() : ledger.getRecord(payment.getId()).getCreatedAt());
+                        if(!payment.isLimitedForTestnet()) {
+                            int paidAmount = parcel.getQuantasLimit()/Quantiser.quantaPerU;
+                            ZonedDateTime paidAt = paymentProcessor != null ? paymentProcessor.record.getCreatedAt() : ledger.getRecord(payment.getId()).getCreatedAt();
+                            ledger.savePayment(paidAmount, paidAt);
+                            nodeStats.addPayment(paidAmount, paidAt);
+                        }
 
                         report(getLabel(), () -> concatReportMessage("parcel processor for: ",
                                 parcelId, " :: check payload, state ", processingState),
@@ -1242,46 +1778,34 @@ public class Node {
 
                     synchronized (mutex) {
                         if (parcel == null && (downloader == null || downloader.isDone())) {
-                            downloader = (ScheduledFuture<?>) executorService.submit(() -> download(),
-                                    Node.this.toString() + " > parcel " + parcelId + " :: parcel pulseDownload -> download");
+                            long startedAt = System.nanoTime();
+                            downloader = parcelDownloader.download(parcelId, this::getSources,
+                                    () -> processingState.canContinue() && !isPayloadPollingExpired());
+                            downloader.thenAccept(p -> {
+                                if (p != null)
+                                    parcelDownloadTime.recordTime(startedAt);
+                            });
+                            downloader.thenAcceptAsync(this::download, executorService);
                         }
                     }
                 }
             }
         }
 
-        private void download() {
-            if(processingState.canContinue()) {
+        private List<NodeInfo> getSources() {
+            // called by the downloader under its own lock, so it should not lock sources
+            return new ArrayList<>(sources);
+        }
 
-                int retryCounter = config.getGetItemRetryCount();
-                while (!isPayloadPollingExpired() && parcel == null) {
-                    if (sources.isEmpty()) {
-//                        log.e("empty sources for download tasks, stopping");
-                        return;
-                    } else {
-                        try {
-                            // first we have to wait for sources
-                            NodeInfo source;
-                            // Important: it could be disturbed by notifications
-                            synchronized (sources) {
-                                source = Do.sample(sources);
-                            }
-                            parcel = network.getParcel(parcelId, source, config.getMaxGetItemTime());
-                            if (parcel != null) {
-                                parcelDownloaded();
-                                return;
-                            } else {
-                                Thread.sleep(1000);
-                                retryCounter -= 1;
-                            }
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                    if (retryCounter <= 0)
-                        return;
-                }
+        private void download(Parcel downloaded) {
+            if (downloaded == null)
+                return;
+            synchronized (mutex) {
+                if (parcel != null)
+                    return;
+                parcel = downloaded;
             }
+            parcelDownloaded();
         }
 
         private final void parcelDownloaded() {
@@ -1475,6 +1999,8 @@ public class Node {
                     DatagramAdapter.VerboseLevel.BASE);
             if(processingState.canRemoveSelf()) {
                 parcelProcessors.remove(parcelId);
+                if (isLockRetained.compareAndSet(true, false))
+                    parcelLock.release(parcelId);
 
                 stopDownloader();
                 stopProcesser();
@@ -1512,13 +2038,18 @@ public class Node {
         private final StateRecord record;
         private final ItemState stateWas;
         private ItemProcessingState processingState;
-        private Set<NodeInfo> sources = new HashSet<>();
+        private final Set<NodeInfo> sources = ConcurrentHashMap.newKeySet();
 
         /**
          * Set true if you resyncing item itself (item will be rollbacked with ItemProcessor if resync will failed).
          */
         private boolean resyncItselfOnly;
 
+        /**
+         * Set true when subitems are resynced by {@link BulkResyncer}, so own resync votes are not counted.
+         */
+        private volatile boolean resyncInBulk;
+
         private Set<NodeInfo> positiveNodes = new HashSet<>();
         private Set<NodeInfo> negativeNodes = new HashSet<>();
 
@@ -1530,6 +2061,7 @@ public class Node {
         private Instant pollingExpiresAt;
         private Instant consensusReceivedExpiresAt;
         private Instant resyncExpiresAt;
+        private final long createdAt = System.nanoTime();
 
         private boolean alreadyChecked;
         private boolean isCheckingForce = false;
@@ -1542,9 +2074,10 @@ public class Node {
         private final AsyncEvent<Void> removedEvent = new AsyncEvent<>();
 
         private final Object mutex;
+        private final AtomicBoolean isLockRetained = new AtomicBoolean(true);
         private final Object resyncMutex;
 
-        private ScheduledFuture<?> downloader;
+        private CompletableFuture<Approvable> downloader;
         private RunnableWithDynamicPeriod poller;
         private RunnableWithDynamicPeriod consensusReceivedChecker;
         private RunnableWithDynamicPeriod resyncer;
@@ -1594,7 +2127,7 @@ public class Node {
          * @param itemId is item's id to be process.
          * @param parcelId is parcel's id that item belongs to.
          * @param item is item object if exist.
-         * @param lock is object for synchronization (it is object from {@link ItemLock} that points to item's hashId)
+         * @param lock is object for synchronization (it is object from {@link ItemLock} that points to item's hashId), retained until the processor is removed
          * @param isCheckingForce if true checking item processing without delays.
          *                        If false checking item wait until forceChecking() will be called.
          */
@@ -1658,41 +2191,34 @@ public class Node {
 
                     synchronized (mutex) {
                         if (item == null && (downloader == null || downloader.isDone())) {
-                            downloader = (ScheduledFuture<?>) executorService.submit(() -> download(),
-                                    Node.this.toString() + toString() + " :: item pulseDownload -> download");
+                            long startedAt = System.nanoTime();
+                            downloader = itemDownloader.download(itemId, this::getSources,
+                                    () -> processingState.canContinue() && !isPollingExpired());
+                            downloader.thenAccept(i -> {
+                                if (i != null)
+                                    itemDownloadTime.recordTime(startedAt);
+                            });
+                            downloader.thenAcceptAsync(this::download, executorService);
                         }
                     }
                 }
             }
         }
 
-        private void download() {
-            if(processingState.canContinue()) {
-                while (!isPollingExpired() && item == null) {
-                    if (sources.isEmpty()) {
-                        log.e("empty sources for download tasks, stopping");
-                        return;
-                    } else {
-                        try {
-                            // first we have to wait for sources
-                            NodeInfo source;
-                            // Important: it could be disturbed by notifications
-                            synchronized (sources) {
-                                source = Do.sample(sources);
-                            }
-                            item = network.getItem(itemId, source, config.getMaxGetItemTime());
-                            if (item != null) {
-                                itemDownloaded();
-                                return;
-                            } else {
-                                Thread.sleep(100);
-                            }
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                }
+        private List<NodeInfo> getSources() {
+            // called by the downloader under its own lock, so it should not lock sources
+            return new ArrayList<>(sources);
+        }
+
+        private void download(Approvable downloaded) {
+            if (downloaded == null)
+                return;
+            synchronized (mutex) {
+                if (item != null)
+                    return;
+                item = downloaded;
             }
+            itemDownloaded();
         }
 
         private final void itemDownloaded() {
@@ -1765,6 +2291,7 @@ public class Node {
 
                     try {
                         boolean checkPassed = false;
+                        long checkStartedAt = System.nanoTime();
 
                         if(item.shouldBeU()) {
                             if(item.isU(config.getTransactionUnitsIssuerKeys(), config.getTUIssuerName())) {
@@ -1801,6 +2328,7 @@ public class Node {
                                 }
                             }
                         }
+                        itemCheckTime.recordTime(checkStartedAt);
 
                         if (checkPassed) {
 
@@ -2221,6 +2749,7 @@ public class Node {
                     }
                     if (!processingState.isProcessedToConsensus())
                         return;
+                    itemConsensusTime.recordTime(createdAt);
                 }
 
 
@@ -2247,140 +2776,197 @@ public class Node {
             }
         }
 
-        // commit subitems of given item to the ledger (recursively)
+        // commit subitems of given item to the ledger (recursively), all records are saved in one transaction
+        // while their locks are held, so nobody sees new states before they are in the ledger
         private void downloadAndCommitSubItemsOf(Approvable commitingItem) {
             if(processingState.canContinue()) {
-                for (Approvable revokingItem : commitingItem.getRevokingItems()) {
-                    // The record may not exist due to ledger desync, so we create it if need
-                    try {
-                        itemLock.synchronize(revokingItem.getId(), lock -> {
-                            StateRecord r = ledger.findOrCreate(revokingItem.getId());
-                            r.setState(ItemState.REVOKED);
-                            r.setExpiresAt(ZonedDateTime.now().plus(config.getRevokedItemExpiration()));
-                            try {
-                                r.save();
-                                // if revoking item is smart contract node calls method onRevoked
-                                if(revokingItem instanceof SlotContract) {
-                                    // we need to get all subscriptions
-                                    Set<ContractStorageSubscription> trackingCssSet = ledger.getStorageSubscriptionsForContractId(((SlotContract) revokingItem).getTrackingContract().getId());
-                                    //restore environment with found subcriptions
-                                    ImmutableEnvironment ime;
-                                    byte[] ebytes = ledger.getEnvironmentFromStorage(revokingItem.getId());
-                                    if (ebytes != null) {
-                                        Binder binder = Boss.unpack(ebytes);
-                                        ime = new SlotImmutableEnvironment((SlotContract) revokingItem, binder, trackingCssSet);
-                                    } else {
-                                        ime = new SlotImmutableEnvironment((SlotContract) revokingItem, null, trackingCssSet);
-                                    }
-                                    // set ledger, config and nodeInfo for slot contarct
-                                    ((SlotContract) revokingItem).setNodeInfo(myInfo);
-                                    ((SlotContract) revokingItem).setNodeConfig(config);
-                                    ((SlotContract) revokingItem).setLedger(ledger);
-                                    // and run onRevoked
-                                    ((SlotContract) revokingItem).onRevoked(ime);
-                                }
+                List<Approvable> subItems = new ArrayList<>();
+                Set<Approvable> revokingItems = new HashSet<>();
+                collectSubItemsOf(commitingItem, subItems, revokingItems);
+                if (subItems.isEmpty())
+                    return;
 
-//                                updateItemForSmartContracts(revokingItem, r.getState());
+                List<HashId> subItemIds = new ArrayList<>(subItems.size());
+                for (Approvable subItem : subItems)
+                    subItemIds.add(subItem.getId());
 
-                                synchronized (cache) {
-                                    ItemResult rr = new ItemResult(r);
-                                    rr.extraDataBinder = null;
-                                    if(cache.get(r.getId()) == null) {
-                                        cache.put(revokingItem, rr);
-                                    } else {
-                                        cache.update(r.getId(), rr);
-                                    }
+                // records are in the same order as subitems, null if we failed to get one
+                List<StateRecord> records = new ArrayList<>(subItems.size());
+                boolean saved;
+                try {
+                    saved = itemLock.synchronizeAll(subItemIds, () -> {
+                        List<StateRecord> recordsToSave = new ArrayList<>(subItems.size());
+                        List<ItemState> oldStates = new ArrayList<>(subItems.size());
+                        List<ZonedDateTime> oldExpiresAt = new ArrayList<>(subItems.size());
+                        for (Approvable subItem : subItems) {
+                            // The record may not exist due to ledger desync, so we create it if need
+                            try {
+                                StateRecord r = ledger.findOrCreate(subItem.getId());
+                                oldStates.add(r.getState());
+                                oldExpiresAt.add(r.getExpiresAt());
+                                if (revokingItems.contains(subItem)) {
+                                    r.setState(ItemState.REVOKED);
+                                    r.setExpiresAt(ZonedDateTime.now().plus(config.getRevokedItemExpiration()));
+                                } else {
+                                    r.setState(ItemState.APPROVED);
+                                    r.setExpiresAt(subItem.getExpiresAt());
                                 }
-                            } catch (Ledger.Failure failure) {
-                                emergencyBreak();
-                                return null;
+                                records.add(r);
+                                recordsToSave.add(r);
+                            } catch (Exception e) {
+                                e.printStackTrace();
+                                records.add(null);
                             }
-                            return null;
-                        });
+                        }
+
+                        try {
+                            ledger.saveAll(recordsToSave);
+                            return true;
+                        } catch (Ledger.Failure failure) {
+                            // do not leave unsaved states in the shared records
+                            for (int i = 0; i < recordsToSave.size(); i++)
+                                recordsToSave.get(i).setState(oldStates.get(i)).setExpiresAt(oldExpiresAt.get(i));
+                            return false;
+                        }
+                    });
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    saved = false;
+                }
+                if (!saved) {
+                    emergencyBreak();
+                    return;
+                }
+
+                for (int i = 0; i < subItems.size(); i++) {
+                    StateRecord r = records.get(i);
+                    if (r == null)
+                        continue;
+                    Approvable subItem = subItems.get(i);
+                    try {
+                        if (revokingItems.contains(subItem))
+                            commitRevokedItem(subItem, r);
+                        else
+                            commitNewItem(subItem, r);
                     } catch (Exception e) {
                         e.printStackTrace();
                     }
                 }
+            }
+        }
 
-                for (Approvable newItem : commitingItem.getNewItems()) {
-                    // The record may not exist due to ledger desync too, so we create it if need
-                    try {
-                        itemLock.synchronize(newItem.getId(), lock -> {
-                            StateRecord r = ledger.findOrCreate(newItem.getId());
-                            r.setState(ItemState.APPROVED);
-                            r.setExpiresAt(newItem.getExpiresAt());
-                            try {
-                                r.save();
-                                Binder newExtraResult = new Binder();
-                                // if new item is smart contract node calls method onCreated or onUpdated
-                                if(newItem instanceof SlotContract) {
-                                    Binder er;
-
-                                    ((SlotContract) newItem).setNodeInfo(myInfo);
-                                    ((SlotContract) newItem).setNodeConfig(config);
-                                    ((SlotContract) newItem).setLedger(ledger);
-
-                                    MutableEnvironment me;
-
-                                    if (((SlotContract) newItem).getRevision() == 1) {
-                                        // create environment
-                                        me = new SlotMutableEnvironment((SlotContract) newItem);
-                                        // and call onCreated
-                                        er = ((SlotContract) newItem).onCreated(me);
-                                        newExtraResult.set("onCreatedResult", er);
-                                    } else {
-                                        try{
-                                            // we need to find all subscriptions
-                                            Set<ContractStorageSubscription> trackingCssSet = ledger.getStorageSubscriptionsForContractId(((SlotContract) newItem).getTrackingContract().getId());
-
-                                            // restore environment with found subscriptions
-                                            byte[] ebytes = ledger.getEnvironmentFromStorage(newItem.getId());
-                                            if (ebytes != null) {
-                                                Binder binder = Boss.unpack(ebytes);
-                                                me = new SlotMutableEnvironment((SlotContract) newItem, binder, trackingCssSet);
-                                                // and call onUpdated
-                                                er = ((SlotContract) newItem).onUpdated(me);
-                                                newExtraResult.set("onUpdateResult", er);
-                                            } else {
-                                                me = new SlotMutableEnvironment((SlotContract) newItem, null, trackingCssSet);
-                                                // and call onUpdated
-                                                er = ((SlotContract) newItem).onUpdated(me);
-                                                newExtraResult.set("onUpdateResult", er);
-                                            }
-                                        } catch (Exception e) {
-                                            e.printStackTrace();
-                                        }
-                                    }
-                                }
+        // revoking items of the item go first, then its new items each followed by its own subitems
+        private void collectSubItemsOf(Approvable commitingItem, List<Approvable> subItems, Set<Approvable> revokingItems) {
+            for (Approvable revokingItem : commitingItem.getRevokingItems()) {
+                subItems.add(revokingItem);
+                revokingItems.add(revokingItem);
+            }
+            for (Approvable newItem : commitingItem.getNewItems()) {
+                subItems.add(newItem);
+                collectSubItemsOf(newItem, subItems, revokingItems);
+            }
+        }
 
-                                // update new item's smart contracts link to
-                                updateItemForSmartContracts(newItem, r.getState());
+        // process revoking item which record is already saved
+        private void commitRevokedItem(Approvable revokingItem, StateRecord r) throws Exception {
+            itemLock.synchronize(revokingItem.getId(), lock -> {
+                // if revoking item is smart contract node calls method onRevoked
+                if(revokingItem instanceof SlotContract) {
+                    // we need to get all subscriptions
+                    Set<ContractStorageSubscription> trackingCssSet = ledger.getStorageSubscriptionsForContractId(((SlotContract) revokingItem).getTrackingContract().getId());
+                    //restore environment with found subcriptions
+                    ImmutableEnvironment ime;
+                    byte[] ebytes = ledger.getEnvironmentFromStorage(revokingItem.getId());
+                    if (ebytes != null) {
+                        Binder binder = Boss.unpack(ebytes);
+                        ime = new SlotImmutableEnvironment((SlotContract) revokingItem, binder, trackingCssSet);
+                    } else {
+                        ime = new SlotImmutableEnvironment((SlotContract) revokingItem, null, trackingCssSet);
+                    }
+                    // set ledger, config and nodeInfo for slot contarct
+                    ((SlotContract) revokingItem).setNodeInfo(myInfo);
+                    ((SlotContract) revokingItem).setNodeConfig(config);
+                    ((SlotContract) revokingItem).setLedger(ledger);
+                    // and run onRevoked
+                    ((SlotContract) revokingItem).onRevoked(ime);
+                }
 
-                                synchronized (cache) {
-                                    ItemResult rr = new ItemResult(r);
-                                    rr.extraDataBinder = newExtraResult;
-                                    if(cache.get(r.getId()) == null) {
-                                        cache.put(newItem, rr);
-                                    } else {
-                                        cache.update(r.getId(), rr);
-                                    }
-                                }
-                            } catch (Ledger.Failure failure) {
-                                emergencyBreak();
-                                return null;
-                            }
-                            return null;
-                        });
-                    } catch (Exception e) {
-                        e.printStackTrace();
+//                updateItemForSmartContracts(revokingItem, r.getState());
+
+                synchronized (cache) {
+                    ItemResult rr = new ItemResult(r);
+                    rr.extraDataBinder = null;
+                    if(cache.get(r.getId()) == null) {
+                        cache.put(revokingItem, rr);
+                    } else {
+                        cache.update(r.getId(), rr);
                     }
+                }
+                return null;
+            });
+        }
+
+        // process new item which record is already saved
+        private void commitNewItem(Approvable newItem, StateRecord r) throws Exception {
+            itemLock.synchronize(newItem.getId(), lock -> {
+                Binder newExtraResult = new Binder();
+                // if new item is smart contract node calls method onCreated or onUpdated
+                if(newItem instanceof SlotContract) {
+                    Binder er;
+
+                    ((SlotContract) newItem).setNodeInfo(myInfo);
+                    ((SlotContract) newItem).setNodeConfig(config);
+                    ((SlotContract) newItem).setLedger(ledger);
 
-                    lowPrioExecutorService.schedule(() -> checkSpecialItem(newItem),100,TimeUnit.MILLISECONDS);
+                    MutableEnvironment me;
 
+                    if (((SlotContract) newItem).getRevision() == 1) {
+                        // create environment
+                        me = new SlotMutableEnvironment((SlotContract) newItem);
+                        // and call onCreated
+                        er = ((SlotContract) newItem).onCreated(me);
+                        newExtraResult.set("onCreatedResult", er);
+                    } else {
+                        try{
+                            // we need to find all subscriptions
+                            Set<ContractStorageSubscription> trackingCssSet = ledger.getStorageSubscriptionsForContractId(((SlotContract) newItem).getTrackingContract().getId());
 
-                    downloadAndCommitSubItemsOf(newItem);
+                            // restore environment with found subscriptions
+                            byte[] ebytes = ledger.getEnvironmentFromStorage(newItem.getId());
+                            if (ebytes != null) {
+                                Binder binder = Boss.unpack(ebytes);
+                                me = new SlotMutableEnvironment((SlotContract) newItem, binder, trackingCssSet);
+                                // and call onUpdated
+                                er = ((SlotContract) newItem).onUpdated(me);
+                                newExtraResult.set("onUpdateResult", er);
+                            } else {
+                                me = new SlotMutableEnvironment((SlotContract) newItem, null, trackingCssSet);
+                                // and call onUpdated
+                                er = ((SlotContract) newItem).onUpdated(me);
+                                newExtraResult.set("onUpdateResult", er);
+                            }
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
                 }
-            }
+
+                // update new item's smart contracts link to
+                updateItemForSmartContracts(newItem, r.getState());
+
+                synchronized (cache) {
+                    ItemResult rr = new ItemResult(r);
+                    rr.extraDataBinder = newExtraResult;
+                    if(cache.get(r.getId()) == null) {
+                        cache.put(newItem, rr);
+                    } else {
+                        cache.update(r.getId(), rr);
+                    }
+                }
+                return null;
+            });
+
+            lowPrioExecutorService.schedule(() -> checkSpecialItem(newItem),100,TimeUnit.MILLISECONDS);
         }
 
         private void downloadAndCommit() {
@@ -2801,6 +3387,11 @@ public class Node {
 
                     pulseCheckIfItemsResynced();
 
+                    if (!resyncItself) {
+                        resyncSubItemsInBulk();
+                        return;
+                    }
+
                     for (ResyncingItem ri : resyncingItems.values()) {
                         // vote itself
                         if (ri.needsResyncVoteFrom(myInfo)) {
@@ -2825,6 +3416,29 @@ public class Node {
             }
         }
 
+        // subitems are resynced along with all other items the node is resyncing, see resync(Collection)
+        private final void resyncSubItemsInBulk() {
+            List<HashId> ids;
+            synchronized (resyncMutex) {
+                resyncInBulk = true;
+                ids = new ArrayList<>(resyncingItems.keySet());
+            }
+            resync(ids).whenComplete((states, error) -> {
+                if (error != null)
+                    error.printStackTrace();
+                List<ResyncingItem> items;
+                synchronized (resyncMutex) {
+                    if (processingState.canContinue() && !processingState.isProcessedToConsensus())
+                        processingState = ItemProcessingState.GOT_RESYNCED_STATE;
+                    items = new ArrayList<>(resyncingItems.values());
+                }
+                for (ResyncingItem ri : items) {
+                    ItemState state = states != null ? states.get(ri.getId()) : null;
+                    ri.closeResynced(state != null && state.isConsensusFound());
+                }
+            });
+        }
+
         private final void sendResyncNotification() {
             if(processingState.canContinue()) {
                 if (!processingState.isProcessedToConsensus()) {
@@ -2849,7 +3463,10 @@ public class Node {
                                 itemsToResync.put(hid, resyncingItems.get(hid).getItemState().isConsensusFound() ? resyncingItems.get(hid).getItemState() : ItemState.UNDEFINED);
                             }
                         }
-                        if (itemsToResync.size() > 0) {
+                        if (resyncItselfOnly) {
+                            // items resyncing themselves could be many, so their requests are batched
+                            itemsToResync.forEach((hid, state) -> resyncBatcher.add(node, hid, state));
+                        } else if (itemsToResync.size() > 0) {
                             ItemResyncNotification notification = new ItemResyncNotification(myInfo, itemId, itemsToResync, true);
 
                             network.deliver(node, notification);
@@ -2862,6 +3479,8 @@ public class Node {
         }
 
         private final void resyncVote(HashId hid, NodeInfo node, ItemState state) {
+            if (resyncInBulk)
+                return;
             if(processingState.canContinue()) {
 
                 if (!processingState.isProcessedToConsensus()) {
@@ -3086,6 +3705,8 @@ public class Node {
         //used in test purposes
         private void forceRemoveSelf() {
             processors.remove(itemId);
+            if (isLockRetained.compareAndSet(true, false))
+                itemLock.release(itemId);
 
             stopDownloader();
             stopPoller();
@@ -3152,8 +3773,9 @@ public class Node {
 
                 recordsToSanitate.remove(record.getId());
                 Set<HashId> idsToRemove = new HashSet<>();
-                for (StateRecord r : recordsToSanitate.values()) {
-                    if (r.getLockedByRecordId() == record.getRecordId()) {
+                List<StateRecord> lockedRecords = sanitationLocks.remove(record.getRecordId());
+                for (StateRecord r : lockedRecords != null ? lockedRecords : Collections.<StateRecord>emptyList()) {
+                    if (recordsToSanitate.containsKey(r.getId())) {
                         try {
                             itemLock.synchronize(r.getId(), lock -> {
                                 if (record.getState() == ItemState.APPROVED) {
@@ -3236,6 +3858,8 @@ public class Node {
             }
 
         }
+        sanitatingIds.remove(record.getId());
+        pumpSanitation();
     }
 
     private void itemSanitationFailed(StateRecord record) {
@@ -3720,6 +4344,17 @@ public class Node {
             finishEvent.fire(this);
         }
 
+        /**
+         * Close the item resynced by {@link BulkResyncer}, that commits agreed states itself.
+         *
+         * @param committed is true if the network agreed on the state and it is saved
+         */
+        public void closeResynced(boolean committed) {
+            resyncingState = committed ? ResyncingItemProcessingState.COMMIT_SUCCESSFUL :
+                    ResyncingItemProcessingState.COMMIT_FAILED;
+            finishEvent.fire(this);
+        }
+
         /**
          * true if we need to get resync vote from a node
          *
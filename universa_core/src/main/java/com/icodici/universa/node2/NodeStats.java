@@ -6,16 +6,28 @@ import com.icodici.universa.node.Ledger;
 import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
-import java.util.LinkedList;
 import java.util.Map;
-
+import java.util.TreeMap;
+
+/**
+ * Node statistics, updated incrementally.
+ * <p>
+ * Each {@link #collect(Ledger, Config)} counts only records created since the previous one and keeps these counts
+ * in a ring of small interval buckets covering the big interval. Paid amounts are kept per day for this and the
+ * previous month: they are loaded once on {@link #init(Ledger, Config)} and then updated by {@link #addPayment(int,
+ * ZonedDateTime)} along with the ledger. So collecting costs O(buckets) and doesn't depend on the ledger size.
+ */
 public class NodeStats {
     public ZonedDateTime lastStatsBuildTime;
     public ZonedDateTime nodeStartTime;
     public Map<ItemState, Integer> ledgerSize;
 
-    private LinkedList<Map<ItemState,Integer>> ledgerStatsHistory = new LinkedList<>();
-    private LinkedList<ZonedDateTime> ledgerHistoryTimestamps = new LinkedList<>();
+    // approved items of the last small intervals, the ring covers the big interval
+    private int[] approvedHistory = new int[0];
+    private int historyPosition;
+
+    // paid amount by day (epoch second of its start), guarded by itself
+    private final TreeMap<Integer, Integer> dailyPayments = new TreeMap<>();
 
     public int smallIntervalApproved;
     public int bigIntervalApproved;
@@ -36,65 +48,91 @@ public class NodeStats {
 
         ZonedDateTime now = ZonedDateTime.now();
         Map<ItemState, Integer> lastIntervalStats = ledger.getLedgerSize(lastStatsBuildTime);
-        ledgerStatsHistory.addLast(lastIntervalStats);
-        ledgerHistoryTimestamps.addLast(lastStatsBuildTime);
 
         smallIntervalApproved = lastIntervalStats.getOrDefault(ItemState.APPROVED,0)+lastIntervalStats.getOrDefault(ItemState.REVOKED,0);
-        bigIntervalApproved += smallIntervalApproved;
+        bigIntervalApproved += smallIntervalApproved - approvedHistory[historyPosition];
+        approvedHistory[historyPosition] = smallIntervalApproved;
+        historyPosition = (historyPosition + 1) % approvedHistory.length;
         uptimeApproved += smallIntervalApproved;
 
         lastIntervalStats.keySet().forEach(is -> ledgerSize.put(is, ledgerSize.getOrDefault(is,0) + lastIntervalStats.get(is)));
 
-        while (ledgerHistoryTimestamps.getFirst().plus(bigInterval).isBefore(now)) {
-            ledgerHistoryTimestamps.removeFirst();
-            bigIntervalApproved -= ledgerStatsHistory.removeFirst().get(ItemState.APPROVED) + lastIntervalStats.getOrDefault(ItemState.REVOKED,0);
-        }
-
         lastStatsBuildTime = now;
 
-
-        lastMonthPaidAmount = 0;
-        thisMonthPaidAmount = 0;
-        yesterdayPaidAmount = 0;
-        todayPaidAmount = 0;
-
-        int firstDayOfThisMonth = (int) now.truncatedTo(ChronoUnit.DAYS).minusDays(now.getDayOfMonth()-1).toEpochSecond();
-        int today = (int) now.truncatedTo(ChronoUnit.DAYS).toEpochSecond();
-        int yesterday = (int) now.truncatedTo(ChronoUnit.DAYS).minusDays(1).toEpochSecond();
-
-        Map<Integer, Integer> payments = ledger.getPayments(now.truncatedTo(ChronoUnit.DAYS).minusDays(now.getDayOfMonth()-1).minusMonths(1));
-        payments.keySet().forEach( day -> {
-            if(day < firstDayOfThisMonth) {
-                lastMonthPaidAmount += payments.get(day);
-            } else {
-                thisMonthPaidAmount += payments.get(day);
-            }
-
-            if(day == yesterday) {
-                yesterdayPaidAmount += payments.get(day);
-            } else if(day == today) {
-                todayPaidAmount += payments.get(day);
-            }
-        });
+        collectPayments(now);
         return true;
     }
 
     public void init(Ledger ledger, Config config) {
-        ledgerStatsHistory.clear();
-        ledgerHistoryTimestamps.clear();
-
         smallIntervalApproved = 0;
         bigIntervalApproved = 0;
         uptimeApproved = 0;
-        lastMonthPaidAmount = 0;
-        thisMonthPaidAmount = 0;
-        yesterdayPaidAmount = 0;
-        todayPaidAmount = 0;
 
         bigInterval = config.getStatsIntervalBig();
         smallInterval = config.getStatsIntervalSmall();
+        approvedHistory = new int[(int) Math.max(1, (bigInterval.toMillis() + smallInterval.toMillis() - 1) / smallInterval.toMillis())];
+        historyPosition = 0;
         nodeStartTime = ZonedDateTime.now();
         lastStatsBuildTime = nodeStartTime;
         ledgerSize = ledger.getLedgerSize(null);
+
+        Map<Integer, Integer> payments = ledger.getPayments(firstDayOfPreviousMonth(nodeStartTime));
+        synchronized (dailyPayments) {
+            dailyPayments.clear();
+            if (payments != null)
+                dailyPayments.putAll(payments);
+        }
+        collectPayments(nodeStartTime);
+    }
+
+    /**
+     * Count the payment saved to the ledger with {@link Ledger#savePayment(int, ZonedDateTime)}.
+     *
+     * @param amount paid
+     * @param date   of the payment
+     */
+    public void addPayment(int amount, ZonedDateTime date) {
+        int day = (int) date.truncatedTo(ChronoUnit.DAYS).toEpochSecond();
+        synchronized (dailyPayments) {
+            dailyPayments.merge(day, amount, Integer::sum);
+        }
+    }
+
+    private void collectPayments(ZonedDateTime now) {
+        int lastMonth = 0;
+        int thisMonth = 0;
+        int yesterdayAmount = 0;
+        int todayAmount = 0;
+
+        int firstDayOfThisMonth = (int) now.truncatedTo(ChronoUnit.DAYS).minusDays(now.getDayOfMonth()-1).toEpochSecond();
+        int today = (int) now.truncatedTo(ChronoUnit.DAYS).toEpochSecond();
+        int yesterday = (int) now.truncatedTo(ChronoUnit.DAYS).minusDays(1).toEpochSecond();
+
+        synchronized (dailyPayments) {
+            dailyPayments.headMap((int) firstDayOfPreviousMonth(now).toEpochSecond()).clear();
+            for (Map.Entry<Integer, Integer> e : dailyPayments.entrySet()) {
+                int day = e.getKey();
+                if(day < firstDayOfThisMonth) {
+                    lastMonth += e.getValue();
+                } else {
+                    thisMonth += e.getValue();
+                }
+
+                if(day == yesterday) {
+                    yesterdayAmount += e.getValue();
+                } else if(day == today) {
+                    todayAmount += e.getValue();
+                }
+            }
+        }
+
+        lastMonthPaidAmount = lastMonth;
+        thisMonthPaidAmount = thisMonth;
+        yesterdayPaidAmount = yesterdayAmount;
+        todayPaidAmount = todayAmount;
+    }
+
+    private static ZonedDateTime firstDayOfPreviousMonth(ZonedDateTime now) {
+        return now.truncatedTo(ChronoUnit.DAYS).minusDays(now.getDayOfMonth()-1).minusMonths(1);
     }
 }
@@ -8,57 +8,47 @@ package com.icodici.universa.node2;
 
 import com.icodici.universa.HashId;
 import com.icodici.universa.contract.Parcel;
+import net.sergeych.tools.Binder;
 import net.sergeych.utils.Base64;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.time.Duration;
-import java.time.Instant;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Cache of parcels being processed by the node, bounded both in number of parcels and in their packed size, see
+ * {@link BoundedCache}.
+ */
 public class ParcelCache {
 
-    private final Timer cleanerTimer = new Timer();
-    private final Duration maxAge;
+    private final BoundedCache<HashId,Parcel> records;
 
     public ParcelCache(Duration maxAge) {
-        this.maxAge = maxAge;
-        cleanerTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                cleanUp();
-            }
-        }, 5000, 5000);
+        this(maxAge, ItemCache.DEFAULT_MAX_ENTRIES, ItemCache.DEFAULT_MAX_BYTES);
+    }
+
+    public ParcelCache(Duration maxAge, int maxEntries, long maxBytes) {
+        records = new BoundedCache<>(maxAge, maxEntries, maxBytes, parcel -> parcel.pack().length);
     }
 
     final void cleanUp() {
-        // we should avoid creating an object for each check:
-        Instant now = Instant.now();
-        records.values().forEach(r->r.checkExpiration(now));
+        records.cleanUp();
     }
 
     public void shutdown() {
-        cleanerTimer.cancel();
-        cleanerTimer.purge();
+        records.shutdown();
     }
 
     public @Nullable Parcel get(HashId itemId) {
-        Record i = records.get(itemId);
-        if( i != null && i.parcel == null )
-            throw new RuntimeException("cache: record with empty item");
-        return i != null ? i.parcel : null;
+        return records.get(itemId);
     }
 
     public void put(Parcel parcel) {
         // this will plainly override current if any
-        new Record(parcel);
+        records.put(parcel.getId(), parcel);
     }
 
-    private ConcurrentHashMap<HashId,Record> records = new ConcurrentHashMap();
-
     public void idsCheck(HashId itemId) {
-        for(HashId x: records.keySet()) {
+        for(HashId x: records.keys()) {
             System.out.println(" checking "+itemId+" eq "+x+ ": "+itemId.equals(x) + " / " + x.equals(itemId) );
             System.out.println(" codes: "+itemId.hashCode() + " / "+ x.hashCode());
             System.out.println(" digest check: "+ Base64.encodeString(itemId.getDigest()));
@@ -70,21 +60,10 @@ public class ParcelCache {
         return records.size();
     }
 
-    private class Record {
-        private Instant expiresAt;
-        private Parcel parcel;
-
-        private Record(Parcel parcel) {
-            expiresAt = Instant.now().plus(maxAge);
-            this.parcel = parcel;
-            records.put(parcel.getId(), this);
-        }
-
-        private void checkExpiration(Instant now) {
-            if( expiresAt.isBefore(now) ) {
-                //System.out.println("cache expired "+parcel.getId());
-                records.remove(parcel.getId());
-            }
-        }
+    /**
+     * @return {@link Binder} with cache size and hits, misses, evictions and expirations counters
+     */
+    public Binder getStats() {
+        return records.getStats();
     }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2;
+
+import com.icodici.universa.HashId;
+import com.icodici.universa.node.ItemState;
+import com.icodici.universa.node2.network.Network;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Packs resync requests of many items to the same node into few {@link ItemResyncNotification}s. Requests added
+ * within the batch window are sent together, up to maxBatchSize ids per notification.
+ * <p>
+ * Receiving node answers states of all the ids with a single notification, and answers are given to the processors
+ * of these ids, see {@link Node}.
+ */
+public class ResyncBatcher {
+
+    private final Network network;
+    private final NodeInfo myInfo;
+    private final ScheduledExecutorService executor;
+    private final Duration window;
+    private final int maxBatchSize;
+
+    private final Map<NodeInfo, HashMap<HashId, ItemState>> batches = new HashMap<>();
+    private boolean isFlushScheduled = false;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong notifications = new AtomicLong();
+
+    /**
+     * Create batcher.
+     *
+     * @param network      to deliver notifications
+     * @param myInfo       is own node
+     * @param executor     to schedule sending of batches
+     * @param window       is time requests are collected before sending
+     * @param maxBatchSize is max number of ids in a notification
+     */
+    public ResyncBatcher(Network network, NodeInfo myInfo, ScheduledExecutorService executor, Duration window,
+                         int maxBatchSize) {
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("maxBatchSize should be positive");
+        this.network = network;
+        this.myInfo = myInfo;
+        this.executor = executor;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Request the node to answer the state of the item.
+     *
+     * @param node  to ask
+     * @param id    of the item
+     * @param state is own known state of the item, as sent in {@link ItemResyncNotification}
+     */
+    public void add(NodeInfo node, HashId id, ItemState state) {
+        requests.incrementAndGet();
+        HashMap<HashId, ItemState> full = null;
+        synchronized (batches) {
+            HashMap<HashId, ItemState> batch = batches.computeIfAbsent(node, k -> new HashMap<>());
+            batch.put(id, state);
+            if (batch.size() >= maxBatchSize) {
+                full = batch;
+                batches.remove(node);
+            } else if (!isFlushScheduled) {
+                isFlushScheduled = true;
+                executor.schedule(this::flush, window.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null)
+            send(node, full);
+    }
+
+    /**
+     * Send all collected requests now.
+     */
+    public void flush() {
+        Map<NodeInfo, HashMap<HashId, ItemState>> toSend;
+        synchronized (batches) {
+            isFlushScheduled = false;
+            toSend = new HashMap<>(batches);
+            batches.clear();
+        }
+        toSend.forEach(this::send);
+    }
+
+    /**
+     * @return number of requests added
+     */
+    public long getRequestsCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return number of notifications sent
+     */
+    public long getNotificationsCount() {
+        return notifications.get();
+    }
+
+    private void send(NodeInfo node, HashMap<HashId, ItemState> batch) {
+        // notification is attributed to one of the items, but answers are given to all of them
+        HashId itemId = batch.keySet().iterator().next();
+        notifications.incrementAndGet();
+        network.deliver(node, new ItemResyncNotification(myInfo, itemId, batch, true));
+    }
+}
@@ -23,12 +23,18 @@ import net.sergeych.utils.Ut;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.*;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -37,11 +43,24 @@ public class BasicHttpClient {
     private final static int DEFAULT_RECONNECT_TIMES = 3;
     private final static int CONNECTION_READ_TIMEOUT = 5000;
     private final static int CONNECTION_TIMEOUT = 2000;
+    // pipelined commands: max commands in a batch and max batches in flight
+    private final static int PIPELINE_BATCH_SIZE = 64;
+    private final static int PIPELINE_CONNECTIONS = 4;
+
+    static private final ExecutorService pipelineExecutor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "http-pipeline");
+        t.setDaemon(true);
+        return t;
+    });
 
     static private LogPrinter log = new LogPrinter("HTCL");
     private String url;
     protected BasicHttpClientSession session;
 
+    private final ConcurrentLinkedQueue<PipelinedCommand> pipeline = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pipelineSenders = new AtomicInteger();
+    private final AtomicLong pipelineIds = new AtomicLong();
+
     public BasicHttpClient(String rootUrlString) {
         this.url = rootUrlString;
     }
@@ -293,9 +312,119 @@ public class BasicHttpClient {
         return command(name, Binder.fromKeysValues(keysValues));
     }
 
+    /**
+     * Execute the command without waiting for the answer. Commands are pipelined: queued commands are sent in batches
+     * over up to {@link #PIPELINE_CONNECTIONS} keep-alive connections at once, executed by the node concurrently and
+     * answered together. Unlike {@link #command(String, Binder)}, failed commands are not retried.
+     *
+     * @param name   command name
+     * @param params command params
+     *
+     * @return future command answer, completed exceptionally with {@link CommandFailedException} if the remote side
+     * reports error, or with {@link IOException} if the batch of the command fails
+     */
+    public CompletableFuture<Binder> commandAsync(String name, Binder params) {
+        if (session == null || session.getSessionKey() == null)
+            throw new IllegalStateException("Session does not created or session key is not got yet.");
+        PipelinedCommand pc = new PipelinedCommand(pipelineIds.incrementAndGet(), name, params);
+        pipeline.add(pc);
+        pumpPipeline();
+        return pc.answer;
+    }
+
+    /**
+     * Execute the command without waiting for the answer, see {@link #commandAsync(String, Binder)}.
+     *
+     * @param name       command name
+     * @param keysValues keys (strings) and values of the command arguments
+     *
+     * @return future command answer
+     */
+    public CompletableFuture<Binder> commandAsync(String name, Object... keysValues) {
+        return commandAsync(name, Binder.fromKeysValues(keysValues));
+    }
+
+    private void pumpPipeline() {
+        while (!pipeline.isEmpty()) {
+            int senders = pipelineSenders.get();
+            if (senders >= PIPELINE_CONNECTIONS)
+                return;
+            if (pipelineSenders.compareAndSet(senders, senders + 1)) {
+                pipelineExecutor.execute(this::sendPipelined);
+                return;
+            }
+        }
+    }
+
+    private void sendPipelined() {
+        try {
+            List<PipelinedCommand> batch = new ArrayList<>();
+            while (true) {
+                PipelinedCommand pc;
+                while (batch.size() < PIPELINE_BATCH_SIZE && (pc = pipeline.poll()) != null)
+                    batch.add(pc);
+                if (batch.isEmpty())
+                    break;
+                sendBatch(batch);
+                batch.clear();
+            }
+        } finally {
+            pipelineSenders.decrementAndGet();
+            // commands could be queued while this sender was quitting
+            pumpPipeline();
+        }
+    }
+
+    private void sendBatch(List<PipelinedCommand> batch) {
+        try {
+            BasicHttpClientSession s = session;
+            List<Binder> calls = new ArrayList<>(batch.size());
+            for (PipelinedCommand pc : batch)
+                calls.add(Binder.of("id", pc.id, "command", pc.name, "params", pc.params));
+            Answer a = orThrow(post("commands",
+                    Binder.of("params", s.getSessionKey().encrypt(Boss.pack(Binder.of("commands", calls))),
+                            "session_id", s.getSessionId())));
+            List<Binder> results = Boss.unpack(s.getSessionKey().decrypt(a.data.getBinaryOrThrow("result")))
+                    .getListOrThrow("results");
+            Map<Long, Binder> byId = new HashMap<>();
+            for (Binder r : results)
+                byId.put(r.getLongOrThrow("id"), r);
+            for (PipelinedCommand pc : batch) {
+                Binder r = byId.get(pc.id);
+                Binder result = r == null ? null : r.getBinder("result", null);
+                if (result != null)
+                    pc.answer.complete(result);
+                else if (r != null && r.get("error") != null)
+                    pc.answer.completeExceptionally(new CommandFailedException((ErrorRecord) r.get("error")));
+                else
+                    pc.answer.completeExceptionally(new IOException("no answer to command " + pc.name));
+            }
+        } catch (Exception e) {
+            log.d("error executing pipelined commands: " + e);
+            for (PipelinedCommand pc : batch)
+                pc.answer.completeExceptionally(e);
+        }
+    }
+
+    private static class PipelinedCommand {
+        private final long id;
+        private final String name;
+        private final Binder params;
+        private final CompletableFuture<Binder> answer = new CompletableFuture<>();
+
+        private PipelinedCommand(long id, String name, Binder params) {
+            this.id = id;
+            this.name = name;
+            this.params = params;
+        }
+    }
+
     private Answer requestOrThrow(String connect, Object... params) throws IOException {
 //        System.out.println("---> "+connect+": "+asList(params));
-        Answer answer = request(connect, params);
+        return orThrow(request(connect, params));
+    }
+
+    private Answer orThrow(Answer answer) throws EndpointException {
         if (answer.code >= 400 || answer.data.containsKey("errors"))
             throw new EndpointException(answer);
 //        System.out.println("<--- "+answer);
@@ -312,50 +441,57 @@ public class BasicHttpClient {
 
     public Answer request(String path, Binder params) throws IOException {
         synchronized (this) {
-            String charset = "UTF-8";
+            return post(path, params);
+        }
+    }
 
-            byte[] data = Boss.pack(params);
+    private Answer post(String path, Binder params) throws IOException {
+        String charset = "UTF-8";
 
-            String boundary = "==boundary==" + Ut.randomString(48);
+        byte[] data = Boss.pack(params);
 
-            String CRLF = "\r\n"; // Line separator required by multipart/form-data.
+        String boundary = "==boundary==" + Ut.randomString(48);
 
-            URLConnection connection = new URL(url + "/" + path).openConnection();
+        String CRLF = "\r\n"; // Line separator required by multipart/form-data.
 
-            connection.setDoOutput(true);
+        URLConnection connection = new URL(url + "/" + path).openConnection();
 
-            connection.setConnectTimeout(CONNECTION_TIMEOUT);
-            connection.setReadTimeout(CONNECTION_READ_TIMEOUT);
-            connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
-            connection.setRequestProperty("User-Agent", "Universa JAVA API Client");
+        connection.setDoOutput(true);
 
+        connection.setConnectTimeout(CONNECTION_TIMEOUT);
+        connection.setReadTimeout(CONNECTION_READ_TIMEOUT);
+        connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
+        connection.setRequestProperty("User-Agent", "Universa JAVA API Client");
 
-            try (
-                    OutputStream output = connection.getOutputStream();
-                    PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, charset), true);
-            ) {
-                // Send normal param.
 
-                // Send binary file.
-                writer.append("--" + boundary).append(CRLF);
-                writer.append("Content-Disposition: form-data; name=\"requestData\"; filename=\"requestData.boss\"").append(CRLF);
-                writer.append("Content-Type: application/octet-stream").append(CRLF);
-                writer.append("Content-Transfer-Encoding: binary").append(CRLF);
-                writer.append(CRLF).flush();
-                output.write(data);
-                output.flush(); // Important before continuing with writer!
-                writer.append(CRLF).flush(); // CRLF is important! It indicates end of boundary.
+        try (
+                OutputStream output = connection.getOutputStream();
+                PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, charset), true);
+        ) {
+            // Send normal param.
 
-                // End of multipart/form-data.
-                writer.append("--" + boundary + "--").append(CRLF).flush();
-            }
+            // Send binary file.
+            writer.append("--" + boundary).append(CRLF);
+            writer.append("Content-Disposition: form-data; name=\"requestData\"; filename=\"requestData.boss\"").append(CRLF);
+            writer.append("Content-Type: application/octet-stream").append(CRLF);
+            writer.append("Content-Transfer-Encoding: binary").append(CRLF);
+            writer.append(CRLF).flush();
+            output.write(data);
+            output.flush(); // Important before continuing with writer!
+            writer.append(CRLF).flush(); // CRLF is important! It indicates end of boundary.
+
+            // End of multipart/form-data.
+            writer.append("--" + boundary + "--").append(CRLF).flush();
+        }
 
-            HttpURLConnection httpConnection = (HttpURLConnection) connection;
-            int responseCode = httpConnection.getResponseCode();
-            byte[] answer = Do.read(httpConnection.getInputStream());
-            httpConnection.disconnect();
-            return new Answer(responseCode, Binder.from(Boss.load(answer)));
+        HttpURLConnection httpConnection = (HttpURLConnection) connection;
+        int responseCode = httpConnection.getResponseCode();
+        // reading the answer to the end and closing the stream keeps the connection alive for next requests
+        byte[] answer;
+        try (InputStream input = httpConnection.getInputStream()) {
+            answer = Do.read(input);
         }
+        return new Answer(responseCode, Binder.from(Boss.load(answer)));
     }
 
     @Override
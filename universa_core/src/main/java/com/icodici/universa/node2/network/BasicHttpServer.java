@@ -26,6 +26,10 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -37,6 +41,10 @@ import java.util.concurrent.atomic.AtomicLong;
  * signed(node_key, server_nonce, encrypted(my_public_key, session_key))
  * <p>
  * Threadpool is used, and controlled by setting THREAD_LIMIT to some specific value, or to null for CachedThreadPool.
+ * <p>
+ * Besides single commands (/command), a session accepts batches of pipelined commands (/commands) that are executed
+ * concurrently and answered together, each result tagged with the id of its command. So a client could keep several
+ * batches in flight over keep-alive connections instead of waiting for a round trip per command.
  */
 public class BasicHttpServer {
 
@@ -53,16 +61,19 @@ public class BasicHttpServer {
     protected BasicHTTPService service;
     private final BufferedLogger log;
     private PrivateKey myKey;
+    private final ExecutorService commandsExecutor;
 
     BasicHttpServer(PrivateKey key, int port, int maxTrheads, BufferedLogger log) throws IOException {
         this.myKey = key;
         this.log = log;
         service = new MicroHTTPDService();
+        commandsExecutor = Executors.newFixedThreadPool(maxTrheads);
 
         addEndpoint("/ping", params -> onPing(params));
         addEndpoint("/connect", params -> onConnect(params));
         addEndpoint("/get_token", params -> inSession(params.getLongOrThrow("session_id"), s -> s.getToken(params)));
         addEndpoint("/command", params -> inSession(params.getLongOrThrow("session_id"), s -> s.command(params)));
+        addEndpoint("/commands", params -> inSession(params.getLongOrThrow("session_id"), s -> s.commands(params)));
 
         service.start(port, maxTrheads);
     }
@@ -156,6 +167,7 @@ public class BasicHttpServer {
     }
 
     public void shutdown() {
+        commandsExecutor.shutdown();
         try {
             service.close();
         } catch (Exception e) {
@@ -363,6 +375,49 @@ public class BasicHttpServer {
             );
         }
 
+        /**
+         * Execute the batch of pipelined commands concurrently.
+         *
+         * @param params with "params" that are encrypted list of commands, each with "id", "command" and "params"
+         *
+         * @return encrypted "results", a list of "id" with either "result" or "error"
+         *
+         * @throws EncryptionError if the batch can't be decrypted
+         */
+        public Binder commands(Binder params) throws EncryptionError {
+            List<Binder> calls = Boss.unpack(sessionKey.decrypt(params.getBinaryOrThrow("params")))
+                    .getListOrThrow("commands");
+            List<Future<Binder>> futures = new ArrayList<>(calls.size());
+            for (Binder call : calls) {
+                Object id = call.get("id");
+                futures.add(commandsExecutor.submit(() -> {
+                    try {
+                        return Binder.of("id", id, "result", executeAuthenticatedCommand(call));
+                    } catch (Exception e) {
+                        ErrorRecord r = (e instanceof ClientError) ? ((ClientError) e).getErrorRecord() :
+                                new ErrorRecord(Errors.COMMAND_FAILED, "", e.getMessage());
+                        return Binder.of("id", id, "error", r);
+                    }
+                }));
+            }
+            List<Binder> results = new ArrayList<>(futures.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted", e);
+                } catch (ExecutionException e) {
+                    results.add(Binder.of("id", calls.get(i).get("id"),
+                            "error", new ErrorRecord(Errors.COMMAND_FAILED, "", e.getCause().getMessage())));
+                }
+            }
+            return Binder.fromKeysValues(
+                    "result",
+                    sessionKey.encrypt(Boss.pack(Binder.of("results", results)))
+            );
+        }
+
         private Binder executeAuthenticatedCommand(Binder params) throws ClientError {
             String cmd = params.getStringOrThrow("command");
             try {
@@ -13,6 +13,7 @@ import com.icodici.crypto.PublicKey;
 import com.icodici.universa.Approvable;
 import com.icodici.universa.Decimal;
 import com.icodici.universa.ErrorRecord;
+import com.icodici.universa.Errors;
 import com.icodici.universa.HashId;
 import com.icodici.universa.contract.Contract;
 import com.icodici.universa.contract.Parcel;
@@ -33,6 +34,7 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -100,6 +102,16 @@ public class Client {
         });
     }
 
+    /**
+     * Max time of a single waitStates request, less than the read timeout of {@link BasicHttpClient}.
+     */
+    static private final long WAIT_STATES_REQUEST_TIME = 4000;
+
+    /**
+     * False once the node is found to have no waitStates command.
+     */
+    private volatile boolean waitStatesSupported = true;
+
     protected interface Executor<T> {
         T execute() throws Exception;
     }
@@ -225,16 +237,9 @@ public class Client {
         if(binderResult instanceof ItemResult) {
             ItemResult lastResult = (ItemResult) binderResult;
             if (millisToWait > 0 && lastResult.state.isPending()) {
-                Instant end = Instant.now().plusMillis(millisToWait);
                 try {
                     Contract c = Contract.fromPackedTransaction(packed);
-                    while (Instant.now().isBefore(end) && lastResult.state.isPending()) {
-                        Thread.currentThread().sleep(100);
-                        lastResult = getState(c.getId());
-                        //System.out.println("test: " + lastResult);
-                    }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+                    lastResult = waitState(c.getId(), millisToWait);
                 } catch (Quantiser.QuantiserException e) {
                     throw new ClientError(e);
                 } catch (IOException e) {
@@ -269,12 +274,10 @@ public class Client {
                         pState = getParcelProcessingState(parcel.getId());
                     }
                     System.out.println("parcel state is: " + pState);
-                    ItemResult lastResult = getState(parcel.getPayloadContract().getId());
-                    while (Instant.now().isBefore(end) && lastResult.state.isPending()) {
-                        Thread.currentThread().sleep(100);
-                        lastResult = getState(parcel.getPayloadContract().getId());
-                        System.out.println("test: " + lastResult);
-                    }
+                    HashId payloadId = parcel.getPayloadContract().getId();
+                    long left = end.toEpochMilli() - Instant.now().toEpochMilli();
+                    ItemResult lastResult = left > 0 ? waitState(payloadId, left) : getState(payloadId);
+                    System.out.println("test: " + lastResult);
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 } catch (Quantiser.QuantiserException e) {
@@ -316,6 +319,114 @@ public class Client {
         });
     }
 
+    /**
+     * Get states of many items at once, by {@link ClientHTTPServer#MAX_GET_STATES} per request.
+     *
+     * @param itemIds items to check
+     *
+     * @return states by item ids, in the order of itemIds
+     *
+     * @throws ClientError if the node fails to return them
+     */
+    public Map<HashId, ItemResult> getStates(Collection<HashId> itemIds) throws ClientError {
+        List<HashId> ids = new ArrayList<>(itemIds);
+        Map<HashId, ItemResult> states = new LinkedHashMap<>();
+        for (int from = 0; from < ids.size(); from += ClientHTTPServer.MAX_GET_STATES) {
+            List<HashId> chunk = ids.subList(from, Math.min(ids.size(), from + ClientHTTPServer.MAX_GET_STATES));
+            Binder result = protect(() -> httpClient.command("getStates",
+                    "itemIds", new ArrayList<>(chunk)));
+
+            List<ItemResult> results = result.getList("itemResults", null);
+            if (results == null)
+                throw new ClientError(Errors.COMMAND_FAILED, "getStates", String.valueOf(result.get("itemResult")));
+            for (int i = 0; i < chunk.size(); i++)
+                states.put(chunk.get(i), results.get(i));
+        }
+        return states;
+    }
+
+    /**
+     * Wait until the node processes the items, or the time is out. The node answers as soon as all of them are done,
+     * so unlike polling {@link #getState(HashId)} it takes one long request per {@link #WAIT_STATES_REQUEST_TIME}.
+     *
+     * @param itemIds      items to wait for, up to {@link ClientHTTPServer#MAX_GET_STATES}
+     * @param millisToWait is max time to wait in milliseconds
+     *
+     * @return last known states by item ids, in the order of itemIds
+     *
+     * @throws ClientError if the node fails to return them
+     */
+    public Map<HashId, ItemResult> waitStates(Collection<HashId> itemIds, long millisToWait) throws ClientError {
+        Map<HashId, ItemResult> states = new LinkedHashMap<>();
+        itemIds.forEach(id -> states.put(id, null));
+        long end = System.currentTimeMillis() + millisToWait;
+        List<HashId> pending = new ArrayList<>(itemIds);
+        do {
+            long timeout = Math.max(0, Math.min(WAIT_STATES_REQUEST_TIME, end - System.currentTimeMillis()));
+            Binder result = protect(() -> httpClient.command("waitStates",
+                    "itemIds", pending, "timeout", timeout));
+            List<ItemResult> results = result.getList("itemResults", null);
+            if (results == null)
+                throw new ClientError(Errors.COMMAND_FAILED, "waitStates", String.valueOf(result.get("itemResult")));
+            List<HashId> stillPending = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i++) {
+                states.put(pending.get(i), results.get(i));
+                if (results.get(i).state.isPending())
+                    stillPending.add(pending.get(i));
+            }
+            pending.clear();
+            pending.addAll(stillPending);
+        } while (!pending.isEmpty() && System.currentTimeMillis() < end);
+        return states;
+    }
+
+    /**
+     * Wait until the node processes the item, or the time is out. Nodes that have no waitStates command are polled
+     * with {@link #getState(HashId)} instead.
+     *
+     * @param itemId       item to wait for
+     * @param millisToWait is max time to wait in milliseconds
+     *
+     * @return last known state of the item
+     *
+     * @throws ClientError if the node fails to return it
+     */
+    private ItemResult waitState(HashId itemId, long millisToWait) throws ClientError {
+        Instant end = Instant.now().plusMillis(millisToWait);
+        if (waitStatesSupported) {
+            try {
+                return waitStates(Collections.singletonList(itemId), millisToWait).get(itemId);
+            } catch (ClientError e) {
+                if (!isUnknownCommand(e))
+                    throw e;
+                waitStatesSupported = false;
+            }
+        }
+        ItemResult lastResult = getState(itemId);
+        try {
+            while (Instant.now().isBefore(end) && lastResult.state.isPending()) {
+                Thread.sleep(100);
+                lastResult = getState(itemId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return lastResult;
+    }
+
+    /**
+     * @param e is error of a command
+     *
+     * @return true if the node does not know the command, e.g. it runs an older version
+     */
+    static boolean isUnknownCommand(Throwable e) {
+        for (; e != null; e = e.getCause()) {
+            if (e instanceof ClientError && ((ClientError) e).getErrorRecord().getError() == Errors.UNKNOWN_COMMAND)
+                return true;
+        }
+        return false;
+    }
+
     public ItemResult resyncItem(HashId itemId) throws ClientError {
         return protect(() -> {
             Binder result = httpClient.command("resyncItem",
@@ -332,6 +443,25 @@ public class Client {
         });
     }
 
+    /**
+     * Ask the node to resync the items with the network at once, for a node that missed many of them.
+     *
+     * @param itemIds items to resync, up to {@link ClientHTTPServer#MAX_GET_STATES}
+     *
+     * @return states of the items before resync, in the same order
+     *
+     * @throws ClientError if the command fails
+     */
+    public List<ItemResult> resyncItems(Collection<HashId> itemIds) throws ClientError {
+        Binder result = protect(() -> httpClient.command("resyncItems",
+                "itemIds", new ArrayList<>(itemIds)));
+
+        List<ItemResult> results = result.getList("itemResults", null);
+        if (results == null)
+            throw new ClientError(Errors.COMMAND_FAILED, "resyncItems", String.valueOf(result.get("itemResult")));
+        return results;
+    }
+
 
     public Binder getStats() throws ClientError {
         return protect(() -> httpClient.command("getStats"));
@@ -449,6 +579,19 @@ public class Client {
         return httpClient.command(name, params);
     }
 
+    /**
+     * Execute the command without waiting for the answer, pipelining it with other ones, see {@link
+     * BasicHttpClient#commandAsync(String, Binder)}.
+     *
+     * @param name   command name
+     * @param params keys and values of the command arguments
+     *
+     * @return future command answer
+     */
+    public CompletableFuture<Binder> commandAsync(String name, Object... params) {
+        return httpClient.commandAsync(name, params);
+    }
+
     public BasicHttpClient.Answer request(String name, Object... params) throws IOException {
         return httpClient.request(name, params);
     }
@@ -23,9 +23,12 @@ import net.sergeych.tools.BufferedLogger;
 import net.sergeych.utils.Bytes;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -35,6 +38,16 @@ public class ClientHTTPServer extends BasicHttpServer {
 
     private static final String API_VERSION = "3.1.0";
 
+    /**
+     * Max number of items which states could be got with one getStates command.
+     */
+    public static final int MAX_GET_STATES = 5000;
+
+    /**
+     * Max time waitStates command waits for items to be processed.
+     */
+    public static final Duration MAX_WAIT_STATES_TIME = Duration.ofSeconds(30);
+
     private final BufferedLogger log;
     private ItemCache cache;
     private ParcelCache parcelCache;
@@ -110,6 +123,15 @@ public class ClientHTTPServer extends BasicHttpServer {
                 response.setResponseCode(404);
         });
 
+        on("/metrics", (request, response) -> {
+            // plain text for monitoring systems, that can't use secure sessions, so it is off by default
+            if (node != null && config != null && config.isMetricsScrapeEnabled()) {
+                response.getHeaders().put("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                response.setBody(node.getMetrics().toText().getBytes(StandardCharsets.UTF_8));
+            } else
+                response.setResponseCode(404);
+        });
+
         addEndpoint("/network", (Binder params, Result result) -> {
             if (networkData == null) {
                 List<Binder> nodes = new ArrayList<Binder>();
@@ -130,10 +152,14 @@ public class ClientHTTPServer extends BasicHttpServer {
         });
 
         addSecureEndpoint("getStats", this::getStats);
+        addSecureEndpoint("getMetrics", this::getMetrics);
         addSecureEndpoint("getState", this::getState);
+        addSecureEndpoint("getStates", this::getStates);
+        addSecureEndpoint("waitStates", this::waitStates);
         addSecureEndpoint("getParcelProcessingState", this::getParcelProcessingState);
         addSecureEndpoint("approve", this::approve);
         addSecureEndpoint("resyncItem", this::resyncItem);
+        addSecureEndpoint("resyncItems", this::resyncItems);
         addSecureEndpoint("setVerbose", this::setVerbose);
         addSecureEndpoint("approveParcel", this::approveParcel);
         addSecureEndpoint("startApproval", this::startApproval);
@@ -179,8 +205,13 @@ public class ClientHTTPServer extends BasicHttpServer {
         try {
             return Binder.of(
                     "itemResult",
-                    node.registerItem(Contract.fromPackedTransaction(params.getBinaryOrThrow("packedItem")))
+                    node.registerClientItem(Contract.fromPackedTransaction(params.getBinaryOrThrow("packedItem")),
+                            AdmissionController.Priority.FREE, true)
             );
+        } catch (AdmissionController.OverloadedException e) {
+            return Binder.of(
+                    "itemResult", itemResultOfError(Errors.NOT_READY,"approve", e.getMessage()),
+                    "retryAfter", e.getRetryAfter().toMillis());
         } catch (Exception e) {
             System.out.println("approve ERROR: " + e.getMessage());
 
@@ -195,8 +226,12 @@ public class ClientHTTPServer extends BasicHttpServer {
     //        System.out.println("Request to approve parcel, package size: " + params.getBinaryOrThrow("packedItem").length);
             return Binder.of(
                     "result",
-                    node.registerParcel(Parcel.unpack(params.getBinaryOrThrow("packedItem")))
+                    node.registerClientParcel(Parcel.unpack(params.getBinaryOrThrow("packedItem")))
             );
+        } catch (AdmissionController.OverloadedException e) {
+            return Binder.of(
+                    "itemResult", itemResultOfError(Errors.NOT_READY,"approveParcel", e.getMessage()),
+                    "retryAfter", e.getRetryAfter().toMillis());
         } catch (Exception e) {
             System.out.println("approveParcel ERROR: " + e.getMessage());
             return Binder.of(
@@ -222,7 +257,11 @@ public class ClientHTTPServer extends BasicHttpServer {
                     try {
                         checkNode(session);
                         System.out.println("Request to start registration #"+n+":"+k.incrementAndGet());
-                        node.registerItem(Contract.fromPackedTransaction(((Bytes)item).toArray()));
+                        // started in background, so it isn't waiting for admission
+                        node.registerClientItem(Contract.fromPackedTransaction(((Bytes)item).toArray()),
+                                AdmissionController.Priority.FREE, false);
+                    } catch (AdmissionController.OverloadedException e) {
+                        System.out.println("Registration #"+n+" rejected: " + e.getMessage());
                     } catch (Exception e) {
                         e.printStackTrace();
                     }
@@ -246,6 +285,50 @@ public class ClientHTTPServer extends BasicHttpServer {
         }
     }
 
+    private Binder getStates(Binder params, Session session) throws CommandFailedException {
+
+        checkNode(session);
+        List<HashId> itemIds = params.getListOrThrow("itemIds");
+        if (itemIds.size() > MAX_GET_STATES)
+            return Binder.of(
+                    "itemResult", itemResultOfError(Errors.BAD_VALUE, "getStates",
+                            "too many items, max is " + MAX_GET_STATES));
+        try {
+            return Binder.of("itemResults", node.checkItems(itemIds));
+        } catch (Exception e) {
+            System.out.println("getStates ERROR: " + e.getMessage());
+            return Binder.of(
+                    "itemResult", itemResultOfError(Errors.COMMAND_FAILED, "getStates", e.getMessage()));
+        }
+    }
+
+    private Binder waitStates(Binder params, Session session) throws CommandFailedException {
+
+        checkNode(session);
+        List<HashId> itemIds = params.getListOrThrow("itemIds");
+        if (itemIds.size() > MAX_GET_STATES)
+            return Binder.of(
+                    "itemResult", itemResultOfError(Errors.BAD_VALUE, "waitStates",
+                            "too many items, max is " + MAX_GET_STATES));
+        Duration timeout = Duration.ofMillis(Math.min(MAX_WAIT_STATES_TIME.toMillis(),
+                Math.max(0, params.getLong("timeout", 0))));
+        try {
+            // the node doesn't park a thread per item, only this request waits for all of them
+            List<CompletableFuture<ItemResult>> results = new ArrayList<>(itemIds.size());
+            for (HashId id : itemIds)
+                results.add(node.waitItemAsync(id, timeout));
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get();
+            List<ItemResult> itemResults = new ArrayList<>(results.size());
+            for (CompletableFuture<ItemResult> r : results)
+                itemResults.add(r.get());
+            return Binder.of("itemResults", itemResults);
+        } catch (Exception e) {
+            System.out.println("waitStates ERROR: " + e.getMessage());
+            return Binder.of(
+                    "itemResult", itemResultOfError(Errors.COMMAND_FAILED, "waitStates", e.getMessage()));
+        }
+    }
+
     private Binder resyncItem(Binder params, Session session) throws CommandFailedException {
 
         checkNode(session);
@@ -270,6 +353,34 @@ public class ClientHTTPServer extends BasicHttpServer {
         }
     }
 
+    private Binder resyncItems(Binder params, Session session) throws CommandFailedException {
+
+        checkNode(session);
+
+        if (config.limitFreeRegistrations())
+            if(!config.getKeysWhiteList().contains(session.getPublicKey())) {
+                System.out.println("approve ERROR: command needs client key from whitelist");
+
+                return Binder.of(
+                        "itemResult", itemResultOfError(Errors.BAD_CLIENT_KEY,"resyncItems", "command needs client key from whitelist"));
+            }
+
+        List<HashId> itemIds = params.getListOrThrow("itemIds");
+        if (itemIds.size() > MAX_GET_STATES)
+            return Binder.of(
+                    "itemResult", itemResultOfError(Errors.BAD_VALUE, "resyncItems",
+                            "too many items, max is " + MAX_GET_STATES));
+        try {
+            Binder result = Binder.of("itemResults", node.checkItems(itemIds));
+            node.resync(itemIds);
+            return result;
+        } catch (Exception e) {
+            System.out.println("resyncItems ERROR: " + e.getMessage());
+            return Binder.of(
+                    "itemResult", itemResultOfError(Errors.COMMAND_FAILED, "resyncItems", e.getMessage()));
+        }
+    }
+
     private Binder setVerbose(Binder params, Session session) throws CommandFailedException {
 
         checkNode(session);
@@ -325,9 +436,15 @@ public class ClientHTTPServer extends BasicHttpServer {
 
     private Binder getStats(Binder params, Session session) throws CommandFailedException {
 
+        boolean isAdmin = config != null && config.getNetworkAdminKeyAddress().isMatchingKey(session.getPublicKey());
+
+        //WHILE NODE IS SANITATING ADMIN CAN SEE ITS PROGRESS ONLY
+        if(isAdmin && node != null && node.isSanitating())
+            return Binder.of("sanitation", node.getSanitationStats());
+
         checkNode(session);
 
-        if(config == null || !config.getNetworkAdminKeyAddress().isMatchingKey(session.getPublicKey())) {
+        if(!isAdmin) {
             System.out.println("command needs admin key");
             return Binder.of(
                     "itemResult", itemResultOfError(Errors.BAD_CLIENT_KEY,"getStats", "command needs admin key"));
@@ -335,6 +452,19 @@ public class ClientHTTPServer extends BasicHttpServer {
         return node.provideStats();
     }
 
+    private Binder getMetrics(Binder params, Session session) throws CommandFailedException {
+
+        if (node == null)
+            throw new CommandFailedException(Errors.NOT_READY, "", "please call again after a while");
+
+        if(config == null || !config.getNetworkAdminKeyAddress().isMatchingKey(session.getPublicKey())) {
+            System.out.println("command needs admin key");
+            return Binder.of(
+                    "itemResult", itemResultOfError(Errors.BAD_CLIENT_KEY,"getMetrics", "command needs admin key"));
+        }
+        return node.getMetrics().getStats();
+    }
+
     private Binder getParcelProcessingState(Binder params, Session session) throws CommandFailedException {
         checkNode(session);
         try {
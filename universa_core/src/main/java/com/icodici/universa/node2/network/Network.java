@@ -11,13 +11,17 @@ import com.icodici.universa.Approvable;
 import com.icodici.universa.HashId;
 import com.icodici.universa.contract.Parcel;
 import com.icodici.universa.node.ItemResult;
+import com.icodici.universa.node2.Metrics;
 import com.icodici.universa.node2.NetConfig;
 import com.icodici.universa.node2.NodeInfo;
 import com.icodici.universa.node2.Notification;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
@@ -36,6 +40,14 @@ public abstract class Network {
         return netConfig.getInfo(number);
     }
 
+    /**
+     * Report network metrics, like round trip times to other nodes, if the implementation measures them.
+     *
+     * @param metrics is registry to report to
+     */
+    public void setMetrics(Metrics metrics) {
+    }
+
 
     /**
      * Put the notification to the delivery queue. Must not block the calling thread.
@@ -108,6 +120,26 @@ public abstract class Network {
         return null;
     }
 
+    /**
+     * Get states of many items from the node at once.
+     *
+     * @param nodeInfo node to ask
+     * @param ids      of the items
+     *
+     * @return states by item ids, items the node has not answered for are missing
+     *
+     * @throws IOException if the node can't be asked
+     */
+    public Map<HashId, ItemResult> getItemStates(NodeInfo nodeInfo, Collection<HashId> ids) throws IOException {
+        Map<HashId, ItemResult> states = new HashMap<>();
+        for (HashId id : ids) {
+            ItemResult r = getItemState(nodeInfo, id);
+            if (r != null)
+                states.put(id, r);
+        }
+        return states;
+    }
+
 
     public void addNode(NodeInfo nodeInfo) {
         netConfig.addNode(nodeInfo);
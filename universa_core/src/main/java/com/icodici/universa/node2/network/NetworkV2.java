@@ -20,11 +20,12 @@ import net.sergeych.tools.Do;
 import net.sergeych.utils.LogPrinter;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.Callable;
+import java.util.concurrent.*;
 import java.util.function.Consumer;
 
 public class NetworkV2 extends Network {
@@ -32,6 +33,8 @@ public class NetworkV2 extends Network {
     private final NodeInfo myInfo;
     private final PrivateKey myKey;
     private UDPAdapter adapter;
+    private final boolean useNioAdapter;
+    private volatile Metrics metrics;
 
 //    private Map<NodeInfo, Node> nodes = new HashMap<>();
 
@@ -39,12 +42,55 @@ public class NetworkV2 extends Network {
     protected int verboseLevel = DatagramAdapter.VerboseLevel.DETAILED;
     private Consumer<Notification> consumer;
 
+    /**
+     * Max number of notifications in one packed block, {@link #unpack(byte[])} rejects bigger ones.
+     */
+    static public final int MAX_NOTIFICATIONS_IN_BLOCK = 1000;
+
+    /**
+     * Notifications to the same node that are delivered within this time are packed together into one block. Zero
+     * means to send each notification in its own block.
+     */
+    private Duration batchWindow = Duration.ZERO;
+
+    /**
+     * When so many notifications are waiting for the same node, they are sent without waiting for the {@link
+     * #batchWindow} end.
+     */
+    private int batchSize = 1;
+
+    private final ConcurrentHashMap<Integer, OutboundQueue> outboundQueues = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService batchExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r);
+            thread.setName("network-" + myInfo.getNumber() + "-batcher");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     public NetworkV2(NetConfig netConfig, NodeInfo myInfo, PrivateKey myKey) throws IOException {
+        this(netConfig, myInfo, myKey, false);
+    }
+
+    /**
+     * Create network working over UDP.
+     *
+     * @param netConfig is {@link NetConfig} with all nodes
+     * @param myInfo is {@link NodeInfo} of own node
+     * @param myKey is {@link PrivateKey} of own node
+     * @param useNioAdapter if true, {@link NioUDPAdapter} is used instead of {@link UDPAdapter}
+     * @throws IOException if UDP port can not be bound
+     */
+    public NetworkV2(NetConfig netConfig, NodeInfo myInfo, PrivateKey myKey, boolean useNioAdapter) throws IOException {
         super(netConfig);
         this.myInfo = myInfo;
         this.myKey = myKey;
+        this.useNioAdapter = useNioAdapter;
 
-        adapter = new UDPAdapter(myKey, new SymmetricKey(), myInfo, netConfig);
+        adapter = createUDPAdapter();
 //        adapter.setVerboseLevel(DatagramAdapter.VerboseLevel.BASE);
         adapter.receive(this::onReceived);
         adapter.addErrorsCallback(this::exceptionCallback);
@@ -118,11 +164,45 @@ public class NetworkV2 extends Network {
         }
     }
 
+    /**
+     * Set up coalescing of notifications: ones that are delivered to the same node within the window are packed into
+     * a single block, unless there are already batchSize of them.
+     *
+     * @param window is time to collect notifications to the same node, zero to send each one immediately
+     * @param batchSize is maximum number of notifications to pack together, up to {@link #MAX_NOTIFICATIONS_IN_BLOCK}
+     */
+    public void setNotificationsBatching(Duration window, int batchSize) {
+        if (batchSize < 1 || batchSize > MAX_NOTIFICATIONS_IN_BLOCK)
+            throw new IllegalArgumentException("batch size should be from 1 to " + MAX_NOTIFICATIONS_IN_BLOCK);
+        this.batchWindow = window;
+        this.batchSize = batchSize;
+        flushOutboundQueues();
+    }
+
     @Override
     public void deliver(NodeInfo toNode, Notification notification) {
+        logNotification(notification,toNode);
+
+        if (batchWindow.isZero() || batchSize == 1) {
+            sendNotifications(toNode, Do.listOf(notification));
+        } else {
+            OutboundQueue queue = outboundQueues.computeIfAbsent(toNode.getNumber(), (k) -> new OutboundQueue(toNode));
+            List<Notification> batch = queue.add(notification);
+            if (batch != null)
+                sendNotifications(toNode, batch);
+        }
+    }
+
+    /**
+     * Immediately send all notifications waiting in the outbound queues.
+     */
+    public void flushOutboundQueues() {
+        outboundQueues.values().forEach(OutboundQueue::flush);
+    }
+
+    private void sendNotifications(NodeInfo toNode, Collection<Notification> notifications) {
         try {
-            byte[] data = packNotifications(myInfo, Do.listOf(notification));
-            logNotification(notification,toNode);
+            byte[] data = packNotifications(myInfo, notifications);
 
             if(adapter != null) {
                 adapter.send(toNode, data);
@@ -137,6 +217,58 @@ public class NetworkV2 extends Network {
         }
     }
 
+    /**
+     * Notifications waiting to be packed together and sent to one node.
+     */
+    private class OutboundQueue {
+        private final NodeInfo destination;
+        private List<Notification> notifications = new ArrayList<>();
+        private ScheduledFuture<?> flushTask = null;
+
+        private OutboundQueue(NodeInfo destination) {
+            this.destination = destination;
+        }
+
+        /**
+         * Add notification to the queue. If the queue is full, it is drained and the notifications are returned,
+         * otherwise flush is scheduled to the end of the batch window.
+         *
+         * @param notification is {@link Notification} to send
+         *
+         * @return notifications to send right now or null
+         */
+        private synchronized List<Notification> add(Notification notification) {
+            notifications.add(notification);
+            if (notifications.size() >= batchSize)
+                return drain();
+            if (flushTask == null) {
+                try {
+                    flushTask = batchExecutorService.schedule(this::flush, batchWindow.toNanos(), TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    // network is shutting down, send what we have
+                    return drain();
+                }
+            }
+            return null;
+        }
+
+        private synchronized List<Notification> drain() {
+            if (flushTask != null) {
+                flushTask.cancel(false);
+                flushTask = null;
+            }
+            List<Notification> result = notifications;
+            notifications = new ArrayList<>();
+            return result;
+        }
+
+        private void flush() {
+            List<Notification> batch = drain();
+            if (!batch.isEmpty())
+                sendNotifications(destination, batch);
+        }
+    }
+
     private void logNotification(Notification notification, NodeInfo to) {
         try {
 
@@ -206,14 +338,9 @@ public class NetworkV2 extends Network {
     public Approvable getItem(HashId itemId, NodeInfo nodeInfo, Duration maxTimeout) throws InterruptedException {
         try {
 //            URL url = new URL("http://localhost:8080/contracts/" + itemId.toBase64String());
-            URL url = new URL(nodeInfo.publicUrlString() + "/contracts/" + itemId.toBase64String());
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestProperty("User-Agent", "Universa JAVA API Client");
-            connection.setRequestProperty("Connection", "close");
-            connection.setRequestMethod("GET");
-            if (200 != connection.getResponseCode())
+            byte[] data = download(nodeInfo.publicUrlString() + "/contracts/" + itemId.toBase64String(), maxTimeout);
+            if (data == null)
                 return null;
-            byte[] data = Do.read(connection.getInputStream());
             TransactionPack tp = TransactionPack.unpack(data, true);
 //            tp.trace();
 //            Contract c = Contract.fromPackedTransaction(data);
@@ -229,14 +356,9 @@ public class NetworkV2 extends Network {
     public Parcel getParcel(HashId itemId, NodeInfo nodeInfo, Duration maxTimeout) throws InterruptedException {
         try {
 //            URL url = new URL("http://localhost:8080/contracts/" + itemId.toBase64String());
-            URL url = new URL(nodeInfo.publicUrlString() + "/parcels/" + itemId.toBase64String());
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestProperty("User-Agent", "Universa JAVA API Client");
-            connection.setRequestProperty("Connection", "close");
-            connection.setRequestMethod("GET");
-            if (200 != connection.getResponseCode())
+            byte[] data = download(nodeInfo.publicUrlString() + "/parcels/" + itemId.toBase64String(), maxTimeout);
+            if (data == null)
                 return null;
-            byte[] data = Do.read(connection.getInputStream());
             Parcel parcel = Parcel.unpack(data);
 //            tp.trace();
 //            Contract c = Contract.fromPackedTransaction(data);
@@ -247,19 +369,78 @@ public class NetworkV2 extends Network {
         }
     }
 
+    /**
+     * GET the url over a persistent connection. Connections are kept alive and reused by {@link HttpURLConnection}
+     * as long as the response body is read to the end and closed, so this is done for error responses too.
+     *
+     * @param url        to get
+     * @param maxTimeout is connect and read timeout
+     *
+     * @return response body or null if the response is not 200
+     *
+     * @throws IOException if request failed
+     */
+    private byte[] download(String url, Duration maxTimeout) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestProperty("User-Agent", "Universa JAVA API Client");
+        connection.setRequestMethod("GET");
+        int timeout = (int) Math.min(maxTimeout.toMillis(), Integer.MAX_VALUE);
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        try {
+            if (200 != connection.getResponseCode()) {
+                InputStream errorStream = connection.getErrorStream();
+                if (errorStream != null) {
+                    try (InputStream in = errorStream) {
+                        Do.read(in);
+                    }
+                }
+                return null;
+            }
+            try (InputStream in = connection.getInputStream()) {
+                return Do.read(in);
+            }
+        } catch (IOException e) {
+            // the connection is in unknown state, don't let it be reused
+            connection.disconnect();
+            throw e;
+        }
+    }
+
     private final Map<NodeInfo,Client> cachedClients = new HashMap<>();
 
+    // nodes of older versions that have no getStates command
+    private final Set<NodeInfo> nodesWithoutGetStates = ConcurrentHashMap.newKeySet();
+
     @Override
     public ItemResult getItemState(NodeInfo nodeInfo, HashId id) throws IOException {
-        Client client;
+        return getClient(nodeInfo).getState(id);
+    }
+
+    @Override
+    public Map<HashId, ItemResult> getItemStates(NodeInfo nodeInfo, Collection<HashId> ids) throws IOException {
+        if (!nodesWithoutGetStates.contains(nodeInfo)) {
+            try {
+                return getClient(nodeInfo).getStates(ids);
+            } catch (ClientError e) {
+                if (!Client.isUnknownCommand(e))
+                    throw e;
+                nodesWithoutGetStates.add(nodeInfo);
+            }
+        }
+        // ask one by one
+        return super.getItemStates(nodeInfo, ids);
+    }
+
+    private Client getClient(NodeInfo nodeInfo) throws IOException {
         synchronized (cachedClients) {
-            client = cachedClients.get(nodeInfo);
+            Client client = cachedClients.get(nodeInfo);
             if( client == null ) {
                 client = new Client(myKey, nodeInfo, null);
                 cachedClients.put(nodeInfo, client);
             }
+            return client;
         }
-        return client.getState(id);
     }
 
     private String exceptionCallback(String message) {
@@ -268,6 +449,8 @@ public class NetworkV2 extends Network {
     }
 
     public void shutdown() {
+        batchExecutorService.shutdown();
+        flushOutboundQueues();
         if(adapter != null)
             adapter.shutdown();
     }
@@ -281,12 +464,35 @@ public class NetworkV2 extends Network {
         if(adapter != null)
             adapter.shutdown();
 
-        adapter = new UDPAdapter(myKey, new SymmetricKey(), myInfo, netConfig);
+        adapter = createUDPAdapter();
         adapter.receive(this::onReceived);
         adapter.addErrorsCallback(this::exceptionCallback);
     }
 
 
+    /**
+     * Create the adapter to send and receive notifications with. Is called from the constructor and on {@link
+     * #restartUDPAdapter()}.
+     *
+     * @return new {@link UDPAdapter} listening on own node port
+     * @throws IOException if UDP port can not be bound
+     */
+    protected UDPAdapter createUDPAdapter() throws IOException {
+        UDPAdapter udpAdapter = useNioAdapter ?
+                new NioUDPAdapter(myKey, new SymmetricKey(), myInfo, netConfig) :
+                new UDPAdapter(myKey, new SymmetricKey(), myInfo, netConfig);
+        if (metrics != null)
+            udpAdapter.setMetrics(metrics);
+        return udpAdapter;
+    }
+
+    @Override
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        adapter.setMetrics(metrics);
+    }
+
+
     public int getVerboseLevel() {
         return verboseLevel;
     }
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2.network;
+
+import com.icodici.crypto.EncryptionError;
+import com.icodici.crypto.PrivateKey;
+import com.icodici.crypto.SymmetricKey;
+import com.icodici.universa.node2.NetConfig;
+import com.icodici.universa.node2.NodeInfo;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.*;
+
+/**
+ * {@link UDPAdapter} that works over NIO {@link DatagramChannel} with pooled direct buffers instead of blocking
+ * {@link java.net.DatagramSocket}.
+ *
+ * Got data passes three stages. Listening thread receives datagrams, reassembles blocks and runs handshakes. Solid
+ * {@link PacketTypes#DATA} blocks are decrypted by the decrypt threads and decrypted data is passed to the receiver by
+ * the dispatch threads. Decrypt threads do not touch sessions: the session key is taken by the listening thread, and
+ * the answer to the block is sent holding the same lock the listening thread processes datagrams with. Both thread sets are partitioned by the sender node, so data from one node is decrypted and
+ * dispatched in the order it was got, while a slow receiver stalls only the nodes of its partition instead of the
+ * whole inbound traffic.
+ */
+public class NioUDPAdapter extends UDPAdapter {
+
+    /**
+     * Default number of decrypt and dispatch partitions.
+     */
+    static public final int DEFAULT_PARTITIONS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Max number of direct buffers kept for reuse.
+     */
+    static private final int MAX_POOLED_BUFFERS = 64;
+
+    private final DatagramChannel channel;
+
+    private final ExecutorService[] decryptExecutors;
+    private final ExecutorService[] dispatchExecutors;
+
+    private final ConcurrentLinkedQueue<ByteBuffer> buffersPool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Held while datagram is processed or decrypted block is answered, so sessions are changed by one thread at once.
+     */
+    private final Object listenLock = new Object();
+
+    /**
+     * Create an instance that listens for the incoming datagrams using the specified configurations and {@link
+     * #DEFAULT_PARTITIONS} decrypt and dispatch partitions.
+     *
+     * @param ownPrivateKey is {@link PrivateKey} for signing requests
+     * @param sessionKey is {@link SymmetricKey} with session
+     * @param myNodeInfo is {@link NodeInfo} object described node this UDPAdapter work with
+     * @param netConfig is {@link NetConfig} where all nodes data is stored
+     * @throws IOException if something went wrong
+     */
+    public NioUDPAdapter(PrivateKey ownPrivateKey, SymmetricKey sessionKey, NodeInfo myNodeInfo, NetConfig netConfig) throws IOException {
+        this(ownPrivateKey, sessionKey, myNodeInfo, netConfig, DEFAULT_PARTITIONS);
+    }
+
+    /**
+     * Create an instance that listens for the incoming datagrams using the specified configurations.
+     *
+     * @param ownPrivateKey is {@link PrivateKey} for signing requests
+     * @param sessionKey is {@link SymmetricKey} with session
+     * @param myNodeInfo is {@link NodeInfo} object described node this UDPAdapter work with
+     * @param netConfig is {@link NetConfig} where all nodes data is stored
+     * @param partitions is number of threads for each of decrypt and dispatch stages
+     * @throws IOException if something went wrong
+     */
+    public NioUDPAdapter(PrivateKey ownPrivateKey, SymmetricKey sessionKey, NodeInfo myNodeInfo, NetConfig netConfig,
+                         int partitions) throws IOException {
+        this(ownPrivateKey, sessionKey, myNodeInfo, netConfig, openChannel(myNodeInfo), partitions);
+    }
+
+    private NioUDPAdapter(PrivateKey ownPrivateKey, SymmetricKey sessionKey, NodeInfo myNodeInfo, NetConfig netConfig,
+                          DatagramChannel channel, int partitions) throws IOException {
+        super(ownPrivateKey, sessionKey, myNodeInfo, netConfig, channel.socket());
+        if (partitions < 1)
+            throw new IllegalArgumentException("partitions should be positive");
+        this.channel = channel;
+
+        decryptExecutors = createPartitions("decrypt", partitions);
+        dispatchExecutors = createPartitions("dispatch", partitions);
+
+        socketListenThread = new ChannelListenThread();
+        socketListenThread.start();
+    }
+
+    static private DatagramChannel openChannel(NodeInfo myNodeInfo) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(myNodeInfo.getNodeAddress().getPort()));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    private ExecutorService[] createPartitions(String stage, int partitions) {
+        ExecutorService[] executors = new ExecutorService[partitions];
+        for (int i = 0; i < partitions; i++) {
+            final String name = "UDP-" + stage + "-" + myNodeInfo.getNumber() + "-" + i;
+            executors[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r);
+                thread.setName(name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executors;
+    }
+
+    private void execute(ExecutorService[] partitions, int senderNodeId, Runnable task) {
+        try {
+            partitions[Math.floorMod(senderNodeId, partitions.length)].execute(task);
+        } catch (RejectedExecutionException e) {
+            report(getLabel(), "got data while shutting down, skipped");
+        }
+    }
+
+    @Override
+    protected void sendDatagram(DatagramPacket datagram) throws IOException {
+        ByteBuffer buffer = acquireBuffer(datagram.getLength());
+        try {
+            buffer.put(datagram.getData(), datagram.getOffset(), datagram.getLength());
+            buffer.flip();
+            channel.send(buffer, datagram.getSocketAddress());
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    @Override
+    protected void dispatchReceived(int senderNodeId, byte[] payload) {
+        execute(dispatchExecutors, senderNodeId, () -> {
+            try {
+                super.dispatchReceived(senderNodeId, payload);
+            } catch (Exception e) {
+                callErrorCallbacks(e.getClass().getSimpleName() + " in node " + myNodeInfo.getNumber() +
+                        " receiver: " + e.getMessage());
+                e.printStackTrace();
+            }
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        for (ExecutorService executor : decryptExecutors)
+            executor.shutdown();
+        for (ExecutorService executor : dispatchExecutors)
+            executor.shutdown();
+    }
+
+    private ByteBuffer acquireBuffer(int size) {
+        ByteBuffer buffer = buffersPool.poll();
+        if (buffer == null || buffer.capacity() < size)
+            buffer = ByteBuffer.allocateDirect(Math.max(size, MAX_PACKET_SIZE));
+        buffer.clear();
+        return buffer;
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        if (buffersPool.size() < MAX_POOLED_BUFFERS)
+            buffersPool.add(buffer);
+    }
+
+
+    /**
+     * Receives datagrams from the channel and processes them like {@link SocketListenThread} does, but passes solid
+     * {@link PacketTypes#DATA} blocks to the decrypt stage.
+     */
+    class ChannelListenThread extends SocketListenThread {
+
+        ChannelListenThread() {
+            super(channel.socket());
+        }
+
+        @Override
+        public void run() {
+            setName("UDP-channel-listener-" + myNodeInfo.getNumber());
+            label = myNodeInfo.getNumber() + "-" + getName() + ": ";
+
+            report(getLabel(), () -> concatReportMessage(" NioUDPAdapter listen channel at ",
+                    myNodeInfo.getNodeAddress().getAddress(), ":", myNodeInfo.getNodeAddress().getPort()));
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
+            while (channel.isOpen()) {
+                try {
+                    buffer.clear();
+                    InetSocketAddress from = (InetSocketAddress) channel.receive(buffer);
+                    if (from == null)
+                        continue;
+                    buffer.flip();
+                    byte[] data = new byte[buffer.remaining()];
+                    buffer.get(data);
+                    synchronized (listenLock) {
+                        processDatagram(data, from.getAddress(), from.getPort());
+                    }
+                } catch (ClosedChannelException e) {
+                    report(getLabel(), "channel is closed");
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        @Override
+        protected void obtainDataBlock(Block block) throws InterruptedException {
+            SymmetricKey key = acceptDataBlock(block);
+            if (key == null)
+                return;
+            execute(decryptExecutors, block.getSenderNodeId(), () -> {
+                boolean received = false;
+                try {
+                    dispatchReceived(block.getSenderNodeId(), decryptDataBlock(block, key));
+                    received = true;
+                } catch (SymmetricKey.AuthenticationFailed e) {
+                    callErrorCallbacks("SymmetricKey.AuthenticationFailed in node " + myNodeInfo.getNumber() + ": " + e.getMessage());
+                } catch (EncryptionError e) {
+                    callErrorCallbacks(getLabel() + " EncryptionError in node " + myNodeInfo.getNumber() + ": " + e.getMessage());
+                } catch (Exception e) {
+                    callErrorCallbacks(e.getClass().getSimpleName() + " in node " + myNodeInfo.getNumber() + ": " + e.getMessage());
+                    e.printStackTrace();
+                }
+                try {
+                    synchronized (listenLock) {
+                        answerDataBlock(block, received);
+                    }
+                } catch (InterruptedException e) {
+                    report(getLabel(), "expected interrupted exception");
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2.network;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hashed timer wheel: items are scheduled to some tick in the future and are returned by {@link #advance()} when the
+ * wheel reaches that tick. Scheduling costs O(1) and each tick touches only the items of its own slot, so thousands
+ * of pending deadlines cost nothing until they are due. Wheel does not run by itself, caller should call {@link
+ * #advance()} once per {@link #getTick()}.
+ *
+ * @param <T> is type of scheduled items
+ */
+public class TimerWheel<T> {
+
+    private final Duration tick;
+    private final ConcurrentLinkedQueue<Entry<T>>[] slots;
+    private final AtomicLong currentTick = new AtomicLong(0);
+
+    /**
+     * Create wheel.
+     *
+     * @param tick is time between calls of {@link #advance()}
+     * @param slotsCount is number of slots, delays up to slotsCount ticks are served without extra rounds
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(Duration tick, int slotsCount) {
+        if (tick.isZero() || tick.isNegative())
+            throw new IllegalArgumentException("tick should be positive");
+        if (slotsCount < 1)
+            throw new IllegalArgumentException("slotsCount should be positive");
+        this.tick = tick;
+        slots = new ConcurrentLinkedQueue[slotsCount];
+        for (int i = 0; i < slotsCount; i++)
+            slots[i] = new ConcurrentLinkedQueue<>();
+    }
+
+    public Duration getTick() {
+        return tick;
+    }
+
+    /**
+     * @return number of ticks passed since wheel creation
+     */
+    public long getCurrentTick() {
+        return currentTick.get();
+    }
+
+    /**
+     * Schedule item to be returned by {@link #advance()} after the delay, rounded up to whole ticks, but at least one
+     * tick later.
+     *
+     * @param item is item to schedule
+     * @param delay is time from now
+     *
+     * @return tick the item is scheduled to, could be used to check if item was rescheduled meanwhile
+     */
+    public long schedule(T item, Duration delay) {
+        long ticks = Math.max(1, (delay.toNanos() + tick.toNanos() - 1) / tick.toNanos());
+        while (true) {
+            long deadline = currentTick.get() + ticks;
+            Entry<T> entry = new Entry<>(item, deadline);
+            ConcurrentLinkedQueue<Entry<T>> slot = slots[(int) (deadline % slots.length)];
+            slot.add(entry);
+            // concurrent advance() could reach the deadline and drain the slot before the entry was added, then it
+            // would wait for the whole round, so move it to the next tick
+            if (currentTick.get() < deadline || !slot.remove(entry))
+                return deadline;
+            ticks = 1;
+        }
+    }
+
+    /**
+     * Move wheel to the next tick.
+     *
+     * @return items which deadline is reached, in order of scheduling
+     */
+    public List<T> advance() {
+        long now = currentTick.incrementAndGet();
+        ConcurrentLinkedQueue<Entry<T>> slot = slots[(int) (now % slots.length)];
+        List<T> due = new ArrayList<>();
+        List<Entry<T>> later = new ArrayList<>();
+        Entry<T> entry;
+        while ((entry = slot.poll()) != null) {
+            if (entry.deadline <= now)
+                due.add(entry.item);
+            else
+                later.add(entry);
+        }
+        slot.addAll(later);
+        return due;
+    }
+
+    private static class Entry<T> {
+        private final T item;
+        private final long deadline;
+
+        private Entry(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+    }
+}
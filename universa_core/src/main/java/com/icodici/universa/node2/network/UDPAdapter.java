@@ -9,6 +9,7 @@ package com.icodici.universa.node2.network;
 import com.icodici.crypto.*;
 import com.icodici.crypto.digest.Crc32;
 import com.icodici.universa.Errors;
+import com.icodici.universa.node2.Metrics;
 import com.icodici.universa.node2.NetConfig;
 import com.icodici.universa.node2.NodeInfo;
 import net.sergeych.boss.Boss;
@@ -26,6 +27,8 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 import static java.util.Arrays.asList;
@@ -34,9 +37,9 @@ public class UDPAdapter extends DatagramAdapter {
 
     static private LogPrinter log = new LogPrinter("UDPA");
 
-    private DatagramSocket socket;
+    protected DatagramSocket socket;
 
-    private SocketListenThread socketListenThread;
+    protected SocketListenThread socketListenThread;
 
     private Object lock = new Object();
 
@@ -57,6 +60,30 @@ public class UDPAdapter extends DatagramAdapter {
      */
     static public final int CLEANUP_TIME = 15000;
 
+    /**
+     * Time between retransmit timer wheel ticks, in milliseconds.
+     */
+    static public final int RETRANSMIT_TICK_TIME = RETRANSMIT_TIME / 5;
+
+    /**
+     * Packet that has waited for its {@link PacketTypes#PACKET_ACK} while so many other acks were got is resent
+     * without waiting for the retransmit timer.
+     */
+    static public final int PACKET_MAX_WAIT_INDEX = 3;
+
+    /**
+     * Retransmit deadlines of the sending blocks.
+     */
+    private final TimerWheel<Block> retransmitWheel = new TimerWheel<>(Duration.ofMillis(RETRANSMIT_TICK_TIME), 16);
+
+    /**
+     * Id of the last {@link Block} created by this adapter. Starts at random, so blocks of the restarted adapter are
+     * not taken by the remote party for the ones it has already got.
+     */
+    private final AtomicInteger lastBlockId = new AtomicInteger(new Random().nextInt(Integer.MAX_VALUE));
+
+    private volatile Metrics metrics = new Metrics();
+
     private boolean isShuttingDown = false;
 
     protected String label = null;
@@ -72,22 +99,48 @@ public class UDPAdapter extends DatagramAdapter {
      * @throws IOException if something went wrong
      */
     public UDPAdapter(PrivateKey ownPrivateKey, SymmetricKey sessionKey, NodeInfo myNodeInfo, NetConfig netConfig) throws IOException {
+        this(ownPrivateKey, sessionKey, myNodeInfo, netConfig, new DatagramSocket(myNodeInfo.getNodeAddress().getPort()));
+
+        socketListenThread = new SocketListenThread(socket);
+        socketListenThread.start();
+    }
+
+    /**
+     * Report round trip times of packets per remote node to the metrics, as "udp_rtt_us" histograms. Only packets
+     * delivered from the first attempt are counted, as it is unknown which attempt the ack answers otherwise.
+     *
+     * @param metrics is registry to report to
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Create an instance that works with already bound socket. Listening for the incoming datagrams is not started,
+     * subclass should create and start own {@link SocketListenThread}.
+     *
+     * @param ownPrivateKey is {@link PrivateKey} for signing requests
+     * @param sessionKey is {@link SymmetricKey} with session
+     * @param myNodeInfo is {@link NodeInfo} object described node this UDPAdapter work with
+     * @param netConfig is {@link NetConfig} where all nodes data is stored
+     * @param socket is socket bound to the port of myNodeInfo
+     * @throws IOException if something went wrong
+     */
+    protected UDPAdapter(PrivateKey ownPrivateKey, SymmetricKey sessionKey, NodeInfo myNodeInfo, NetConfig netConfig,
+                         DatagramSocket socket) throws IOException {
         super(ownPrivateKey, sessionKey, myNodeInfo, netConfig);
 
         label = myNodeInfo.getNumber() + "-0: ";
 
-        socket = new DatagramSocket(myNodeInfo.getNodeAddress().getPort());
+        this.socket = socket;
         socket.setReuseAddress(true);
 
-        socketListenThread = new SocketListenThread(socket);
-        socketListenThread.start();
-
         timer.scheduleAtFixedRate(new TimerTask() {
             @Override
             public void run() {
                 checkUnsent();
             }
-        }, RETRANSMIT_TIME, RETRANSMIT_TIME);
+        }, RETRANSMIT_TICK_TIME, RETRANSMIT_TICK_TIME);
         timerCleanup.scheduleAtFixedRate(new TimerTask() {
             @Override
             public void run() {
@@ -113,7 +166,7 @@ public class UDPAdapter extends DatagramAdapter {
             Session session = sessionsById.get(destination.getNumber());
 
             Block rawBlock = new Block(myNodeInfo.getNumber(), destination.getNumber(),
-                    new Random().nextInt(Integer.MAX_VALUE), PacketTypes.RAW_DATA,
+                    nextBlockId(), PacketTypes.RAW_DATA,
                     destination.getNodeAddress().getAddress(), destination.getNodeAddress().getPort(),
                     payload.clone());
 
@@ -265,11 +318,13 @@ public class UDPAdapter extends DatagramAdapter {
 
         List<DatagramPacket> outs = new ArrayList(block.datagrams.values());
 
-        block.sendAttempts++;
+        if(block.sendAttempts++ == 0)
+            block.sentAt = System.nanoTime();
         if(block.type != PacketTypes.PACKET_ACK &&
                 block.type != PacketTypes.ACK &&
                 block.type != PacketTypes.NACK) {
             session.addBlockToSendingQueue(block);
+            block.retransmitTick = retransmitWheel.schedule(block, Duration.ofMillis(RETRANSMIT_TIME));
         }
         try {
             if(testMode == TestModes.SHUFFLE_PACKETS || testMode == TestModes.LOST_AND_SHUFFLE_PACKETS) {
@@ -284,7 +339,7 @@ public class UDPAdapter extends DatagramAdapter {
                         continue;
                     }
                 }
-                socket.send(d);
+                sendDatagram(d);
                 report(getLabel(), () -> concatReportMessage("for block: ", block.blockId, " sent packets num:  ", outs.size()));
             }
         } catch (IOException e) {
@@ -294,6 +349,36 @@ public class UDPAdapter extends DatagramAdapter {
     }
 
 
+    /**
+     * Id for the new {@link Block}. Ids are not repeated until all 2^31 of them are used, so block keeps its id through
+     * all the sessions it is sent in.
+     * @return non-negative block id
+     */
+    protected int nextBlockId() {
+        return lastBlockId.incrementAndGet() & Integer.MAX_VALUE;
+    }
+
+
+    /**
+     * Put datagram to the socket.
+     * @param datagram is {@link DatagramPacket} to send.
+     * @throws IOException if socket is closed or something went wrong
+     */
+    protected void sendDatagram(DatagramPacket datagram) throws IOException {
+        socket.send(datagram);
+    }
+
+
+    /**
+     * Pass got and decrypted data to the receiver (see {@link DatagramAdapter#receive(java.util.function.Consumer)}).
+     * @param senderNodeId is number of node the data is got from
+     * @param payload is decrypted data
+     */
+    protected void dispatchReceived(int senderNodeId, byte[] payload) {
+        if(receiver != null) receiver.accept(payload);
+    }
+
+
     /**
      * Method prepare and sends raw {@link Block} as {@link PacketTypes#DATA}. Session for this sending should be
      * already in the {@link Session#EXCHANGING} mode.
@@ -355,7 +440,7 @@ public class UDPAdapter extends DatagramAdapter {
                 "data", myNodeInfo.getNumber()
         );
         Block block = new Block(myNodeInfo.getNumber(), session.remoteNodeId,
-                                new Random().nextInt(Integer.MAX_VALUE), PacketTypes.HELLO,
+                                nextBlockId(), PacketTypes.HELLO,
                                 session.address, session.port,
                                 Boss.pack(binder));
         sendBlock(block, session);
@@ -372,7 +457,7 @@ public class UDPAdapter extends DatagramAdapter {
 
         session.state = Session.WELCOME;
         Block block = new Block(myNodeInfo.getNumber(), session.remoteNodeId,
-                                new Random().nextInt(Integer.MAX_VALUE), PacketTypes.WELCOME,
+                                nextBlockId(), PacketTypes.WELCOME,
                                 session.address, session.port,
                                 session.localNonce);
         sendBlock(block, session);
@@ -399,7 +484,7 @@ public class UDPAdapter extends DatagramAdapter {
             );
 
             Block block = new Block(myNodeInfo.getNumber(), session.remoteNodeId,
-                                    new Random().nextInt(Integer.MAX_VALUE), PacketTypes.KEY_REQ,
+                                    nextBlockId(), PacketTypes.KEY_REQ,
                                     session.address, session.port,
                                     Boss.pack(binder));
             sendBlock(block, session);
@@ -415,7 +500,7 @@ public class UDPAdapter extends DatagramAdapter {
                     session.port);
             newSession.publicKey = session.publicKey;
             newSession.remoteNodeId = session.remoteNodeId;
-            for (Block b : session.waitingBlocksQueue) {
+            for (Block b : session.getWaitingBlocks()) {
                 newSession.addBlockToWaitingQueue(b);
             }
             sendHello(newSession);
@@ -447,7 +532,7 @@ public class UDPAdapter extends DatagramAdapter {
             );
 
             Block block = new Block(myNodeInfo.getNumber(), session.remoteNodeId,
-                                    new Random().nextInt(Integer.MAX_VALUE), PacketTypes.SESSION,
+                                    nextBlockId(), PacketTypes.SESSION,
                                     session.address, session.port,
                                     Boss.pack(binder));
             sendBlock(block, session);
@@ -465,7 +550,7 @@ public class UDPAdapter extends DatagramAdapter {
                     session.port);
             newSession.publicKey = session.publicKey;
             newSession.remoteNodeId = session.remoteNodeId;
-            for (Block b : session.waitingBlocksQueue) {
+            for (Block b : session.getWaitingBlocks()) {
                 newSession.addBlockToWaitingQueue(b);
             }
             sendHello(newSession);
@@ -485,7 +570,7 @@ public class UDPAdapter extends DatagramAdapter {
 
         List data = asList(blockId, packetId);
         Block block = new Block(myNodeInfo.getNumber(), session.remoteNodeId,
-                                new Random().nextInt(Integer.MAX_VALUE), PacketTypes.PACKET_ACK,
+                                nextBlockId(), PacketTypes.PACKET_ACK,
                                 session.address, session.port,
                                 Boss.pack(data));
         sendBlock(block, session);
@@ -503,7 +588,7 @@ public class UDPAdapter extends DatagramAdapter {
         report(getLabel(), () -> concatReportMessage("send ack to ", session.remoteNodeId), VerboseLevel.BASE);
 
         Block block = new Block(myNodeInfo.getNumber(), session.remoteNodeId,
-                                new Random().nextInt(Integer.MAX_VALUE), PacketTypes.ACK,
+                                nextBlockId(), PacketTypes.ACK,
                                 session.address, session.port,
                                 Boss.pack(blockId));
         sendBlock(block, session);
@@ -521,7 +606,7 @@ public class UDPAdapter extends DatagramAdapter {
         report(getLabel(), () -> concatReportMessage("send nack to ", session.remoteNodeId), VerboseLevel.BASE);
 
         Block block = new Block(myNodeInfo.getNumber(), session.remoteNodeId,
-                                new Random().nextInt(Integer.MAX_VALUE), PacketTypes.NACK,
+                                nextBlockId(), PacketTypes.NACK,
                                 session.address, session.port,
                                 Boss.pack(blockId));
         sendBlock(block, session);
@@ -564,106 +649,84 @@ public class UDPAdapter extends DatagramAdapter {
     }
 
     /**
-     * Method checks blocks in the sending queue. If block still in the queue method increment it {@link Block#sendAttempts}
-     * value. If that value become above {@link DatagramAdapter#RETRANSMIT_MAX_ATTEMPTS} block remove from queue. After that
-     * if some sessions was had that blocks and blocks was removed - remove that sessions as possible broken.
+     * Method checks blocks in the sending queue which retransmit time has come. If block still in the queue method
+     * resends it, so its {@link Block#sendAttempts} is incremented. If that value become above {@link
+     * DatagramAdapter#RETRANSMIT_MAX_ATTEMPTS} block remove from queue. After that if some sessions was had that blocks
+     * and blocks was removed - remove that sessions as possible broken.
      *
-     * Calls from timer.
+     * Calls from timer each {@link #RETRANSMIT_TICK_TIME}.
      */
     protected void checkUnsent() {
-        List<Block> blocksToRemove;
-        List<Session> brokenSessions = new ArrayList<>();
-        for(Session session : sessionsById.values()) {
-            blocksToRemove = new ArrayList();
-            for (Block block : session.sendingBlocksQueue) {
-                if(!block.isDelivered()) {
-                    report(getLabel(), () -> concatReportMessage("block: ", block.blockId,
-                            " type: ", block.type, " sendAttempts: ", block.sendAttempts, " not delivered"));
-                    try {
-                        if(block.sendAttempts >= RETRANSMIT_MAX_ATTEMPTS) {
-                            report(getLabel(), () -> concatReportMessage("block ", block.blockId,
-                                    " type ", block.type, " will be removed"));
-                            blocksToRemove.add(block);
-                        } else {
-                            sendBlock(block, session);
-                        }
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-
-            for(Block rb : blocksToRemove) {
-                try {
-//                    if(rb.type == PacketTypes.DATA && session.sendingBlocksQueue.contains(rb)) {
-//                        System.err.println(getLabel() + "block " + rb.blockId + " type " + rb.type + " has not delivered and will be removed");
-//                        callErrorCallbacks("block " + rb.blockId + " type " + rb.type + " has not delivered and will be removed");
-//                    }
-                    session.removeBlockFromSendingQueue(rb);
-                    session.removeBlockFromWaitingQueue(rb.blockId);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-
-            if(blocksToRemove.size() > 0) {
-                report(getLabel(), () -> concatReportMessage("Session with remote ", session.remoteNodeId,
-                        " is possible broken, state: ",
-                        session.state,
-                        ", num sending: ", session.sendingBlocksQueue.size(),
-                        ", num waiting: ", session.waitingBlocksQueue.size()));
-
-                if(session.state != Session.EXCHANGING && session.state != Session.SESSION) {
-                    if(session.sendingBlocksQueue.isEmpty()) {
-
-                        report(getLabel(), () -> concatReportMessage("Session with remote ",
-                                session.remoteNodeId, " is broken, state: ",
-                                session.state,
-                                ", num sending: ", session.sendingBlocksQueue.size(),
-                                ", num waiting: ", session.waitingBlocksQueue.size(), ", will be removed"));
-                        brokenSessions.add(session);
-                    }
+        Set<Session> sessionsWithRemovedBlocks = new LinkedHashSet<>();
+        List<Block> dueBlocks = retransmitWheel.advance();
+        long currentTick = retransmitWheel.getCurrentTick();
+        for (Block block : dueBlocks) {
+            Session session = sessionsById.get(block.receiverNodeId);
+            // skip blocks that were delivered, removed or already rescheduled since
+            if (session == null || block.isDelivered() || block.retransmitTick > currentTick ||
+                    session.sendingBlocks.get(block.blockId) != block)
+                continue;
+
+            report(getLabel(), () -> concatReportMessage("block: ", block.blockId,
+                    " type: ", block.type, " sendAttempts: ", block.sendAttempts, " not delivered"));
+            try {
+                if(block.sendAttempts >= RETRANSMIT_MAX_ATTEMPTS) {
+                    report(getLabel(), () -> concatReportMessage("block ", block.blockId,
+                            " type ", block.type, " will be removed"));
+                    session.removeBlockFromSendingQueue(block);
+                    session.removeBlockFromWaitingQueue(block.blockId);
+                    sessionsWithRemovedBlocks.add(session);
+                } else {
+                    sendBlock(block, session);
                 }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
             }
         }
 
-
-        for(Session session : brokenSessions) {
-            if (sessionsById.containsKey(session.remoteNodeId)) {
-                sessionsById.remove(session.remoteNodeId);
+        for (Session session : sessionsWithRemovedBlocks) {
+            report(getLabel(), () -> concatReportMessage("Session with remote ", session.remoteNodeId,
+                    " is possible broken, state: ",
+                    session.state,
+                    ", num sending: ", session.sendingBlocks.size(),
+                    ", num waiting: ", session.getWaitingBlocksCount()));
+
+            if(session.state != Session.EXCHANGING && session.state != Session.SESSION) {
+                if(session.sendingBlocks.isEmpty()) {
+
+                    report(getLabel(), () -> concatReportMessage("Session with remote ",
+                            session.remoteNodeId, " is broken, state: ",
+                            session.state,
+                            ", num sending: ", session.sendingBlocks.size(),
+                            ", num waiting: ", session.getWaitingBlocksCount(), ", will be removed"));
+                    sessionsById.remove(session.remoteNodeId, session);
+                }
             }
         }
     }
 
     /**
-     * Check unsent (or not delivered, i.e. without {@link PacketTypes#PACKET_ACK} answer) packets and try to resend it.
+     * Resend packets that have not got {@link PacketTypes#PACKET_ACK} answer for too long, see {@link
+     * Session#incremetWaitIndexForPacketsFromSendingQueue()}.
      * @param session is {@link Session} in which sending is.
+     * @param packetsToResend are packets collected by the session.
      */
-    protected void checkUnsentPackets(Session session) {
-        List<Block> blocksToResend = new ArrayList();
-        List<Packet> packetsToResend = new ArrayList();
+    protected void checkUnsentPackets(Session session, List<Packet> packetsToResend) {
         List<DatagramPacket> datagramsToResend = new ArrayList();
-//        for(Session session : sessionsById.values()) {
-        for (Block block : session.sendingBlocksQueue) {
-            if(!block.isDelivered()) {
-                blocksToResend.add(block);
-                for(Packet packet : block.packets.values()) {
-                    if(packet.sendWaitIndex >= 3) {
-//                            packetsToResend.add(packet);
-                        datagramsToResend.add(block.datagrams.get(packet.packetId));
-                        report(getLabel(), () -> concatReportMessage("packet will be resend, blockId: ",
-                                packet.blockId, " packetId: ", packet.packetId, " type: ", packet.type,
-                                " sendWaitIndex: ", packet.sendWaitIndex));
-                    }
-                }
+        for (Packet packet : packetsToResend) {
+            Block block = session.sendingBlocks.get(packet.blockId);
+            if(block != null && !block.isDelivered()) {
+                datagramsToResend.add(block.datagrams.get(packet.packetId));
+                report(getLabel(), () -> concatReportMessage("packet will be resend, blockId: ",
+                        packet.blockId, " packetId: ", packet.packetId, " type: ", packet.type,
+                        " sendWaitIndex: ", packet.sendWaitIndex));
             }
         }
-//        }
 
         for(DatagramPacket datagram : datagramsToResend) {
             try {
                 if(datagram != null) {
-                    socket.send(datagram);
+                    sendDatagram(datagram);
                     report(getLabel(), " datagram was resent");
                 } else {
                     report(getLabel(), " datagram unexpected became null");
@@ -684,9 +747,9 @@ public class UDPAdapter extends DatagramAdapter {
      */
     protected void sendWaitingBlocks(Session session) {
         if (session != null && session.isValid() && (session.state == Session.EXCHANGING || session.state == Session.SESSION)) {
-            report(getLabel(), () -> concatReportMessage("waiting blocks num ", session.waitingBlocksQueue.size()));
+            report(getLabel(), () -> concatReportMessage("waiting blocks num ", session.getWaitingBlocksCount()));
             try {
-                for (Block waitingBlock : session.waitingBlocksQueue) {
+                for (Block waitingBlock : session.getWaitingBlocks()) {
                     report(getLabel(), () -> concatReportMessage("waitingBlock ", waitingBlock.blockId,
                             " type ", waitingBlock.type));
                     if (waitingBlock.type == PacketTypes.RAW_DATA) {
@@ -720,9 +783,9 @@ public class UDPAdapter extends DatagramAdapter {
         int sendingBlocksNum = 0;
         int sendingPacketsNum = 0;
         for (Session session : sessionsById.values()) {
-            waitingBlocksNum += session.waitingBlocksQueue.size();
-            sendingBlocksNum += session.sendingBlocksQueue.size();
-            sendingPacketsNum += session.sendingPacketsQueue.size();
+            waitingBlocksNum += session.getWaitingBlocksCount();
+            sendingBlocksNum += session.sendingBlocks.size();
+            sendingPacketsNum += session.sendingPackets.size();
         }
         final int finalwaitingBlocksNum = 0;
         final int finalsendingBlocksNum = 0;
@@ -835,122 +898,132 @@ public class UDPAdapter extends DatagramAdapter {
 
                     // first of all reconstruct packet from got bytes array
                     byte[] data = Arrays.copyOfRange(receivedDatagram.getData(), 0, receivedDatagram.getLength());
+                    processDatagram(data, receivedDatagram.getAddress(), receivedDatagram.getPort());
+                } else {
+                    report(getLabel(), "socket will be closed");
+                    shutdownThread();
+                }
+            }
+        }
+
 
-                    Packet packet = new Packet();
-                    Block waitingBlock = null;
-                    try {
-                        packet.parseFromByteArray(data);
+        /**
+         * Process got datagram: add packet to its block, answer PACKET_ACK and obtain block if it is solid.
+         * @param data is datagram's data
+         * @param address is address of the sender
+         * @param port is port of the sender
+         */
+        protected void processDatagram(byte[] data, InetAddress address, int port) {
+            Packet packet = new Packet();
+            Block waitingBlock = null;
+            try {
+                packet.parseFromByteArray(data);
 
-                        report(getLabel(), () -> concatReportMessage("got packet with blockId: ",
-                                packet.blockId, " packetId: ", packet.packetId, " type: ", packet.type));
+                report(getLabel(), () -> concatReportMessage("got packet with blockId: ",
+                        packet.blockId, " packetId: ", packet.packetId, " type: ", packet.type));
 
-                        // check if we packet is from block we got earlier
-                        // if block already exist - we choose it
-                        // otherwise we create new block for packet
-                        if (waitingBlocks.containsKey(packet.blockId)) {
-                            waitingBlock = waitingBlocks.get(packet.blockId);
-                        } else {
-                            if (obtainedBlocks.containsKey(packet.blockId)) {
-                                // Do nothing, cause we got and obtained this block already
-                                report(getLabel(), () -> concatReportMessage(" warning: repeated block given, with id ", packet.blockId));
-                            } else {
-                                waitingBlock = new Block(packet.senderNodeId, packet.receiverNodeId,
-                                        packet.blockId, packet.type,
-                                        receivedDatagram.getAddress(), receivedDatagram.getPort());
-                                waitingBlocks.put(waitingBlock.blockId, waitingBlock);
-                            }
+                // check if we packet is from block we got earlier
+                // if block already exist - we choose it
+                // otherwise we create new block for packet
+                if (waitingBlocks.containsKey(packet.blockId)) {
+                    waitingBlock = waitingBlocks.get(packet.blockId);
+                } else {
+                    if (obtainedBlocks.containsKey(packet.blockId)) {
+                        // Do nothing, cause we got and obtained this block already
+                        report(getLabel(), () -> concatReportMessage(" warning: repeated block given, with id ", packet.blockId));
+                    } else {
+                        waitingBlock = new Block(packet.senderNodeId, packet.receiverNodeId,
+                                packet.blockId, packet.type,
+                                address, port);
+                        waitingBlocks.put(waitingBlock.blockId, waitingBlock);
+                    }
 //                        waitingBlock = new Block(packet.senderNodeId, packet.receiverNodeId, packet.blockId, packet.type);
 //                        waitingBlocks.put(waitingBlock.blockId, waitingBlock);
-                        }
+                }
 
-                        // if we found or create block - add packet to it
-                        // and if all packets is got by block start block obtaining
-                        if (waitingBlock != null) {
-                            waitingBlock.addToPackets(packet);
+                // if we found or create block - add packet to it
+                // and if all packets is got by block start block obtaining
+                if (waitingBlock != null) {
+                    waitingBlock.addToPackets(packet);
 
-                            // if all packets is got by block start block obtaining
-                            if (waitingBlock.isSolid()) {
-                                moveWaitingBlockToObtained(waitingBlock);
-                                waitingBlock.reconstruct();
-                                obtainSolidBlock(waitingBlock);
-                            } else {
-                                // if we got only part of block - send PACKET_ACK
-                                // and clean session's blocks according packet.type
-                                if (packet.type != PacketTypes.PACKET_ACK) {
+                    // if all packets is got by block start block obtaining
+                    if (waitingBlock.isSolid()) {
+                        moveWaitingBlockToObtained(waitingBlock);
+                        waitingBlock.reconstruct();
+                        obtainSolidBlock(waitingBlock);
+                    } else {
+                        // if we got only part of block - send PACKET_ACK
+                        // and clean session's blocks according packet.type
+                        if (packet.type != PacketTypes.PACKET_ACK) {
 //                                    Session session = sessionsById.get(packet.senderNodeId);
 //                                    if (session == null) {
-//                                        session = getOrCreateSession(packet.senderNodeId, receivedDatagram.getAddress(), receivedDatagram.getPort());
+//                                        session = getOrCreateSession(packet.senderNodeId, address, port);
 //                                    }
-                                    report(getLabel(), () -> concatReportMessage("got packet type: ",
-                                            packet.type, " brotherPacketsNum: ", packet.brotherPacketsNum,
-                                            " from ", packet.senderNodeId), VerboseLevel.BASE);
-                                    Session session = getOrCreateSession(packet.senderNodeId, receivedDatagram.getAddress(), receivedDatagram.getPort());
-                                    sendPacketAck(session, packet.blockId, packet.packetId);
-                                    switch (packet.type) {
-                                        case PacketTypes.HELLO:
-                                            session.makeBlockDeliveredByType(PacketTypes.HELLO);
-                                            break;
-                                        case PacketTypes.WELCOME:
-                                            session.makeBlockDeliveredByType(PacketTypes.HELLO);
-                                            session.makeBlockDeliveredByType(PacketTypes.WELCOME);
-                                            break;
-                                        case PacketTypes.KEY_REQ:
-                                            session.makeBlockDeliveredByType(PacketTypes.HELLO);
-                                            session.makeBlockDeliveredByType(PacketTypes.WELCOME);
-                                            session.makeBlockDeliveredByType(PacketTypes.KEY_REQ);
-                                            break;
-                                        case PacketTypes.SESSION:
-                                            session.makeBlockDeliveredByType(PacketTypes.HELLO);
-                                            session.makeBlockDeliveredByType(PacketTypes.WELCOME);
-                                            session.makeBlockDeliveredByType(PacketTypes.KEY_REQ);
-                                            session.makeBlockDeliveredByType(PacketTypes.SESSION);
-                                        case PacketTypes.DATA:
-                                            if(session.isValid() && (session.state == Session.EXCHANGING || session.state == Session.SESSION)) {
-                                                session.makeBlockDeliveredByType(PacketTypes.HELLO);
-                                                session.makeBlockDeliveredByType(PacketTypes.WELCOME);
-                                                session.makeBlockDeliveredByType(PacketTypes.KEY_REQ);
-                                                session.makeBlockDeliveredByType(PacketTypes.SESSION);
-                                            }
-                                            break;
+                            report(getLabel(), () -> concatReportMessage("got packet type: ",
+                                    packet.type, " brotherPacketsNum: ", packet.brotherPacketsNum,
+                                    " from ", packet.senderNodeId), VerboseLevel.BASE);
+                            Session session = getOrCreateSession(packet.senderNodeId, address, port);
+                            sendPacketAck(session, packet.blockId, packet.packetId);
+                            switch (packet.type) {
+                                case PacketTypes.HELLO:
+                                    session.makeBlockDeliveredByType(PacketTypes.HELLO);
+                                    break;
+                                case PacketTypes.WELCOME:
+                                    session.makeBlockDeliveredByType(PacketTypes.HELLO);
+                                    session.makeBlockDeliveredByType(PacketTypes.WELCOME);
+                                    break;
+                                case PacketTypes.KEY_REQ:
+                                    session.makeBlockDeliveredByType(PacketTypes.HELLO);
+                                    session.makeBlockDeliveredByType(PacketTypes.WELCOME);
+                                    session.makeBlockDeliveredByType(PacketTypes.KEY_REQ);
+                                    break;
+                                case PacketTypes.SESSION:
+                                    session.makeBlockDeliveredByType(PacketTypes.HELLO);
+                                    session.makeBlockDeliveredByType(PacketTypes.WELCOME);
+                                    session.makeBlockDeliveredByType(PacketTypes.KEY_REQ);
+                                    session.makeBlockDeliveredByType(PacketTypes.SESSION);
+                                case PacketTypes.DATA:
+                                    if(session.isValid() && (session.state == Session.EXCHANGING || session.state == Session.SESSION)) {
+                                        session.makeBlockDeliveredByType(PacketTypes.HELLO);
+                                        session.makeBlockDeliveredByType(PacketTypes.WELCOME);
+                                        session.makeBlockDeliveredByType(PacketTypes.KEY_REQ);
+                                        session.makeBlockDeliveredByType(PacketTypes.SESSION);
                                     }
-                                }
+                                    break;
                             }
                         }
+                    }
+                }
 
-                    } catch (IllegalArgumentException e) {
-                        e.printStackTrace();
-                    } catch (InterruptedException e) {
-                        report(getLabel(), "expected interrupted exception");
-//                        e.printStackTrace();
-                    } catch (SymmetricKey.AuthenticationFailed e) {
-                        callErrorCallbacks("SymmetricKey.AuthenticationFailed in node " + myNodeInfo.getNumber() + ": " + e.getMessage());
-                        e.printStackTrace();
-                    } catch (EncryptionError e) {
-                        callErrorCallbacks(getLabel() + " EncryptionError in node " + myNodeInfo.getNumber() + ": " + e.getMessage());
-
-                        report(getLabel(), () -> concatReportMessage("EncryptionError in node ",
-                                myNodeInfo.getNumber(), ": ", e.getMessage()), VerboseLevel.BASE);
-                        for (Session s : sessionsById.values()) {
-                            report(getLabel(), ">>---", VerboseLevel.BASE);
-                            report(getLabel(), () -> concatReportMessage(">>local node: ",
-                                    myNodeInfo.getNumber(), " remote node: ", s.remoteNodeId), VerboseLevel.BASE);
-                            report(getLabel(), () -> concatReportMessage(">>local nonce: ",
-                                    s.localNonce, " remote nonce: ", s.remoteNonce), VerboseLevel.BASE);
-                            report(getLabel(), () -> concatReportMessage(">>state: ", s.state), VerboseLevel.BASE);
-                            report(getLabel(), () -> concatReportMessage(">>session key: ",
-                                    s.sessionKey.hashCode()), VerboseLevel.BASE);
-                        }
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                report(getLabel(), "expected interrupted exception");
 //                        e.printStackTrace();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    } catch (IllegalStateException e) {
-                        callErrorCallbacks("IllegalStateException in node " + myNodeInfo.getNumber() + ": " + e.getMessage());
-                        e.printStackTrace();
-                    }
-                } else {
-                    report(getLabel(), "socket will be closed");
-                    shutdownThread();
+            } catch (SymmetricKey.AuthenticationFailed e) {
+                callErrorCallbacks("SymmetricKey.AuthenticationFailed in node " + myNodeInfo.getNumber() + ": " + e.getMessage());
+                e.printStackTrace();
+            } catch (EncryptionError e) {
+                callErrorCallbacks(getLabel() + " EncryptionError in node " + myNodeInfo.getNumber() + ": " + e.getMessage());
+
+                report(getLabel(), () -> concatReportMessage("EncryptionError in node ",
+                        myNodeInfo.getNumber(), ": ", e.getMessage()), VerboseLevel.BASE);
+                for (Session s : sessionsById.values()) {
+                    report(getLabel(), ">>---", VerboseLevel.BASE);
+                    report(getLabel(), () -> concatReportMessage(">>local node: ",
+                            myNodeInfo.getNumber(), " remote node: ", s.remoteNodeId), VerboseLevel.BASE);
+                    report(getLabel(), () -> concatReportMessage(">>local nonce: ",
+                            s.localNonce, " remote nonce: ", s.remoteNonce), VerboseLevel.BASE);
+                    report(getLabel(), () -> concatReportMessage(">>state: ", s.state), VerboseLevel.BASE);
+                    report(getLabel(), () -> concatReportMessage(">>session key: ",
+                            s.sessionKey.hashCode()), VerboseLevel.BASE);
                 }
+//                        e.printStackTrace();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (IllegalStateException e) {
+                callErrorCallbacks("IllegalStateException in node " + myNodeInfo.getNumber() + ": " + e.getMessage());
+                e.printStackTrace();
             }
         }
 
@@ -1168,7 +1241,7 @@ public class UDPAdapter extends DatagramAdapter {
                                             sessionIsValid));
 
                                     // Tell remote nonce we got session or send own and no need to resend it.
-                                    answerAckOrNack(session, block, receivedDatagram.getAddress(), receivedDatagram.getPort());
+                                    answerAckOrNack(session, block, block.address, block.port);
 
                                     sendWaitingBlocks(session);
                                 } else {
@@ -1191,56 +1264,7 @@ public class UDPAdapter extends DatagramAdapter {
 
                 // we got DATA - check if session is valid, decrypt data and just answer
                 case PacketTypes.DATA:
-                    report(getLabel(), () -> concatReportMessage("got data from ", block.senderNodeId), VerboseLevel.BASE);
-                    session = sessionsById.get(block.senderNodeId);
-                    try {
-                        if(session != null && session.isValid() &&
-                                (session.state == Session.EXCHANGING || session.state == Session.SESSION)) {
-
-                            session.makeBlockDeliveredByType(PacketTypes.HELLO);
-                            session.makeBlockDeliveredByType(PacketTypes.WELCOME);
-                            session.makeBlockDeliveredByType(PacketTypes.KEY_REQ);
-                            session.makeBlockDeliveredByType(PacketTypes.SESSION);
-
-                            unbossedPayload = Boss.load(block.payload);
-                            final int sessionKeyHashCode = session.sessionKey.hashCode();
-                            final int sessionRemoteNodeId = session.remoteNodeId;
-                            report(getLabel(), () -> concatReportMessage("sessionKey is ",
-                                    sessionKeyHashCode, " for ", sessionRemoteNodeId));
-
-                            byte[] decrypted = session.sessionKey.etaDecrypt(unbossedPayload.getBinaryOrThrow("data"));
-                            byte[] crc32Remote = unbossedPayload.getBinaryOrThrow("crc32");
-                            byte[] crc32Local = new Crc32().digest(decrypted);
-
-                            if(Arrays.equals(crc32Remote, crc32Local)) {
-                                report(getLabel(), "Crc32 id ok", VerboseLevel.BASE);
-                                if(receiver != null) receiver.accept(decrypted);
-                            } else {
-                                final int sessionKeyHashCodeError = session.sessionKey.hashCode();
-                                final int sessionRemoteNodeIdError = session.remoteNodeId;
-                                report(getLabel(), () -> concatReportMessage("Crc32 Error, sessionKey is ",
-                                        sessionKeyHashCodeError, " for ", sessionRemoteNodeIdError), VerboseLevel.BASE);
-
-                                sendNack(session, block.blockId);
-                                throw new EncryptionError(Errors.BAD_VALUE +
-                                        ": Crc32 Error, decrypted length " + decrypted.length +
-                                        "\n sessionKey is " + session.sessionKey.hashCode() +
-                                        "\n own sessionKey is " + sessionKey.hashCode() +
-                                        "\n string: " + new String(decrypted) +
-                                        "\n remote id: " + session.remoteNodeId +
-                                        "\n reconstructered block id: " + block.blockId);
-                            }
-
-                        }
-                        answerAckOrNack(session, block, receivedDatagram.getAddress(), receivedDatagram.getPort());
-                    } catch (SymmetricKey.AuthenticationFailed e) {
-                        final int sessionKeyHashCodeError = session.sessionKey.hashCode();
-                        final int sessionRemoteNodeIdError = session.remoteNodeId;
-                        report(getLabel(), () -> concatReportMessage("SymmetricKey.AuthenticationFailed, sessionKey is ",
-                                sessionKeyHashCodeError, " for ", sessionRemoteNodeIdError), VerboseLevel.BASE);
-                        sendNack(session, block.blockId);
-                        throw e;
-                    }
+                    obtainDataBlock(block);
                     break;
 
                 // we got ACK - means DATA block we sent has delivered, so remove it
@@ -1250,16 +1274,16 @@ public class UDPAdapter extends DatagramAdapter {
                     ackBlockId = Boss.load(block.payload);
                     report(getLabel(), () -> concatReportMessage("ackBlockId is: ", ackBlockId));
                     if(session != null) {
-                        final int sendingPacketsQueueSize = session.sendingPacketsQueue.size();
+                        final int sendingPacketsQueueSize = session.sendingPackets.size();
                         report(getLabel(), () -> concatReportMessage("num packets was in queue: ",
                                 sendingPacketsQueueSize));
                         session.makeBlockDelivered(ackBlockId);
                         session.removeBlockFromWaitingQueue(ackBlockId);
-                        session.incremetWaitIndexForPacketsFromSendingQueue();
-                        final int sendingPacketsQueueSize2 = session.sendingPacketsQueue.size();
+                        List<Packet> packetsToResend = session.incremetWaitIndexForPacketsFromSendingQueue();
+                        final int sendingPacketsQueueSize2 = session.sendingPackets.size();
                         report(getLabel(), () -> concatReportMessage(" num packets in queue: ",
                                 sendingPacketsQueueSize2));
-                        checkUnsentPackets(session);
+                        checkUnsentPackets(session, packetsToResend);
 
                         if (session.state == Session.SESSION) {
                             session.state = Session.EXCHANGING;
@@ -1302,21 +1326,131 @@ public class UDPAdapter extends DatagramAdapter {
                             block.senderNodeId, " for block id ", ackBlockId, " for packet id ", ackPacketId));
                     session = sessionsById.get(block.senderNodeId);
                     if(session != null) {
-                        final int sendingPacketsQueueSize = session.sendingPacketsQueue.size();
+                        final int sendingPacketsQueueSize = session.sendingPackets.size();
                         report(getLabel(), () -> concatReportMessage("num packets was in queue: ",
                                 sendingPacketsQueueSize));
+                        session.countRoundTrip(ackBlockId, ackPacketId);
                         session.removePacketFromSendingQueue(ackBlockId, ackPacketId);
-                        session.incremetWaitIndexForPacketsFromSendingQueue();
-                        final int sendingPacketsQueueSize2 = session.sendingPacketsQueue.size();
+                        List<Packet> packetsToResend = session.incremetWaitIndexForPacketsFromSendingQueue();
+                        final int sendingPacketsQueueSize2 = session.sendingPackets.size();
                         report(getLabel(), () -> concatReportMessage("num packets in queue: ",
                                 sendingPacketsQueueSize2));
-                        checkUnsentPackets(session);
+                        checkUnsentPackets(session, packetsToResend);
                     }
                     break;
             }
         }
 
 
+        /**
+         * Processing solid {@link Block} with type {@link PacketTypes#DATA}: decrypt data, pass it to the receiver and
+         * answer {@link PacketTypes#ACK} or {@link PacketTypes#NACK}.
+         * @param block is solid {@link Block}
+         * @throws SymmetricKey.AuthenticationFailed if session hasn't valid sessions key
+         * @throws EncryptionError if decode of data is fails
+         * @throws InterruptedException if something went wrong
+         */
+        protected void obtainDataBlock(Block block) throws SymmetricKey.AuthenticationFailed, EncryptionError, InterruptedException {
+            SymmetricKey key = acceptDataBlock(block);
+            if(key != null) {
+                byte[] decrypted;
+                try {
+                    decrypted = decryptDataBlock(block, key);
+                } catch (SymmetricKey.AuthenticationFailed | EncryptionError e) {
+                    answerDataBlock(block, false);
+                    throw e;
+                }
+                dispatchReceived(block.senderNodeId, decrypted);
+                answerDataBlock(block, true);
+            }
+        }
+
+
+        /**
+         * Check the session solid {@link Block} with type {@link PacketTypes#DATA} is got in. If session is established,
+         * marks its handshake blocks as delivered and returns the key to decrypt the block with, otherwise answers
+         * {@link PacketTypes#NACK}.
+         * @param block is solid {@link Block}
+         * @return session key or null if session is not established
+         * @throws InterruptedException if something went wrong
+         */
+        protected SymmetricKey acceptDataBlock(Block block) throws InterruptedException {
+            report(getLabel(), () -> concatReportMessage("got data from ", block.senderNodeId), VerboseLevel.BASE);
+            Session session = sessionsById.get(block.senderNodeId);
+            if(session != null && session.isValid() &&
+                    (session.state == Session.EXCHANGING || session.state == Session.SESSION)) {
+
+                session.makeBlockDeliveredByType(PacketTypes.HELLO);
+                session.makeBlockDeliveredByType(PacketTypes.WELCOME);
+                session.makeBlockDeliveredByType(PacketTypes.KEY_REQ);
+                session.makeBlockDeliveredByType(PacketTypes.SESSION);
+
+                final int sessionKeyHashCode = session.sessionKey.hashCode();
+                final int sessionRemoteNodeId = session.remoteNodeId;
+                report(getLabel(), () -> concatReportMessage("sessionKey is ",
+                        sessionKeyHashCode, " for ", sessionRemoteNodeId));
+                return session.sessionKey;
+            }
+            answerAckOrNack(session, block, block.address, block.port);
+            return null;
+        }
+
+
+        /**
+         * Decrypt data of solid {@link Block} with type {@link PacketTypes#DATA} and check its crc32. Neither reads nor
+         * changes sessions, so could be called out of the listening thread.
+         * @param block is solid {@link Block}
+         * @param key is session key got from {@link #acceptDataBlock(Block)}
+         * @return decrypted data
+         * @throws SymmetricKey.AuthenticationFailed if session hasn't valid sessions key
+         * @throws EncryptionError if decode of data is fails
+         */
+        protected byte[] decryptDataBlock(Block block, SymmetricKey key) throws SymmetricKey.AuthenticationFailed, EncryptionError {
+            Binder unbossedPayload = Boss.load(block.payload);
+            byte[] decrypted = key.etaDecrypt(unbossedPayload.getBinaryOrThrow("data"));
+            byte[] crc32Remote = unbossedPayload.getBinaryOrThrow("crc32");
+            byte[] crc32Local = new Crc32().digest(decrypted);
+
+            if(!Arrays.equals(crc32Remote, crc32Local)) {
+                report(getLabel(), () -> concatReportMessage("Crc32 Error, sessionKey is ",
+                        key.hashCode(), " for ", block.senderNodeId), VerboseLevel.BASE);
+
+                throw new EncryptionError(Errors.BAD_VALUE +
+                        ": Crc32 Error, decrypted length " + decrypted.length +
+                        "\n sessionKey is " + key.hashCode() +
+                        "\n own sessionKey is " + sessionKey.hashCode() +
+                        "\n string: " + new String(decrypted) +
+                        "\n remote id: " + block.senderNodeId +
+                        "\n reconstructered block id: " + block.blockId);
+            }
+            report(getLabel(), "Crc32 id ok", VerboseLevel.BASE);
+            return decrypted;
+        }
+
+
+        /**
+         * Answer to solid {@link Block} with type {@link PacketTypes#DATA}: {@link PacketTypes#ACK} if its data is
+         * passed to the receiver, {@link PacketTypes#NACK} if it can not be decrypted.
+         * @param block is solid {@link Block}
+         * @param received is true if data is passed to the receiver
+         * @throws InterruptedException if something went wrong
+         */
+        protected void answerDataBlock(Block block, boolean received) throws InterruptedException {
+            Session session = sessionsById.get(block.senderNodeId);
+            if(session == null)
+                return;
+            if(received) {
+                sendAck(session, block.blockId);
+            } else {
+                final int sessionKeyHashCodeError = session.sessionKey != null ? session.sessionKey.hashCode() : 0;
+                final int sessionRemoteNodeIdError = session.remoteNodeId;
+                report(getLabel(), () -> concatReportMessage("data is not decrypted, sessionKey is ",
+                        sessionKeyHashCodeError, " for ", sessionRemoteNodeIdError), VerboseLevel.BASE);
+                sendNack(session, block.blockId);
+            }
+        }
+
+
         /**
          * Calls when block got all its packets.
          * @param block to move.
@@ -1415,6 +1549,8 @@ public class UDPAdapter extends DatagramAdapter {
         private byte[] payload;
         // How long packet wait in queue (in got other packets times)
         private int sendWaitIndex = 0;
+        // Session's acks count when packet was added to the sending queue
+        private long sendWaitBase = 0;
 
         private Boolean delivered = false;
 
@@ -1474,6 +1610,10 @@ public class UDPAdapter extends DatagramAdapter {
         private byte[] payload;
         private byte[] crc32;
         private int sendAttempts;
+        // retransmit wheel tick the block is scheduled to
+        private long retransmitTick;
+        // System.nanoTime() of the first attempt
+        private long sentAt;
         private InetAddress address;
         private int port;
 
@@ -1628,6 +1768,10 @@ public class UDPAdapter extends DatagramAdapter {
             return delivered;
         }
 
+        public int getSenderNodeId() {
+            return senderNodeId;
+        }
+
         public ConcurrentHashMap<Integer, DatagramPacket> getDatagrams() {
             return datagrams;
         }
@@ -1658,19 +1802,39 @@ public class UDPAdapter extends DatagramAdapter {
         static public final int SESSION =           6;
 
         /**
-         * Queue where store not sent yet Blocks.
+         * Not sent yet Blocks by blockId, in order of adding.
+         */
+        private final Map<Integer, Block> waitingBlocks = new LinkedHashMap<>();
+
+        /**
+         * Sending Blocks by blockId.
+         */
+        private final ConcurrentHashMap<Integer, Block> sendingBlocks = new ConcurrentHashMap<>();
+
+        /**
+         * Sending Blocks of handshake types (not {@link PacketTypes#DATA}) by blockId, subset of {@link #sendingBlocks}.
+         */
+        private final ConcurrentHashMap<Integer, Block> sendingHandshakeBlocks = new ConcurrentHashMap<>();
+
+        /**
+         * Sending Packets by {@link #packetKey(int, int)}.
          */
-        private BlockingQueue<Block> waitingBlocksQueue = new LinkedBlockingQueue<>();
+        private final ConcurrentHashMap<Long, Packet> sendingPackets = new ConcurrentHashMap<>();
 
         /**
-         * Queue where store sending Blocks.
+         * Sending Packets in order of adding, to find ones that wait too long for {@link PacketTypes#PACKET_ACK}.
+         * Delivered packets are skipped lazily.
          */
-        private BlockingQueue<Block> sendingBlocksQueue = new LinkedBlockingQueue<>();
+        private final ConcurrentLinkedQueue<Packet> packetsWaitOrder = new ConcurrentLinkedQueue<>();
 
         /**
-         * Queue where store sending Packets.
+         * Number of acks got in the session, packet's {@link Packet#sendWaitIndex} is counted from it.
          */
-        private BlockingQueue<Packet> sendingPacketsQueue = new LinkedBlockingQueue<>();
+        private final AtomicLong acksCount = new AtomicLong(0);
+
+        // round trip times histogram, of the registry it was got from
+        private Metrics.Histogram roundTrips;
+        private Metrics roundTripsMetrics;
 
 
         Session(InetAddress address, int port) {
@@ -1727,14 +1891,40 @@ public class UDPAdapter extends DatagramAdapter {
             state = EXCHANGING;
         }
 
+        private long packetKey(int blockId, int packetId) {
+            return ((long) blockId << 32) | (packetId & 0xFFFFFFFFL);
+        }
+
+        public int getWaitingBlocksCount() {
+            synchronized (waitingBlocks) {
+                return waitingBlocks.size();
+            }
+        }
+
+        /**
+         * @return copy of waiting blocks, in order of adding
+         */
+        public List<Block> getWaitingBlocks() {
+            synchronized (waitingBlocks) {
+                return new ArrayList<>(waitingBlocks.values());
+            }
+        }
+
         public void addBlockToWaitingQueue(Block block) throws InterruptedException {
-            if(!waitingBlocksQueue.contains(block))
-                waitingBlocksQueue.put(block);
+            synchronized (waitingBlocks) {
+                waitingBlocks.putIfAbsent(block.blockId, block);
+            }
         }
 
         public void addBlockToSendingQueue(Block block) throws InterruptedException {
-            if(!sendingBlocksQueue.contains(block))
-                sendingBlocksQueue.put(block);
+            Block previous = sendingBlocks.put(block.blockId, block);
+            if (previous != null && previous != block) {
+                // block was rebuilt (for example with new session key), old one is not needed anymore
+                for (Packet p : previous.packets.values())
+                    sendingPackets.remove(packetKey(p.blockId, p.packetId), p);
+            }
+            if (block.type != PacketTypes.DATA)
+                sendingHandshakeBlocks.put(block.blockId, block);
 
             for (Packet p : block.packets.values()) {
                 addPacketToSendingQueue(p);
@@ -1742,26 +1932,27 @@ public class UDPAdapter extends DatagramAdapter {
         }
 
         public void addPacketToSendingQueue(Packet packet) throws InterruptedException {
-            if(!sendingPacketsQueue.contains(packet))
-                sendingPacketsQueue.put(packet);
+            if (!packet.delivered && sendingPackets.putIfAbsent(packetKey(packet.blockId, packet.packetId), packet) == null) {
+                packet.sendWaitBase = acksCount.get();
+                packetsWaitOrder.add(packet);
+            }
         }
 
         public void removeBlockFromWaitingQueue(Block block) throws InterruptedException {
-            if(waitingBlocksQueue.contains(block))
-                waitingBlocksQueue.remove(block);
+            synchronized (waitingBlocks) {
+                waitingBlocks.remove(block.blockId, block);
+            }
         }
 
         public void removeBlockFromWaitingQueue(int blockId) throws InterruptedException {
-            for (Block block : waitingBlocksQueue) {
-                if (block.blockId == blockId) {
-                    removeBlockFromWaitingQueue(block);
-                }
+            synchronized (waitingBlocks) {
+                waitingBlocks.remove(blockId);
             }
         }
 
         public void removeBlockFromSendingQueue(Block block) throws InterruptedException {
-            if(sendingBlocksQueue.contains(block))
-                sendingBlocksQueue.remove(block);
+            if (sendingBlocks.remove(block.blockId, block))
+                sendingHandshakeBlocks.remove(block.blockId, block);
 
             for (Packet p : block.packets.values()) {
                 removePacketFromSendingQueue(p);
@@ -1769,15 +1960,13 @@ public class UDPAdapter extends DatagramAdapter {
         }
 
         public void removePacketFromSendingQueue(Packet packet) throws InterruptedException {
-            if(sendingPacketsQueue.contains(packet))
-                sendingPacketsQueue.remove(packet);
-
-            for (Block sendingBlock : sendingBlocksQueue) {
-                if (sendingBlock.blockId == packet.blockId) {
-                    sendingBlock.markPacketAsDelivered(packet);
-                    report(getLabel(), () -> concatReportMessage("markPacketAsDelivered, packets num: ",
-                            sendingBlock.packets.size(), " diagrams num: ", sendingBlock.datagrams.size()));
-                }
+            sendingPackets.remove(packetKey(packet.blockId, packet.packetId), packet);
+
+            Block sendingBlock = sendingBlocks.get(packet.blockId);
+            if (sendingBlock != null) {
+                sendingBlock.markPacketAsDelivered(packet);
+                report(getLabel(), () -> concatReportMessage("markPacketAsDelivered, packets num: ",
+                        sendingBlock.packets.size(), " diagrams num: ", sendingBlock.datagrams.size()));
             }
             report(getLabel(), () -> concatReportMessage("remove packet from queue, blockId: ",
                     packet.blockId, " packetId: ", packet.packetId, " type: ", packet.type, " sendWaitIndex: ",
@@ -1785,50 +1974,72 @@ public class UDPAdapter extends DatagramAdapter {
 
         }
 
-        public void incremetWaitIndexForPacketsFromSendingQueue() throws InterruptedException {
-//            if(sendingPacketsQueue.peek() != null)
-//                sendingPacketsQueue.peek().sendWaitIndex++;
-//            Object[] sp = sendingPacketsQueue.toArray();
-//            if(sp.length > 0) ((Packet) sp[0]).sendWaitIndex ++;
-//            if(sp.length > 1) ((Packet) sp[1]).sendWaitIndex ++;
-//            if(sp.length > 2) ((Packet) sp[2]).sendWaitIndex ++;
-
-//            if(sp.length > 0) {
-//                report(getLabel(), " incremet peek: " + sendingPacketsQueue.peek().blockId + " " + sendingPacketsQueue.peek().packetId);
-//                report(getLabel(), " incremet array: " + ((Packet) sp[0]).blockId + " " + ((Packet) sp[0]).packetId);
-//            }
+        /**
+         * Count one more ack got in the session and collect sending packets that have waited for their own
+         * {@link PacketTypes#PACKET_ACK} during {@link UDPAdapter#PACKET_MAX_WAIT_INDEX} acks of later ones. Each packet is
+         * returned only once, further retransmits are done by the retransmit timer.
+         *
+         * @return packets to resend
+         */
+        public List<Packet> incremetWaitIndexForPacketsFromSendingQueue() throws InterruptedException {
+            long acks = acksCount.incrementAndGet();
+            List<Packet> packetsToResend = new ArrayList<>();
+            Packet p;
+            while ((p = packetsWaitOrder.peek()) != null) {
+                if (p.delivered || sendingPackets.get(packetKey(p.blockId, p.packetId)) != p) {
+                    packetsWaitOrder.poll();
+                    continue;
+                }
+                p.sendWaitIndex = (int) (acks - p.sendWaitBase);
+                if (p.sendWaitIndex < PACKET_MAX_WAIT_INDEX)
+                    break;
+                packetsWaitOrder.poll();
+                packetsToResend.add(p);
+                final Packet packet = p;
+                report(getLabel(), () -> concatReportMessage("packet, blockId: ", packet.blockId,
+                        " packetId: ", packet.packetId, " type: ", packet.type, " sendWaitIndex: ", packet.sendWaitIndex));
+            }
+            return packetsToResend;
+        }
 
-            for (Packet p : sendingPacketsQueue) {
-                p.sendWaitIndex++;
-                report(getLabel(), () -> concatReportMessage("packet, blockId: ", p.blockId,
-                        " packetId: ", p.packetId, " type: ", p.type, " sendWaitIndex: ", p.sendWaitIndex));
+        /**
+         * Count round trip time of the packet that has got its {@link PacketTypes#PACKET_ACK}, if it was sent once.
+         */
+        public void countRoundTrip(int blockId, int packetId) {
+            Block sendingBlock = sendingBlocks.get(blockId);
+            if (sendingBlock == null || sendingBlock.sendAttempts != 1)
+                return;
+            Packet p = sendingBlock.packets.get(packetId);
+            if (p == null || p.delivered || p.sendWaitIndex >= PACKET_MAX_WAIT_INDEX)
+                return;
+            Metrics m = metrics;
+            if (roundTripsMetrics != m) {
+                roundTrips = m.histogram("udp_rtt_us", "node", String.valueOf(remoteNodeId));
+                roundTripsMetrics = m;
             }
+            roundTrips.recordTime(sendingBlock.sentAt);
         }
 
         public void removePacketFromSendingQueue(int blockId, int packetId) throws InterruptedException {
-            for (Block sendingBlock : sendingBlocksQueue) {
-                if (sendingBlock.blockId == blockId) {
-                    for (Packet p : sendingBlock.packets.values()) {
-                        if(p.packetId == packetId) {
-                            removePacketFromSendingQueue(p);
-                        }
-                    }
-                }
+            Block sendingBlock = sendingBlocks.get(blockId);
+            if (sendingBlock != null) {
+                Packet p = sendingBlock.packets.get(packetId);
+                if (p != null)
+                    removePacketFromSendingQueue(p);
             }
         }
 
         public void makeBlockDelivered(int blockId) throws InterruptedException {
-            for (Block sendingBlock : sendingBlocksQueue) {
-                if (sendingBlock.blockId == blockId) {
-                    removeBlockFromSendingQueue(sendingBlock);
-                    sendingBlock.delivered = true;
-                    report(getLabel(), "block " + sendingBlock.blockId + " delivered");
-                }
+            Block sendingBlock = sendingBlocks.get(blockId);
+            if (sendingBlock != null) {
+                removeBlockFromSendingQueue(sendingBlock);
+                sendingBlock.delivered = true;
+                report(getLabel(), "block " + sendingBlock.blockId + " delivered");
             }
         }
 
         public void moveBlocksFromSendingToWaiting() throws InterruptedException {
-            for (Block sendingBlock : sendingBlocksQueue) {
+            for (Block sendingBlock : sendingBlocks.values()) {
                 sendingBlock.validToSend = false;
                 removeBlockFromSendingQueue(sendingBlock);
                 addBlockToWaitingQueue(sendingBlock);
@@ -1836,15 +2047,13 @@ public class UDPAdapter extends DatagramAdapter {
         }
 
         public void removeDataBlocksFromWaiting() throws InterruptedException {
-            for (Block block : waitingBlocksQueue) {
-                if(block.type == PacketTypes.DATA) {
-                    removeBlockFromWaitingQueue(block);
-                }
+            synchronized (waitingBlocks) {
+                waitingBlocks.values().removeIf(block -> block.type == PacketTypes.DATA);
             }
         }
 
         public void makeBlockDeliveredByType(int type) throws InterruptedException {
-            for (Block sendingBlock : sendingBlocksQueue) {
+            for (Block sendingBlock : sendingHandshakeBlocks.values()) {
                 if (sendingBlock.type == type) {
                     removeBlockFromSendingQueue(sendingBlock);
                     sendingBlock.delivered = true;
@@ -1853,10 +2062,10 @@ public class UDPAdapter extends DatagramAdapter {
         }
 
         public Block getRawDataBlockFromWaitingQueue(int blockId) throws InterruptedException {
-            for (Block block : waitingBlocksQueue) {
-                if (block.blockId == blockId && block.type == PacketTypes.RAW_DATA) {
+            synchronized (waitingBlocks) {
+                Block block = waitingBlocks.get(blockId);
+                if (block != null && block.type == PacketTypes.RAW_DATA)
                     return block;
-                }
             }
 
             return null;
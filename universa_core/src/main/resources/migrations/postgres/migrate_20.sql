@@ -0,0 +1 @@
+create index ix_ledger_created_at on ledger(created_at);
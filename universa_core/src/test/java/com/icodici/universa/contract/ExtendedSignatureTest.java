@@ -19,16 +19,18 @@ import org.junit.Test;
 
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.lessThan;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
-import static org.junit.Assert.assertThat;
+import static org.junit.Assert.*;
 
 public class ExtendedSignatureTest extends TestCase{
 
@@ -84,17 +86,23 @@ public class ExtendedSignatureTest extends TestCase{
         for(int i=0; i<200; i++)
             ExtendedSignature.sign(k, data);
 
-        double t1 = parallelize(single, 1, ()-> {
-            for(int i=0; i<1000; i++)
-                ExtendedSignature.verify(key, signature, data);
-        });
-        System.out.println(t1);
-        double t2 = parallelize(multiple, 4, ()-> {
-            for(int i=0; i<1000; i++)
-                ExtendedSignature.verify(key, signature, data);
-        });
-        System.out.println(t2);
-        assertThat(Math.abs(t1-t2), is(lessThan(0.15)));
+        // measure checks themselves
+        ExtendedSignature.getCache().setMaxSize(0);
+        try {
+            double t1 = parallelize(single, 1, () -> {
+                for (int i = 0; i < 1000; i++)
+                    ExtendedSignature.verify(key, signature, data);
+            });
+            System.out.println(t1);
+            double t2 = parallelize(multiple, 4, () -> {
+                for (int i = 0; i < 1000; i++)
+                    ExtendedSignature.verify(key, signature, data);
+            });
+            System.out.println(t2);
+            assertThat(Math.abs(t1 - t2), is(lessThan(0.15)));
+        } finally {
+            ExtendedSignature.getCache().setMaxSize(SignatureCache.DEFAULT_MAX_SIZE);
+        }
     }
 
     @Test
@@ -143,6 +151,108 @@ public class ExtendedSignatureTest extends TestCase{
         assertEquals(pubKey, es.getPublicKey());
     }
 
+    @Test
+    public void verifiedSignaturesAreCached() throws Exception {
+        SignatureCache cache = ExtendedSignature.getCache();
+        byte[] data = "Hello world".getBytes();
+        PrivateKey k = TestKeys.privateKey(3);
+        byte[] signature = ExtendedSignature.sign(k, data);
+        PublicKey pubKey = k.getPublicKey();
+
+        ExtendedSignature es = ExtendedSignature.verify(pubKey, signature, data);
+        assertNotNull(es);
+        long hits = cache.getHits();
+        assertSame(es, ExtendedSignature.verify(new PublicKey(pubKey.pack()), signature, data));
+        assertEquals(hits + 1, cache.getHits());
+
+        // other data, key or broken signature are checked and are not cached
+        int size = cache.size();
+        assertNull(ExtendedSignature.verify(pubKey, signature, "Hello world!".getBytes()));
+        assertNull(ExtendedSignature.verify(TestKeys.publicKey(1), signature, data));
+        byte[] broken = signature.clone();
+        broken[broken.length - 10] ^= 1;
+        assertNull(ExtendedSignature.verify(pubKey, broken, data));
+        assertNull(ExtendedSignature.verify(pubKey, broken, data));
+        assertEquals(size, cache.size());
+        assertEquals(hits + 1, cache.getHits());
+
+        // least recently used entries are evicted
+        cache.setMaxSize(1);
+        try {
+            ExtendedSignature.verify(pubKey, ExtendedSignature.sign(k, data), data);
+            assertEquals(1, cache.size());
+            assertNotSame(es, ExtendedSignature.verify(pubKey, signature, data));
+        } finally {
+            cache.setMaxSize(SignatureCache.DEFAULT_MAX_SIZE);
+        }
+    }
+
+    @Test
+    public void verifyAll() throws Exception {
+        byte[] data = "Hello batch".getBytes();
+        PrivateKey k1 = TestKeys.privateKey(1);
+        PrivateKey k2 = TestKeys.privateKey(2);
+        byte[] s1 = ExtendedSignature.sign(k1, data);
+        byte[] s2 = ExtendedSignature.sign(k2, data);
+        byte[] broken = s2.clone();
+        broken[broken.length - 10] ^= 1;
+
+        List<PublicKey> keys = Arrays.asList(k1.getPublicKey(), k2.getPublicKey(), k2.getPublicKey(),
+                k1.getPublicKey(), k1.getPublicKey());
+        List<byte[]> signatures = Arrays.asList(s1, s2, broken, s2, s1);
+        List<byte[]> dataList = Arrays.asList(data, data, data, data, "other".getBytes());
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (ForkJoinPool p : new ForkJoinPool[]{null, pool}) {
+                ExtendedSignature.getCache().clear();
+                List<ExtendedSignature> results = ExtendedSignature.verifyAll(keys, signatures, dataList, p);
+                assertEquals(5, results.size());
+                assertEquals(ExtendedSignature.keyId(k1), results.get(0).getKeyId());
+                assertEquals(ExtendedSignature.keyId(k2), results.get(1).getKeyId());
+                assertNull(results.get(2));
+                assertNull(results.get(3));
+                assertNull(results.get(4));
+                // valid ones are cached
+                assertSame(results.get(0), ExtendedSignature.verify(k1.getPublicKey(), s1, data));
+                assertSame(results.get(1), ExtendedSignature.verifyAll(keys.subList(1, 2), signatures.subList(1, 2),
+                        dataList.subList(1, 2), p).get(0));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Ignore("benchmark")
+    @Test
+    public void verifyAllBenchmark() throws Exception {
+        List<PrivateKey> privateKeys = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+            privateKeys.add(TestKeys.privateKey(i));
+        byte[] data = new byte[10000];
+        List<byte[]> signatures = new ArrayList<>();
+        int count = 200;
+        for (int i = 0; i < count; i++)
+            signatures.add(ExtendedSignature.sign(privateKeys.get(i % privateKeys.size()), data));
+        for (int threads : new int[]{0, 1, 2, 4}) {
+            ForkJoinPool pool = threads > 0 ? new ForkJoinPool(threads) : null;
+            for (int round = 0; round < 3; round++) {
+                ExtendedSignature.getCache().clear();
+                // keys are taken from the signatures, as Contract does for its seals
+                List<PublicKey> keys = new ArrayList<>();
+                for (byte[] signature : signatures)
+                    keys.add(ExtendedSignature.extractPublicKey(signature));
+                long t = System.nanoTime();
+                ExtendedSignature.verifyAll(keys, signatures, Collections.nCopies(count, data), pool);
+                long nanos = System.nanoTime() - t;
+                if (round == 2)
+                    System.out.println("threads " + threads + ": " + (count * 1_000_000_000L / nanos) +
+                            " signatures/s");
+            }
+            if (pool != null)
+                pool.shutdown();
+        }
+    }
+
     public static double parallelize(ExecutorService es,int nThreads,Runnable r) throws ExecutionException, InterruptedException {
         long t = System.nanoTime();
         ArrayList<Future<?>> all = new ArrayList<>();
@@ -14,13 +14,20 @@ import com.icodici.universa.Approvable;
 import com.icodici.universa.HashId;
 import com.icodici.universa.node.network.TestKeys;
 import com.icodici.universa.node2.Quantiser;
+import net.sergeych.biserializer.BiDeserializer;
+import net.sergeych.tools.Binder;
+import net.sergeych.tools.Do;
+import net.sergeych.tools.StopWatch;
 import net.sergeych.utils.Base64;
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Semaphore;
@@ -284,6 +291,104 @@ public class TransactionPackTest {
         System.out.println("average " + ratio);
     }
 
+    @Test
+    public void parallelSignatureVerification() throws Exception {
+        List<PrivateKey> keys = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+            keys.add(new PrivateKey(Do.read("./src/test_contracts/keys/" + i + ".private.unikey")));
+
+        Contract contract = new Contract(keys.get(0));
+        contract.addSignerKeys(keys);
+        for (int k = 0; k < 5; k++) {
+            Contract nc = new Contract(keys.get(k % keys.size()));
+            nc.addSignerKeys(keys);
+            nc.seal();
+            contract.addNewItems(nc);
+        }
+        contract.seal();
+        byte[] packed = contract.getPackedTransaction();
+
+        TransactionPack serial = TransactionPack.unpack(packed);
+        Contract.setSignatureVerificationThreads(4);
+        try {
+            TransactionPack parallel = TransactionPack.unpack(packed);
+            assertEquals(serial.getContract().getSealedByKeys(), parallel.getContract().getSealedByKeys());
+            assertEquals(serial.getContract().getQuantiser().getQuantaSum(), parallel.getContract().getQuantiser().getQuantaSum());
+            assertEquals(new HashSet<>(keys.stream().map(PrivateKey::getPublicKey).collect(Collectors.toList())),
+                    parallel.getContract().getSealedByKeys());
+            for (Contract c : parallel.getSubItems().values()) {
+                Contract sc = serial.getSubItem(c.getId());
+                assertEquals(sc.getSealedByKeys(), c.getSealedByKeys());
+                assertEquals(sc.getQuantiser().getQuantaSum(), c.getQuantiser().getQuantaSum());
+                assertEquals(keys.size(), c.getSealedByKeys().size());
+            }
+            assertTrue(parallel.getContract().check());
+
+            // legacy self-contained contract is unpacked with the same pool
+            TransactionPack legacy = TransactionPack.unpack(contract.sealAsV2());
+            assertEquals(serial.getContract().getSealedByKeys(), legacy.getContract().getSealedByKeys());
+        } finally {
+            Contract.setSignatureVerificationThreads(0);
+        }
+    }
+
+    @Test
+    public void malformedPackStopsDeferringVerification() throws Exception {
+        PrivateKey key = new PrivateKey(Do.read("./src/test_contracts/keys/0.private.unikey"));
+        Contract contract = new Contract(key);
+        contract.seal();
+
+        // the root contract is missing, so unpacking fails after the pack started to collect signatures
+        TransactionPack tp = new TransactionPack();
+        try {
+            tp.deserialize(Binder.of("subItems", new ArrayList<>()), new BiDeserializer());
+            fail("malformed pack should not be unpacked");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertFalse(tp.deferSignatureVerification(contract));
+
+        // contracts later unpacked with the pack verify their signatures themselves
+        Contract c = new Contract(contract.getLastSealedBinary(), tp);
+        assertEquals(Collections.singleton(key.getPublicKey()), c.getSealedByKeys());
+    }
+
+    @Ignore("benchmark")
+    @Test
+    public void parallelSignatureVerificationBenchmark() throws Exception {
+        int repetitions = 20;
+        for (int bits : new int[]{2048, 4096}) {
+            List<PrivateKey> keys = new ArrayList<>();
+            for (int i = 0; i < 16; i++)
+                keys.add(new PrivateKey(bits));
+
+            for (int signatures : new int[]{1, 4, 16}) {
+                Contract contract = new Contract(keys.get(0));
+                contract.addSignerKeys(keys.subList(0, signatures));
+                for (int k = 0; k < 3; k++) {
+                    Contract nc = new Contract(keys.get(0));
+                    nc.addSignerKeys(keys.subList(0, signatures));
+                    nc.seal();
+                    contract.addNewItems(nc);
+                }
+                contract.seal();
+                byte[] packed = contract.getPackedTransaction();
+
+                for (int threads : new int[]{0, 4, 8}) {
+                    Contract.setSignatureVerificationThreads(threads);
+                    TransactionPack.unpack(packed);
+                    long t = StopWatch.measure(() -> {
+                        for (int i = 0; i < repetitions; i++)
+                            TransactionPack.unpack(packed);
+                    });
+                    System.out.println("key " + bits + ", signatures " + signatures + " per item, threads " + threads +
+                            ": " + (t / repetitions) + "ms per pack");
+                }
+            }
+        }
+        Contract.setSignatureVerificationThreads(0);
+    }
+
     private class TestContracts {
         private Contract r0;
         private Contract c;
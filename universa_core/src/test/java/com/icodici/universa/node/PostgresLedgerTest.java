@@ -72,6 +72,28 @@ public class PostgresLedgerTest extends TestCase {
         assertSame(r3, r4);
     }
 
+    @Test
+    public void getRecordsAtOnce() throws Exception {
+        HashId id1 = HashId.withDigest(Do.randomNegativeBytes(64));
+        HashId id2 = HashId.createRandom();
+        HashId missing = HashId.createRandom();
+        StateRecord r1 = ledger.findOrCreate(id1);
+        r1.setState(ItemState.APPROVED);
+        r1.save();
+        StateRecord r2 = ledger.findOrCreate(id2);
+        r2.setState(ItemState.DECLINED);
+        r2.save();
+        ledger.markTestRecord(id2);
+
+        Map<HashId, StateRecord> records = ledger.getRecords(Arrays.asList(id1, id2, missing));
+        assertEquals(2, records.size());
+        assertEquals(ItemState.APPROVED, records.get(id1).getState());
+        assertEquals(ItemState.DECLINED, records.get(id2).getState());
+        assertFalse(records.containsKey(missing));
+
+        assertEquals(Collections.singleton(id2), ledger.getTestnetIds(Arrays.asList(id1, id2, missing)));
+    }
+
     //    @Test
     public void ledgerBenchmark() throws Exception {
         ExecutorService es = Executors.newCachedThreadPool();
@@ -188,6 +210,102 @@ public class PostgresLedgerTest extends TestCase {
         assertEquals(ItemState.DECLINED, r2.getState());
     }
 
+    @Test
+    public void saveAll() throws Exception {
+        StateRecord r1 = ledger.findOrCreate(HashId.createRandom());
+        StateRecord r2 = ledger.findOrCreate(HashId.createRandom());
+        StateRecord r3 = new StateRecord(ledger);
+        r3.setId(HashId.createRandom());
+        r1.setState(ItemState.APPROVED);
+        r2.setState(ItemState.REVOKED);
+        r3.setState(ItemState.DECLINED);
+        ledger.saveAll(Arrays.asList(r1, r2, r3));
+
+        assertNotEquals(0, r3.getRecordId());
+        assertEquals(ItemState.APPROVED, ledger.getRecord(r1.getId()).getState());
+        assertEquals(ItemState.REVOKED, ledger.getRecord(r2.getId()).getState());
+        assertEquals(ItemState.DECLINED, ledger.getRecord(r3.getId()).getState());
+
+        // inside the transaction records are saved as part of it
+        Object y = ledger.transaction(() -> {
+            r1.setState(ItemState.DISCARDED);
+            r2.setState(ItemState.DISCARDED);
+            ledger.saveAll(Arrays.asList(r1, r2));
+            throw new Ledger.Rollback();
+        });
+        assertNull(y);
+        r1.reload();
+        r2.reload();
+        assertEquals(ItemState.APPROVED, r1.getState());
+        assertEquals(ItemState.REVOKED, r2.getState());
+    }
+
+    @Test
+    public void groupCommit() throws Exception {
+        ledger.setGroupCommit(true);
+        try {
+            ExecutorService es = Executors.newFixedThreadPool(16);
+            List<StateRecord> records = new ArrayList<>();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                StateRecord r = ledger.findOrCreate(HashId.createRandom());
+                records.add(r);
+                futures.add(es.submit(() -> {
+                    r.setState(ItemState.APPROVED);
+                    r.save();
+                }));
+            }
+            for (Future<?> f : futures)
+                f.get();
+            es.shutdown();
+            for (StateRecord r : records)
+                assertEquals(ItemState.APPROVED, ledger.getRecord(r.getId()).getState());
+        } finally {
+            ledger.setGroupCommit(false);
+        }
+    }
+
+//    @Test
+    public void commitBenchmark() throws Exception {
+        int threads = 32;
+        int perThread = 200;
+        int recordsPerCommit = 8;
+        for (String mode : new String[]{"save", "saveAll", "group commit"}) {
+            ledger.setGroupCommit(mode.equals("group commit"));
+            List<List<StateRecord>> sets = new ArrayList<>();
+            for (int i = 0; i < threads * perThread; i++) {
+                List<StateRecord> set = new ArrayList<>();
+                for (int k = 0; k < recordsPerCommit; k++)
+                    set.add(ledger.findOrCreate(HashId.createRandom()));
+                sets.add(set);
+            }
+            ExecutorService es = Executors.newFixedThreadPool(threads);
+            long t = StopWatch.measure(() -> {
+                List<Future<?>> futures = new ArrayList<>();
+                for (List<StateRecord> set : sets) {
+                    futures.add(es.submit(() -> {
+                        set.forEach(r -> r.setState(ItemState.APPROVED));
+                        if (mode.equals("saveAll"))
+                            ledger.saveAll(set);
+                        else
+                            set.forEach(StateRecord::save);
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    try {
+                        f.get();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            es.shutdown();
+            System.out.println(mode + ": " + (sets.size() * 1000L / Math.max(1, t)) + " commits of " +
+                    recordsPerCommit + " records per second");
+        }
+        ledger.setGroupCommit(false);
+    }
+
     @Test
     public void approve() throws Exception {
         StateRecord r1 = ledger.findOrCreate(HashId.createRandom());
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node;
+
+import com.icodici.universa.HashId;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StateRecordCacheTest {
+
+    // records need a ledger to get record ids, but the cache never calls it
+    private static final Ledger ledger = (Ledger) Proxy.newProxyInstance(Ledger.class.getClassLoader(),
+            new Class[]{Ledger.class}, (proxy, method, args) -> null);
+
+    private static StateRecord record(HashId id, long recordId) {
+        StateRecord r = new StateRecord(ledger);
+        r.setId(id);
+        r.setRecordId(recordId);
+        return r;
+    }
+
+    private static StateRecord record(long recordId) {
+        return record(HashId.createRandom(), recordId);
+    }
+
+    @Test
+    public void dualIndex() throws Exception {
+        StateRecordCache cache = new StateRecordCache(10);
+        StateRecord r = record(1);
+        cache.put(r);
+        assertSame(r, cache.get(r.getId()));
+        assertSame(r, cache.getById(1));
+        assertNull(cache.getById(2));
+
+        // newer instance replaces older one in both indexes
+        StateRecord fresh = record(r.getId(), 1);
+        cache.put(fresh);
+        assertSame(fresh, cache.get(r.getId()));
+        assertSame(fresh, cache.getById(1));
+        assertEquals(1, cache.size());
+
+        cache.remove(fresh);
+        assertNull(cache.get(r.getId()));
+        assertNull(cache.getById(1));
+        assertEquals(0, cache.size());
+        assertEquals(4, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void evictLeastUsed() throws Exception {
+        StateRecordCache cache = new StateRecordCache(10);
+        List<HashId> ids = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            StateRecord r = record(i);
+            ids.add(r.getId());
+            cache.put(r);
+        }
+        for (int i = 0; i < 5; i++)
+            cache.get(ids.get(i));
+        for (int i = 11; i <= 15; i++)
+            cache.put(record(i));
+
+        assertEquals(10, cache.size());
+        assertEquals(5, cache.getEvictions());
+        // used records are still resident
+        System.gc();
+        for (int i = 0; i < 5; i++)
+            assertEquals(i + 1, cache.get(ids.get(i)).getRecordId());
+    }
+
+    @Test
+    public void evictedButUsedRecordIsShared() throws Exception {
+        StateRecordCache cache = new StateRecordCache(1);
+        StateRecord held = record(1);
+        cache.put(held);
+        cache.put(record(2));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getEvictions());
+        // not resident, but still referenced so the same instance is returned
+        assertSame(held, cache.getById(1));
+        assertSame(held, cache.get(held.getId()));
+    }
+
+    @Test
+    public void putRemoveChurnDoesNotGrowClock() throws Exception {
+        StateRecordCache cache = new StateRecordCache(100);
+        List<StateRecord> held = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            StateRecord r = record(i);
+            held.add(r);
+            cache.put(r);
+        }
+        // below max size nothing is evicted, while removed and replaced records are left in the clock
+        for (int i = 0; i < 100000; i++) {
+            StateRecord r = record(1000 + i);
+            cache.put(r);
+            if (i % 2 == 0)
+                cache.remove(r);
+            else
+                cache.put(record(r.getId(), r.getRecordId()));
+            cache.remove(r);
+        }
+        assertEquals(50, cache.size());
+        assertEquals(0, cache.getEvictions());
+        assertTrue(cache.getStats().getIntOrThrow("clock") <= 2 * 100 + 1);
+        for (StateRecord r : held)
+            assertSame(r, cache.get(r.getId()));
+    }
+}
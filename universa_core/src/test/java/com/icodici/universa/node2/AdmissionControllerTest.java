@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class AdmissionControllerTest {
+
+    @Test
+    public void limitAndRelease() throws Exception {
+        AdmissionController admission = new AdmissionController(AdmissionController.MIN_LIMIT, Duration.ofSeconds(5));
+        List<AdmissionController.Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < AdmissionController.MIN_LIMIT; i++)
+            tickets.add(admission.tryAdmit(AdmissionController.Priority.FREE));
+        try {
+            admission.tryAdmit(AdmissionController.Priority.PAID);
+            fail("should be rejected");
+        } catch (AdmissionController.OverloadedException e) {
+            assertTrue(e.getRetryAfter().toMillis() >= 1000);
+        }
+
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        Future<AdmissionController.Ticket> waiting = es.submit(() ->
+                admission.admit(AdmissionController.Priority.FREE));
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+        tickets.get(0).release();
+        // releasing twice does nothing
+        tickets.get(0).release();
+        assertNotNull(waiting.get(5, TimeUnit.SECONDS));
+        assertEquals(AdmissionController.MIN_LIMIT, admission.getInFlight());
+        assertEquals(1, admission.getStats().getIntOrThrow("rejected"));
+        es.shutdown();
+    }
+
+    @Test
+    public void paidGoFirst() throws Exception {
+        AdmissionController admission = new AdmissionController(AdmissionController.MIN_LIMIT, Duration.ofSeconds(5));
+        List<AdmissionController.Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < AdmissionController.MIN_LIMIT; i++)
+            tickets.add(admission.tryAdmit(AdmissionController.Priority.FREE));
+
+        ExecutorService es = Executors.newCachedThreadPool();
+        List<String> order = new CopyOnWriteArrayList<>();
+        Future<?> free = es.submit(() -> {
+            admission.admit(AdmissionController.Priority.FREE);
+            order.add("free");
+            return null;
+        });
+        Thread.sleep(100);
+        Future<?> paid = es.submit(() -> {
+            admission.admit(AdmissionController.Priority.PAID);
+            order.add("paid");
+            return null;
+        });
+        Thread.sleep(100);
+        tickets.get(0).release();
+        paid.get(5, TimeUnit.SECONDS);
+        Thread.sleep(100);
+        assertFalse(free.isDone());
+        tickets.get(1).release();
+        free.get(5, TimeUnit.SECONDS);
+        assertEquals("paid", order.get(0));
+        assertEquals("free", order.get(1));
+        es.shutdown();
+    }
+
+    @Test
+    public void fullQueueDropsLowPriority() throws Exception {
+        AdmissionController admission = new AdmissionController(AdmissionController.MIN_LIMIT, Duration.ofSeconds(5));
+        for (int i = 0; i < AdmissionController.MIN_LIMIT; i++)
+            admission.tryAdmit(AdmissionController.Priority.FREE);
+
+        ExecutorService es = Executors.newCachedThreadPool();
+        List<Future<?>> free = new ArrayList<>();
+        for (int i = 0; i < AdmissionController.MIN_LIMIT; i++)
+            free.add(es.submit(() -> admission.admit(AdmissionController.Priority.FREE)));
+        Thread.sleep(200);
+        assertEquals(AdmissionController.MIN_LIMIT, admission.getStats().getIntOrThrow("queued"));
+
+        es.submit(() -> admission.admit(AdmissionController.Priority.PAID));
+        Thread.sleep(200);
+        int dropped = 0;
+        for (Future<?> f : free) {
+            if (f.isDone()) {
+                dropped++;
+                try {
+                    f.get();
+                    fail("should be rejected");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof AdmissionController.OverloadedException);
+                }
+            }
+        }
+        assertEquals(1, dropped);
+        es.shutdownNow();
+    }
+
+    @Test
+    public void limitFollowsLatency() throws Exception {
+        AdmissionController admission = new AdmissionController(200, Duration.ofSeconds(5));
+        int initial = admission.getLimit();
+
+        // busy node with stable latency: the limit grows
+        List<AdmissionController.Ticket> tickets = new ArrayList<>();
+        for (int round = 0; round < 20; round++) {
+            while (tickets.size() < admission.getLimit())
+                tickets.add(admission.tryAdmit(AdmissionController.Priority.FREE));
+            Thread.sleep(20);
+            for (AdmissionController.Ticket t : tickets)
+                t.release();
+            tickets.clear();
+        }
+        int grown = admission.getLimit();
+        assertTrue("limit " + grown + " should grow from " + initial, grown > initial);
+
+        // node gets much slower: the limit shrinks
+        for (int round = 0; round < 10; round++) {
+            while (tickets.size() < admission.getLimit())
+                tickets.add(admission.tryAdmit(AdmissionController.Priority.FREE));
+            Thread.sleep(200);
+            for (AdmissionController.Ticket t : tickets)
+                t.release();
+            tickets.clear();
+        }
+        assertTrue("limit " + admission.getLimit() + " should shrink from " + grown, admission.getLimit() < grown);
+    }
+}
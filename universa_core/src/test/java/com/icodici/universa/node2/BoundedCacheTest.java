@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BoundedCacheTest {
+
+    @Test
+    public void evictByEntries() throws Exception {
+        BoundedCache<Integer, String> c = new BoundedCache<>(Duration.ofMinutes(1), 10, 1_000_000, String::length);
+        for (int i = 0; i < 10; i++)
+            c.put(i, "value" + i);
+        // used entries go to the protected segment
+        for (int i = 0; i < 5; i++)
+            assertEquals("value" + i, c.get(i));
+
+        // a burst of new entries evicts only not used ones
+        for (int i = 100; i < 120; i++)
+            c.put(i, "value" + i);
+        assertEquals(10, c.size());
+        for (int i = 0; i < 5; i++)
+            assertEquals("value" + i, c.get(i));
+        for (int i = 5; i < 10; i++)
+            assertNull(c.get(i));
+        assertEquals(20, c.getEvictions());
+        assertEquals(10, c.getHits());
+        assertEquals(5, c.getMisses());
+        c.shutdown();
+    }
+
+    @Test
+    public void evictByBytes() throws Exception {
+        BoundedCache<Integer, byte[]> c = new BoundedCache<>(Duration.ofMinutes(1), 1000, 1000, b -> b.length);
+        c.put(1, new byte[400]);
+        c.put(2, new byte[400]);
+        assertEquals(800, c.getBytes());
+        c.put(3, new byte[400]);
+        assertEquals(2, c.size());
+        assertEquals(800, c.getBytes());
+        assertNull(c.get(1));
+        // replacing entry updates its size
+        c.put(2, new byte[100]);
+        assertEquals(500, c.getBytes());
+        assertEquals(100, c.peek(2).length);
+        assertEquals(400, c.peek(3).length);
+        c.remove(3);
+        assertEquals(100, c.getBytes());
+        c.shutdown();
+    }
+
+    @Test
+    public void expiration() throws Exception {
+        BoundedCache<Integer, String> c = new BoundedCache<>(Duration.ofMillis(10), 10, 1000, String::length);
+        c.put(1, "one");
+        c.put(2, "two");
+        assertEquals("one", c.get(1));
+        Thread.sleep(11);
+        // expired entries are not returned even before cleanup
+        assertNull(c.peek(1));
+        assertNull(c.get(1));
+        c.cleanUp();
+        assertEquals(0, c.size());
+        assertEquals(0, c.getBytes());
+        assertEquals(2, c.getExpirations());
+        assertEquals(2, c.getStats().getIntOrThrow("expirations"));
+        c.shutdown();
+    }
+}
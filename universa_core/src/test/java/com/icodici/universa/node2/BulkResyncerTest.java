@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2;
+
+import com.icodici.universa.Approvable;
+import com.icodici.universa.HashId;
+import com.icodici.universa.contract.Parcel;
+import com.icodici.universa.node.ItemState;
+import com.icodici.universa.node.network.TestKeys;
+import com.icodici.universa.node2.network.Network;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class BulkResyncerTest {
+
+    private ScheduledExecutorService executor;
+    private List<NodeInfo> nodes;
+    // states known by other nodes
+    private final Map<NodeInfo, Map<HashId, ItemState>> ledgers = new ConcurrentHashMap<>();
+    private final Random random = new Random(1);
+    private Config config;
+    private ResyncBatcher batcher;
+    private BulkResyncer resyncer;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newScheduledThreadPool(2);
+        nodes = Arrays.asList(
+                new NodeInfo(TestKeys.publicKey(0), 1, "node1", "localhost", 17101, 17102, 17104),
+                new NodeInfo(TestKeys.publicKey(0), 2, "node2", "localhost", 17111, 17112, 17114),
+                new NodeInfo(TestKeys.publicKey(0), 3, "node3", "localhost", 17121, 17122, 17124)
+        );
+        for (NodeInfo node : nodes.subList(1, 3))
+            ledgers.put(node, new ConcurrentHashMap<>());
+
+        config = new Config();
+        config.setPositiveConsensus(2);
+        config.setResyncBreakConsensus(2);
+        config.setResyncTime(Collections.singletonList(100));
+        config.setMaxResyncTime(Duration.ofSeconds(10));
+
+        // other nodes answer at once, some notifications are lost either way
+        Network network = new Network(new NetConfig(nodes)) {
+            @Override
+            public void deliver(NodeInfo toNode, Notification notification) {
+                if (random.nextInt(5) == 0)
+                    return;
+                ItemResyncNotification request = (ItemResyncNotification) notification;
+                Map<HashId, ItemState> ledger = ledgers.get(toNode);
+                HashMap<HashId, ItemState> answer = new HashMap<>();
+                request.getItemsToResync().keySet().forEach(id -> answer.put(id, ledger.getOrDefault(id, ItemState.UNDEFINED)));
+                if (random.nextInt(5) != 0)
+                    resyncer.onAnswer(toNode, answer);
+            }
+
+            @Override
+            public void subscribe(NodeInfo forNode, Consumer<Notification> notificationConsumer) {
+            }
+
+            @Override
+            public Approvable getItem(HashId itemId, NodeInfo node, Duration maxTimeout) {
+                return null;
+            }
+
+            @Override
+            public Parcel getParcel(HashId itemId, NodeInfo node, Duration maxTimeout) {
+                return null;
+            }
+        };
+        batcher = new ResyncBatcher(network, nodes.get(0), executor, Duration.ofMillis(20), 1000);
+        resyncer = new BulkResyncer(network, nodes.get(0), config, executor, batcher);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 20000)
+    public void manyItemsAreResyncedInBatches() throws Exception {
+        ItemState[] states = {ItemState.APPROVED, ItemState.REVOKED, ItemState.DECLINED};
+        Map<HashId, ItemState> expected = new HashMap<>();
+        Map<HashId, ItemState> myStates = new HashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            HashId id = HashId.createRandom();
+            ItemState state = states[i % states.length];
+            expected.put(id, state);
+            ledgers.values().forEach(l -> l.put(id, state));
+            myStates.put(id, ItemState.PENDING);
+        }
+        for (int i = 0; i < 100; i++) {
+            HashId id = HashId.createRandom();
+            expected.put(id, ItemState.UNDEFINED);
+            myStates.put(id, ItemState.UNDEFINED);
+        }
+
+        Map<HashId, BulkResyncer.Outcome> outcomes = resyncer.resync(myStates).get(15, TimeUnit.SECONDS);
+        assertEquals(expected.keySet(), outcomes.keySet());
+        expected.forEach((id, state) -> {
+            BulkResyncer.Outcome o = outcomes.get(id);
+            assertEquals(state, o.getState());
+            if (state.isConsensusFound())
+                assertEquals(new HashSet<>(nodes.subList(1, 3)), o.getNodes());
+        });
+
+        // a few notifications per node and round instead of one per item
+        assertTrue(batcher.getNotificationsCount() < 200);
+        assertEquals(0, (int) resyncer.getStats().getIntOrThrow("pending"));
+        assertEquals(10000, resyncer.getStats().getLongOrThrow("resolved"));
+    }
+
+    @Test(timeout = 20000)
+    public void resyncEndsInMaxTime() throws Exception {
+        config.setMaxResyncTime(Duration.ofMillis(500));
+        // nodes disagree, so no consensus could be found
+        HashId id = HashId.createRandom();
+        ledgers.get(nodes.get(1)).put(id, ItemState.APPROVED);
+        ledgers.get(nodes.get(2)).put(id, ItemState.DECLINED);
+
+        long started = System.nanoTime();
+        Map<HashId, BulkResyncer.Outcome> outcomes = resyncer.resync(Collections.singletonMap(id, ItemState.PENDING))
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(ItemState.UNDEFINED, outcomes.get(id).getState());
+        assertTrue(System.nanoTime() - started >= Duration.ofMillis(500).toNanos());
+        assertEquals(1, resyncer.getStats().getLongOrThrow("unresolved"));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2;
+
+import com.icodici.universa.HashId;
+import com.icodici.universa.node.network.TestKeys;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DownloaderTest {
+
+    private ScheduledExecutorService executor;
+    private List<NodeInfo> nodes;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newScheduledThreadPool(4);
+        nodes = Arrays.asList(
+                new NodeInfo(TestKeys.publicKey(0), 1, "node1", "localhost", 17101, 17102, 17104),
+                new NodeInfo(TestKeys.publicKey(0), 2, "node2", "localhost", 17111, 17112, 17114),
+                new NodeInfo(TestKeys.publicKey(0), 3, "node3", "localhost", 17121, 17122, 17124)
+        );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentDownloadsAreShared() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Downloader<String> downloader = new Downloader<>((id, source) -> {
+            fetches.incrementAndGet();
+            release.await();
+            return "item";
+        }, executor, Duration.ofMinutes(1), 1, Duration.ofMillis(10), 0);
+
+        HashId id = HashId.createRandom();
+        CompletableFuture<String> f1 = downloader.download(id, () -> nodes, () -> true);
+        CompletableFuture<String> f2 = downloader.download(id, () -> nodes, () -> true);
+        release.countDown();
+
+        assertEquals("item", f1.get(5, TimeUnit.SECONDS));
+        assertEquals("item", f2.get(5, TimeUnit.SECONDS));
+        assertEquals(1, fetches.get());
+        assertEquals(1, downloader.getStats().getIntOrThrow("joined"));
+        assertEquals(0, downloader.size());
+    }
+
+    @Test
+    public void slowSourceIsHedged() throws Exception {
+        NodeInfo slow = nodes.get(0);
+        CountDownLatch release = new CountDownLatch(1);
+        Downloader<String> downloader = new Downloader<>((id, source) -> {
+            if (source.equals(slow)) {
+                release.await();
+                return "slow";
+            }
+            return "fast";
+        }, executor, Duration.ofMillis(20), 2, Duration.ofMillis(10), 0);
+
+        // only the slow source is known at first, so it is asked first
+        List<NodeInfo> sources = new CopyOnWriteArrayList<>(Collections.singletonList(slow));
+        CompletableFuture<String> f = downloader.download(HashId.createRandom(), () -> sources, () -> true);
+        sources.add(nodes.get(1));
+
+        assertEquals("fast", f.get(5, TimeUnit.SECONDS));
+        assertEquals(1, downloader.getStats().getIntOrThrow("hedges"));
+        release.countDown();
+    }
+
+    @Test
+    public void failedSourcesAreRetried() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        Downloader<String> downloader = new Downloader<>((id, source) -> {
+            // first round fails everywhere
+            return fetches.incrementAndGet() > nodes.size() ? "item" : null;
+        }, executor, Duration.ofMinutes(1), 1, Duration.ofMillis(10), 0);
+
+        assertEquals("item", downloader.download(HashId.createRandom(), () -> nodes, () -> true)
+                .get(5, TimeUnit.SECONDS));
+        assertEquals(nodes.size() + 1, fetches.get());
+        assertEquals(nodes.size(), downloader.getStats().getIntOrThrow("failures"));
+    }
+
+    @Test
+    public void giveUp() throws Exception {
+        Downloader<String> downloader = new Downloader<>((id, source) -> {
+            throw new Exception("not available");
+        }, executor, Duration.ofMinutes(1), 1, Duration.ofMillis(10), 5);
+
+        // max attempts
+        assertNull(downloader.download(HashId.createRandom(), () -> nodes, () -> true).get(5, TimeUnit.SECONDS));
+        // no sources
+        assertNull(downloader.download(HashId.createRandom(), Collections::emptyList, () -> true)
+                .get(5, TimeUnit.SECONDS));
+        // caller can't continue
+        assertNull(downloader.download(HashId.createRandom(), () -> nodes, () -> false).get(5, TimeUnit.SECONDS));
+        assertEquals(3, downloader.getStats().getIntOrThrow("abandoned"));
+        assertEquals(5, downloader.getStats().getIntOrThrow("fetches"));
+    }
+
+    @Test
+    public void cancelStopsDownload() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        Downloader<String> downloader = new Downloader<>((id, source) -> {
+            started.countDown();
+            Thread.sleep(10000);
+            return "item";
+        }, executor, Duration.ofMinutes(1), 1, Duration.ofMillis(10), 0);
+
+        HashId id = HashId.createRandom();
+        CompletableFuture<String> f1 = downloader.download(id, () -> nodes, () -> true);
+        CompletableFuture<String> f2 = downloader.download(id, () -> nodes, () -> true);
+        started.await();
+        f1.cancel(true);
+        // the other caller still waits
+        assertEquals(1, downloader.size());
+        f2.cancel(true);
+        assertEquals(0, downloader.size());
+        assertEquals(1, downloader.getStats().getIntOrThrow("abandoned"));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2;
+
+import net.sergeych.tools.AsyncEvent;
+import net.sergeych.tools.RunnableWithDynamicPeriod;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class EventSchedulerTest {
+
+    @Test
+    public void delayedTasks() throws Exception {
+        EventScheduler scheduler = new EventScheduler("test", 2);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        long started = System.nanoTime();
+        scheduler.schedule(() -> { order.add(3); done.countDown(); }, 150, TimeUnit.MILLISECONDS);
+        scheduler.schedule(() -> { order.add(1); done.countDown(); }, 0, TimeUnit.MILLISECONDS);
+        ScheduledFuture<Integer> f = scheduler.schedule(() -> { order.add(2); done.countDown(); return 2; },
+                50, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> cancelled = scheduler.schedule(() -> order.add(0), 100, TimeUnit.MILLISECONDS);
+        assertTrue(cancelled.cancel(false));
+
+        assertEquals(2, (int) f.get(5, TimeUnit.SECONDS));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // never runs early
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(150));
+        Thread.sleep(100);
+        assertEquals(Arrays.asList(1, 2, 3), order);
+        assertEquals(0, scheduler.getPendingCount());
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void periodicTasks() throws Exception {
+        EventScheduler scheduler = new EventScheduler("test", 2);
+        AtomicInteger fixedRate = new AtomicInteger();
+        AtomicInteger dynamic = new AtomicInteger();
+        ScheduledFuture<?> f = scheduler.scheduleAtFixedRate(fixedRate::incrementAndGet, 0, 20,
+                TimeUnit.MILLISECONDS);
+        RunnableWithDynamicPeriod r = new RunnableWithDynamicPeriod(dynamic::incrementAndGet,
+                Arrays.asList(20, 40), scheduler);
+        r.run();
+        Thread.sleep(500);
+        f.cancel(false);
+        r.cancel(false);
+        int count = fixedRate.get();
+        assertTrue("fixed rate ran " + count + " times", count >= 15 && count <= 27);
+        assertTrue("dynamic period ran " + dynamic.get() + " times", dynamic.get() >= 8 && dynamic.get() <= 13);
+        Thread.sleep(100);
+        assertEquals(count, fixedRate.get());
+        scheduler.shutdown();
+        try {
+            scheduler.schedule(() -> {}, 1, TimeUnit.MILLISECONDS);
+            fail("should reject tasks after shutdown");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void blockedTasksDoNotStarvePool() throws Exception {
+        EventScheduler scheduler = new EventScheduler("test", 1);
+        AsyncEvent<Integer> event = new AsyncEvent<>();
+        // the only worker waits for the event fired by the next task
+        Future<Integer> waiter = scheduler.submit(() -> event.await());
+        Thread.sleep(50);
+        scheduler.schedule(() -> event.fire(42), 10, TimeUnit.MILLISECONDS);
+        assertEquals(42, (int) waiter.get(5, TimeUnit.SECONDS));
+        scheduler.shutdown();
+    }
+
+    /**
+     * Simulates 10k item processors, each polling with the node's dynamic periods and doing a bit of work on each
+     * pulse, on the old 128 threads pool and on {@link EventScheduler}. Prints pulses done, their lateness, threads
+     * used and CPU time spent by the whole process.
+     */
+    @Ignore("benchmark")
+    @Test
+    public void processorsBenchmark() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            runProcessors("ScheduledThreadPoolExecutor(128)", new ScheduledThreadPoolExecutor(128));
+            runProcessors("EventScheduler", new EventScheduler("bench", 0));
+        }
+    }
+
+    private void runProcessors(String name, ScheduledExecutorService executor) throws Exception {
+        final int processors = 10_000;
+        final long durationMillis = 20_000;
+        List<Integer> periods = Arrays.asList(1000, 1000, 1000, 2000, 4000, 8000, 16000, 32000, 60000);
+
+        AtomicLong pulses = new AtomicLong();
+        AtomicLong latenessNanos = new AtomicLong();
+        AtomicLong maxLatenessNanos = new AtomicLong();
+        long cpuBefore = ((com.sun.management.OperatingSystemMXBean)
+                ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+
+        List<RunnableWithDynamicPeriod> pollers = new ArrayList<>();
+        for (int p = 0; p < processors; p++) {
+            long[] expected = {System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(periods.get(0))};
+            int[] n = {0};
+            RunnableWithDynamicPeriod poller = new RunnableWithDynamicPeriod(() -> {
+                long late = Math.max(0, System.nanoTime() - expected[0]);
+                latenessNanos.addAndGet(late);
+                maxLatenessNanos.accumulateAndGet(late, Math::max);
+                pulses.incrementAndGet();
+                // a bit of work, like sending a notification
+                long x = 0;
+                for (int k = 0; k < 2000; k++)
+                    x += Long.hashCode(x * 31 + k);
+                if (x == 42)
+                    System.out.println(x);
+                n[0]++;
+                expected[0] = System.nanoTime() +
+                        TimeUnit.MILLISECONDS.toNanos(periods.get(Math.min(n[0], periods.size() - 1)));
+            }, periods, executor);
+            executor.execute(poller);
+            pollers.add(poller);
+        }
+        Thread.sleep(durationMillis);
+        int threadsUsed = executor instanceof EventScheduler ?
+                ((EventScheduler) executor).getStats().getIntOrThrow("threads") + 1 :
+                ((ScheduledThreadPoolExecutor) executor).getPoolSize();
+        for (RunnableWithDynamicPeriod poller : pollers)
+            poller.cancel(false);
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        long cpu = ((com.sun.management.OperatingSystemMXBean)
+                ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime() - cpuBefore;
+
+        System.out.println(String.format("%s: %d pulses, avg lateness %.2fms, max lateness %dms, %d threads, " +
+                        "cpu %dms",
+                name, pulses.get(), latenessNanos.get() / 1e6 / Math.max(1, pulses.get()),
+                maxLatenessNanos.get() / 1_000_000, threadsUsed, cpu / 1_000_000));
+        System.gc();
+        Thread.sleep(1000);
+    }
+}
@@ -11,18 +11,22 @@ import com.icodici.universa.HashId;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
-@Ignore("in the sequence  causes SIGSEGV in java machine in sqlite module")
 public class ItemLockTest {
 
     private int count = 0;
 
-    /*
-    Until the error in sqlite finalizers is fixed, call this test separately.
-     */
     @Test
-    @Ignore("in the sequence  causes SIGSEGV in java machine in sqlite module")
     public void lock() throws Exception {
         for( int z=0; z<10; z++ ) {
             HashId id = HashId.createRandom();
@@ -36,18 +40,150 @@ public class ItemLockTest {
             il.synchronize(id, (__) -> count++);
 
             assertEquals(3, count);
-            assertEquals(1, il.size());
-            id = null;
-            for (int i = 0; i < 10; i++) {
-                System.gc();
-                System.runFinalization();
-                if (il.size() == 0)
-                    break;
-                Thread.sleep(100);
-            }
+            // lock is released as soon as nobody holds it, but stays in the table to be held again
             assertEquals(0, il.size());
+            assertEquals(1, il.tableSize());
+        }
+    }
+
+    @Test
+    public void retainedLockIsShared() throws Exception {
+        HashId id = HashId.createRandom();
+        ItemLock il = new ItemLock();
+
+        Object retained = il.synchronize(id, (lock) -> {
+            assertEquals(1, il.size());
+            Object r = il.retain(id);
+            assertSame(lock, r);
+            return r;
+        });
+        assertEquals(1, il.size());
+        assertSame(retained, il.synchronize(id, (lock) -> lock));
+        assertSame(retained, il.synchronize(HashId.withDigest(id.getDigest()), (lock) -> lock));
+
+        il.release(id);
+        assertEquals(0, il.size());
+        // extra release does nothing
+        il.release(id);
+        il.release(id);
+        assertEquals(0, il.size());
+        assertSame(retained, il.synchronize(id, (lock) -> {
+            assertEquals(1, il.size());
+            return lock;
+        }));
+        assertEquals(0, il.size());
+    }
+
+    @Test
+    public void idleLocksAreReclaimed() throws Exception {
+        ItemLock il = new ItemLock();
+        HashId retainedId = HashId.createRandom();
+        Object retained = il.retain(retainedId);
 
+        for (int i = 0; i < ItemLock.RECLAIM_THRESHOLD * 3; i++)
+            il.synchronize(HashId.createRandom(), (__) -> count++);
+        assertTrue(il.tableSize() <= ItemLock.RECLAIM_THRESHOLD + 1);
+        assertEquals(1, il.size());
+
+        // held lock is never reclaimed
+        assertSame(retained, il.synchronize(retainedId, (lock) -> lock));
+        il.release(retainedId);
+        assertEquals(0, il.size());
+    }
+
+    @Test
+    public void exclusiveForTheSameId() throws Exception {
+        HashId id = HashId.createRandom();
+        ParcelLock pl = new ParcelLock();
+        int threadsCount = 8;
+        int iterations = 10000;
+        CountDownLatch done = new CountDownLatch(threadsCount);
+        count = 0;
+        for (int t = 0; t < threadsCount; t++) {
+            new Thread(() -> {
+                try {
+                    for (int i = 0; i < iterations; i++)
+                        pl.synchronize(id, (__) -> count++);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        assertEquals(threadsCount * iterations, count);
+        assertEquals(0, pl.size());
+    }
+
+    @Test(timeout = 20000)
+    public void synchronizeAllHoldsAllLocks() throws Exception {
+        HashId id1 = HashId.createRandom();
+        HashId id2 = HashId.createRandom();
+        ItemLock il = new ItemLock();
+
+        assertEquals(Integer.valueOf(2), il.synchronizeAll(Arrays.asList(id1, id2, id1), () -> {
+            assertEquals(2, il.size());
+            // locks are reentrant for the holder
+            return il.synchronize(id1, (__) -> il.size());
+        }));
+        assertEquals(0, il.size());
+
+        // overlapping sets locked in the opposite order do not deadlock
+        int iterations = 10000;
+        CountDownLatch done = new CountDownLatch(2);
+        count = 0;
+        for (List<HashId> ids : Arrays.asList(Arrays.asList(id1, id2), Arrays.asList(id2, id1))) {
+            new Thread(() -> {
+                try {
+                    for (int i = 0; i < iterations; i++)
+                        il.synchronizeAll(ids, () -> count++);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                done.countDown();
+            }).start();
         }
+        done.await();
+        assertEquals(2 * iterations, count);
+        assertEquals(0, il.size());
+        assertEquals(Integer.valueOf(0), il.synchronizeAll(Collections.emptyList(), il::size));
     }
 
-}
\ No newline at end of file
+    @Ignore("benchmark")
+    @Test
+    public void contentionBenchmark() throws Exception {
+        List<HashId> ids = new ArrayList<>();
+        for (int i = 0; i < 100000; i++)
+            ids.add(HashId.createRandom());
+        int operations = 1_000_000;
+
+        for (int idsCount : new int[]{ids.size(), 16}) {
+            for (int threadsCount : new int[]{1, 2, 4, 8, 16, 32, 64}) {
+                ItemLock il = new ItemLock();
+                int perThread = operations / threadsCount;
+                CountDownLatch start = new CountDownLatch(1);
+                CountDownLatch done = new CountDownLatch(threadsCount);
+                for (int t = 0; t < threadsCount; t++) {
+                    new Thread(() -> {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        long[] counter = new long[1];
+                        try {
+                            start.await();
+                            for (int i = 0; i < perThread; i++)
+                                il.synchronize(ids.get(random.nextInt(idsCount)), (__) -> counter[0]++);
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                        done.countDown();
+                    }).start();
+                }
+                long t = System.nanoTime();
+                start.countDown();
+                done.await();
+                long ms = Math.max(1, (System.nanoTime() - t) / 1_000_000);
+                System.out.println("ids " + idsCount + ", threads " + threadsCount + ": " +
+                        (perThread * threadsCount / ms) + " locks/ms, " + il.size() + " locks left");
+            }
+        }
+    }
+}
@@ -1412,6 +1412,115 @@ public class MainTest {
 
     }
 
+    @Test(timeout = 90000)
+    public void wipedNodeCatchesUpInBatches() throws Exception {
+        PrivateKey issuerKey = new PrivateKey(Do.read("./src/test_contracts/keys/reconfig_key.private.unikey"));
+        TestSpace testSpace = prepareTestSpace(issuerKey);
+        testSpace.nodes.forEach(n -> n.config.getKeysWhiteList().add(issuerKey.getPublicKey()));
+
+        int N = 50;
+        List<HashId> ids = new ArrayList<>();
+        for (int i = 0; i < N; i++) {
+            Contract contract = new Contract(issuerKey);
+            contract.seal();
+            assertEquals(ItemState.APPROVED, testSpace.client.register(contract.getPackedTransaction(), 8000).state);
+            ids.add(contract.getId());
+        }
+
+        //wipe ledger of one of nodes and restart it
+        int wipedNode = testSpace.nodes.size() - 1;
+        testSpace.nodes.get(wipedNode).shutdown();
+        Thread.sleep(2000);
+        clearLedger("jdbc:postgresql://localhost:5432/universa_node_t4");
+        Main wiped = createMain("node4", false);
+        wiped.config.getKeysWhiteList().add(issuerKey.getPublicKey());
+        testSpace.nodes.set(wipedNode, wiped);
+
+        Client wipedClient = new Client(testSpace.myKey, wiped.myInfo, null);
+        for (ItemResult r : wipedClient.getStates(ids).values())
+            assertEquals(ItemState.UNDEFINED, r.state);
+
+        long notificationsWas = wiped.node.getSanitationStats().getLongOrThrow("resyncNotifications");
+        assertEquals(N, wipedClient.resyncItems(ids).size());
+
+        Map<HashId, ItemResult> states;
+        long deadline = System.currentTimeMillis() + 30000;
+        while (true) {
+            states = wipedClient.getStates(ids);
+            if (states.values().stream().allMatch(r -> r.state == ItemState.APPROVED))
+                break;
+            assertTrue("items are not resynced in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+
+        // dates are taken from the nodes that agreed
+        Map<HashId, ItemResult> otherStates = testSpace.client.getStates(ids);
+        for (HashId id : ids) {
+            assertEquals(ItemState.APPROVED, otherStates.get(id).state);
+            assertEquals(otherStates.get(id).expiresAt.toEpochSecond(), states.get(id).expiresAt.toEpochSecond());
+        }
+
+        Binder bulkResync = wiped.node.provideStats().getBinderOrThrow("bulkResync");
+        assertEquals(N, bulkResync.getLongOrThrow("resolved"));
+        assertEquals(0, bulkResync.getIntOrThrow("pending"));
+        // a few notifications per node and round instead of one per item
+        long notifications = wiped.node.getSanitationStats().getLongOrThrow("resyncNotifications") - notificationsWas;
+        assertTrue(notifications > 0 && notifications < N);
+
+        testSpace.nodes.forEach(x -> x.shutdown());
+    }
+
+    @Test
+    public void getStatesTest() throws Exception {
+        PrivateKey issuerKey = new PrivateKey(Do.read("./src/test_contracts/keys/reconfig_key.private.unikey"));
+        TestSpace testSpace = prepareTestSpace(issuerKey);
+        testSpace.nodes.forEach(n -> n.config.getKeysWhiteList().add(issuerKey.getPublicKey()));
+
+        List<HashId> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Contract contract = new Contract(issuerKey);
+            contract.seal();
+            testSpace.client.register(contract.getPackedTransaction(), 1500);
+            ids.add(contract.getId());
+        }
+        HashId unknown = HashId.createRandom();
+        ids.add(1, unknown);
+
+        Map<HashId, ItemResult> states = testSpace.client.getStates(ids);
+        assertEquals(ids, new ArrayList<>(states.keySet()));
+        for (HashId id : ids)
+            assertEquals(id == unknown ? ItemState.UNDEFINED : ItemState.APPROVED, states.get(id).state);
+
+        testSpace.nodes.forEach(x -> x.shutdown());
+    }
+
+    @Test
+    public void waitStatesTest() throws Exception {
+        PrivateKey issuerKey = new PrivateKey(Do.read("./src/test_contracts/keys/reconfig_key.private.unikey"));
+        TestSpace testSpace = prepareTestSpace(issuerKey);
+        testSpace.nodes.forEach(n -> n.config.getKeysWhiteList().add(issuerKey.getPublicKey()));
+
+        List<HashId> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Contract contract = new Contract(issuerKey);
+            contract.seal();
+            testSpace.client.register(contract.getPackedTransaction());
+            ids.add(contract.getId());
+        }
+        Map<HashId, ItemResult> states = testSpace.client.waitStates(ids, 8000);
+        assertEquals(ids, new ArrayList<>(states.keySet()));
+        for (HashId id : ids)
+            assertEquals(ItemState.APPROVED, states.get(id).state);
+
+        // unknown item is waited for up to the timeout
+        long started = System.currentTimeMillis();
+        HashId unknown = HashId.createRandom();
+        assertEquals(ItemState.UNDEFINED, testSpace.client.waitStates(Arrays.asList(unknown), 1000).get(unknown).state);
+        assertTrue(System.currentTimeMillis() - started >= 1000);
+
+        testSpace.nodes.forEach(x -> x.shutdown());
+    }
+
     @Test
     public void verboseLevelTest() throws Exception {
         PrivateKey issuerKey = new PrivateKey(Do.read("./src/test_contracts/keys/reconfig_key.private.unikey"));
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2;
+
+import net.sergeych.tools.Binder;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Test
+    public void histogramBuckets() throws Exception {
+        long previous = -1;
+        for (int bucket = 0; bucket < 600; bucket++) {
+            long highest = Metrics.Histogram.highestValueIn(bucket);
+            assertTrue(highest > previous);
+            assertEquals(bucket, Metrics.Histogram.bucketOf(highest));
+            assertEquals(bucket, Metrics.Histogram.bucketOf(previous + 1));
+            // not wider than 1/16 of values
+            assertTrue(highest - previous <= Math.max(1, highest / 16 + 1));
+            previous = highest;
+        }
+    }
+
+    @Test
+    public void histogramQuantiles() throws Exception {
+        Metrics metrics = new Metrics();
+        Metrics.Histogram h = metrics.histogram("test_us");
+        assertEquals(0, h.getValueAt(0.5));
+        for (int i = 1; i <= 10000; i++)
+            h.record(i);
+        assertSame(h, metrics.histogram("test_us"));
+        assertEquals(10000, h.getCount());
+        assertEquals(5000, h.getValueAt(0.5), 5000 / 16);
+        assertEquals(9900, h.getValueAt(0.99), 9900 / 16);
+        assertEquals(10000, h.getValueAt(1));
+        Binder stats = h.getStats();
+        assertEquals(5000, stats.getLongOrThrow("mean"));
+        assertEquals(10000, stats.getLongOrThrow("max"));
+    }
+
+    @Test
+    public void concurrentUpdates() throws Exception {
+        Metrics metrics = new Metrics();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    metrics.counter("test_count").inc();
+                    metrics.histogram("test_us", "node", "1").record(i);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(40000, metrics.counter("test_count").get());
+        assertEquals(40000, metrics.histogram("test_us", "node", "1").getCount());
+        assertEquals(0, metrics.histogram("test_us", "node", "2").getCount());
+    }
+
+    @Test
+    public void export() throws Exception {
+        Metrics metrics = new Metrics();
+        AtomicInteger queue = new AtomicInteger(7);
+        metrics.counter("sent_count", "node", "2").add(3);
+        metrics.counter("sent_count", "node", "1").add(5);
+        metrics.counter("errors_total").inc();
+        metrics.gauge("queue", queue::get);
+        metrics.histogram("rtt_us", "node", "1").record(100);
+
+        String text = metrics.toText();
+        assertEquals(1, text.split("# TYPE universa_sent_count_total counter").length - 1);
+        assertTrue(text.contains("universa_sent_count_total{node=\"1\"} 5\n"));
+        assertTrue(text.contains("universa_sent_count_total{node=\"2\"} 3\n"));
+        assertTrue(text.contains("# TYPE universa_errors_total counter\nuniversa_errors_total 1\n"));
+        assertTrue(text.contains("# TYPE universa_queue gauge\nuniversa_queue 7\n"));
+        assertTrue(text.contains("universa_rtt_us{node=\"1\",quantile=\"0.5\"} 100\n"));
+        assertTrue(text.contains("universa_rtt_us_count{node=\"1\"} 1\n"));
+
+        queue.set(8);
+        Binder stats = metrics.getStats();
+        assertEquals(8, stats.getBinderOrThrow("gauges").getIntOrThrow("queue"));
+        assertEquals(5, stats.getBinderOrThrow("counters").getLongOrThrow("sent_count{node=\"1\"}"));
+        assertEquals(1, stats.getBinderOrThrow("histograms").getBinderOrThrow("rtt_us{node=\"1\"}")
+                .getLongOrThrow("count"));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2;
+
+import com.icodici.universa.node.ItemState;
+import com.icodici.universa.node.Ledger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class NodeStatsTest {
+
+    private Map<ItemState, Integer> nextInterval;
+    private Map<Integer, Integer> storedPayments;
+    private AtomicInteger paymentQueries;
+    private Ledger ledger;
+    private Config config;
+
+    @Before
+    public void setUp() throws Exception {
+        nextInterval = new HashMap<>();
+        storedPayments = new HashMap<>();
+        paymentQueries = new AtomicInteger();
+        // only the methods used by NodeStats
+        ledger = (Ledger) Proxy.newProxyInstance(Ledger.class.getClassLoader(), new Class[]{Ledger.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getLedgerSize":
+                            if (args[0] == null)
+                                return new HashMap<>(counts(ItemState.APPROVED, 100, ItemState.DECLINED, 10));
+                            return new HashMap<>(nextInterval);
+                        case "getPayments":
+                            paymentQueries.incrementAndGet();
+                            return new HashMap<>(storedPayments);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        config = new Config();
+        config.setStatsIntervalSmall(Duration.ofSeconds(10));
+        config.setStatsIntervalBig(Duration.ofSeconds(30));
+    }
+
+    private static Map<ItemState, Integer> counts(ItemState s1, int c1, ItemState s2, int c2) {
+        Map<ItemState, Integer> m = new HashMap<>();
+        m.put(s1, c1);
+        m.put(s2, c2);
+        return m;
+    }
+
+    @Test
+    public void approvedAreCountedInRing() throws Exception {
+        NodeStats stats = new NodeStats();
+        stats.init(ledger, config);
+
+        int[] approved = {5, 7, 1, 3, 0};
+        int[] expectedBig = {5, 12, 13, 11, 4};
+        for (int i = 0; i < approved.length; i++) {
+            nextInterval.clear();
+            nextInterval.put(ItemState.APPROVED, approved[i]);
+            nextInterval.put(ItemState.DECLINED, 1);
+            assertTrue(stats.collect(ledger, config));
+            assertEquals(approved[i], stats.smallIntervalApproved);
+            assertEquals(expectedBig[i], stats.bigIntervalApproved);
+        }
+        assertEquals(16, stats.uptimeApproved);
+        assertEquals(116, (int) stats.ledgerSize.get(ItemState.APPROVED));
+        assertEquals(15, (int) stats.ledgerSize.get(ItemState.DECLINED));
+
+        // changed intervals reset the stats
+        config.setStatsIntervalBig(Duration.ofSeconds(60));
+        assertFalse(stats.collect(ledger, config));
+        assertEquals(0, stats.bigIntervalApproved);
+    }
+
+    @Test
+    public void paymentsAreLoadedOnceAndAdded() throws Exception {
+        ZonedDateTime now = ZonedDateTime.now();
+        ZonedDateTime today = now.truncatedTo(ChronoUnit.DAYS);
+        ZonedDateTime firstDayOfMonth = today.minusDays(now.getDayOfMonth() - 1);
+        storedPayments.put((int) firstDayOfMonth.minusMonths(1).toEpochSecond(), 50);
+        storedPayments.put((int) today.toEpochSecond(), 20);
+
+        NodeStats stats = new NodeStats();
+        stats.init(ledger, config);
+        assertEquals(50, stats.lastMonthPaidAmount);
+        assertEquals(20, stats.thisMonthPaidAmount);
+        assertEquals(20, stats.todayPaidAmount);
+
+        stats.addPayment(5, now);
+        stats.addPayment(3, now.minusDays(1));
+        stats.collect(ledger, config);
+        assertEquals(25, stats.todayPaidAmount);
+        assertEquals(3, stats.yesterdayPaidAmount);
+        assertEquals(50 + (now.getDayOfMonth() == 1 ? 3 : 0), stats.lastMonthPaidAmount);
+        assertEquals(28 - (now.getDayOfMonth() == 1 ? 3 : 0), stats.thisMonthPaidAmount);
+        assertEquals(1, paymentQueries.get());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2;
+
+import com.icodici.universa.Approvable;
+import com.icodici.universa.HashId;
+import com.icodici.universa.contract.Parcel;
+import com.icodici.universa.node.ItemState;
+import com.icodici.universa.node.network.TestKeys;
+import com.icodici.universa.node2.network.Network;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class ResyncBatcherTest {
+
+    private ScheduledExecutorService executor;
+    private List<NodeInfo> nodes;
+    private final Map<NodeInfo, List<ItemResyncNotification>> delivered = new ConcurrentHashMap<>();
+    private Network network;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newScheduledThreadPool(2);
+        nodes = Arrays.asList(
+                new NodeInfo(TestKeys.publicKey(0), 1, "node1", "localhost", 17101, 17102, 17104),
+                new NodeInfo(TestKeys.publicKey(0), 2, "node2", "localhost", 17111, 17112, 17114),
+                new NodeInfo(TestKeys.publicKey(0), 3, "node3", "localhost", 17121, 17122, 17124)
+        );
+        network = new Network(new NetConfig(nodes)) {
+            @Override
+            public void deliver(NodeInfo toNode, Notification notification) {
+                delivered.computeIfAbsent(toNode, k -> new CopyOnWriteArrayList<>())
+                        .add((ItemResyncNotification) notification);
+            }
+
+            @Override
+            public void subscribe(NodeInfo forNode, Consumer<Notification> notificationConsumer) {
+            }
+
+            @Override
+            public Approvable getItem(HashId itemId, NodeInfo node, Duration maxTimeout) {
+                return null;
+            }
+
+            @Override
+            public Parcel getParcel(HashId itemId, NodeInfo node, Duration maxTimeout) {
+                return null;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void requestsAreBatchedPerNode() throws Exception {
+        ResyncBatcher batcher = new ResyncBatcher(network, nodes.get(0), executor, Duration.ofMillis(50), 100);
+        Set<HashId> ids = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            HashId id = HashId.createRandom();
+            ids.add(id);
+            batcher.add(nodes.get(1), id, ItemState.PENDING);
+            batcher.add(nodes.get(2), id, ItemState.PENDING);
+        }
+        assertTrue(delivered.isEmpty());
+        Thread.sleep(300);
+
+        for (NodeInfo node : nodes.subList(1, 3)) {
+            assertEquals(1, delivered.get(node).size());
+            ItemResyncNotification n = delivered.get(node).get(0);
+            assertEquals(ids, n.getItemsToResync().keySet());
+            assertTrue(ids.contains(n.getItemId()));
+            assertTrue(n.answerIsRequested());
+        }
+        assertEquals(20, batcher.getRequestsCount());
+        assertEquals(2, batcher.getNotificationsCount());
+    }
+
+    @Test
+    public void fullBatchIsSentAtOnce() throws Exception {
+        ResyncBatcher batcher = new ResyncBatcher(network, nodes.get(0), executor, Duration.ofMinutes(1), 4);
+        for (int i = 0; i < 10; i++)
+            batcher.add(nodes.get(1), HashId.createRandom(), ItemState.PENDING);
+        assertEquals(2, delivered.get(nodes.get(1)).size());
+        assertEquals(4, delivered.get(nodes.get(1)).get(1).getItemsToResync().size());
+
+        batcher.flush();
+        assertEquals(3, delivered.get(nodes.get(1)).size());
+        assertEquals(2, delivered.get(nodes.get(1)).get(2).getItemsToResync().size());
+        batcher.flush();
+        assertEquals(3, batcher.getNotificationsCount());
+    }
+}
@@ -14,7 +14,13 @@ import net.sergeych.tools.Binder;
 import net.sergeych.tools.BufferedLogger;
 import org.junit.Test;
 
-import static org.junit.Assert.assertEquals;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
 
 public class BasicHttpServerTest extends TestCase {
 
@@ -50,6 +56,40 @@ public class BasicHttpServerTest extends TestCase {
         s.shutdown();
     }
 
+    @Test
+    public void pipelinedCommands() throws Exception {
+        PrivateKey nodeKey = TestKeys.privateKey(1);
+        PrivateKey clientKey = TestKeys.privateKey(2);
+        BasicHttpServer s = new BasicHttpServer(nodeKey, 15600, 32, log);
+        s.addSecureEndpoint("echo", (params, session) -> {
+            Thread.sleep(10);
+            if (params.getIntOrThrow("n") % 10 == 0)
+                throw new IllegalArgumentException("bad n");
+            return Binder.of("n", params.getIntOrThrow("n"));
+        });
+        BasicHttpClient c = new BasicHttpClient("http://localhost:15600");
+        c.start(clientKey, nodeKey.getPublicKey(), null);
+
+        List<CompletableFuture<Binder>> answers = new ArrayList<>();
+        for (int i = 1; i <= 200; i++)
+            answers.add(c.commandAsync("echo", "n", i));
+        for (int i = 1; i <= 200; i++) {
+            CompletableFuture<Binder> answer = answers.get(i - 1);
+            if (i % 10 == 0) {
+                try {
+                    answer.get(10, TimeUnit.SECONDS);
+                    fail("should fail");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof CommandFailedException);
+                }
+            } else
+                assertEquals(i, answer.get(10, TimeUnit.SECONDS).getIntOrThrow("n"));
+        }
+        // sequential commands still work in the same session
+        assertEquals("spong", c.command("sping").getStringOrThrow("sping"));
+        s.shutdown();
+    }
+
     @Test
     public void testError() throws Exception {
         PrivateKey nodeKey = TestKeys.privateKey(1);
@@ -60,4 +100,28 @@ public class BasicHttpServerTest extends TestCase {
         assertThrows(CommandFailedException.class, ()->c.command("test_error"));
     }
 
+    @Test
+    public void unknownCommandIsRecognized() throws Exception {
+        PrivateKey nodeKey = TestKeys.privateKey(1);
+        PrivateKey clientKey = TestKeys.privateKey(2);
+        BasicHttpServer s = new BasicHttpServer(nodeKey, 15600, 32, log);
+        BasicHttpClient c = new BasicHttpClient("http://localhost:15600");
+        c.start(clientKey, nodeKey.getPublicKey(), null);
+        try {
+            c.command("noSuchCommand");
+            fail("should fail");
+        } catch (CommandFailedException e) {
+            assertTrue(Client.isUnknownCommand(e));
+            // as wrapped by the client
+            assertTrue(Client.isUnknownCommand(new ClientError(e)));
+        }
+        try {
+            c.command("test_error");
+            fail("should fail");
+        } catch (CommandFailedException e) {
+            assertFalse(Client.isUnknownCommand(new ClientError(e)));
+        }
+        s.shutdown();
+    }
+
 }
\ No newline at end of file
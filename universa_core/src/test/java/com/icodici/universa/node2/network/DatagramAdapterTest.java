@@ -16,11 +16,16 @@ import net.sergeych.tools.Do;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertArrayEquals;
@@ -1359,4 +1364,107 @@ public class DatagramAdapterTest {
         d2.shutdown();
         d3.shutdown();
     }
-}
\ No newline at end of file
+
+
+    @Test
+    public void sendAndReceiveNio() throws Exception {
+
+        NodeInfo node1 = new NodeInfo(TestKeys.publicKey(0),10, "test_node_10", "localhost", 16201, 16202, 16301);
+        NodeInfo node2 = new NodeInfo(TestKeys.publicKey(1),11, "test_node_11", "localhost", 16203, 16204, 16302);
+        NodeInfo node3 = new NodeInfo(TestKeys.publicKey(2),12, "test_node_12", "localhost", 16204, 16205, 16303);
+
+        List<NodeInfo> nodes = new ArrayList<>();
+        nodes.add(node1);
+        nodes.add(node2);
+        nodes.add(node3);
+
+        NetConfig nc = new NetConfig(nodes);
+
+        // nio adapters talk to each other and to the socket one
+        DatagramAdapter d1 = new NioUDPAdapter(TestKeys.privateKey(0), new SymmetricKey(), node1, nc, 2);
+        DatagramAdapter d2 = new UDPAdapter(TestKeys.privateKey(1), new SymmetricKey(), node2, nc);
+        DatagramAdapter d3 = new NioUDPAdapter(TestKeys.privateKey(2), new SymmetricKey(), node3, nc, 2);
+
+        byte[] slowPayload = "slow data".getBytes();
+        byte[] bigPayload = Do.randomBytes(1024 * 10);
+
+        // receiver of d3 stalls on data from d1, that should not stop data from d2
+        CountDownLatch slowReceiverLatch = new CountDownLatch(1);
+        BlockingQueue<byte[]> receivedFor3 = new LinkedBlockingQueue<>();
+        d3.receive(d -> {
+            try {
+                if (Arrays.equals(d, slowPayload))
+                    slowReceiverLatch.await();
+                receivedFor3.put(d);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        });
+        BlockingQueue<byte[]> receivedFor2 = new LinkedBlockingQueue<>();
+        d2.receive(d -> receivedFor2.add(d));
+
+        d1.send(node3, slowPayload);
+        d2.send(node3, bigPayload);
+        d1.send(node2, bigPayload);
+
+        assertArrayEquals(bigPayload, receivedFor3.poll(10, TimeUnit.SECONDS));
+        assertArrayEquals(bigPayload, receivedFor2.poll(10, TimeUnit.SECONDS));
+        assertEquals(0, receivedFor3.size());
+
+        slowReceiverLatch.countDown();
+        assertArrayEquals(slowPayload, receivedFor3.poll(10, TimeUnit.SECONDS));
+
+        d1.shutdown();
+        d2.shutdown();
+        d3.shutdown();
+    }
+
+//    @Test
+    public void loopbackThroughputBenchmark() throws Exception {
+
+        NodeInfo node1 = new NodeInfo(TestKeys.publicKey(0),10, "test_node_10", "localhost", 16201, 16202, 16301);
+        NodeInfo node2 = new NodeInfo(TestKeys.publicKey(1),11, "test_node_11", "localhost", 16203, 16204, 16302);
+
+        List<NodeInfo> nodes = new ArrayList<>();
+        nodes.add(node1);
+        nodes.add(node2);
+
+        NetConfig nc = new NetConfig(nodes);
+
+        for (boolean nio : asList(false, true)) {
+            DatagramAdapter d1 = nio ?
+                    new NioUDPAdapter(TestKeys.privateKey(0), new SymmetricKey(), node1, nc) :
+                    new UDPAdapter(TestKeys.privateKey(0), new SymmetricKey(), node1, nc);
+            DatagramAdapter d2 = nio ?
+                    new NioUDPAdapter(TestKeys.privateKey(1), new SymmetricKey(), node2, nc) :
+                    new UDPAdapter(TestKeys.privateKey(1), new SymmetricKey(), node2, nc);
+
+            AtomicInteger received = new AtomicInteger(0);
+            d2.receive(d -> received.incrementAndGet());
+
+            // warm up and establish the session
+            d1.send(node2, "warm up".getBytes());
+            while (received.get() < 1)
+                Thread.sleep(10);
+
+            for (int payloadSize : asList(200, 2000)) {
+                for (int blocks : asList(1000, 5000)) {
+                    byte[] payload = Do.randomBytes(payloadSize);
+                    received.set(0);
+                    long start = System.nanoTime();
+                    for (int i = 0; i < blocks; i++)
+                        d1.send(node2, payload);
+                    while (received.get() < blocks && System.nanoTime() - start < 120_000_000_000L)
+                        Thread.sleep(1);
+                    long millis = (System.nanoTime() - start) / 1_000_000;
+                    System.out.println(d1.getClass().getSimpleName() + ", payload " + payloadSize + " bytes, " +
+                            received.get() + " of " + blocks + " blocks in " + millis + " ms: " +
+                            (received.get() * 1000L / Math.max(1, millis)) + " blocks/s");
+                }
+            }
+
+            d1.shutdown();
+            d2.shutdown();
+        }
+    }
+}
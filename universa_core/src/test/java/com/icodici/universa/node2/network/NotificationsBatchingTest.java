@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2.network;
+
+import com.icodici.crypto.SymmetricKey;
+import com.icodici.universa.HashId;
+import com.icodici.universa.node.ItemResult;
+import com.icodici.universa.node.network.TestKeys;
+import com.icodici.universa.node2.ItemNotification;
+import com.icodici.universa.node2.NetConfig;
+import com.icodici.universa.node2.NodeInfo;
+import com.icodici.universa.node2.Notification;
+import net.sergeych.boss.Boss;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationsBatchingTest {
+
+    /**
+     * Block sent by the network: destination and ids of the packed notifications in order.
+     */
+    private static class SentBlock {
+        private final NodeInfo destination;
+        private final List<HashId> itemIds = new ArrayList<>();
+
+        private SentBlock(NodeInfo destination) {
+            this.destination = destination;
+        }
+    }
+
+    /**
+     * Adapter that records blocks instead of sending them.
+     */
+    private static class RecordingAdapter extends UDPAdapter {
+        private final List<SentBlock> sent = Collections.synchronizedList(new ArrayList<>());
+
+        private RecordingAdapter(NodeInfo myInfo, NetConfig netConfig) throws IOException {
+            super(TestKeys.privateKey(0), new SymmetricKey(), myInfo, netConfig);
+        }
+
+        @Override
+        public synchronized void send(NodeInfo destination, byte[] payload) {
+            try {
+                Boss.Reader r = new Boss.Reader(payload);
+                assertEquals(1, r.readInt());
+                NodeInfo from = netConfig.getInfo(r.readInt());
+                int count = r.readInt();
+                SentBlock block = new SentBlock(destination);
+                for (int i = 0; i < count; i++)
+                    block.itemIds.add(((ItemNotification) Notification.read(from, r)).getItemId());
+                sent.add(block);
+            } catch (Exception e) {
+                throw new RuntimeException("failed to decode sent block", e);
+            }
+        }
+    }
+
+    private NodeInfo node1;
+    private NodeInfo node2;
+    private NodeInfo node3;
+    private NetworkV2 network;
+    private RecordingAdapter adapter;
+
+    @Before
+    public void setUp() throws Exception {
+        node1 = new NodeInfo(TestKeys.publicKey(0), 1, "node1", "localhost", 16401, 16402, 16403);
+        node2 = new NodeInfo(TestKeys.publicKey(1), 2, "node2", "localhost", 16411, 16412, 16413);
+        node3 = new NodeInfo(TestKeys.publicKey(2), 3, "node3", "localhost", 16421, 16422, 16423);
+        NetConfig netConfig = new NetConfig(Arrays.asList(node1, node2, node3));
+        network = new NetworkV2(netConfig, node1, TestKeys.privateKey(0)) {
+            @Override
+            protected UDPAdapter createUDPAdapter() throws IOException {
+                return new RecordingAdapter(node1, netConfig);
+            }
+        };
+        adapter = (RecordingAdapter) network.getUDPAdapter();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        network.shutdown();
+    }
+
+    private List<HashId> deliver(NodeInfo toNode, int count) {
+        List<HashId> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            HashId id = HashId.createRandom();
+            ids.add(id);
+            network.deliver(toNode, new ItemNotification(node1, id, ItemResult.UNDEFINED, false));
+        }
+        return ids;
+    }
+
+    private void waitForBlocks(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (adapter.sent.size() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(count, adapter.sent.size());
+    }
+
+    @Test
+    public void withoutBatchingEachNotificationIsSentAtOnce() throws Exception {
+        List<HashId> ids = deliver(node2, 3);
+        assertEquals(3, adapter.sent.size());
+        for (int i = 0; i < 3; i++)
+            assertEquals(Collections.singletonList(ids.get(i)), adapter.sent.get(i).itemIds);
+    }
+
+    @Test(timeout = 10000)
+    public void notificationsToTheSameNodeAreSentOnWindowEnd() throws Exception {
+        network.setNotificationsBatching(Duration.ofMillis(300), 100);
+        long started = System.nanoTime();
+        List<HashId> to2 = deliver(node2, 5);
+        List<HashId> to3 = deliver(node3, 2);
+        assertEquals(0, adapter.sent.size());
+
+        waitForBlocks(2);
+        assertTrue(System.nanoTime() - started >= Duration.ofMillis(300).toNanos());
+        for (SentBlock block : adapter.sent)
+            assertEquals(block.destination == node2 ? to2 : to3, block.itemIds);
+
+        // nothing is left to send
+        Thread.sleep(400);
+        assertEquals(2, adapter.sent.size());
+    }
+
+    @Test
+    public void fullBatchIsSentWithoutWaiting() throws Exception {
+        network.setNotificationsBatching(Duration.ofSeconds(100), 3);
+        List<HashId> ids = deliver(node2, 7);
+        assertEquals(2, adapter.sent.size());
+        assertEquals(ids.subList(0, 3), adapter.sent.get(0).itemIds);
+        assertEquals(ids.subList(3, 6), adapter.sent.get(1).itemIds);
+
+        network.flushOutboundQueues();
+        assertEquals(3, adapter.sent.size());
+        assertEquals(ids.subList(6, 7), adapter.sent.get(2).itemIds);
+    }
+
+    @Test
+    public void waitingNotificationsAreSentOnShutdown() throws Exception {
+        network.setNotificationsBatching(Duration.ofSeconds(100), 100);
+        List<HashId> to2 = deliver(node2, 4);
+        List<HashId> to3 = deliver(node3, 1);
+        assertEquals(0, adapter.sent.size());
+
+        network.shutdown();
+        assertEquals(2, adapter.sent.size());
+        for (SentBlock block : adapter.sent)
+            assertEquals(block.destination == node2 ? to2 : to3, block.itemIds);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2018, iCodici S.n.C, All Rights Reserved
+ */
+
+package com.icodici.universa.node2.network;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+
+    @Test
+    public void itemsAreDueAtTheirTick() throws Exception {
+        TimerWheel<String> wheel = new TimerWheel<>(Duration.ofMillis(50), 4);
+
+        assertEquals(2, wheel.schedule("a", Duration.ofMillis(100)));
+        assertEquals(2, wheel.schedule("b", Duration.ofMillis(70)));
+        assertEquals(1, wheel.schedule("c", Duration.ZERO));
+        // longer than the wheel, needs an extra round
+        assertEquals(6, wheel.schedule("d", Duration.ofMillis(300)));
+
+        assertEquals(asList("c"), wheel.advance());
+        assertEquals(asList("a", "b"), wheel.advance());
+        for (int i = 3; i < 6; i++)
+            assertTrue(wheel.advance().isEmpty());
+        List<String> due = wheel.advance();
+        assertEquals(6, wheel.getCurrentTick());
+        assertEquals(asList("d"), due);
+        for (int i = 0; i < 8; i++)
+            assertTrue(wheel.advance().isEmpty());
+    }
+
+    @Test
+    public void scheduleFromTheCurrentTick() throws Exception {
+        TimerWheel<Integer> wheel = new TimerWheel<>(Duration.ofMillis(10), 8);
+        for (int i = 0; i < 5; i++)
+            wheel.advance();
+        assertEquals(8, wheel.schedule(1, Duration.ofMillis(30)));
+        wheel.advance();
+        wheel.advance();
+        assertEquals(asList(1), wheel.advance());
+    }
+}
@@ -53,6 +53,8 @@ public class Config {
         config.maxDownloadOnApproveTime = maxDownloadOnApproveTime;
         config.declinedItemExpiration = declinedItemExpiration;
         config.maxCacheAge = maxCacheAge;
+        config.maxCacheSize = maxCacheSize;
+        config.maxCacheBytes = maxCacheBytes;
         config.maxGetItemTime = maxGetItemTime;
         synchronized (this) {
             config.negativeConsensus = negativeConsensus;
@@ -66,6 +68,19 @@ public class Config {
         config.resyncTime = new ArrayList<>(resyncTime);
         config.checkItemTime = checkItemTime;
         config.maxResyncTime = maxResyncTime;
+        config.notificationsBatchWindow = notificationsBatchWindow;
+        config.notificationsBatchSize = notificationsBatchSize;
+        config.nioUDPAdapterEnabled = nioUDPAdapterEnabled;
+        config.downloadHedgeDelay = downloadHedgeDelay;
+        config.maxDownloadSources = maxDownloadSources;
+        config.eventSchedulerEnabled = eventSchedulerEnabled;
+        config.schedulerThreads = schedulerThreads;
+        config.sanitationParallelism = sanitationParallelism;
+        config.sanitationRate = sanitationRate;
+        config.resyncBatchSize = resyncBatchSize;
+        config.metricsScrapeEnabled = metricsScrapeEnabled;
+        config.admissionMaxLimit = admissionMaxLimit;
+        config.admissionMaxWait = admissionMaxWait;
         config.transactionUnitsIssuerKeys = new HashSet<>(transactionUnitsIssuerKeys);
         config.networkConfigIssuerKeyData = networkConfigIssuerKeyData;
         config.keysWhiteList = keysWhiteList;
@@ -104,6 +119,157 @@ public class Config {
         return expriedStorageCleanupInterval;
     }
 
+    /**
+     * Notifications to the same node produced within this time are packed into a single network block.
+     *
+     * @return notifications coalescing window, zero means no coalescing
+     */
+    public Duration getNotificationsBatchWindow() {
+        return notificationsBatchWindow;
+    }
+
+    public void setNotificationsBatchWindow(Duration notificationsBatchWindow) {
+        this.notificationsBatchWindow = notificationsBatchWindow;
+    }
+
+    /**
+     * @return max number of notifications to the same node packed into a single network block
+     */
+    public int getNotificationsBatchSize() {
+        return notificationsBatchSize;
+    }
+
+    public void setNotificationsBatchSize(int notificationsBatchSize) {
+        this.notificationsBatchSize = notificationsBatchSize;
+    }
+
+    /**
+     * @return true if node network should use {@link com.icodici.universa.node2.network.NioUDPAdapter} instead of
+     * {@link com.icodici.universa.node2.network.UDPAdapter}
+     */
+    public boolean isNioUDPAdapterEnabled() {
+        return nioUDPAdapterEnabled;
+    }
+
+    public void setNioUDPAdapterEnabled(boolean nioUDPAdapterEnabled) {
+        this.nioUDPAdapterEnabled = nioUDPAdapterEnabled;
+    }
+
+    /**
+     * If item or parcel is not downloaded from one source within this time, it is requested from another source too.
+     *
+     * @return delay before asking the next source
+     */
+    public Duration getDownloadHedgeDelay() {
+        return downloadHedgeDelay;
+    }
+
+    public void setDownloadHedgeDelay(Duration downloadHedgeDelay) {
+        this.downloadHedgeDelay = downloadHedgeDelay;
+    }
+
+    /**
+     * @return max number of sources the same item or parcel is downloaded from at once
+     */
+    public int getMaxDownloadSources() {
+        return maxDownloadSources;
+    }
+
+    public void setMaxDownloadSources(int maxDownloadSources) {
+        this.maxDownloadSources = maxDownloadSources;
+    }
+
+    /**
+     * @return true if node should run item and parcel processors on {@link EventScheduler} instead of a big {@link
+     * java.util.concurrent.ScheduledThreadPoolExecutor}
+     */
+    public boolean isEventSchedulerEnabled() {
+        return eventSchedulerEnabled;
+    }
+
+    public void setEventSchedulerEnabled(boolean eventSchedulerEnabled) {
+        this.eventSchedulerEnabled = eventSchedulerEnabled;
+    }
+
+    /**
+     * @return number of {@link EventScheduler} worker threads, 0 for one per core
+     */
+    public int getSchedulerThreads() {
+        return schedulerThreads;
+    }
+
+    public void setSchedulerThreads(int schedulerThreads) {
+        this.schedulerThreads = schedulerThreads;
+    }
+
+    /**
+     * @return max number of records sanitated at once on node start
+     */
+    public int getSanitationParallelism() {
+        return sanitationParallelism;
+    }
+
+    public void setSanitationParallelism(int sanitationParallelism) {
+        this.sanitationParallelism = sanitationParallelism;
+    }
+
+    /**
+     * @return max number of records which sanitation is started per second, 0 for no limit
+     */
+    public int getSanitationRate() {
+        return sanitationRate;
+    }
+
+    public void setSanitationRate(int sanitationRate) {
+        this.sanitationRate = sanitationRate;
+    }
+
+    /**
+     * @return max number of items in a single resync notification sent while sanitating
+     */
+    public int getResyncBatchSize() {
+        return resyncBatchSize;
+    }
+
+    public void setResyncBatchSize(int resyncBatchSize) {
+        this.resyncBatchSize = resyncBatchSize;
+    }
+
+    /**
+     * @return true if node metrics are served as plain text at /metrics of the client HTTP server, without
+     * authentication
+     */
+    public boolean isMetricsScrapeEnabled() {
+        return metricsScrapeEnabled;
+    }
+
+    public void setMetricsScrapeEnabled(boolean metricsScrapeEnabled) {
+        this.metricsScrapeEnabled = metricsScrapeEnabled;
+    }
+
+    /**
+     * @return max number of client registrations processed at once, the actual limit adapts to the node latency below
+     * it; 0 if admission control is off
+     */
+    public int getAdmissionMaxLimit() {
+        return admissionMaxLimit;
+    }
+
+    public void setAdmissionMaxLimit(int admissionMaxLimit) {
+        this.admissionMaxLimit = admissionMaxLimit;
+    }
+
+    /**
+     * @return max time a client registration waits for admission before it is rejected
+     */
+    public Duration getAdmissionMaxWait() {
+        return admissionMaxWait;
+    }
+
+    public void setAdmissionMaxWait(Duration admissionMaxWait) {
+        this.admissionMaxWait = admissionMaxWait;
+    }
+
 
     public interface ConsensusConfigUpdater {
         void updateConsensusConfig(Config config, int nodesCount);
@@ -132,11 +298,26 @@ public class Config {
 
     private Duration declinedItemExpiration = Duration.ofDays(10);
     private Duration maxCacheAge = Duration.ofMinutes(20);
+    private int maxCacheSize = ItemCache.DEFAULT_MAX_ENTRIES;
+    private long maxCacheBytes = ItemCache.DEFAULT_MAX_BYTES;
     private Duration maxDiskCacheAge = Duration.ofMinutes(40);
     private Duration statsIntervalSmall = Duration.ofSeconds(30);
     private Duration statsIntervalBig = Duration.ofSeconds(3600);
     private Duration maxGetItemTime = Duration.ofSeconds(30);
     private Duration expriedStorageCleanupInterval = Duration.ofSeconds(15);
+    private Duration notificationsBatchWindow = Duration.ofMillis(5);
+    private int notificationsBatchSize = 100;
+    private boolean nioUDPAdapterEnabled = false;
+    private Duration downloadHedgeDelay = Duration.ofSeconds(1);
+    private int maxDownloadSources = 2;
+    private boolean eventSchedulerEnabled = false;
+    private int schedulerThreads = 0;
+    private int sanitationParallelism = 64;
+    private int sanitationRate = 0;
+    private int resyncBatchSize = 100;
+    private boolean metricsScrapeEnabled = false;
+    private int admissionMaxLimit = 1000;
+    private Duration admissionMaxWait = Duration.ofSeconds(2);
 
     private int getItemRetryCount = 10;
     private int negativeConsensus;
@@ -248,6 +429,28 @@ public class Config {
         this.maxCacheAge = maxCacheAge;
     }
 
+    /**
+     * @return max number of items (and separately of parcels) kept in the node caches
+     */
+    public int getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    public void setMaxCacheSize(int maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    /**
+     * @return max approximate size in bytes of items (and separately of parcels) kept in the node caches
+     */
+    public long getMaxCacheBytes() {
+        return maxCacheBytes;
+    }
+
+    public void setMaxCacheBytes(long maxCacheBytes) {
+        this.maxCacheBytes = maxCacheBytes;
+    }
+
     public Duration getMaxGetItemTime() {
         return maxGetItemTime;
     }